@@ -1,5 +1,6 @@
 package ch.epfl.imhof;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -11,11 +12,24 @@ import java.util.Set;
  * donc rien d'autre qu'une table associative immuable dont les clefs et les
  * valeurs sont des chaînes de caractères.
  *
+ * Les clefs sont stockées sous forme d'identifiants (cf. TagDictionary),
+ * triées, avec leur valeur et, si elle est dans le dictionnaire, l'identifiant
+ * de cette valeur. Les filtres peuvent ainsi tester les attributs par
+ * comparaison d'entiers.
+ *
  * @author Thierry Treyer (235116)
  * @author Dominique Roduit (234868)
  */
 public final class Attributes {
-    private final Map<String, String> attr;
+    private static final int LAYER = TagDictionary.id("layer");
+
+    /* Identifiants (cf. TagDictionary) des clefs, triés, puis les valeurs
+     * correspondantes et leur identifiant (UNKNOWN si elles n'étaient pas dans
+     * le dictionnaire à la construction) */
+    private final int[] keys;
+    private final String[] values;
+    private final int[] valueIds;
+    private final int layer;
 
     /**
      * Construit un ensemble immuable d'attributs avec les paires clef/valeur
@@ -25,7 +39,54 @@ public final class Attributes {
      *            L'ensemble des attributs
      */
     public Attributes(Map<String, String> attributes) {
-        this.attr = Collections.unmodifiableMap(new HashMap<>(attributes));
+        int size = attributes.size();
+        String[] values = new String[size];
+
+        /* Identifiant de la clef et position de l'entrée, triés selon la clef */
+        long[] order = new long[size];
+        int i = 0;
+        for (Map.Entry<String, String> entry : attributes.entrySet()) {
+            order[i] = ((long)TagDictionary.id(entry.getKey()) << 32) | i;
+            values[i++] = entry.getValue();
+        }
+        Arrays.sort(order);
+
+        this.keys = new int[size];
+        this.values = new String[size];
+        this.valueIds = new int[size];
+        for (i = 0; i < size; i++) {
+            int key = (int)(order[i] >>> 32);
+            String value = values[(int)order[i]];
+            int valueId = TagDictionary.valueId(key, value);
+
+            this.keys[i] = key;
+            this.valueIds[i] = valueId;
+            /* Les valeurs du dictionnaire sont partagées entre les entités */
+            this.values[i] = (valueId == TagDictionary.UNKNOWN) ? value : TagDictionary.string(valueId);
+        }
+
+        int layer = this.indexOf(LAYER);
+        this.layer = (layer < 0) ? 0 : parseLayer(this.values[layer]);
+    }
+
+    private static int parseLayer(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Retourne la position de la clef dont l'identifiant est donné
+     *
+     * @param keyId
+     *            Identifiant de la clef (cf. TagDictionary)
+     * @return Position de la clef, ou -1 si elle n'existe pas
+     */
+    private int indexOf(int keyId) {
+        int i = Arrays.binarySearch(this.keys, keyId);
+        return (i < 0) ? -1 : i;
     }
 
     /**
@@ -34,7 +95,7 @@ public final class Attributes {
      * @return Vrai, si l'ensemble des attributs est vide
      */
     public boolean isEmpty() {
-        return this.attr.isEmpty();
+        return this.keys.length == 0;
     }
 
     /**
@@ -46,7 +107,20 @@ public final class Attributes {
      * @return Vrai, si l'ensemble d'attributs contient la clef
      */
     public boolean contains(String key) {
-        return this.attr.containsKey(key);
+        return this.contains(TagDictionary.lookup(key));
+    }
+
+    /**
+     * Retourne vrai si l'ensemble d'attributs contient la clef dont
+     * l'identifiant est donné.
+     *
+     * @param keyId
+     *            Identifiant de la clef (cf. TagDictionary)
+     *
+     * @return Vrai, si l'ensemble d'attributs contient la clef
+     */
+    public boolean contains(int keyId) {
+        return this.indexOf(keyId) >= 0;
     }
 
     /**
@@ -59,7 +133,8 @@ public final class Attributes {
      * @return La valeur associée à la clef ou null si la clef n'existe pas
      */
     public String get(String key) {
-        return this.attr.get(key);
+        int i = this.indexOf(TagDictionary.lookup(key));
+        return (i < 0) ? null : this.values[i];
     }
 
     /**
@@ -75,7 +150,8 @@ public final class Attributes {
      *         est absente
      */
     public String get(String key, String defaultValue) {
-        return this.attr.getOrDefault(key, defaultValue);
+        String value = this.get(key);
+        return (value == null) ? defaultValue : value;
     }
 
     /**
@@ -94,12 +170,57 @@ public final class Attributes {
      */
     public int get(String key, int defaultValue) {
         try {
-            return Integer.parseInt(this.attr.get(key));
+            return Integer.parseInt(this.get(key));
         } catch (NumberFormatException e) {
             return defaultValue;
         }
     }
 
+    /**
+     * Retourne l'identifiant de la valeur associée à la clef dont
+     * l'identifiant est donné. Aucune allocation ni aucun hachage n'est
+     * effectué si la valeur était dans le dictionnaire à la construction,
+     * ce qui est toujours le cas lorsque les valeurs de la clef sont indexées.
+     *
+     * @param keyId
+     *            Identifiant de la clef (cf. TagDictionary)
+     *
+     * @return Identifiant de la valeur, ou TagDictionary.UNKNOWN si la clef
+     *         n'existe pas ou si sa valeur n'est pas dans le dictionnaire
+     */
+    public int valueId(int keyId) {
+        int i = this.indexOf(keyId);
+        if (i < 0)
+            return TagDictionary.UNKNOWN;
+
+        int valueId = this.valueIds[i];
+        return (valueId != TagDictionary.UNKNOWN) ? valueId : TagDictionary.lookup(this.values[i]);
+    }
+
+    /**
+     * Retourne la couche de l'entité, c'est-à-dire la valeur entière de
+     * l'attribut layer, ou 0 si celui-ci est absent ou invalide. Elle est
+     * calculée une seule fois, à la construction.
+     *
+     * @return Couche de l'entité
+     */
+    public int layer() {
+        return this.layer;
+    }
+
+    /**
+     * Retourne une table associative (non modifiable) des attributs
+     *
+     * @return Table associant chaque clef à sa valeur
+     */
+    Map<String, String> asMap() {
+        Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < this.keys.length; i++)
+            map.put(TagDictionary.string(this.keys[i]), this.values[i]);
+
+        return Collections.unmodifiableMap(map);
+    }
+
     /**
      * Retourne une version filtrée des attributs ne contenant que ceux dont le
      * nom figure dans l'ensemble passé.
@@ -113,13 +234,26 @@ public final class Attributes {
         Builder attrBuilder = new Builder();
 
         for (String key : keysToKeep) {
-            if (this.contains(key))
-                attrBuilder.put(key, this.attr.get(key));
+            int i = this.indexOf(TagDictionary.lookup(key));
+            if (i >= 0)
+                attrBuilder.put(key, this.values[i]);
         }
 
         return attrBuilder.build();
     }
 
+    @Override
+    public boolean equals(Object that) {
+        return (that instanceof Attributes)
+            && Arrays.equals(this.keys, ((Attributes)that).keys)
+            && Arrays.equals(this.values, ((Attributes)that).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(this.keys) + Arrays.hashCode(this.values);
+    }
+
     /**
      * Bâtisseur associé à la classe Attributes
      *
@@ -1,11 +1,16 @@
 package ch.epfl.imhof;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CancellationException;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 
 import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.geometry.Rectangle;
 import ch.epfl.imhof.osm.OSMMap;
 import ch.epfl.imhof.osm.OSMMapReader;
 import ch.epfl.imhof.osm.OSMToGeoTransformer;
@@ -20,14 +25,23 @@ import ch.epfl.imhof.dem.*;
  *
  */
 public class Main {
-    private final static Projection PROJECTION = new CH1903Projection();
-    private final static Vector3 LIGHT_DIRECTION = new Vector3(-1, 1, 1);
+    final static Projection PROJECTION = new CH1903Projection();
+    final static Vector3 LIGHT_DIRECTION = new Vector3(-1, 1, 1);
     private final static float GAUSS_FACTOR = 0.0017f;
+    private final static int MAX_OPEN_HGT_FILES = 16;
+    /* Marge (en points) couvrant la demi-largeur des traits les plus larges
+     * et leurs jointures, pour ne pas écarter une entité juste hors du cadre
+     * dont le trait déborde dans la carte */
+    final static double CULLING_MARGIN = 20;
+    /* Au-delà de cette taille, les images PNG sont dessinées par tuiles,
+     * bande après bande, sans jamais être entièrement en mémoire */
+    private final static long MAX_UNTILED_PIXELS = 4096 * 4096;
+    private final static int TILE_SIZE = 1024;
 
     private static void usage () {
-        System.out.println("imhof osm hgt BL_lon BL_lat TR_lon TR_lat dpi out [format]");
-        System.out.println("       osm : Chemin du fichier OSM");
-        System.out.println("       hgt : Chemin du fichier HGT");
+        System.out.println("imhof osm hgt BL_lon BL_lat TR_lon TR_lat dpi out [format] [cache] [reliefs]");
+        System.out.println("       osm : Chemin du fichier OSM (.osm.gz ou .osm.pbf)");
+        System.out.println("       hgt : Chemin du fichier HGT, ou d'un répertoire de fichiers HGT");
         System.out.println("    BL_lon : Longitude du point en bas à gauche de la carte");
         System.out.println("    BL_lat : Latitude du point en bas à gauche de la carte");
         System.out.println("    TR_lon : Longitude du point en haut à droite de la carte");
@@ -35,6 +49,9 @@ public class Main {
         System.out.println("       dpi : Résolution de l'image");
         System.out.println("       out : Chemin où la carte sera enregistrée");
         System.out.println("    format : Format d'image (PNG, SVG,...) [Facultatif]");
+        System.out.println("     cache : Fichier où conserver la carte transformée entre deux exécutions [Facultatif]");
+        System.out.println("   reliefs : Répertoire où conserver les reliefs ombrés entre deux exécutions [Facultatif]");
+        System.out.println("Les images PNG de plus de " + MAX_UNTILED_PIXELS / 1000000 + " mégapixels sont dessinées par tuiles.");
     }
 
     /**
@@ -47,32 +64,147 @@ public class Main {
     }
 
     /**
-     * Superpose les deux images (la carte et le relief)
-     * @param back Image arrière (la carte)
-     * @param front  Image superposée à front (le relief)
-     * @return Image résultante de la fusion des deux images
+     * Rayon de floutage du relief ombré pour la résolution donnée
+     * @param dpi Résolution de l'image
+     * @return Rayon du flou gaussien (en pixels)
      */
-    private static BufferedImage multiplyImages (BufferedImage back, BufferedImage front) {
-        int width = back.getWidth();
-        int height = back.getHeight();
+    static float gaussRadius (int dpi) {
+        return dpiToDpm(dpi) * GAUSS_FACTOR;
+    }
 
-        if (width != front.getWidth() || height != front.getHeight())
-            throw new IllegalArgumentException("Les images n'ont pas la même taille");
+    /**
+     * Charge la carte projetée d'un fichier OSM, depuis le cache lorsque
+     * celui-ci a été construit à partir du même fichier et avec la même
+     * projection
+     * @param osmFile Fichier OSM (.osm.gz ou .osm.pbf)
+     * @param cacheFile Fichier où conserver la carte transformée, ou null
+     * @param projection Projection de la carte
+     * @param processors Nombre de fils d'exécution utilisés pour la lecture
+     * @return Carte projetée
+     * @throws Exception En cas d'erreur de lecture ou d'écriture
+     */
+    static Map loadMap (File osmFile, File cacheFile, Projection projection, int processors) throws Exception {
+        /* La carte transformée est rechargée depuis le cache tant que le
+         * fichier OSM n'a pas changé */
+        byte[] osmHash = null;
+        Map map = null;
+        if (cacheFile != null) {
+            osmHash = MapSnapshot.sourceHash(osmFile);
+            map = MapSnapshot.load(cacheFile, osmHash, projection);
+        }
 
-        BufferedImage composed = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        if (map == null) {
+            OSMMap osmMap = osmFile.getName().endsWith(".pbf")
+                ? OSMMapReader.readPBFFile(osmFile.getPath(), OSMMapReader.Mode.STANDARD, processors)
+                : OSMMapReader.readOSMFile(osmFile.getPath(), true);
+            OSMToGeoTransformer transformer = new OSMToGeoTransformer(projection);
 
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                Color backColor = Color.rgb(back.getRGB(x, y));
-                Color frontColor = Color.rgb(front.getRGB(x, y));
+            map = transformer.transform(osmMap);
 
-                composed.setRGB(x, y, backColor.multiplyWith(frontColor).getRGB());
-            }
+            if (cacheFile != null)
+                MapSnapshot.save(map, cacheFile, osmHash, projection);
+        }
+
+        return map;
+    }
+
+    /**
+     * Ouvre le modèle de terrain d'un fichier HGT ou d'un répertoire de
+     * fichiers HGT
+     * @param demFile Fichier HGT, ou répertoire de fichiers HGT
+     * @return Modèle de terrain
+     * @throws Exception En cas d'erreur de lecture
+     */
+    static DigitalElevationModel openDem (File demFile) throws Exception {
+        return demFile.isDirectory()
+            ? new HGTMosaicDigitalElevationModel(demFile, MAX_OPEN_HGT_FILES)
+            : new HGTDigitalElevationModel(demFile);
+    }
+
+    /**
+     * Calcule la hauteur de l'image d'une zone, dessinée au 1:25000
+     * @param wgsBottomLeft Coin bas-gauche de la zone
+     * @param wgsTopRight Coin haut-droite de la zone
+     * @param dpi Résolution de l'image
+     * @return Hauteur de l'image (en pixels)
+     */
+    static int imageHeight (PointGeo wgsBottomLeft, PointGeo wgsTopRight, int dpi) {
+        int dpm = dpiToDpm(dpi);
+        return (int)Math.round((double)Earth.RADIUS * (double)dpm * (wgsTopRight.latitude() - wgsBottomLeft.latitude()) / 25000d);
+    }
+
+    /**
+     * Calcule la largeur de l'image d'une zone, de même rapport que la zone
+     * projetée
+     * @param bottomLeft Coin bas-gauche de la zone projetée
+     * @param topRight Coin haut-droite de la zone projetée
+     * @param height Hauteur de l'image (en pixels)
+     * @return Largeur de l'image (en pixels)
+     */
+    static int imageWidth (Point bottomLeft, Point topRight, int height) {
+        return (int)Math.round((double)height * (topRight.x() - bottomLeft.x()) / (topRight.y() - bottomLeft.y()));
+    }
+
+    /**
+     * Dessine la zone donnée de la carte, multipliée par son relief ombré, et
+     * l'écrit dans le flot donné, sans le fermer
+     *
+     * Le dessin peut être annulé entre deux étapes en interrompant le fil
+     * d'exécution qui l'effectue.
+     * @param map Carte à dessiner
+     * @param painter Peintre de la carte
+     * @param reliefShader Relief ombré de la carte
+     * @param bottomLeft Coin bas-gauche de la zone projetée
+     * @param topRight Coin haut-droite de la zone projetée
+     * @param width Largeur de l'image (en pixels)
+     * @param height Hauteur de l'image (en pixels)
+     * @param dpi Résolution de l'image
+     * @param format Format de l'image (svg, ou un format connu d'ImageIO)
+     * @param out Flot de destination
+     * @throws IllegalArgumentException Si le format n'est pas connu
+     * @throws CancellationException Si le fil d'exécution a été interrompu
+     * @throws Exception En cas d'erreur d'écriture
+     */
+    static void writeMap (Map map, Painter painter, ReliefShader reliefShader, Point bottomLeft, Point topRight,
+            int width, int height, int dpi, String format, OutputStream out) throws Exception {
+        float gaussRadius = gaussRadius(dpi);
+
+        /* Seules les entités visibles sont transmises au peintre */
+        double metersPerPoint = (topRight.x() - bottomLeft.x()) / (width * 72d / dpi);
+        Map visibleMap = map.intersecting(Rectangle.of(bottomLeft, topRight)
+            .expandedBy(CULLING_MARGIN * metersPerPoint));
+
+        BufferedImage relief = reliefShader.shadedRelief(bottomLeft, topRight, width, height, gaussRadius);
+        checkNotInterrupted();
+
+        if (format.equals("svg")) {
+            SVGCanvas canvas = new SVGCanvas(bottomLeft, topRight, width, height, dpi, Color.WHITE);
+
+            painter.drawMap(visibleMap, canvas);
+            checkNotInterrupted();
+
+            canvas.setRelief(relief);
+
+            canvas.write(out);
+        } else {
+            Java2DCanvas canvas = new Java2DCanvas(bottomLeft, topRight, width, height, dpi, Color.WHITE);
+
+            painter.drawMap(visibleMap, canvas);
+            checkNotInterrupted();
+
+            /* Le relief est multiplié directement dans l'image de la carte */
+            Compositor.multiplyInto(relief, canvas.image());
+
+            if (!ImageIO.write(canvas.image(), format, out))
+                throw new IllegalArgumentException("Format d'image inconnu : " + format);
         }
+    }
 
-        return composed;
+    private static void checkNotInterrupted () {
+        if (Thread.currentThread().isInterrupted())
+            throw new CancellationException("Dessin de la carte annulé");
     }
-    
+
     public static void main(String[] args) throws Exception {
         if (args.length < 8) {
             usage();
@@ -95,42 +227,51 @@ public class Main {
         String outFormat = "png";
         if (args.length >= 9)
             outFormat = args[8];
-        
-        OSMMap osmMap = OSMMapReader.readOSMFile(osmFile.getPath(), true);
-        OSMToGeoTransformer transformer = new OSMToGeoTransformer(PROJECTION);
+        File cacheFile = null;
+        if (args.length >= 10)
+            cacheFile = new File(args[9]);
+        /* Une seule carte étant dessinée, seuls les reliefs sur disque
+         * peuvent resservir */
+        ReliefCache reliefCache = null;
+        if (args.length >= 11)
+            reliefCache = new ReliefCache(0, new File(args[10]));
+
+        int processors = Runtime.getRuntime().availableProcessors();
+
+        Map map = loadMap(osmFile, cacheFile, PROJECTION, processors);
 
-        Map map = transformer.transform(osmMap);
-        Painter painter = SwissPainter.painter();
+        Painter painter = SwissPainter.painter().compile();
 
         /* Calculs des dimensions */
         Point chBottomLeft = PROJECTION.project(wgsBottomLeft);
         Point chTopRight = PROJECTION.project(wgsTopRight);
 
-        int dpm = dpiToDpm(dpi);
-        int height = (int)Math.round((double)Earth.RADIUS * (double)dpm * (wgsTopRight.latitude() - wgsBottomLeft.latitude()) / 25000d);
-        int width = (int)Math.round((double)height * (chTopRight.x() - chBottomLeft.x()) / (chTopRight.y() - chBottomLeft.y()));
-        float gaussRadius = dpm * GAUSS_FACTOR;
-
-        DigitalElevationModel dem = new HGTDigitalElevationModel(demFile);
-        ReliefShader reliefShader = new ReliefShader(PROJECTION, dem, LIGHT_DIRECTION);
-        BufferedImage relief = reliefShader.shadedRelief(chBottomLeft, chTopRight, width, height, gaussRadius);
-
-        if (outFormat.equals("svg")) {
-            SVGCanvas canvas = new SVGCanvas(chBottomLeft, chTopRight, width, height, dpi, Color.WHITE);
+        int height = imageHeight(wgsBottomLeft, wgsTopRight, dpi);
+        int width = imageWidth(chBottomLeft, chTopRight, height);
 
-            painter.drawMap(map, canvas);
+        DigitalElevationModel dem = openDem(demFile);
 
-            canvas.setRelief(relief);
-
-            canvas.write(outFile.getPath());
-        } else {
-            Java2DCanvas canvas = new Java2DCanvas(chBottomLeft, chTopRight, width, height, dpi, Color.WHITE);
+        if (outFormat.equals("png") && (long)width * height > MAX_UNTILED_PIXELS) {
+            /* Les tuiles étant dessinées en parallèle, le relief de chacune
+             * est calculé et flouté séquentiellement par le thread qui la
+             * dessine ; le moteur de flou, sans état partagé, sert alors
+             * plusieurs tuiles à la fois */
+            float gaussRadius = gaussRadius(dpi);
 
-            painter.drawMap(map, canvas);
-
-            BufferedImage out = multiplyImages(relief, canvas.image());
+            try (ReliefShader tileShader = new ReliefShader(PROJECTION, dem, LIGHT_DIRECTION, 1,
+                    GaussianBlur.Mode.AUTO, reliefCache);
+                 PNGStreamWriter writer = new PNGStreamWriter(
+                    new BufferedOutputStream(new FileOutputStream(outFile)), width, height)) {
+                TiledMapRenderer renderer = new TiledMapRenderer(painter, tileShader, TILE_SIZE, CULLING_MARGIN, processors);
+                renderer.render(map, chBottomLeft, chTopRight, width, height, dpi, gaussRadius, writer);
+            }
+            return;
+        }
 
-            ImageIO.write(out, outFormat, outFile);
+        try (ReliefShader reliefShader = new ReliefShader(PROJECTION, dem, LIGHT_DIRECTION, processors,
+                GaussianBlur.Mode.AUTO, reliefCache);
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(outFile))) {
+            writeMap(map, painter, reliefShader, chBottomLeft, chTopRight, width, height, dpi, outFormat, out);
         }
     }
 }
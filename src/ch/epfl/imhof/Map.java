@@ -4,9 +4,12 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.stream.Collectors;
 
+import ch.epfl.imhof.geometry.HilbertRTree;
 import ch.epfl.imhof.geometry.PolyLine;
 import ch.epfl.imhof.geometry.Polygon;
+import ch.epfl.imhof.geometry.Rectangle;
 
 /**
  * Représente une carte projetée, composée d'entités géométriques attribuées.
@@ -20,6 +23,10 @@ public final class Map {
     private final List<Attributed<PolyLine>> polylines;
     private final List<Attributed<Polygon>> polygons;
 
+    /* Index spatiaux, construits à la première recherche */
+    private HilbertRTree polyLineIndex = null;
+    private HilbertRTree polygonIndex = null;
+
     /**
      * Construit une carte à partir des listes de polylignes et polygones
      * attribués donnés
@@ -54,6 +61,45 @@ public final class Map {
         return polygons;
     }
 
+    /**
+     * Retourne la carte formée des seules entités dont la boîte englobante a
+     * au moins un point commun avec la zone donnée. Les entités restent dans
+     * le même ordre que dans cette carte.
+     *
+     * @param area
+     *            Zone recherchée
+     * @return Carte des entités touchant la zone
+     */
+    public Map intersecting(Rectangle area) {
+        List<Attributed<PolyLine>> visiblePolyLines = new ArrayList<>();
+        for (int i : this.polyLineIndex().search(area))
+            visiblePolyLines.add(this.polylines.get(i));
+
+        List<Attributed<Polygon>> visiblePolygons = new ArrayList<>();
+        for (int i : this.polygonIndex().search(area))
+            visiblePolygons.add(this.polygons.get(i));
+
+        return new Map(visiblePolyLines, visiblePolygons);
+    }
+
+    private synchronized HilbertRTree polyLineIndex() {
+        if (this.polyLineIndex == null)
+            this.polyLineIndex = new HilbertRTree(this.polylines.stream()
+                    .map(p -> p.value().bounds())
+                    .collect(Collectors.toList()));
+
+        return this.polyLineIndex;
+    }
+
+    private synchronized HilbertRTree polygonIndex() {
+        if (this.polygonIndex == null)
+            this.polygonIndex = new HilbertRTree(this.polygons.stream()
+                    .map(p -> p.value().bounds())
+                    .collect(Collectors.toList()));
+
+        return this.polygonIndex;
+    }
+
     /**
      * Bâtisseur de la classe Map
      *
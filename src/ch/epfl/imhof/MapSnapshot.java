@@ -0,0 +1,397 @@
+package ch.epfl.imhof;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.OpenPolyLine;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+import ch.epfl.imhof.projection.Projection;
+
+/**
+ * Instantané binaire d'une carte projetée, permettant de la recharger sans
+ * relire ni retransformer les données OSM dont elle est issue.
+ *
+ * Le fichier contient, dans l'ordre :
+ * <ul>
+ * <li>un en-tête : signature, version, empreinte SHA-256 du fichier source et
+ * nom de la projection utilisée ;</li>
+ * <li>la table des chaînes de caractères (clefs et valeurs d'attributs) ;</li>
+ * <li>les ensembles d'attributs distincts, sous forme d'indices dans la table
+ * des chaînes ;</li>
+ * <li>la description des polylignes et des polygones (type, ensemble
+ * d'attributs, nombre de points de chaque anneau) ;</li>
+ * <li>les coordonnées de tous les points, à la suite.</li>
+ * </ul>
+ *
+ * Le fichier est projeté en mémoire à la lecture. Un instantané dont
+ * l'empreinte ou la projection ne correspond pas à celle attendue est
+ * considéré comme périmé.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ */
+public final class MapSnapshot {
+    private static final byte[] MAGIC = "IMHOFMAP".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HASH_LENGTH = 32;
+
+    /**
+     * Constructeur vide non-instanciable
+     */
+    private MapSnapshot() {
+    }
+
+    /**
+     * Calcule l'empreinte SHA-256 du fichier donné
+     *
+     * @param source
+     *            Fichier dont on veut l'empreinte
+     * @return Empreinte du fichier
+     * @throws IOException
+     *             En cas d'erreur de lecture du fichier
+     */
+    public static byte[] sourceHash(File source) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[1 << 16];
+
+        try (InputStream input = new FileInputStream(source)) {
+            int n;
+            while ((n = input.read(buffer)) != -1)
+                digest.update(buffer, 0, n);
+        }
+
+        return digest.digest();
+    }
+
+    /**
+     * Enregistre la carte donnée dans le fichier donné. Le fichier est écrit
+     * à côté puis renommé, si bien qu'un lecteur concurrent ne voit jamais
+     * d'instantané incomplet.
+     *
+     * @param map
+     *            Carte à enregistrer
+     * @param snapshot
+     *            Fichier de l'instantané
+     * @param sourceHash
+     *            Empreinte du fichier source de la carte
+     * @param projection
+     *            Projection utilisée pour construire la carte
+     * @throws IllegalArgumentException
+     *             Si l'empreinte n'est pas une empreinte SHA-256
+     * @throws IOException
+     *             En cas d'erreur d'écriture
+     */
+    public static void save(Map map, File snapshot, byte[] sourceHash,
+            Projection projection) throws IOException {
+        if (sourceHash.length != HASH_LENGTH)
+            throw new IllegalArgumentException("L'empreinte doit être une empreinte SHA-256");
+
+        Tables tables = new Tables(map);
+
+        File directory = snapshot.getAbsoluteFile().getParentFile();
+        File temporary = File.createTempFile(snapshot.getName(), ".tmp", directory);
+
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temporary), 1 << 16))) {
+                out.write(MAGIC);
+                out.writeInt(VERSION);
+                out.write(sourceHash);
+                writeString(out, projectionName(projection));
+
+                out.writeInt(tables.strings.size());
+                for (String s : tables.strings)
+                    writeString(out, s);
+
+                out.writeInt(tables.attributes.size());
+                for (int[] attributes : tables.attributes) {
+                    out.writeInt(attributes.length / 2);
+                    for (int index : attributes)
+                        out.writeInt(index);
+                }
+
+                out.writeInt(map.polyLines().size());
+                for (Attributed<PolyLine> polyLine : map.polyLines()) {
+                    out.writeBoolean(polyLine.value().isClosed());
+                    out.writeInt(tables.attributesIndex(polyLine.attributes()));
+                    out.writeInt(polyLine.value().pointCount());
+                }
+
+                out.writeInt(map.polygons().size());
+                for (Attributed<Polygon> polygon : map.polygons()) {
+                    out.writeInt(tables.attributesIndex(polygon.attributes()));
+                    out.writeInt(polygon.value().holes().size());
+                    out.writeInt(polygon.value().shell().pointCount());
+                    for (ClosedPolyLine hole : polygon.value().holes())
+                        out.writeInt(hole.pointCount());
+                }
+
+                out.writeLong(tables.pointCount);
+                for (Attributed<PolyLine> polyLine : map.polyLines())
+                    writePoints(out, polyLine.value());
+                for (Attributed<Polygon> polygon : map.polygons()) {
+                    writePoints(out, polygon.value().shell());
+                    for (ClosedPolyLine hole : polygon.value().holes())
+                        writePoints(out, hole);
+                }
+            }
+
+            Files.move(temporary.toPath(), snapshot.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+    }
+
+    /**
+     * Charge la carte enregistrée dans le fichier donné, si elle a été
+     * construite à partir du fichier source d'empreinte donnée et avec la
+     * projection donnée.
+     *
+     * @param snapshot
+     *            Fichier de l'instantané
+     * @param sourceHash
+     *            Empreinte du fichier source attendu
+     * @param projection
+     *            Projection attendue
+     * @return La carte enregistrée, ou null si le fichier n'existe pas, est
+     *         périmé ou n'est pas un instantané valide
+     * @throws IOException
+     *             En cas d'erreur de lecture
+     */
+    public static Map load(File snapshot, byte[] sourceHash, Projection projection)
+            throws IOException {
+        if (!snapshot.isFile())
+            return null;
+
+        try (FileInputStream input = new FileInputStream(snapshot)) {
+            FileChannel channel = input.getChannel();
+            MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+
+            return read(buffer, sourceHash, projectionName(projection));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            /* Fichier tronqué ou corrompu */
+            return null;
+        }
+    }
+
+    /**
+     * Lit l'instantané contenu dans le tampon donné
+     *
+     * @param buffer
+     *            Contenu du fichier
+     * @param sourceHash
+     *            Empreinte du fichier source attendu
+     * @param projection
+     *            Nom de la projection attendue
+     * @return La carte enregistrée, ou null si l'instantané est périmé
+     */
+    private static Map read(ByteBuffer buffer, byte[] sourceHash, String projection) {
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC) || buffer.getInt() != VERSION)
+            return null;
+
+        byte[] hash = new byte[HASH_LENGTH];
+        buffer.get(hash);
+        if (!Arrays.equals(hash, sourceHash) || !readString(buffer).equals(projection))
+            return null;
+
+        /* Les chaînes d'une carte transformée sont les clefs et valeurs
+         * qu'indexe la transformation : elles sont ajoutées au dictionnaire,
+         * afin que les attributs relus aient leurs identifiants de valeurs
+         * sans attendre que leurs clefs soient indexées */
+        String[] strings = new String[count(buffer)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(buffer);
+            TagDictionary.id(strings[i]);
+        }
+
+        Attributes[] attributes = new Attributes[count(buffer)];
+        for (int i = 0; i < attributes.length; i++) {
+            Attributes.Builder builder = new Attributes.Builder();
+            for (int j = count(buffer); j > 0; j--)
+                builder.put(strings[buffer.getInt()], strings[buffer.getInt()]);
+            attributes[i] = builder.build();
+        }
+
+        int polyLineCount = count(buffer);
+        boolean[] closed = new boolean[polyLineCount];
+        int[] polyLineAttributes = new int[polyLineCount];
+        int[] polyLineSizes = new int[polyLineCount];
+        for (int i = 0; i < polyLineCount; i++) {
+            closed[i] = buffer.get() != 0;
+            polyLineAttributes[i] = buffer.getInt();
+            polyLineSizes[i] = count(buffer);
+        }
+
+        int polygonCount = count(buffer);
+        int[] polygonAttributes = new int[polygonCount];
+        int[][] ringSizes = new int[polygonCount][];
+        for (int i = 0; i < polygonCount; i++) {
+            polygonAttributes[i] = buffer.getInt();
+            ringSizes[i] = new int[count(buffer) + 1];
+            for (int j = 0; j < ringSizes[i].length; j++)
+                ringSizes[i][j] = count(buffer);
+        }
+
+        long pointCount = buffer.getLong();
+        DoubleBuffer coordinates = buffer.asDoubleBuffer();
+        if (pointCount < 0 || 2 * pointCount != coordinates.remaining())
+            return null;
+
+        Map.Builder builder = new Map.Builder();
+
+        for (int i = 0; i < polyLineCount; i++) {
+            double[] xy = readCoordinates(coordinates, polyLineSizes[i]);
+            PolyLine polyLine = closed[i]
+                    ? new ClosedPolyLine(xy)
+                    : new OpenPolyLine(xy);
+
+            builder.addPolyLine(new Attributed<>(polyLine, attributes[polyLineAttributes[i]]));
+        }
+
+        for (int i = 0; i < polygonCount; i++) {
+            ClosedPolyLine shell = new ClosedPolyLine(readCoordinates(coordinates, ringSizes[i][0]));
+            List<ClosedPolyLine> holes = new ArrayList<>(ringSizes[i].length - 1);
+            for (int j = 1; j < ringSizes[i].length; j++)
+                holes.add(new ClosedPolyLine(readCoordinates(coordinates, ringSizes[i][j])));
+
+            builder.addPolygon(new Attributed<>(new Polygon(shell, holes),
+                    attributes[polygonAttributes[i]]));
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Tables des chaînes et des ensembles d'attributs distincts d'une carte
+     */
+    private static final class Tables {
+        private final List<String> strings = new ArrayList<>();
+        private final HashMap<String, Integer> stringIndices = new HashMap<>();
+        private final List<int[]> attributes = new ArrayList<>();
+        private final HashMap<Attributes, Integer> attributesIndices = new HashMap<>();
+        private long pointCount = 0;
+
+        Tables(Map map) {
+            for (Attributed<PolyLine> polyLine : map.polyLines()) {
+                this.add(polyLine.attributes());
+                this.pointCount += polyLine.value().pointCount();
+            }
+
+            for (Attributed<Polygon> polygon : map.polygons()) {
+                this.add(polygon.attributes());
+                this.pointCount += polygon.value().shell().pointCount();
+                for (ClosedPolyLine hole : polygon.value().holes())
+                    this.pointCount += hole.pointCount();
+            }
+        }
+
+        private void add(Attributes attributes) {
+            if (this.attributesIndices.containsKey(attributes))
+                return;
+
+            java.util.Map<String, String> map = attributes.asMap();
+            int[] indices = new int[2 * map.size()];
+            int i = 0;
+            for (java.util.Map.Entry<String, String> entry : map.entrySet()) {
+                indices[i++] = this.stringIndex(entry.getKey());
+                indices[i++] = this.stringIndex(entry.getValue());
+            }
+
+            this.attributesIndices.put(attributes, this.attributes.size());
+            this.attributes.add(indices);
+        }
+
+        private int stringIndex(String s) {
+            Integer index = this.stringIndices.get(s);
+            if (index == null) {
+                index = this.strings.size();
+                this.stringIndices.put(s, index);
+                this.strings.add(s);
+            }
+            return index;
+        }
+
+        int attributesIndex(Attributes attributes) {
+            return this.attributesIndices.get(attributes);
+        }
+    }
+
+    private static void writePoints(DataOutputStream out, PolyLine polyLine) throws IOException {
+        for (int i = 0; i < polyLine.pointCount(); i++) {
+            out.writeDouble(polyLine.x(i));
+            out.writeDouble(polyLine.y(i));
+        }
+    }
+
+    private static double[] readCoordinates(DoubleBuffer coordinates, int count) {
+        double[] xy = new double[2 * count];
+        coordinates.get(xy);
+
+        return xy;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[count(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Lit un nombre d'éléments
+     *
+     * @param buffer
+     *            Tampon à lire
+     * @return Nombre lu
+     * @throws IllegalArgumentException
+     *             Si le nombre est négatif ou dépasse la taille du tampon
+     */
+    private static int count(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining())
+            throw new IllegalArgumentException("Instantané corrompu");
+        return count;
+    }
+
+    private static String projectionName(Projection projection) {
+        return projection.getClass().getName();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error(e);
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package ch.epfl.imhof;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.imageio.ImageIO;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import ch.epfl.imhof.dem.DigitalElevationModel;
+import ch.epfl.imhof.dem.GaussianBlur;
+import ch.epfl.imhof.dem.ReliefCache;
+import ch.epfl.imhof.dem.ReliefShader;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.painting.Painter;
+
+/**
+ * Serveur HTTP dessinant des cartes à la demande, à partir d'une carte et
+ * d'un modèle de terrain chargés une seule fois au démarrage.
+ *
+ * Une carte est demandée par GET /map?bbox=BL_lon,BL_lat,TR_lon,TR_lat
+ * &amp;dpi=...&amp;format=..., le format étant png par défaut.
+ *
+ * Les cartes sont dessinées par un nombre fixe de fils d'exécution, devant
+ * lesquels attendent au plus queueCapacity requêtes. Une requête arrivant
+ * alors que la file est pleine est refusée immédiatement (503), plutôt que
+ * d'allonger l'attente de toutes les autres. Une requête qui n'a pas été
+ * servie dans le délai imparti est annulée (504) : retirée de la file si elle
+ * n'a pas encore commencé, interrompue entre deux étapes du dessin sinon.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ */
+public final class RenderServer {
+    /**
+     * Nombre maximal de pixels d'une carte demandée
+     */
+    public static final long MAX_PIXELS = 4096 * 4096;
+
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_QUEUE_CAPACITY = 16;
+    private static final long DEFAULT_TIMEOUT_MILLIS = 30_000;
+    private static final long DEFAULT_RELIEF_CACHE_BYTES = 256L << 20;
+
+    private final Map map;
+    private final Painter painter;
+    private final ReliefShader reliefShader;
+    private final ThreadPoolExecutor workers;
+    private final ExecutorService handlers;
+    private final long timeoutMillis;
+
+    private HttpServer server;
+
+    /**
+     * Construit un serveur de cartes
+     *
+     * @param map
+     *            Carte projetée avec la projection CH1903
+     * @param painter
+     *            Peintre de la carte, utilisé par plusieurs fils d'exécution à
+     *            la fois
+     * @param dem
+     *            Modèle de terrain
+     * @param workerCount
+     *            Nombre de cartes dessinées à la fois
+     * @param queueCapacity
+     *            Nombre de requêtes pouvant attendre un fil d'exécution libre
+     * @param timeoutMillis
+     *            Délai (en millisecondes) au-delà duquel une requête est
+     *            annulée
+     * @param reliefCache
+     *            Cache des reliefs ombrés, ou null pour les recalculer à
+     *            chaque requête
+     * @throws IllegalArgumentException
+     *             Si le nombre de fils d'exécution ou le délai n'est pas
+     *             strictement positif, ou si la capacité de la file est
+     *             négative
+     */
+    public RenderServer(Map map, Painter painter, DigitalElevationModel dem, int workerCount,
+            int queueCapacity, long timeoutMillis, ReliefCache reliefCache) {
+        if (workerCount < 1)
+            throw new IllegalArgumentException("Le nombre de threads doit être positif");
+        if (queueCapacity < 0)
+            throw new IllegalArgumentException("La capacité de la file ne peut pas être négative");
+        if (timeoutMillis <= 0)
+            throw new IllegalArgumentException("Le délai doit être positif");
+
+        this.map = map;
+        this.painter = painter;
+        this.timeoutMillis = timeoutMillis;
+
+        /* Un seul dessinateur de relief sert toutes les cartes dessinées à la
+         * fois : les bandes de leurs reliefs se partagent les processeurs
+         * dans son pool */
+        int processors = Runtime.getRuntime().availableProcessors();
+        this.reliefShader = new ReliefShader(Main.PROJECTION, dem, Main.LIGHT_DIRECTION,
+                processors, GaussianBlur.Mode.AUTO, reliefCache);
+
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+                queueCapacity == 0 ? new SynchronousQueue<>()
+                        : new ArrayBlockingQueue<>(queueCapacity));
+
+        /* Chaque requête acceptée occupe un fil de réception pendant son
+         * dessin ; un fil de plus répond aux requêtes refusées */
+        this.handlers = Executors.newFixedThreadPool(workerCount + queueCapacity + 1);
+    }
+
+    /**
+     * Démarre le serveur sur le port donné
+     *
+     * @param port
+     *            Port d'écoute, ou 0 pour un port libre choisi par le système
+     * @throws IOException
+     *             Si le port ne peut pas être ouvert
+     */
+    public void start(int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.server.createContext("/map", this::handle);
+        this.server.setExecutor(this.handlers);
+        this.server.start();
+    }
+
+    /**
+     * Retourne le port sur lequel le serveur démarré écoute
+     *
+     * @return Port d'écoute
+     */
+    public int port() {
+        return this.server.getAddress().getPort();
+    }
+
+    /**
+     * Arrête le serveur, en laissant aux requêtes en cours le délai donné pour
+     * se terminer
+     *
+     * @param delaySeconds
+     *            Délai (en secondes) accordé aux requêtes en cours
+     */
+    public void stop(int delaySeconds) {
+        if (this.server != null)
+            this.server.stop(delaySeconds);
+
+        this.workers.shutdownNow();
+        this.handlers.shutdownNow();
+        this.reliefShader.close();
+    }
+
+    /**
+     * Annule un dessin : il est interrompu s'il a commencé, et retiré de la
+     * file sinon, afin de libérer aussitôt sa place
+     */
+    private void cancel(Future<byte[]> image) {
+        image.cancel(true);
+        this.workers.remove((Runnable) image);
+    }
+
+    /**
+     * Répond à une requête de carte
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                respond(exchange, 405, "Seule la méthode GET est acceptée");
+                return;
+            }
+
+            Request request;
+            try {
+                request = Request.parse(exchange.getRequestURI().getRawQuery());
+            } catch (IllegalArgumentException e) {
+                respond(exchange, 400, e.getMessage());
+                return;
+            }
+
+            Future<byte[]> image;
+            try {
+                image = this.workers.submit(() -> this.render(request));
+            } catch (RejectedExecutionException e) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respond(exchange, 503, "Serveur surchargé, réessayez plus tard");
+                return;
+            }
+
+            byte[] body;
+            try {
+                body = image.get(this.timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                this.cancel(image);
+                respond(exchange, 504, "Délai de dessin dépassé");
+                return;
+            } catch (InterruptedException e) {
+                this.cancel(image);
+                Thread.currentThread().interrupt();
+                respond(exchange, 503, "Serveur en cours d'arrêt");
+                return;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IllegalArgumentException)
+                    respond(exchange, 400, cause.getMessage());
+                else if (cause instanceof CancellationException)
+                    respond(exchange, 503, "Dessin annulé");
+                else
+                    respond(exchange, 500, "Erreur lors du dessin : " + cause);
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", request.contentType());
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Dessine la carte demandée
+     *
+     * @return Image encodée de la carte
+     */
+    private byte[] render(Request request) throws Exception {
+        Point bottomLeft = Main.PROJECTION.project(request.bottomLeft);
+        Point topRight = Main.PROJECTION.project(request.topRight);
+
+        int height = Main.imageHeight(request.bottomLeft, request.topRight, request.dpi);
+        int width = Main.imageWidth(bottomLeft, topRight, height);
+        if (width <= 0 || height <= 0 || (long) width * height > MAX_PIXELS)
+            throw new IllegalArgumentException("La carte demandée doit compter entre 1 et "
+                    + MAX_PIXELS + " pixels, et non " + width + "x" + height);
+
+        ByteArrayOutputStream image = new ByteArrayOutputStream();
+        Main.writeMap(this.map, this.painter, this.reliefShader, bottomLeft, topRight, width,
+                height, request.dpi, request.format, image);
+
+        return image.toByteArray();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Paramètres d'une requête de carte
+     *
+     * @author Thierry Treyer (235116)
+     * @author Dominique Roduit (234868)
+     */
+    private static final class Request {
+        private final PointGeo bottomLeft, topRight;
+        private final int dpi;
+        private final String format;
+
+        private Request(PointGeo bottomLeft, PointGeo topRight, int dpi, String format) {
+            this.bottomLeft = bottomLeft;
+            this.topRight = topRight;
+            this.dpi = dpi;
+            this.format = format;
+        }
+
+        /**
+         * Lit les paramètres de la requête donnée
+         *
+         * @throws IllegalArgumentException
+         *             Si un paramètre manque ou est invalide
+         */
+        static Request parse(String query) {
+            java.util.Map<String, String> parameters = new HashMap<>();
+            if (query != null) {
+                for (String parameter : query.split("&")) {
+                    int equals = parameter.indexOf('=');
+                    if (equals > 0)
+                        parameters.put(decode(parameter.substring(0, equals)),
+                                decode(parameter.substring(equals + 1)));
+                }
+            }
+
+            String bbox = parameters.get("bbox");
+            String dpi = parameters.get("dpi");
+            if (bbox == null || dpi == null)
+                throw new IllegalArgumentException("Paramètres attendus : bbox=BL_lon,BL_lat,TR_lon,TR_lat&dpi=...[&format=...]");
+
+            String[] corners = bbox.split(",");
+            if (corners.length != 4)
+                throw new IllegalArgumentException("bbox doit contenir quatre coordonnées");
+
+            String format = parameters.getOrDefault("format", "png").toLowerCase();
+            if (!format.equals("svg") && !ImageIO.getImageWritersByFormatName(format).hasNext())
+                throw new IllegalArgumentException("Format d'image inconnu : " + format);
+
+            try {
+                PointGeo bottomLeft = new PointGeo(
+                        Math.toRadians(Double.parseDouble(corners[0])),
+                        Math.toRadians(Double.parseDouble(corners[1])));
+                PointGeo topRight = new PointGeo(
+                        Math.toRadians(Double.parseDouble(corners[2])),
+                        Math.toRadians(Double.parseDouble(corners[3])));
+
+                return new Request(bottomLeft, topRight, Integer.parseInt(dpi), format);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Nombre invalide : " + e.getMessage());
+            }
+        }
+
+        private static String decode(String s) {
+            return URLDecoder.decode(s, StandardCharsets.UTF_8);
+        }
+
+        String contentType() {
+            switch (this.format) {
+            case "svg":
+                return "image/svg+xml";
+            case "jpg":
+                return "image/jpeg";
+            default:
+                return "image/" + this.format;
+            }
+        }
+    }
+
+    private static void usage() {
+        System.out.println("imhof-server osm hgt [port] [threads] [cache] [reliefs]");
+        System.out.println("       osm : Chemin du fichier OSM (.osm.gz ou .osm.pbf)");
+        System.out.println("       hgt : Chemin du fichier HGT, ou d'un répertoire de fichiers HGT");
+        System.out.println("      port : Port d'écoute, " + DEFAULT_PORT + " par défaut [Facultatif]");
+        System.out.println("   threads : Nombre de cartes dessinées à la fois, le nombre de processeurs par défaut [Facultatif]");
+        System.out.println("     cache : Fichier où conserver la carte transformée entre deux exécutions [Facultatif]");
+        System.out.println("   reliefs : Répertoire où conserver les reliefs ombrés entre deux exécutions [Facultatif]");
+        System.out.println("Requête : GET /map?bbox=BL_lon,BL_lat,TR_lon,TR_lat&dpi=...[&format=png|jpg|svg]");
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            usage();
+            System.exit(1);
+        }
+
+        /* Récupérations des paramètres */
+        File osmFile = new File(args[0]);
+        File demFile = new File(args[1]);
+
+        /* Paramètre suplémentaires */
+        int processors = Runtime.getRuntime().availableProcessors();
+        int port = DEFAULT_PORT;
+        if (args.length >= 3)
+            port = Integer.parseInt(args[2]);
+        int workerCount = processors;
+        if (args.length >= 4)
+            workerCount = Integer.parseInt(args[3]);
+        File cacheFile = null;
+        if (args.length >= 5)
+            cacheFile = new File(args[4]);
+        File reliefDirectory = null;
+        if (args.length >= 6)
+            reliefDirectory = new File(args[5]);
+
+        Map map = Main.loadMap(osmFile, cacheFile, Main.PROJECTION, processors);
+        Painter painter = SwissPainter.painter().compile();
+        DigitalElevationModel dem = Main.openDem(demFile);
+
+        RenderServer server = new RenderServer(map, painter, dem, workerCount,
+                DEFAULT_QUEUE_CAPACITY, DEFAULT_TIMEOUT_MILLIS,
+                new ReliefCache(DEFAULT_RELIEF_CACHE_BYTES, reliefDirectory));
+        server.start(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+
+        System.out.println("Serveur de cartes à l'écoute sur le port " + port);
+    }
+}
@@ -0,0 +1,130 @@
+package ch.epfl.imhof;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionnaire global associant un petit entier unique à chaque nom
+ * d'attribut, ainsi qu'aux valeurs des attributs dont les valeurs sont
+ * indexées. Deux chaînes égales ont toujours le même identifiant, ce qui
+ * permet de comparer des attributs par simple comparaison d'entiers.
+ *
+ * Seules les valeurs des attributs conservés par la transformation en carte
+ * géométrique, ou testés par un filtre, sont indexées : les autres (noms,
+ * adresses, sources, etc.) sont presque toutes distinctes et ne feraient
+ * qu'encombrer le dictionnaire.
+ *
+ * Le dictionnaire ne fait que grandir et peut être utilisé depuis plusieurs
+ * fils d'exécution à la fois.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ */
+public final class TagDictionary {
+    /**
+     * Identifiant retourné pour une chaîne absente du dictionnaire
+     */
+    public static final int UNKNOWN = -1;
+
+    /* Identifiant réservé à null, que les tables associatives acceptent comme
+     * clef ou valeur */
+    private static final int NULL = 0;
+
+    private static final ConcurrentHashMap<String, Integer> IDS = new ConcurrentHashMap<>();
+    private static final Set<Integer> INDEXED_KEYS = ConcurrentHashMap.newKeySet();
+    private static volatile String[] strings = new String[1024];
+    private static int count = NULL + 1;
+
+    /**
+     * Constructeur vide non-instanciable
+     */
+    private TagDictionary() {}
+
+    /**
+     * Retourne l'identifiant de la chaîne donnée, en l'ajoutant au
+     * dictionnaire si nécessaire
+     *
+     * @param string
+     *            Chaîne dont on veut l'identifiant
+     * @return Identifiant de la chaîne, positif ou nul
+     */
+    public static int id(String string) {
+        if (string == null)
+            return NULL;
+
+        Integer id = IDS.get(string);
+        return (id != null) ? id : register(string);
+    }
+
+    /**
+     * Retourne l'identifiant de la chaîne donnée sans l'ajouter au
+     * dictionnaire
+     *
+     * @param string
+     *            Chaîne dont on veut l'identifiant
+     * @return Identifiant de la chaîne, ou UNKNOWN si elle n'a jamais été
+     *         ajoutée
+     */
+    public static int lookup(String string) {
+        if (string == null)
+            return NULL;
+
+        Integer id = IDS.get(string);
+        return (id != null) ? id : UNKNOWN;
+    }
+
+    /**
+     * Demande que les valeurs de l'attribut de nom donné soient ajoutées au
+     * dictionnaire
+     *
+     * @param key
+     *            Nom de l'attribut
+     */
+    public static void indexValuesOf(String key) {
+        INDEXED_KEYS.add(id(key));
+    }
+
+    /**
+     * Retourne l'identifiant de la valeur d'un attribut. La valeur n'est
+     * ajoutée au dictionnaire que si les valeurs de cet attribut sont indexées
+     * (cf. indexValuesOf).
+     *
+     * @param keyId
+     *            Identifiant du nom de l'attribut
+     * @param value
+     *            Valeur de l'attribut
+     * @return Identifiant de la valeur, ou UNKNOWN si elle n'est pas dans le
+     *         dictionnaire
+     */
+    public static int valueId(int keyId, String value) {
+        return INDEXED_KEYS.contains(keyId) ? id(value) : lookup(value);
+    }
+
+    /**
+     * Retourne la chaîne correspondant à l'identifiant donné
+     *
+     * @param id
+     *            Identifiant obtenu au moyen de la méthode id
+     * @return Chaîne correspondante
+     */
+    public static String string(int id) {
+        return strings[id];
+    }
+
+    private static synchronized int register(String string) {
+        Integer id = IDS.get(string);
+        if (id != null)
+            return id;
+
+        String[] strings = TagDictionary.strings;
+        if (count == strings.length)
+            TagDictionary.strings = strings = Arrays.copyOf(strings, 2 * count);
+
+        /* La chaîne est rangée avant que son identifiant ne soit publié */
+        strings[count] = string;
+        IDS.put(string, count);
+
+        return count++;
+    }
+}
@@ -0,0 +1,185 @@
+package ch.epfl.imhof;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ch.epfl.imhof.dem.ReliefShader;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.geometry.Rectangle;
+import ch.epfl.imhof.painting.Color;
+import ch.epfl.imhof.painting.Compositor;
+import ch.epfl.imhof.painting.Java2DCanvas;
+import ch.epfl.imhof.painting.PNGStreamWriter;
+import ch.epfl.imhof.painting.Painter;
+
+/**
+ * Dessine une carte et son relief tuile par tuile, de sorte que la mémoire
+ * utilisée ne dépende que de la largeur de l'image et non de sa surface.
+ *
+ * L'image est découpée en bandes horizontales, elles-mêmes découpées en
+ * tuiles carrées dessinées en parallèle. Chaque tuile ne reçoit que les
+ * entités touchant sa zone agrandie d'une marge couvrant la largeur des
+ * traits, et son relief est calculé avec la marge de floutage qu'ajoute déjà
+ * le relief ombré. Une fois toutes ses tuiles dessinées, la bande est
+ * transmise à l'écrivain PNG, puis oubliée.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ */
+public final class TiledMapRenderer {
+    private final Painter painter;
+    private final ReliefShader reliefShader;
+    private final int tileSize;
+    private final double cullingMargin;
+    private final int parallelism;
+
+    /**
+     * Construit un dessinateur de cartes par tuiles
+     *
+     * @param painter
+     *            Peintre de la carte, utilisé par plusieurs fils d'exécution à
+     *            la fois
+     * @param reliefShader
+     *            Relief ombré multiplié à la carte, ou null pour n'en dessiner
+     *            aucun
+     * @param tileSize
+     *            Côté des tuiles (en pixels)
+     * @param cullingMargin
+     *            Marge (en points) autour de chaque tuile dans laquelle une
+     *            entité est tout de même dessinée, afin que les traits qui
+     *            débordent sur la tuile ne soient pas coupés
+     * @param parallelism
+     *            Nombre de tuiles dessinées à la fois
+     * @throws IllegalArgumentException
+     *             Si la taille des tuiles ou le nombre de tuiles dessinées à
+     *             la fois n'est pas strictement positif
+     */
+    public TiledMapRenderer(Painter painter, ReliefShader reliefShader, int tileSize,
+            double cullingMargin, int parallelism) {
+        if (tileSize <= 0)
+            throw new IllegalArgumentException("La taille des tuiles doit être positive");
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Le nombre de threads doit être positif");
+
+        this.painter = painter;
+        this.reliefShader = reliefShader;
+        this.tileSize = tileSize;
+        this.cullingMargin = cullingMargin;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Dessine la zone donnée de la carte et écrit l'image obtenue, bande par
+     * bande
+     *
+     * @param map
+     *            Carte à dessiner
+     * @param bottomLeft
+     *            Coin bas-gauche de la zone à dessiner
+     * @param topRight
+     *            Coin haut-droite de la zone à dessiner
+     * @param width
+     *            Largeur de l'image (en pixels)
+     * @param height
+     *            Hauteur de l'image (en pixels)
+     * @param dpi
+     *            Résolution de l'image (en points par pouce)
+     * @param gaussRadius
+     *            Rayon de floutage du relief
+     * @param writer
+     *            Écrivain recevant les lignes de l'image, de même taille
+     * @throws IOException
+     *             En cas d'erreur d'écriture
+     */
+    public void render(Map map, Point bottomLeft, Point topRight, int width, int height,
+            int dpi, float gaussRadius, PNGStreamWriter writer) throws IOException {
+        double pixelWidth = (topRight.x() - bottomLeft.x()) / width;
+        double pixelHeight = (topRight.y() - bottomLeft.y()) / height;
+        double margin = this.cullingMargin * pixelWidth * dpi / 72d;
+
+        ExecutorService executor = Executors.newFixedThreadPool(this.parallelism);
+        try {
+            for (int y0 = 0; y0 < height; y0 += this.tileSize) {
+                int bandHeight = Math.min(this.tileSize, height - y0);
+                int[] band = new int[width * bandHeight];
+
+                List<Future<?>> tiles = new ArrayList<>();
+                for (int x0 = 0; x0 < width; x0 += this.tileSize) {
+                    int tileWidth = Math.min(this.tileSize, width - x0);
+
+                    /* Les coins de la tuile sont ceux des pixels de l'image,
+                     * la ligne 0 étant en haut */
+                    Point tileBottomLeft = new Point(bottomLeft.x() + x0 * pixelWidth,
+                            topRight.y() - (y0 + bandHeight) * pixelHeight);
+                    Point tileTopRight = new Point(bottomLeft.x() + (x0 + tileWidth) * pixelWidth,
+                            topRight.y() - y0 * pixelHeight);
+                    int bandX = x0;
+
+                    tiles.add(executor.submit(() -> {
+                        BufferedImage tile = this.renderTile(map, tileBottomLeft, tileTopRight,
+                                tileWidth, bandHeight, dpi, gaussRadius, margin);
+                        int[] pixels = ((DataBufferInt) tile.getRaster().getDataBuffer()).getData();
+
+                        for (int y = 0; y < bandHeight; y++)
+                            System.arraycopy(pixels, y * tileWidth, band, y * width + bandX, tileWidth);
+                    }));
+                }
+
+                for (Future<?> tile : tiles)
+                    waitFor(tile);
+
+                writer.writeRows(band, 0, width, bandHeight);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Dessine une tuile : les entités qui la touchent, multipliées par son
+     * relief ombré
+     *
+     * @return Image de la tuile, de type TYPE_INT_RGB
+     */
+    private BufferedImage renderTile(Map map, Point bottomLeft, Point topRight, int width,
+            int height, int dpi, float gaussRadius, double margin) {
+        Map visibleMap = map.intersecting(Rectangle.of(bottomLeft, topRight).expandedBy(margin));
+
+        Java2DCanvas canvas = new Java2DCanvas(bottomLeft, topRight, width, height, dpi, Color.WHITE);
+        this.painter.drawMap(visibleMap, canvas);
+
+        if (this.reliefShader != null) {
+            BufferedImage relief = this.reliefShader.shadedRelief(bottomLeft, topRight, width,
+                    height, gaussRadius);
+            Compositor.multiplyInto(relief, canvas.image());
+        }
+
+        return canvas.image();
+    }
+
+    /**
+     * Attend la fin du dessin d'une tuile, en propageant ses exceptions
+     */
+    private static void waitFor(Future<?> tile) throws IOException {
+        try {
+            tile.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Dessin de la carte interrompu", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package ch.epfl.imhof;
+
+import java.io.File;
+
+import ch.epfl.imhof.dem.DigitalElevationModel;
+import ch.epfl.imhof.dem.ReliefShader;
+import ch.epfl.imhof.painting.Painter;
+import ch.epfl.imhof.tiles.DirectoryTileStore;
+import ch.epfl.imhof.tiles.TileArchive;
+import ch.epfl.imhof.tiles.TilePyramid;
+import ch.epfl.imhof.tiles.TileStore;
+
+/**
+ * Programme générant une pyramide de tuiles XYZ d'une zone, en ne chargeant
+ * qu'une fois la carte et le modèle de terrain pour tous les niveaux de zoom
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ *
+ */
+public class TilesMain {
+    private final static int DEFAULT_TILE_SIZE = 256;
+    private final static String ARCHIVE_EXTENSION = ".tiles";
+
+    private static void usage () {
+        System.out.println("imhof-tiles osm hgt BL_lon BL_lat TR_lon TR_lat min_zoom max_zoom out [tile_size] [cache]");
+        System.out.println("       osm : Chemin du fichier OSM (.osm.gz ou .osm.pbf)");
+        System.out.println("       hgt : Chemin du fichier HGT, ou d'un répertoire de fichiers HGT");
+        System.out.println("    BL_lon : Longitude du point en bas à gauche de la zone");
+        System.out.println("    BL_lat : Latitude du point en bas à gauche de la zone");
+        System.out.println("    TR_lon : Longitude du point en haut à droite de la zone");
+        System.out.println("    TR_lat : Latitude du point en haut à droite de la zone");
+        System.out.println("  min_zoom : Premier niveau de zoom");
+        System.out.println("  max_zoom : Dernier niveau de zoom");
+        System.out.println("       out : Répertoire des tuiles (zoom/x/y.png), ou archive si son nom se termine par " + ARCHIVE_EXTENSION);
+        System.out.println(" tile_size : Côté des tuiles en pixels, " + DEFAULT_TILE_SIZE + " par défaut [Facultatif]");
+        System.out.println("     cache : Fichier où conserver la carte transformée entre deux exécutions [Facultatif]");
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 9) {
+            usage();
+            System.exit(1);
+        }
+
+        /* Récupérations des paramètres */
+        File osmFile = new File(args[0]);
+        File demFile = new File(args[1]);
+        PointGeo wgsBottomLeft = new PointGeo(
+            Math.toRadians(Double.parseDouble(args[2])),
+            Math.toRadians(Double.parseDouble(args[3])));
+        PointGeo wgsTopRight = new PointGeo(
+            Math.toRadians(Double.parseDouble(args[4])),
+            Math.toRadians(Double.parseDouble(args[5])));
+        int minZoom = Integer.parseInt(args[6]);
+        int maxZoom = Integer.parseInt(args[7]);
+        File outFile = new File(args[8]);
+
+        /* Paramètre suplémentaires */
+        int tileSize = DEFAULT_TILE_SIZE;
+        if (args.length >= 10)
+            tileSize = Integer.parseInt(args[9]);
+        File cacheFile = null;
+        if (args.length >= 11)
+            cacheFile = new File(args[10]);
+
+        int processors = Runtime.getRuntime().availableProcessors();
+
+        Map map = Main.loadMap(osmFile, cacheFile, TilePyramid.PROJECTION, processors);
+        Painter painter = SwissPainter.painter().compile();
+        DigitalElevationModel dem = Main.openDem(demFile);
+
+        /* Les tuiles étant dessinées en parallèle, le relief de chacune l'est
+         * séquentiellement */
+        try (ReliefShader reliefShader = new ReliefShader(TilePyramid.PROJECTION, dem, Main.LIGHT_DIRECTION);
+             TileStore store = outFile.getName().endsWith(ARCHIVE_EXTENSION)
+                ? new TileArchive(outFile)
+                : new DirectoryTileStore(outFile)) {
+            TilePyramid pyramid = new TilePyramid(map, painter, reliefShader, tileSize, Main.CULLING_MARGIN, processors);
+            int count = pyramid.generate(wgsBottomLeft, wgsTopRight, minZoom, maxZoom, store);
+            store.commit();
+            System.out.println(count + " tuiles enregistrées");
+        }
+    }
+}
@@ -16,4 +16,52 @@ public interface DigitalElevationModel extends AutoCloseable {
      * @return Vecteur normal à la Terre au point spécifié
      */
     public Vector3 normalAt(PointGeo point);
+
+    /**
+     * Indique si le modèle donne les altitudes et les normales de tous les
+     * points de la zone donnée
+     * @param southWest Coin sud-ouest de la zone
+     * @param northEast Coin nord-est de la zone
+     * @return true si le modèle couvre entièrement la zone
+     */
+    public boolean covers(PointGeo southWest, PointGeo northEast);
+
+    /**
+     * Calcule l'altitude, interpolée bilinéairement entre les quatre points
+     * voisins du modèle, de chacun des points donnés
+     * @param longitudes Longitudes des points (en radians)
+     * @param latitudes Latitudes des points (en radians)
+     * @param elevations Tableau recevant l'altitude (en mètres) de chaque point
+     * @param count Nombre de points à traiter
+     */
+    public void elevationsAt(double[] longitudes, double[] latitudes, float[] elevations, int count);
+
+    /**
+     * Calcule le vecteur normal à la Terre en chacun des points donnés. Les
+     * normales sont celles que retourne normalAt, écrites à la suite
+     * (x, y, z) dans le tableau de sortie.
+     * @param longitudes Longitudes des points (en radians)
+     * @param latitudes Latitudes des points (en radians)
+     * @param normals Tableau recevant les composantes des normales, de taille au moins 3 * count
+     * @param count Nombre de points à traiter
+     */
+    public default void normalsAt(double[] longitudes, double[] latitudes, float[] normals, int count) {
+        for (int i = 0; i < count; i++) {
+            Vector3 n = this.normalAt(new PointGeo(longitudes[i], latitudes[i]));
+
+            normals[3 * i]     = (float)n.x();
+            normals[3 * i + 1] = (float)n.y();
+            normals[3 * i + 2] = (float)n.z();
+        }
+    }
+
+    /**
+     * Retourne une chaîne identifiant les données du modèle : deux modèles de
+     * même identité donnent les mêmes normales. Elle permet de retrouver dans
+     * un cache les reliefs calculés à partir de ce modèle.
+     * @return Identité du modèle, ou null si elle est inconnue, auquel cas les reliefs ne sont pas mis en cache
+     */
+    public default String identity() {
+        return null;
+    }
 }
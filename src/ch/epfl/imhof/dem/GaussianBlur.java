@@ -0,0 +1,274 @@
+package ch.epfl.imhof.dem;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Flou gaussien séparable travaillant directement sur les pixels RGB
+ * empaquetés d'une image.
+ *
+ * Chaque passe floute les lignes de l'image et écrit son résultat transposé,
+ * de sorte que la seconde passe (verticale) parcourt elle aussi la mémoire
+ * ligne par ligne. Pour les grands rayons, le noyau gaussien peut être
+ * approché par trois flous boîte successifs calculés par sommes glissantes,
+ * dont le coût ne dépend pas du rayon.
+ *
+ * Chaque thread appelant dispose de ses propres tampons intermédiaires,
+ * agrandis à la demande et réutilisés d'un appel à l'autre ; une même
+ * instance peut donc flouter plusieurs images à la fois.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ */
+public final class GaussianBlur {
+    /**
+     * Méthode de calcul du flou
+     */
+    public static enum Mode {
+        /** Convolution par le noyau gaussien exact */
+        EXACT,
+        /** Approximation par trois flous boîte */
+        BOX,
+        /** Noyau exact pour les petits rayons, flous boîte au-delà */
+        AUTO
+    }
+
+    /** Rayon à partir duquel le mode AUTO utilise les flous boîte */
+    private static final float BOX_RADIUS_THRESHOLD = 8f;
+    /** Nombre de flous boîte approchant le flou gaussien */
+    private static final int BOX_PASSES = 3;
+    /** Nombre de lignes floutées par une même tâche */
+    private static final int BAND_HEIGHT = 16;
+    private static final int CHANNELS = 3;
+
+    private final Mode mode;
+    private final ForkJoinPool pool;
+    /* Composantes séparées et transposées, propres à chaque thread appelant */
+    private final ThreadLocal<float[][]> buffers = ThreadLocal.withInitial(() -> new float[2][0]);
+
+    /**
+     * Construit un moteur de flou
+     * @param mode Méthode de calcul du flou
+     * @param pool Pool sur lequel répartir les lignes, ou null pour un calcul séquentiel
+     */
+    public GaussianBlur (Mode mode, ForkJoinPool pool) {
+        this.mode = mode;
+        this.pool = pool;
+    }
+
+    /**
+     * Permet de calculer le noyau du flou gaussien étant donné son rayon
+     * @param radius Rayon du flou gaussien
+     * @return Données du noyau
+     */
+    static float[] buildKernelData (float radius) {
+        int o = (int)Math.ceil(radius);
+        int n = 2 * o + 1;
+
+        float s = radius / 3;
+        float ds = 2 * s * s;
+
+        float sum = 0f;
+        float[] data = new float[n];
+        for (int p = 0; p < n; p++) {
+            int d = o - p;
+
+            data[p] = (float)Math.exp(- d * d / ds);
+            sum += data[p];
+        }
+
+        for (int p = 0; p < n; p++)
+            data[p] /= sum;
+
+        return data;
+    }
+
+    /**
+     * Calcule les rayons des flous boîte dont la composition approche un flou
+     * gaussien du rayon donné (écart-type égal au tiers du rayon).
+     * @param radius Rayon du flou gaussien
+     * @return Rayons des flous boîte successifs
+     */
+    static int[] boxRadii (float radius) {
+        double sigma = radius / 3d;
+        double variance = 12 * sigma * sigma;
+
+        int wl = (int)Math.floor(Math.sqrt(variance / BOX_PASSES + 1));
+        if (wl % 2 == 0)
+            wl--;
+        int wu = wl + 2;
+
+        int m = (int)Math.round(
+            (variance - BOX_PASSES * wl * wl - 4 * BOX_PASSES * wl - 3 * BOX_PASSES) / (-4 * wl - 4));
+
+        int[] radii = new int[BOX_PASSES];
+        for (int i = 0; i < BOX_PASSES; i++)
+            radii[i] = ((i < m) ? wl : wu) / 2;
+
+        return radii;
+    }
+
+    /**
+     * Floute en place les pixels donnés. Les bords sont étendus par
+     * répétition du pixel le plus proche.
+     * @param pixels Pixels RGB empaquetés, ligne par ligne
+     * @param width Largeur de l'image
+     * @param height Hauteur de l'image
+     * @param radius Rayon du flou
+     */
+    public void blur (int[] pixels, int width, int height, float radius) {
+        if (radius <= 0 || width == 0 || height == 0)
+            return;
+
+        boolean box = this.mode == Mode.BOX
+            || (this.mode == Mode.AUTO && radius > BOX_RADIUS_THRESHOLD);
+        float[] kernel = box ? null : buildKernelData(radius);
+        int[] radii = box ? boxRadii(radius) : null;
+
+        int size = width * height;
+        float[][] buffers = this.buffers(CHANNELS * size);
+        float[] planes = buffers[0];
+        float[] transposed = buffers[1];
+
+        /* Séparation des composantes */
+        ParallelRows.forEachBand(this.pool, height, BAND_HEIGHT, (from, to) -> {
+            for (int i = from * width, l = to * width; i < l; i++) {
+                int rgb = pixels[i];
+                planes[i]            = (rgb >> 16) & 0xFF;
+                planes[size + i]     = (rgb >>  8) & 0xFF;
+                planes[2 * size + i] =  rgb        & 0xFF;
+            }
+        });
+
+        /* Passe horizontale, puis verticale sur l'image transposée */
+        this.blurRows(planes, transposed, width, height, kernel, radii);
+        this.blurRows(transposed, planes, height, width, kernel, radii);
+
+        /* Recomposition des pixels */
+        ParallelRows.forEachBand(this.pool, height, BAND_HEIGHT, (from, to) -> {
+            for (int i = from * width, l = to * width; i < l; i++) {
+                pixels[i] = (toByte(planes[i]) << 16)
+                          | (toByte(planes[size + i]) << 8)
+                          |  toByte(planes[2 * size + i]);
+            }
+        });
+    }
+
+    /**
+     * Retourne les tampons intermédiaires du thread appelant, agrandis au
+     * besoin
+     * @param length Nombre minimal d'éléments de chaque tampon
+     * @return Tampons des composantes et des composantes transposées
+     */
+    private float[][] buffers (int length) {
+        float[][] buffers = this.buffers.get();
+        if (buffers[0].length < length) {
+            buffers[0] = new float[length];
+            buffers[1] = new float[length];
+        }
+
+        return buffers;
+    }
+
+    /**
+     * Floute chaque ligne de chaque composante de src et écrit le résultat
+     * transposé dans dst.
+     * @param src Composantes source, de dimensions width x height
+     * @param dst Composantes destination, de dimensions height x width
+     * @param width Largeur des lignes source
+     * @param height Nombre de lignes source par composante
+     * @param kernel Noyau gaussien, ou null si on utilise les flous boîte
+     * @param radii Rayons des flous boîte, ou null si on utilise le noyau
+     */
+    private void blurRows (float[] src, float[] dst, int width, int height, float[] kernel, int[] radii) {
+        int size = width * height;
+
+        ParallelRows.forEachBand(this.pool, CHANNELS * height, BAND_HEIGHT, (from, to) -> {
+            float[] line = new float[width];
+            float[] scratch = new float[width];
+
+            for (int r = from; r < to; r++) {
+                int plane = (r / height) * size;
+                int y = r % height;
+
+                System.arraycopy(src, plane + y * width, line, 0, width);
+
+                float[] result;
+                if (kernel != null) {
+                    convolve(line, scratch, kernel);
+                    result = scratch;
+                } else {
+                    float[] a = line, b = scratch;
+                    for (int radius : radii) {
+                        boxBlur(a, b, radius);
+                        float[] t = a; a = b; b = t;
+                    }
+                    result = a;
+                }
+
+                for (int x = 0; x < width; x++)
+                    dst[plane + x * height + y] = result[x];
+            }
+        });
+    }
+
+    /**
+     * Convolue une ligne par le noyau donné
+     * @param in Ligne source
+     * @param out Ligne destination
+     * @param kernel Noyau de taille impaire
+     */
+    private static void convolve (float[] in, float[] out, float[] kernel) {
+        int n = in.length;
+        int o = kernel.length / 2;
+        int last = n - 1;
+
+        for (int x = 0; x < n; x++) {
+            float sum = 0f;
+
+            if (x >= o && x + o <= last) {
+                for (int k = 0, i = x - o; k < kernel.length; k++, i++)
+                    sum += kernel[k] * in[i];
+            } else {
+                for (int k = 0; k < kernel.length; k++) {
+                    int i = Math.min(last, Math.max(0, x + k - o));
+                    sum += kernel[k] * in[i];
+                }
+            }
+
+            out[x] = sum;
+        }
+    }
+
+    /**
+     * Applique un flou boîte à une ligne au moyen d'une somme glissante
+     * @param in Ligne source
+     * @param out Ligne destination
+     * @param radius Rayon de la boîte
+     */
+    private static void boxBlur (float[] in, float[] out, int radius) {
+        int n = in.length;
+        int last = n - 1;
+        float scale = 1f / (2 * radius + 1);
+
+        float sum = 0f;
+        for (int i = -radius; i <= radius; i++)
+            sum += in[Math.min(last, Math.max(0, i))];
+
+        for (int x = 0; x < n; x++) {
+            out[x] = sum * scale;
+
+            sum += in[Math.min(last, x + radius + 1)]
+                 - in[Math.max(0, x - radius)];
+        }
+    }
+
+    /**
+     * Arrondit une composante flottante à l'octet le plus proche
+     * @param v Composante dans [0; 255] aux erreurs d'arrondi près
+     * @return Composante entière dans [0; 255]
+     */
+    private static int toByte (float v) {
+        int i = (int)(v + 0.5f);
+        return (i < 0) ? 0 : (i > 255) ? 255 : i;
+    }
+}
@@ -13,44 +13,92 @@ import ch.epfl.imhof.Vector3;
 
 /**
  * Représentation d'un fichier HGT en MNT
+ *
+ * Les vecteurs normaux des cellules du fichier sont précalculés par blocs de
+ * cellules, à la demande, et conservés dans un cache borné par un budget
+ * mémoire. Les rendus successifs de régions qui se recouvrent ne recalculent
+ * ainsi pas les normales.
+ *
  * @author Thierry Treyer (235116)
  * @author Dominique Roduit (234868)
  *
  */
 public final class HGTDigitalElevationModel implements DigitalElevationModel {
     private static final double ARC = Math.toRadians(1);
+    private static final Pattern FILE_NAME = Pattern.compile("^([NS]{1})(\\d{2})([EW]{1})(\\d{3})\\.hgt$");
+
+    /** Budget mémoire par défaut du cache des normales (en octets) */
+    public static final long DEFAULT_CACHE_BUDGET = 64L << 20;
+    /** Nombre de cellules sur le côté d'un bloc de normales */
+    private static final int BLOCK_SIZE = 64;
+    /** Taille d'un bloc de normales (nx, ny, nz par cellule) */
+    private static final int BLOCK_LENGTH = 3 * BLOCK_SIZE * BLOCK_SIZE;
 
     private final double delta;
     private final long sideSize;
     private final PointGeo origin;
     private final FileInputStream input;
+    private final String identity;
+
+    private final int blocksPerSide;
+    private final LRUCache<Integer, float[]> normals;
 
     private ShortBuffer buffer;
-    
+
     /**
-     * 
+     * Construit un MNT dont le cache de normales utilise le budget par défaut
      * @param file Fichier HGT à lire
      * @throws IOException S'il y a des erreurs d'entrées/sorties
      * @throws IllegalArgumentException Si la taille du fichier n'est pas valide ou la convention de nommage des fichiers HGT n'est pas respectée
      */
     public HGTDigitalElevationModel(File file) throws IOException {
+        this(file, DEFAULT_CACHE_BUDGET);
+    }
+
+    /**
+     * Construit un MNT dont le cache de normales est borné par le budget donné
+     * @param file Fichier HGT à lire
+     * @param cacheBudget Mémoire maximale occupée par les normales précalculées (en octets), 0 pour désactiver le cache
+     * @throws IOException S'il y a des erreurs d'entrées/sorties
+     * @throws IllegalArgumentException Si la taille du fichier n'est pas valide ou la convention de nommage des fichiers HGT n'est pas respectée
+     */
+    public HGTDigitalElevationModel(File file, long cacheBudget) throws IOException {
         long length = file.length();
-        long pointsCount = length / 2;
 
-        this.sideSize = (long)Math.sqrt(pointsCount);
+        this.sideSize = sideSize(length);
 
-        if (2 * sideSize * sideSize != length)
-           throw new IllegalArgumentException("La taille du fichier n'est pas valide");
-        
         this.delta = Math.toRadians(1d / (sideSize - 1));
-        
-        Matcher m = Pattern
-            .compile("^([NS]{1})(\\d{2})([EW]{1})(\\d{3})\\.hgt$")
-            .matcher(file.getName());
-        
+
+        int[] tile = tileOrigin(file.getName());
+        this.origin = new PointGeo(
+                Math.toRadians(tile[0]),
+                Math.toRadians(tile[1]));
+
+        long blockBytes = 4L * BLOCK_LENGTH;
+        this.blocksPerSide = (int)((sideSize - 1 + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        this.normals = (cacheBudget >= blockBytes) ? new LRUCache<>(cacheBudget / blockBytes) : null;
+
+        this.identity = identity(file);
+        this.input = new FileInputStream(file);
+        this.buffer = this.input
+            .getChannel()
+            .map(MapMode.READ_ONLY, 0, length)
+            .asShortBuffer();
+    }
+
+    /**
+     * Retourne la longitude et la latitude (en degrés) du coin sud-ouest de
+     * la zone couverte par le fichier HGT de nom donné.
+     * @param fileName Nom du fichier, de la forme N46E007.hgt
+     * @return Tableau contenant la longitude puis la latitude du coin sud-ouest
+     * @throws IllegalArgumentException Si la convention de nommage n'est pas respectée
+     */
+    static int[] tileOrigin(String fileName) {
+        Matcher m = FILE_NAME.matcher(fileName);
+
         if (!m.matches())
             throw new IllegalArgumentException("La convention de nommage n'est pas respectée");
-         
+
         int lat = Integer.parseInt(m.group(2));
         if (m.group(1).equals("S"))
             lat = -lat;
@@ -59,65 +107,267 @@ public final class HGTDigitalElevationModel implements DigitalElevationModel {
         if (m.group(3).equals("W"))
             lon = -lon;
 
-        this.origin = new PointGeo(
-                Math.toRadians(lon),
-                Math.toRadians(lat));
+        return new int[] { lon, lat };
+    }
 
-        this.input = new FileInputStream(file);
-        this.buffer = this.input
-            .getChannel()
-            .map(MapMode.READ_ONLY, 0, length)
-            .asShortBuffer();
+    /**
+     * Retourne le nombre de points sur le côté d'un fichier HGT de taille donnée
+     * @param length Taille du fichier (en octets)
+     * @return Nombre de points sur le côté
+     * @throws IllegalArgumentException Si la taille du fichier n'est pas valide
+     */
+    static long sideSize(long length) {
+        long sideSize = (long)Math.sqrt(length / 2);
+
+        if (2 * sideSize * sideSize != length)
+           throw new IllegalArgumentException("La taille du fichier n'est pas valide");
+
+        return sideSize;
     }
-    
+
+    /**
+     * Retourne l'identité d'un fichier HGT : son chemin, sa taille et sa date
+     * de modification
+     * @param file Fichier HGT
+     * @return Identité du fichier
+     */
+    static String identity(File file) {
+        return file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+    }
+
+    @Override
+    public String identity() {
+        return this.identity;
+    }
+
     @Override
     public void close() throws IOException {
         this.buffer = null;
+        if (this.normals != null)
+            this.normals.clear();
         this.input.close();
     }
 
     /**
      * Contrôle que le point donné se trouve à l'intérieur de la zone couverte du MNT
-     * @param p Point dont on veut vérifier s'il se trouve à l'intérieur de la zone couverte
+     * @param longitude Longitude du point (en radians)
+     * @param latitude Latitude du point (en radians)
      * @return true si le point se trouve à l'intérieur de la zone couvere par le MNT
      */
-    private boolean isInside (PointGeo p) {
+    private boolean isInside (double longitude, double latitude) {
         return
-            p.latitude() >= this.origin.latitude() &&
-            p.latitude() <= this.origin.latitude() + ARC &&
-            p.longitude() >= this.origin.longitude() &&
-            p.longitude() <= this.origin.longitude() + ARC;
+            latitude >= this.origin.latitude() &&
+            latitude <= this.origin.latitude() + ARC &&
+            longitude >= this.origin.longitude() &&
+            longitude <= this.origin.longitude() + ARC;
     }
 
     @Override
-    public Vector3 normalAt(PointGeo point) {
-        if (!this.isInside(point))
+    public boolean covers(PointGeo southWest, PointGeo northEast) {
+        return this.isInside(southWest.longitude(), southWest.latitude())
+            && this.isInside(northEast.longitude(), northEast.latitude());
+    }
+
+    /**
+     * Contrôle que le point donné est couvert par le MNT
+     * @param longitude Longitude du point (en radians)
+     * @param latitude Latitude du point (en radians)
+     * @throws IllegalArgumentException Si le point est en dehors de la zone couverte
+     */
+    private void checkInside (double longitude, double latitude) {
+        if (!this.isInside(longitude, latitude))
             throw new IllegalArgumentException(
                     String.format("Le point (%.4f, %.4f) est en dehors de cette zone MNT [%d, %d] [%d, %d]",
-                        Math.toDegrees(point.longitude()), Math.toDegrees(point.latitude()),
+                        Math.toDegrees(longitude), Math.toDegrees(latitude),
                         (int)Math.toDegrees(this.origin.longitude()), (int)Math.toDegrees(this.origin.longitude()) + 1,
                         (int)Math.toDegrees(this.origin.latitude()), (int)Math.toDegrees(this.origin.latitude()) + 1
                         ));
+    }
+
+    @Override
+    public Vector3 normalAt(PointGeo point) {
+        this.checkInside(point.longitude(), point.latitude());
 
         int ss = (int)this.sideSize;
         int px =      (int)Math.floor((point.longitude() - this.origin.longitude()) / this.delta);
         int py = ss - (int)Math.ceil ((point.latitude()  - this.origin.latitude())  / this.delta);
 
-        double z1 = this.buffer.get(ss * py + px);
-        double z2 = this.buffer.get(ss * py + px + 1);
-        double z3 = this.buffer.get(ss * (py - 1) + px);
-        double z4 = this.buffer.get(ss * (py - 1) + px + 1);
+        float[] block = this.normalBlock(px, py);
+        if (block != null) {
+            int i = blockOffset(px, py);
+            return new Vector3(block[i], block[i + 1], block[i + 2]);
+        }
+
+        double[] n = new double[3];
+        this.computeNormal(px, py, n);
+        return new Vector3(n[0], n[1], n[2]);
+    }
+
+    @Override
+    public void elevationsAt(double[] longitudes, double[] latitudes, float[] elevations, int count) {
+        ShortBuffer buffer = this.buffer;
+        int ss = (int)this.sideSize;
+        double lon0 = this.origin.longitude();
+        double lat0 = this.origin.latitude();
+
+        for (int i = 0; i < count; i++) {
+            this.checkInside(longitudes[i], latitudes[i]);
+
+            /* Position dans le fichier, les lignes étant comptées depuis le sud */
+            double fx = (longitudes[i] - lon0) / this.delta;
+            double fy = (latitudes[i]  - lat0) / this.delta;
+
+            int x = Math.min((int)fx, ss - 2);
+            int y = Math.min((int)fy, ss - 2);
+            double u = fx - x;
+            double v = fy - y;
+
+            int south = ss * (ss - 1 - y) + x;
+            int north = south - ss;
+
+            elevations[i] = (float)(
+                  (1 - u) * (1 - v) * buffer.get(south)
+                +      u  * (1 - v) * buffer.get(south + 1)
+                + (1 - u) *      v  * buffer.get(north)
+                +      u  *      v  * buffer.get(north + 1));
+        }
+    }
+
+    @Override
+    public void normalsAt(double[] longitudes, double[] latitudes, float[] normals, int count) {
+        int ss = (int)this.sideSize;
+        double[] n = new double[3];
+
+        /* Les points voisins tombent en général dans le même bloc, on évite
+         * alors de repasser par le cache */
+        int lastBlock = -1;
+        float[] block = null;
+
+        for (int i = 0; i < count; i++) {
+            this.checkInside(longitudes[i], latitudes[i]);
+
+            int px =      (int)Math.floor((longitudes[i] - this.origin.longitude()) / this.delta);
+            int py = ss - (int)Math.ceil ((latitudes[i]  - this.origin.latitude())  / this.delta);
+
+            if (this.normals != null && px >= 0 && px < ss - 1 && py >= 1 && py < ss) {
+                int key = ((py - 1) / BLOCK_SIZE) * this.blocksPerSide + px / BLOCK_SIZE;
+                if (key != lastBlock) {
+                    block = this.normalBlock(px, py);
+                    lastBlock = key;
+                }
+
+                System.arraycopy(block, blockOffset(px, py), normals, 3 * i, 3);
+            } else {
+                this.computeNormal(px, py, n);
+
+                normals[3 * i]     = (float)n[0];
+                normals[3 * i + 1] = (float)n[1];
+                normals[3 * i + 2] = (float)n[2];
+            }
+        }
+    }
+
+    /**
+     * Calcule le vecteur normal unitaire de la cellule donnée
+     * @param px Colonne du coin bas-gauche de la cellule
+     * @param py Ligne du coin bas-gauche de la cellule
+     * @param n Tableau recevant les composantes de la normale
+     */
+    private void computeNormal(int px, int py, double[] n) {
+        cellNormal(this.buffer, (int)this.sideSize, this.delta, px, py, n);
+    }
+
+    /**
+     * Calcule le vecteur normal unitaire d'une cellule d'un fichier HGT
+     * @param buffer Altitudes du fichier, ligne par ligne depuis le nord
+     * @param ss Nombre de points sur le côté du fichier
+     * @param delta Angle entre deux points voisins (en radians)
+     * @param px Colonne du coin bas-gauche de la cellule
+     * @param py Ligne du coin bas-gauche de la cellule
+     * @param n Tableau recevant les composantes de la normale
+     */
+    static void cellNormal(ShortBuffer buffer, int ss, double delta, int px, int py, double[] n) {
+        double z1 = buffer.get(ss * py + px);
+        double z2 = buffer.get(ss * py + px + 1);
+        double z3 = buffer.get(ss * (py - 1) + px);
+        double z4 = buffer.get(ss * (py - 1) + px + 1);
 
         double dza = z2 - z1;
         double dzb = z3 - z1;
         double dzc = z3 - z4;
         double dzd = z2 - z4;
-        
-        double s = this.delta * Earth.RADIUS;
-        return new Vector3(
-            0.5 * s * (dzc - dza),
-            0.5 * s * (dzd - dzb),
-            s * s
-        ).normalized();
+
+        double s = delta * Earth.RADIUS;
+        double x = 0.5 * s * (dzc - dza);
+        double y = 0.5 * s * (dzd - dzb);
+        double z = s * s;
+        double norm = Math.sqrt(x * x + y * y + z * z);
+
+        n[0] = x / norm;
+        n[1] = y / norm;
+        n[2] = z / norm;
+    }
+
+    /**
+     * Retourne le bloc de normales précalculées contenant la cellule donnée,
+     * en le calculant s'il n'est pas dans le cache.
+     * @param px Colonne du coin bas-gauche de la cellule
+     * @param py Ligne du coin bas-gauche de la cellule
+     * @return Bloc de normales, ou null si le cache est désactivé ou que la cellule n'est pas complète
+     */
+    private float[] normalBlock(int px, int py) {
+        int ss = (int)this.sideSize;
+        if (this.normals == null || px < 0 || px >= ss - 1 || py < 1 || py >= ss)
+            return null;
+
+        int bx = px / BLOCK_SIZE;
+        int by = (py - 1) / BLOCK_SIZE;
+        Integer key = by * this.blocksPerSide + bx;
+
+        float[] block = this.normals.get(key);
+        if (block == null) {
+            block = this.computeBlock(bx, by);
+            this.normals.put(key, block);
+        }
+
+        return block;
+    }
+
+    /**
+     * Calcule toutes les normales d'un bloc de cellules
+     * @param bx Colonne du bloc
+     * @param by Ligne du bloc
+     * @return Normales du bloc, ligne par ligne
+     */
+    private float[] computeBlock(int bx, int by) {
+        int ss = (int)this.sideSize;
+        float[] block = new float[BLOCK_LENGTH];
+        double[] n = new double[3];
+
+        int maxX = Math.min(BLOCK_SIZE, ss - 1 - bx * BLOCK_SIZE);
+        int maxY = Math.min(BLOCK_SIZE, ss - 1 - by * BLOCK_SIZE);
+
+        for (int y = 0; y < maxY; y++) {
+            for (int x = 0; x < maxX; x++) {
+                this.computeNormal(bx * BLOCK_SIZE + x, by * BLOCK_SIZE + y + 1, n);
+
+                int i = 3 * (y * BLOCK_SIZE + x);
+                block[i]     = (float)n[0];
+                block[i + 1] = (float)n[1];
+                block[i + 2] = (float)n[2];
+            }
+        }
+
+        return block;
+    }
+
+    /**
+     * Retourne la position de la normale d'une cellule dans son bloc
+     * @param px Colonne du coin bas-gauche de la cellule
+     * @param py Ligne du coin bas-gauche de la cellule
+     * @return Position de la composante x de la normale
+     */
+    private static int blockOffset(int px, int py) {
+        return 3 * (((py - 1) % BLOCK_SIZE) * BLOCK_SIZE + px % BLOCK_SIZE);
     }
 }
@@ -0,0 +1,286 @@
+package ch.epfl.imhof.dem;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.HashMap;
+import java.util.Map;
+
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.Vector3;
+
+/**
+ * MNT composé de tous les fichiers HGT d'un répertoire.
+ *
+ * Les fichiers ne sont projetés en mémoire qu'au premier accès et seules les
+ * projections les plus récemment utilisées sont conservées. Un fichier est
+ * fermé dès qu'il est projeté ; la projection d'un fichier évincé est libérée
+ * par le ramasse-miettes, lorsque plus aucun thread n'utilise son tampon.
+ *
+ * Comme deux fichiers voisins partagent leur ligne (ou colonne) de bord, les
+ * normales sont calculées sur une grille globale et sont continues d'un
+ * fichier à l'autre.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ */
+public final class HGTMosaicDigitalElevationModel implements DigitalElevationModel {
+    /** Écart (en cellules) en deçà duquel un point est considéré sur le bord d'un fichier */
+    private static final double EDGE_TOLERANCE = 1e-6;
+
+    private final Map<Integer, File> files = new HashMap<>();
+    private final LRUCache<Integer, ShortBuffer> tiles;
+
+    private final int sideSize;
+    private final double delta;
+    private final String identity;
+
+    /**
+     * Construit un MNT à partir des fichiers HGT du répertoire donné
+     * @param directory Répertoire contenant les fichiers HGT (nommés comme N46E007.hgt)
+     * @param maxOpenTiles Nombre maximal de fichiers dont la projection en mémoire est conservée
+     * @throws IllegalArgumentException Si le répertoire ne contient aucun fichier HGT, si les fichiers n'ont pas tous la même résolution ou si maxOpenTiles n'est pas positif
+     */
+    public HGTMosaicDigitalElevationModel(File directory, int maxOpenTiles) {
+        if (maxOpenTiles < 1)
+            throw new IllegalArgumentException("Au moins un fichier doit pouvoir être ouvert");
+
+        File[] candidates = directory.listFiles((dir, name) -> name.endsWith(".hgt"));
+        if (candidates == null || candidates.length == 0)
+            throw new IllegalArgumentException("Aucun fichier HGT dans " + directory);
+
+        long sideSize = -1;
+        for (File file : candidates) {
+            int[] origin = HGTDigitalElevationModel.tileOrigin(file.getName());
+            long ss = HGTDigitalElevationModel.sideSize(file.length());
+
+            if (sideSize != -1 && ss != sideSize)
+                throw new IllegalArgumentException("Les fichiers HGT n'ont pas tous la même résolution");
+
+            sideSize = ss;
+            this.files.put(key(origin[0], origin[1]), file);
+        }
+
+        this.sideSize = (int)sideSize;
+        this.delta = Math.toRadians(1d / (sideSize - 1));
+        this.tiles = new LRUCache<>(maxOpenTiles);
+
+        /* Les fichiers sont pris dans l'ordre de leur clef, afin que
+         * l'identité ne dépende pas de l'ordre du répertoire */
+        StringBuilder identity = new StringBuilder("mosaic");
+        this.files.keySet().stream().sorted().forEach(k ->
+            identity.append('|').append(HGTDigitalElevationModel.identity(this.files.get(k))));
+        this.identity = identity.toString();
+    }
+
+    @Override
+    public String identity() {
+        return this.identity;
+    }
+
+    /**
+     * Retourne la clef d'un fichier étant donné son coin sud-ouest
+     * @param lon Longitude du coin sud-ouest (en degrés)
+     * @param lat Latitude du coin sud-ouest (en degrés)
+     * @return Clef du fichier
+     */
+    private static int key(int lon, int lat) {
+        return (lat + 90) * 360 + (lon + 180);
+    }
+
+    /**
+     * Indique si un fichier couvre la zone dont le coin sud-ouest est donné
+     * @param lon Longitude du coin sud-ouest (en degrés)
+     * @param lat Latitude du coin sud-ouest (en degrés)
+     * @return true si un fichier couvre cette zone
+     */
+    private boolean covers(int lon, int lat) {
+        return this.files.containsKey(key(lon, lat));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Les fichiers testés sont ceux dans lesquels normalsAt prend les
+     * cellules des coins de la zone, ce qui couvre aussi elevationsAt.
+     */
+    @Override
+    public boolean covers(PointGeo southWest, PointGeo northEast) {
+        int n = this.sideSize - 1;
+
+        int west  = Math.floorDiv((int)Math.floor(southWest.longitude() / this.delta), n);
+        int east  = Math.floorDiv((int)Math.floor(northEast.longitude() / this.delta), n);
+        int south = Math.floorDiv((int)Math.ceil (southWest.latitude()  / this.delta) - 1, n);
+        int north = Math.floorDiv((int)Math.ceil (northEast.latitude()  / this.delta) - 1, n);
+
+        for (int lat = south; lat <= north; lat++) {
+            for (int lon = west; lon <= east; lon++) {
+                if (!this.covers(lon, lat))
+                    return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Retourne les altitudes du fichier dont le coin sud-ouest est donné, en
+     * le projetant en mémoire si nécessaire. Un même fichier n'est jamais
+     * projeté deux fois à la fois.
+     * @param lon Longitude du coin sud-ouest (en degrés)
+     * @param lat Latitude du coin sud-ouest (en degrés)
+     * @return Le fichier projeté en mémoire
+     * @throws IllegalArgumentException Si aucun fichier ne couvre cette zone
+     */
+    private ShortBuffer tile(int lon, int lat) {
+        File file = this.files.get(key(lon, lat));
+        if (file == null)
+            throw new IllegalArgumentException(
+                    String.format("Aucun fichier HGT ne couvre la zone [%d, %d] [%d, %d]",
+                        lon, lon + 1, lat, lat + 1));
+
+        return this.tiles.computeIfAbsent(key(lon, lat), k -> map(file));
+    }
+
+    /**
+     * Projette en mémoire les altitudes d'un fichier HGT, puis le ferme
+     * @param file Fichier HGT
+     * @return Altitudes du fichier
+     */
+    private static ShortBuffer map(File file) {
+        try (FileInputStream input = new FileInputStream(file)) {
+            return input.getChannel()
+                .map(MapMode.READ_ONLY, 0, file.length())
+                .asShortBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Vector3 normalAt(PointGeo point) {
+        double[] normal = new double[3];
+        this.normalAt(point.longitude(), point.latitude(), normal);
+
+        return new Vector3(normal[0], normal[1], normal[2]);
+    }
+
+    /**
+     * Calcule le vecteur normal unitaire au point donné
+     * @param longitude Longitude du point (en radians)
+     * @param latitude Latitude du point (en radians)
+     * @param normal Tableau recevant les composantes de la normale
+     */
+    private void normalAt(double longitude, double latitude, double[] normal) {
+        int n = this.sideSize - 1;
+
+        /* Coin bas-gauche de la cellule sur la grille globale */
+        int gx = (int)Math.floor(longitude / this.delta);
+        int gy = (int)Math.ceil (latitude  / this.delta) - 1;
+
+        int lon = Math.floorDiv(gx, n);
+        int lat = Math.floorDiv(gy, n);
+
+        /* Les quatre coins de la cellule sont toujours dans le même fichier,
+         * les bords étant dupliqués entre fichiers voisins */
+        int px = gx - lon * n;
+        int py = n - (gy - lat * n);
+
+        HGTDigitalElevationModel.cellNormal(this.tile(lon, lat), this.sideSize, this.delta, px, py, normal);
+    }
+
+    @Override
+    public void normalsAt(double[] longitudes, double[] latitudes, float[] normals, int count) {
+        int n = this.sideSize - 1;
+        double[] normal = new double[3];
+
+        /* Les points voisins tombent en général dans le même fichier, on évite
+         * alors de repasser par le cache partagé */
+        int lastKey = -1;
+        ShortBuffer buffer = null;
+
+        for (int i = 0; i < count; i++) {
+            int gx = (int)Math.floor(longitudes[i] / this.delta);
+            int gy = (int)Math.ceil (latitudes[i]  / this.delta) - 1;
+
+            int lon = Math.floorDiv(gx, n);
+            int lat = Math.floorDiv(gy, n);
+
+            int key = key(lon, lat);
+            if (key != lastKey) {
+                buffer = this.tile(lon, lat);
+                lastKey = key;
+            }
+
+            HGTDigitalElevationModel.cellNormal(buffer, this.sideSize, this.delta,
+                    gx - lon * n, n - (gy - lat * n), normal);
+
+            normals[3 * i]     = (float)normal[0];
+            normals[3 * i + 1] = (float)normal[1];
+            normals[3 * i + 2] = (float)normal[2];
+        }
+    }
+
+    @Override
+    public void elevationsAt(double[] longitudes, double[] latitudes, float[] elevations, int count) {
+        int n = this.sideSize - 1;
+
+        int lastKey = -1;
+        ShortBuffer buffer = null;
+
+        for (int i = 0; i < count; i++) {
+            /* Position sur la grille globale, les lignes étant comptées depuis le sud */
+            double fx = longitudes[i] / this.delta;
+            double fy = latitudes[i]  / this.delta;
+
+            int gx = (int)Math.floor(fx);
+            int gy = (int)Math.floor(fy);
+            double u = fx - gx;
+            double v = fy - gy;
+
+            int lon = Math.floorDiv(gx, n);
+            int lat = Math.floorDiv(gy, n);
+
+            /* Un point sur le bord est (ou nord) d'un fichier tombe dans le
+             * fichier voisin, qui peut ne pas exister : on interpole alors
+             * dans la dernière cellule du fichier qui le couvre */
+            boolean eastEdge = gx == lon * n && u < EDGE_TOLERANCE;
+            boolean northEdge = gy == lat * n && v < EDGE_TOLERANCE;
+
+            if (eastEdge && !this.covers(lon, lat)
+                    && (this.covers(lon - 1, lat) || (northEdge && this.covers(lon - 1, lat - 1)))) {
+                gx -= 1;
+                u = 1;
+                lon -= 1;
+            }
+            if (northEdge && !this.covers(lon, lat) && this.covers(lon, lat - 1)) {
+                gy -= 1;
+                v = 1;
+                lat -= 1;
+            }
+
+            int key = key(lon, lat);
+            if (key != lastKey) {
+                buffer = this.tile(lon, lat);
+                lastKey = key;
+            }
+
+            int south = this.sideSize * (n - (gy - lat * n)) + (gx - lon * n);
+            int north = south - this.sideSize;
+
+            elevations[i] = (float)(
+                  (1 - u) * (1 - v) * buffer.get(south)
+                +      u  * (1 - v) * buffer.get(south + 1)
+                + (1 - u) *      v  * buffer.get(north)
+                +      u  *      v  * buffer.get(north + 1));
+        }
+    }
+
+    @Override
+    public void close() {
+        this.tiles.clear();
+    }
+}
@@ -0,0 +1,117 @@
+package ch.epfl.imhof.dem;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Cache associatif borné, évinçant les entrées les moins récemment utilisées
+ * lorsque le poids total des valeurs dépasse la capacité donnée.
+ *
+ * Toutes les opérations sont synchronisées, le cache peut donc être partagé
+ * entre plusieurs threads.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ *
+ * @param <K> Type des clefs
+ * @param <V> Type des valeurs
+ */
+final class LRUCache<K, V> {
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long capacity;
+    private final ToLongFunction<V> weigher;
+    private final Consumer<V> onEviction;
+
+    private long weight = 0;
+
+    /**
+     * Construit un cache borné
+     * @param capacity Poids total maximal des valeurs du cache
+     * @param weigher Fonction donnant le poids d'une valeur
+     * @param onEviction Action exécutée sur chaque valeur évincée ou remplacée
+     */
+    LRUCache(long capacity, ToLongFunction<V> weigher, Consumer<V> onEviction) {
+        this.capacity = capacity;
+        this.weigher = weigher;
+        this.onEviction = onEviction;
+    }
+
+    /**
+     * Construit un cache borné en nombre d'entrées
+     * @param capacity Nombre maximal d'entrées du cache
+     */
+    LRUCache(long capacity) {
+        this(capacity, v -> 1, v -> {});
+    }
+
+    /**
+     * Retourne la valeur associée à la clef donnée et la marque comme la plus
+     * récemment utilisée.
+     * @param key Clef recherchée
+     * @return Valeur associée, ou null si elle n'est pas dans le cache
+     */
+    synchronized V get(K key) {
+        return this.entries.get(key);
+    }
+
+    /**
+     * Retourne la valeur associée à la clef donnée, en la calculant et en
+     * l'ajoutant au cache si elle n'y est pas. Le calcul a lieu sous le verrou
+     * du cache, de sorte que deux threads ne calculent jamais la même valeur.
+     * @param key Clef recherchée
+     * @param loader Fonction calculant la valeur associée à une clef absente
+     * @return Valeur associée à la clef
+     */
+    synchronized V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+        V value = this.entries.get(key);
+        if (value == null) {
+            value = loader.apply(key);
+            this.put(key, value);
+        }
+
+        return value;
+    }
+
+    /**
+     * Ajoute une valeur au cache, puis évince les entrées les moins récemment
+     * utilisées jusqu'à respecter la capacité. Une valeur plus lourde que la
+     * capacité n'est pas conservée.
+     * @param key Clef de la valeur
+     * @param value Valeur à ajouter
+     */
+    synchronized void put(K key, V value) {
+        V previous = this.entries.put(key, value);
+        this.weight += this.weigher.applyAsLong(value);
+
+        if (previous != null) {
+            this.weight -= this.weigher.applyAsLong(previous);
+
+            if (previous != value)
+                this.onEviction.accept(previous);
+        }
+
+        Iterator<Map.Entry<K, V>> it = this.entries.entrySet().iterator();
+        while (this.weight > this.capacity && it.hasNext()) {
+            V evicted = it.next().getValue();
+            it.remove();
+
+            this.weight -= this.weigher.applyAsLong(evicted);
+            this.onEviction.accept(evicted);
+        }
+    }
+
+    /**
+     * Vide le cache en exécutant l'action d'éviction sur chaque valeur.
+     */
+    synchronized void clear() {
+        for (V value : this.entries.values())
+            this.onEviction.accept(value);
+
+        this.entries.clear();
+        this.weight = 0;
+    }
+}
@@ -0,0 +1,74 @@
+package ch.epfl.imhof.dem;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Découpe un traitement ligne par ligne d'une image en bandes de lignes
+ * contiguës et les exécute sur un ForkJoinPool.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ */
+final class ParallelRows {
+    /**
+     * Traitement appliqué à une bande de lignes [from; to[
+     */
+    @FunctionalInterface
+    interface Band {
+        void apply(int from, int to);
+    }
+
+    private ParallelRows() {}
+
+    /**
+     * Applique le traitement donné à toutes les lignes [0; rows[, par bandes
+     * d'au plus bandHeight lignes. Si le pool est null, les bandes sont
+     * traitées séquentiellement dans le thread courant.
+     *
+     * @param pool Pool d'exécution, ou null pour un traitement séquentiel
+     * @param rows Nombre total de lignes
+     * @param bandHeight Hauteur maximale d'une bande
+     * @param band Traitement à appliquer à chaque bande
+     */
+    static void forEachBand(ForkJoinPool pool, int rows, int bandHeight, Band band) {
+        if (pool == null || rows <= bandHeight)
+            band.apply(0, rows);
+        else
+            pool.invoke(new BandTask(band, 0, rows, bandHeight));
+    }
+
+    /**
+     * Tâche divisant récursivement l'intervalle de lignes en deux jusqu'à
+     * atteindre la hauteur de bande voulue.
+     */
+    private static final class BandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Band band;
+        private final int from, to, bandHeight;
+
+        BandTask(Band band, int from, int to, int bandHeight) {
+            this.band = band;
+            this.from = from;
+            this.to = to;
+            this.bandHeight = bandHeight;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= this.bandHeight) {
+                this.band.apply(this.from, this.to);
+                return;
+            }
+
+            /* On coupe sur une frontière de bande pour garder des bandes pleines */
+            int bands = (this.to - this.from + this.bandHeight - 1) / this.bandHeight;
+            int middle = this.from + (bands / 2) * this.bandHeight;
+
+            invokeAll(
+                new BandTask(this.band, this.from, middle, this.bandHeight),
+                new BandTask(this.band, middle, this.to, this.bandHeight));
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package ch.epfl.imhof.dem;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Cache des reliefs ombrés déjà calculés, afin qu'une même zone dessinée
+ * plusieurs fois (avec des styles différents, par exemple) ne soit ombrée et
+ * floutée qu'une fois.
+ *
+ * Les reliefs sont identifiés par l'empreinte SHA-256 de tout ce dont ils
+ * dépendent : identité du modèle de terrain, projection, zone, taille de
+ * l'image, rayon de floutage et direction de la lumière. Le cache a deux
+ * niveaux :
+ * <ul>
+ * <li>en mémoire, les reliefs les moins récemment utilisés étant évincés
+ * lorsque le budget est dépassé ;</li>
+ * <li>facultativement, sur disque, un fichier par relief contenant ses pixels
+ * RGB compressés. Un relief trouvé sur disque est remis en mémoire. Les
+ * fichiers ne sont jamais supprimés par le cache ; un relief qui ne peut pas
+ * être écrit n'est conservé qu'en mémoire.</li>
+ * </ul>
+ *
+ * Le cache peut être partagé entre plusieurs threads et plusieurs dessinateurs
+ * de reliefs.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ */
+public final class ReliefCache {
+    private static final byte[] MAGIC = "IMHOFREL".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".relief";
+
+    private final LRUCache<String, int[]> memory;
+    private final File directory;
+
+    /**
+     * Construit un cache de reliefs
+     * @param memoryBudget Mémoire maximale occupée par les reliefs conservés en mémoire (en octets)
+     * @param directory Répertoire où conserver les reliefs sur disque, créé au besoin, ou null pour ne les conserver qu'en mémoire
+     */
+    public ReliefCache(long memoryBudget, File directory) {
+        this.memory = new LRUCache<>(memoryBudget, pixels -> 4L * pixels.length, pixels -> {});
+        this.directory = directory;
+    }
+
+    /**
+     * Calcule la clef d'un relief, empreinte SHA-256 de sa description
+     * @param description Description de tout ce dont dépend le relief
+     * @return Clef du relief, en hexadécimal
+     */
+    static String key(String description) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                .digest(description.getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder key = new StringBuilder(2 * hash.length);
+            for (byte b : hash)
+                key.append(String.format("%02x", b & 0xFF));
+
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 n'est pas disponible", e);
+        }
+    }
+
+    /**
+     * Retourne les pixels du relief de clef donnée, en mémoire ou sur disque
+     * @param key Clef du relief
+     * @param width Largeur du relief
+     * @param height Hauteur du relief
+     * @return Pixels du relief (0xRRGGBB), ligne par ligne, à ne pas modifier, ou null s'il n'est pas dans le cache
+     */
+    int[] get(String key, int width, int height) {
+        int[] pixels = this.memory.get(key);
+        if (pixels != null && pixels.length == width * height)
+            return pixels;
+
+        if (this.directory == null)
+            return null;
+
+        pixels = read(new File(this.directory, key + EXTENSION), width, height);
+        if (pixels != null)
+            this.memory.put(key, pixels);
+
+        return pixels;
+    }
+
+    /**
+     * Ajoute un relief au cache, en mémoire et sur disque
+     * @param key Clef du relief
+     * @param pixels Pixels du relief (0xRRGGBB), ligne par ligne, qui ne doivent plus être modifiés
+     * @param width Largeur du relief
+     * @param height Hauteur du relief
+     */
+    void put(String key, int[] pixels, int width, int height) {
+        this.memory.put(key, pixels);
+
+        if (this.directory != null) {
+            try {
+                write(new File(this.directory, key + EXTENSION), pixels, width, height);
+            } catch (IOException e) {
+                /* Le relief n'est simplement pas conservé sur disque (disque
+                 * plein, répertoire protégé...), le fichier temporaire ayant
+                 * été supprimé */
+            }
+        }
+    }
+
+    /**
+     * Écrit un relief dans le fichier donné, en passant par un fichier
+     * temporaire afin qu'un autre dessinateur ne lise jamais de relief
+     * incomplet
+     */
+    private static void write(File file, int[] pixels, int width, int height) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory())
+            throw new IOException("Impossible de créer le répertoire " + directory);
+
+        File temporary = File.createTempFile(file.getName(), ".tmp", directory);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temporary), 1 << 16))) {
+                out.write(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(width);
+                out.writeInt(height);
+
+                Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                try {
+                    DeflaterOutputStream compressed = new DeflaterOutputStream(out, deflater, 1 << 16);
+                    byte[] row = new byte[3 * width];
+
+                    for (int y = 0; y < height; y++) {
+                        for (int x = 0, i = 0; x < width; x++) {
+                            int p = pixels[y * width + x];
+                            row[i++] = (byte) (p >>> 16);
+                            row[i++] = (byte) (p >>> 8);
+                            row[i++] = (byte) p;
+                        }
+                        compressed.write(row);
+                    }
+
+                    compressed.finish();
+                } finally {
+                    deflater.end();
+                }
+            }
+
+            Files.move(temporary.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+    }
+
+    /**
+     * Lit le relief du fichier donné
+     * @return Pixels du relief, ou null si le fichier n'existe pas, n'a pas la taille attendue ou est corrompu
+     */
+    private static int[] read(File file, int width, int height) {
+        if (!file.isFile())
+            return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file), 1 << 16))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.readInt() != VERSION
+                    || in.readInt() != width || in.readInt() != height)
+                return null;
+
+            try (DataInputStream compressed = new DataInputStream(new InflaterInputStream(in))) {
+                int[] pixels = new int[width * height];
+                byte[] row = new byte[3 * width];
+
+                for (int y = 0; y < height; y++) {
+                    compressed.readFully(row);
+                    for (int x = 0, i = 0; x < width; x++, i += 3)
+                        pixels[y * width + x] = ((row[i] & 0xFF) << 16) | ((row[i + 1] & 0xFF) << 8) | (row[i + 2] & 0xFF);
+                }
+
+                /* Le flot compressé doit se terminer là, somme de contrôle
+                 * comprise, sans quoi le fichier est tronqué ou corrompu */
+                if (compressed.read() != -1)
+                    return null;
+
+                return pixels;
+            }
+        } catch (IOException e) {
+            /* Fichier tronqué ou corrompu : le relief sera recalculé */
+            return null;
+        }
+    }
+}
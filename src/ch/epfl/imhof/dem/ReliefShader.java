@@ -1,64 +1,109 @@
 package ch.epfl.imhof.dem;
 
-import java.util.function.Function;
+import java.util.concurrent.ForkJoinPool;
 
-import java.awt.Color;
-import java.awt.image.Kernel;
-import java.awt.image.ConvolveOp;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 
+import ch.epfl.imhof.PointGeo;
 import ch.epfl.imhof.Vector3;
 import ch.epfl.imhof.geometry.Point;
 import ch.epfl.imhof.projection.Projection;
 
 /**
  * Permet de dessiner un relief ombré coloré
+ *
+ * Un dessinateur utilisant plusieurs threads possède son propre pool, qui doit
+ * être libéré par close() une fois le dessinateur devenu inutile.
  * @author Thierry Treyer (235116)
  * @author Dominique Roduit (234868)
  *
  */
-public final class ReliefShader {
+public final class ReliefShader implements AutoCloseable {
+    /** Nombre de lignes du relief brut ombrées par une même tâche */
+    private static final int BAND_HEIGHT = 32;
+
     private final Projection projection;
     private final DigitalElevationModel data;
     private final Vector3 lightDirection;
+    private final ForkJoinPool pool;
+    private final GaussianBlur.Mode blurMode;
+    private final GaussianBlur blur;
+    private final ReliefCache cache;
 
     /**
-     * Construit une instance d'un relief ombré
+     * Construit une instance d'un relief ombré, dessiné séquentiellement
      * @param projection Projection à utiliser
      * @param data Modèle numérique du terrain
      * @param lightDirection Vecteur pointant dans la direction de la source lumineuse
      */
     public ReliefShader (Projection projection, DigitalElevationModel data, Vector3 lightDirection) {
-        this.projection = projection;
-        this.data = data;
-        this.lightDirection = lightDirection.normalized();
+        this(projection, data, lightDirection, 1);
     }
 
     /**
-     * Permet de calculer le noyau du flou gaussien étant donné son rayon
-     * @param radius Rayon du flou gaussien
-     * @return Données du noyau
+     * Construit une instance d'un relief ombré, dont le relief brut est
+     * dessiné par bandes de lignes sur un pool de la taille donnée.
+     * Le résultat est identique à celui du dessin séquentiel.
+     * @param projection Projection à utiliser
+     * @param data Modèle numérique du terrain, qui doit supporter les accès concurrents
+     * @param lightDirection Vecteur pointant dans la direction de la source lumineuse
+     * @param parallelism Nombre de threads à utiliser (1 pour un dessin séquentiel)
+     * @throws IllegalArgumentException Si le nombre de threads est inférieur à 1
      */
-    private float[] buildKernelData (float radius) {
-        int o = (int)Math.ceil(radius);
-        int n = 2 * o + 1;
-
-        float s = radius / 3;
-        float ds = 2 * s * s;
+    public ReliefShader (Projection projection, DigitalElevationModel data, Vector3 lightDirection, int parallelism) {
+        this(projection, data, lightDirection, parallelism, GaussianBlur.Mode.AUTO);
+    }
 
-        float sum = 0f;
-        float[] data = new float[n];
-        for (int p = 0; p < n; p++) {
-            int d = o - p;
+    /**
+     * Construit une instance d'un relief ombré utilisant le nombre de threads
+     * et la méthode de floutage donnés.
+     * @param projection Projection à utiliser
+     * @param data Modèle numérique du terrain, qui doit supporter les accès concurrents
+     * @param lightDirection Vecteur pointant dans la direction de la source lumineuse
+     * @param parallelism Nombre de threads à utiliser (1 pour un dessin séquentiel)
+     * @param blurMode Méthode de calcul du flou gaussien
+     * @throws IllegalArgumentException Si le nombre de threads est inférieur à 1
+     */
+    public ReliefShader (Projection projection, DigitalElevationModel data, Vector3 lightDirection, int parallelism, GaussianBlur.Mode blurMode) {
+        this(projection, data, lightDirection, parallelism, blurMode, null);
+    }
 
-            data[p] = (float)Math.exp(- d * d / ds);
-            sum += data[p];
-        }
+    /**
+     * Construit une instance d'un relief ombré utilisant le nombre de threads
+     * et la méthode de floutage donnés, qui cherche les reliefs dans le cache
+     * donné avant de les calculer.
+     * Les reliefs ne sont pas mis en cache si le modèle du terrain n'a pas
+     * d'identité.
+     * @param projection Projection à utiliser
+     * @param data Modèle numérique du terrain, qui doit supporter les accès concurrents
+     * @param lightDirection Vecteur pointant dans la direction de la source lumineuse
+     * @param parallelism Nombre de threads à utiliser (1 pour un dessin séquentiel)
+     * @param blurMode Méthode de calcul du flou gaussien
+     * @param cache Cache des reliefs, éventuellement partagé avec d'autres instances, ou null
+     * @throws IllegalArgumentException Si le nombre de threads est inférieur à 1
+     */
+    public ReliefShader (Projection projection, DigitalElevationModel data, Vector3 lightDirection, int parallelism, GaussianBlur.Mode blurMode, ReliefCache cache) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Le nombre de threads doit être positif");
 
-        for (int p = 0; p < n; p++)
-            data[p] /= sum;
+        this.projection = projection;
+        this.data = data;
+        this.lightDirection = lightDirection.normalized();
+        this.pool = (parallelism > 1) ? new ForkJoinPool(parallelism) : null;
+        this.blurMode = blurMode;
+        this.blur = new GaussianBlur(blurMode, this.pool);
+        this.cache = (data.identity() != null) ? cache : null;
+    }
 
-        return data;
+    /**
+     * Arrête le pool de threads du dessinateur, s'il en a un. Le dessinateur
+     * ne doit plus être utilisé ensuite.
+     */
+    @Override
+    public void close () {
+        if (this.pool != null)
+            this.pool.shutdown();
     }
 
     /**
@@ -74,26 +119,137 @@ public final class ReliefShader {
         int rawWidth = width + 2 * blurOffset;
         int rawHeight = height + 2 * blurOffset;
         BufferedImage relief = new BufferedImage(rawWidth, rawHeight, BufferedImage.TYPE_INT_RGB);
+        double[] transform = rawTransform(bottomLeft, topRight, width, height, blurOffset);
+
+        /* On écrit directement dans le tampon de l'image, ligne par ligne */
+        int[] pixels = ((DataBufferInt) relief.getRaster().getDataBuffer()).getData();
+
+        ParallelRows.forEachBand(this.pool, rawHeight, BAND_HEIGHT,
+            (from, to) -> this.shadeRows(transform, pixels, rawWidth, from, to));
 
+        return relief;
+    }
+
+    /**
+     * Retourne les coefficients du changement de repère du relief brut, marge
+     * de floutage comprise, vers le plan
+     * @return Coefficients { ax, bx, ay, by }
+     */
+    private static double[] rawTransform (Point bottomLeft, Point topRight, int width, int height, int blurOffset) {
         Point canvasBottomLeft = new Point(blurOffset, height + blurOffset);
         Point canvasTopRight   = new Point(width + blurOffset, blurOffset);
-        Function<Point, Point> transform = Point.alignedCoordinateChange(canvasBottomLeft, bottomLeft, canvasTopRight, topRight);
 
+        return Point.alignedCoordinateChangeCoefficients(canvasBottomLeft, bottomLeft, canvasTopRight, topRight);
+    }
+
+    /**
+     * Indique si le modèle du terrain couvre tous les points dont dépend le
+     * relief de la zone donnée, marge de floutage comprise. Les points
+     * extrêmes étant sur le bord du relief brut, seul celui-ci est projeté.
+     * @param bottomLeft Coin bas-gauche du relief en coordonnées du plan
+     * @param topRight Coin haut-droit du relief en coordonnées du plan
+     * @param width Largeur de l'image (px)
+     * @param height Hauteur de l'image (px)
+     * @param gaussRadius Rayon de floutage
+     * @return true si shadedRelief peut dessiner le relief de cette zone
+     */
+    public boolean covers (Point bottomLeft, Point topRight, int width, int height, float gaussRadius) {
+        int blurOffset = (int)Math.ceil(gaussRadius);
+        int rawWidth = width + 2 * blurOffset;
+        int rawHeight = height + 2 * blurOffset;
+        double[] transform = rawTransform(bottomLeft, topRight, width, height, blurOffset);
+
+        /* Pixels du bord : lignes du haut et du bas, puis colonnes de gauche
+         * et de droite */
+        int count = 2 * (rawWidth + rawHeight);
+        double[] xs = new double[count], ys = new double[count];
+        int i = 0;
         for (int x = 0; x < rawWidth; x++) {
-            for (int y = 0; y < rawHeight; y++) {
-                Point p = transform.apply(new Point(x, y));
-                Vector3 n = this.data.normalAt( this.projection.inverse(p) );
-                double ca = this.lightDirection.scalarProduct(n);
+            xs[i] = x; ys[i++] = 0;
+            xs[i] = x; ys[i++] = rawHeight - 1;
+        }
+        for (int y = 0; y < rawHeight; y++) {
+            xs[i] = 0;            ys[i++] = y;
+            xs[i] = rawWidth - 1; ys[i++] = y;
+        }
+        for (int j = 0; j < count; j++) {
+            xs[j] = transform[0] * xs[j] + transform[1];
+            ys[j] = transform[2] * ys[j] + transform[3];
+        }
 
-                float r = (float)(0.5d * (ca + 1d));
-                float g = (float)(0.5d * (ca + 1d));
-                float b = (float)(0.5d * (0.7d * ca + 1d));
+        double[] longitudes = new double[count], latitudes = new double[count];
+        this.projection.inverse(xs, ys, longitudes, latitudes, count);
+
+        double west = Double.POSITIVE_INFINITY, east = Double.NEGATIVE_INFINITY;
+        double south = Double.POSITIVE_INFINITY, north = Double.NEGATIVE_INFINITY;
+        for (int j = 0; j < count; j++) {
+            west = Math.min(west, longitudes[j]);
+            east = Math.max(east, longitudes[j]);
+            south = Math.min(south, latitudes[j]);
+            north = Math.max(north, latitudes[j]);
+        }
+
+        /* Une zone débordant du monde n'est couverte par aucun modèle */
+        if (!(west >= -Math.PI && east <= Math.PI && south >= -Math.PI / 2 && north <= Math.PI / 2))
+            return false;
+
+        return this.data.covers(new PointGeo(west, south), new PointGeo(east, north));
+    }
 
-                relief.setRGB(x, y, new Color(r, g, b).getRGB());
+    /**
+     * Ombre les lignes [from; to[ du relief brut. Chaque ligne est traitée
+     * d'un bloc, au moyen de la projection inverse ligne par ligne et de la
+     * version par tableaux du calcul des normales, sans allouer d'objet par
+     * pixel.
+     * @param transform Coefficients { ax, bx, ay, by } du changement de repère de l'image vers le plan
+     * @param pixels Pixels du relief brut, ligne par ligne
+     * @param rawWidth Largeur du relief brut
+     * @param from Première ligne à ombrer
+     * @param to Ligne suivant la dernière ligne à ombrer
+     */
+    private void shadeRows (double[] transform, int[] pixels, int rawWidth, int from, int to) {
+        double ax = transform[0], bx = transform[1], ay = transform[2], by = transform[3];
+        double lx = this.lightDirection.x(), ly = this.lightDirection.y(), lz = this.lightDirection.z();
+
+        /* Les abscisses dans le plan sont les mêmes pour toutes les lignes, la
+         * projection inverse peut donc en précalculer les termes */
+        double[] xs = new double[rawWidth];
+        for (int x = 0; x < rawWidth; x++)
+            xs[x] = ax * x + bx;
+        Projection.RowInverse rows = this.projection.rowInverse(xs, rawWidth);
+
+        double[] longitudes = new double[rawWidth];
+        double[] latitudes = new double[rawWidth];
+        float[] normals = new float[3 * rawWidth];
+
+        for (int y = from; y < to; y++) {
+            int offset = y * rawWidth;
+
+            rows.inverseRow(ay * y + by, longitudes, latitudes);
+            this.data.normalsAt(longitudes, latitudes, normals, rawWidth);
+
+            for (int x = 0; x < rawWidth; x++) {
+                double ca = lx * normals[3 * x] + ly * normals[3 * x + 1] + lz * normals[3 * x + 2];
+                pixels[offset + x] = shade(ca);
             }
         }
+    }
 
-        return relief;
+    /**
+     * Retourne la couleur RGB empaquetée d'un pixel du relief étant donné le
+     * cosinus de l'angle entre la normale et la direction de la lumière.
+     * Les arrondis sont ceux de java.awt.Color(float, float, float).
+     * @param ca Cosinus de l'angle d'incidence de la lumière
+     * @return Couleur du pixel, sans composante alpha
+     */
+    private static int shade (double ca) {
+        float rg = (float)(0.5d * (ca + 1d));
+        float b = (float)(0.5d * (0.7d * ca + 1d));
+
+        int rgi = (int)(rg * 255 + 0.5);
+        int bi = (int)(b * 255 + 0.5);
+
+        return (rgi << 16) | (rgi << 8) | bi;
     }
 
     /**
@@ -107,20 +263,61 @@ public final class ReliefShader {
      * @return Image du relief flouté
      */
     public BufferedImage shadedRelief (Point bottomLeft, Point topRight, int width, int height, float gaussRadius) {
+        if (this.cache == null)
+            return this.computeRelief(bottomLeft, topRight, width, height, gaussRadius);
+
+        String key = ReliefCache.key(this.description(bottomLeft, topRight, width, height, gaussRadius));
+        BufferedImage relief = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) relief.getRaster().getDataBuffer()).getData();
+
+        /* Le relief retourné est une copie, que l'appelant peut modifier
+         * sans altérer le cache */
+        int[] cached = this.cache.get(key, width, height);
+        if (cached != null) {
+            System.arraycopy(cached, 0, pixels, 0, pixels.length);
+        } else {
+            this.computeRelief(bottomLeft, topRight, width, height, gaussRadius)
+                .getRaster().getDataElements(0, 0, width, height, pixels);
+
+            this.cache.put(key, pixels.clone(), width, height);
+        }
+
+        return relief;
+    }
+
+    /**
+     * Décrit tout ce dont dépend le relief de la zone donnée, afin d'en
+     * calculer la clef dans le cache
+     * @return Description du relief
+     */
+    private String description (Point bottomLeft, Point topRight, int width, int height, float gaussRadius) {
+        return String.join("|",
+            "relief",
+            this.data.identity(),
+            this.projection.getClass().getName(),
+            Double.toString(bottomLeft.x()), Double.toString(bottomLeft.y()),
+            Double.toString(topRight.x()), Double.toString(topRight.y()),
+            Integer.toString(width), Integer.toString(height),
+            Float.toString(gaussRadius), this.blurMode.name(),
+            Double.toString(this.lightDirection.x()), Double.toString(this.lightDirection.y()),
+            Double.toString(this.lightDirection.z()));
+    }
+
+    /**
+     * Dessine le relief et applique le floutage demandé, sans passer par le
+     * cache.
+     */
+    private BufferedImage computeRelief (Point bottomLeft, Point topRight, int width, int height, float gaussRadius) {
         int pixelRadius = (int)Math.ceil(gaussRadius);
 
         BufferedImage rawRelief = this.drawRawRelief(bottomLeft, topRight, width, height, pixelRadius);
         BufferedImage finalRelief = rawRelief;
 
         if (gaussRadius > 0) {
-            int n = 2 * pixelRadius + 1;
-            float[] kernelData = this.buildKernelData(gaussRadius);
-
-            ConvolveOp horizontalBlur = new ConvolveOp(new Kernel(n, 1, kernelData), ConvolveOp.EDGE_NO_OP, null);
-            ConvolveOp verticalBlur = new ConvolveOp(new Kernel(1, n, kernelData), ConvolveOp.EDGE_NO_OP, null);
+            int[] pixels = ((DataBufferInt) rawRelief.getRaster().getDataBuffer()).getData();
 
-            rawRelief = horizontalBlur.filter(rawRelief, null);
-            rawRelief = verticalBlur.filter(rawRelief, null);
+            /* Le flou est appliqué en place, seule la marge est retirée ensuite */
+            this.blur.blur(pixels, rawRelief.getWidth(), rawRelief.getHeight(), gaussRadius);
             finalRelief = rawRelief.getSubimage(pixelRadius, pixelRadius, width, height);
         }
 
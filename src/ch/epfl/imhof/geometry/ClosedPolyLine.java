@@ -1,5 +1,6 @@
 package ch.epfl.imhof.geometry;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -10,6 +11,13 @@ import java.util.List;
  * @author Dominique Roduit (234868)
  */
 public final class ClosedPolyLine extends PolyLine {
+    /* Nombre de sommets à partir duquel un index des arêtes est construit
+     * pour accélérer les tests d'appartenance */
+    private static final int EDGE_INDEX_THRESHOLD = 64;
+
+    private final double area;
+    private volatile EdgeIndex edgeIndex;
+
     /**
      * Construit une polyligne fermée ayant les sommets donnés
      * 
@@ -18,6 +26,22 @@ public final class ClosedPolyLine extends PolyLine {
      */
     public ClosedPolyLine(List<Point> points) {
         super(points);
+        this.area = this.computeArea();
+    }
+
+    /**
+     * Construit une polyligne fermée ayant les sommets de coordonnées données
+     *
+     * @param coordinates
+     *            Coordonnées des sommets, dans l'ordre x0, y0, x1, y1, ...
+     */
+    public ClosedPolyLine(double[] coordinates) {
+        this(coordinates, true);
+    }
+
+    ClosedPolyLine(double[] coordinates, boolean copy) {
+        super((copy && coordinates != null) ? coordinates.clone() : coordinates);
+        this.area = this.computeArea();
     }
 
     public boolean isClosed() {
@@ -34,42 +58,46 @@ public final class ClosedPolyLine extends PolyLine {
      * @return L'index normalisé dans l'interval [0;points.size()[
      */
     private int generalizeIndex(int index) {
-        return Math.floorMod(index, this.points().size());
+        return Math.floorMod(index, this.pointCount());
     }
 
     /**
      * Détermine si le point p se trouve à gauche de la droite formée par les
-     * points l1 et l2.
+     * sommets l1 et l2.
      *
      * @param l1
-     *            Le premier point de la droite
+     *            Index du premier sommet de la droite
      * @param l2
-     *            Le second point de la droite
+     *            Index du second sommet de la droite
      * @param p
      *            Le point que l'on veut situer par rapport à la droite
      *
      * @return True, si le point p est à gauche de la droite
      */
-    private boolean isLeftFromLine(Point l1, Point l2, Point p) {
-        double px1 = l1.x() - p.x(), py1 = l1.y() - p.y();
-        double px2 = l2.x() - p.x(), py2 = l2.y() - p.y();
+    private boolean isLeftFromLine(int l1, int l2, Point p) {
+        double px1 = this.x(l1) - p.x(), py1 = this.y(l1) - p.y();
+        double px2 = this.x(l2) - p.x(), py2 = this.y(l2) - p.y();
 
         return (px1 * py2 > px2 * py1);
     }
 
     /**
-     * Calcul l'aire de la surface couverte par la PolyLine fermée.
+     * Calcul l'aire de la surface couverte par la PolyLine fermée. Elle est
+     * calculée une seule fois, à la construction.
      *
      * @return L'aire de la PolyLine fermée
      */
     public double area() {
+        return this.area;
+    }
+
+    private double computeArea() {
         double area = 0.0;
-        List<Point> ps = this.points();
 
-        for (int i = 0, l = ps.size(); i < l; i++) {
-            double xi = ps.get(i).x();
-            double yip = ps.get(generalizeIndex(i + 1)).y();
-            double yim = ps.get(generalizeIndex(i - 1)).y();
+        for (int i = 0, l = this.pointCount(); i < l; i++) {
+            double xi = this.x(i);
+            double yip = this.y(generalizeIndex(i + 1));
+            double yim = this.y(generalizeIndex(i - 1));
 
             area += xi * (yip - yim);
         }
@@ -80,28 +108,150 @@ public final class ClosedPolyLine extends PolyLine {
     /**
      * Détermine si le point p est contenu dans la forme de la PolyLine.
      *
+     * Les points hors de la boîte englobante sont rejetés immédiatement. Pour
+     * les polylignes d'au moins 64 sommets, un index des arêtes par bandes
+     * horizontales est construit lors du premier appel, de sorte que seules
+     * les arêtes à la hauteur du point sont examinées.
+     *
      * @param p
      *            Le point que l'on veux situer
      *
      * @return True, si le point p est contenu dans la PolyLine
      */
     public boolean containsPoint(Point p) {
-        int index = 0;
-        List<Point> ps = this.points();
-
-        for (int i = 0, l = ps.size(); i < l; i++) {
-            Point p1 = ps.get(i);
-            Point p2 = ps.get(generalizeIndex(i + 1));
-
-            if (p1.y() <= p.y()) {
-                if (p2.y() > p.y() && isLeftFromLine(p1, p2, p))
-                    index += 1;
-            } else {
-                if (p2.y() <= p.y() && isLeftFromLine(p2, p1, p))
-                    index -= 1;
+        Rectangle bounds = this.bounds();
+        if (p.x() < bounds.minX() || p.x() > bounds.maxX()
+                || p.y() < bounds.minY() || p.y() > bounds.maxY())
+            return false;
+
+        int count = this.pointCount();
+        if (count < EDGE_INDEX_THRESHOLD) {
+            int index = 0;
+            for (int i = 0; i < count; i++)
+                index += this.crossing(i, p);
+
+            return (index != 0);
+        }
+
+        EdgeIndex edgeIndex = this.edgeIndex;
+        if (edgeIndex == null)
+            this.edgeIndex = edgeIndex = new EdgeIndex();
+
+        return edgeIndex.windingNumber(p) != 0;
+    }
+
+    /**
+     * Retourne la contribution de l'arête partant du sommet d'index donné au
+     * nombre d'enroulements autour du point p
+     *
+     * @param i
+     *            Index du premier sommet de l'arête
+     * @param p
+     *            Le point que l'on veut situer
+     * @return 1 si l'arête monte à droite du point, -1 si elle descend à
+     *         droite du point, 0 sinon
+     */
+    private int crossing(int i, Point p) {
+        int i2 = (i + 1 == this.pointCount()) ? 0 : i + 1;
+
+        if (this.y(i) <= p.y()) {
+            if (this.y(i2) > p.y() && isLeftFromLine(i, i2, p))
+                return 1;
+        } else {
+            if (this.y(i2) <= p.y() && isLeftFromLine(i2, i, p))
+                return -1;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Index des arêtes non horizontales par bandes horizontales de même
+     * hauteur couvrant la boîte englobante. Chaque arête figure dans toutes
+     * les bandes que son intervalle d'ordonnées touche ; le nombre de bandes
+     * est limité à la racine du nombre de sommets, de sorte que l'index
+     * occupe au plus O(n √n) entrées, même pour des anneaux en peigne.
+     */
+    private final class EdgeIndex {
+        private final double minY;
+        private final double scale;
+        private final int bandCount;
+        /* Arêtes de la bande b : edges[bandStarts[b]] à edges[bandStarts[b + 1] - 1] */
+        private final int[] bandStarts;
+        private final int[] edges;
+
+        private EdgeIndex() {
+            int count = ClosedPolyLine.this.pointCount();
+            Rectangle bounds = ClosedPolyLine.this.bounds();
+
+            this.minY = bounds.minY();
+            this.bandCount = (int)Math.ceil(Math.sqrt(count));
+            this.scale = (bounds.maxY() > bounds.minY())
+                ? this.bandCount / (bounds.maxY() - bounds.minY())
+                : 0;
+
+            /* Comptage puis remplissage des bandes */
+            this.bandStarts = new int[this.bandCount + 1];
+            for (int i = 0; i < count; i++) {
+                if (this.isHorizontal(i))
+                    continue;
+                for (int b = this.lowBand(i), h = this.highBand(i); b <= h; b++)
+                    this.bandStarts[b + 1] += 1;
             }
+            for (int b = 0; b < this.bandCount; b++)
+                this.bandStarts[b + 1] += this.bandStarts[b];
+
+            this.edges = new int[this.bandStarts[this.bandCount]];
+            int[] next = Arrays.copyOf(this.bandStarts, this.bandCount);
+            for (int i = 0; i < count; i++) {
+                if (this.isHorizontal(i))
+                    continue;
+                for (int b = this.lowBand(i), h = this.highBand(i); b <= h; b++)
+                    this.edges[next[b]++] = i;
+            }
+        }
+
+        private int band(double y) {
+            int b = (int)((y - this.minY) * this.scale);
+            return Math.max(0, Math.min(this.bandCount - 1, b));
+        }
+
+        private int next(int i) {
+            return (i + 1 == ClosedPolyLine.this.pointCount()) ? 0 : i + 1;
+        }
+
+        /**
+         * Indique si l'arête partant du sommet d'index donné est horizontale,
+         * auquel cas elle ne contribue jamais au nombre d'enroulements
+         */
+        private boolean isHorizontal(int i) {
+            return ClosedPolyLine.this.y(i) == ClosedPolyLine.this.y(this.next(i));
+        }
+
+        /**
+         * Retourne la plus basse bande touchée par l'arête partant du sommet
+         * d'index donné
+         */
+        private int lowBand(int i) {
+            return this.band(Math.min(ClosedPolyLine.this.y(i), ClosedPolyLine.this.y(this.next(i))));
+        }
+
+        /**
+         * Retourne la plus haute bande touchée par l'arête partant du sommet
+         * d'index donné
+         */
+        private int highBand(int i) {
+            return this.band(Math.max(ClosedPolyLine.this.y(i), ClosedPolyLine.this.y(this.next(i))));
         }
 
-        return (index != 0);
+        private int windingNumber(Point p) {
+            int b = this.band(p.y());
+            int index = 0;
+
+            for (int e = this.bandStarts[b]; e < this.bandStarts[b + 1]; e++)
+                index += ClosedPolyLine.this.crossing(this.edges[e], p);
+
+            return index;
+        }
     }
 }
@@ -0,0 +1,233 @@
+package ch.epfl.imhof.geometry;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index spatial statique (R-tree compact) sur une liste de rectangles.
+ *
+ * Les rectangles sont triés selon la position de leur centre sur une courbe
+ * de Hilbert, puis regroupés par paquets consécutifs pour former les nœuds
+ * de chaque niveau. Tous les nœuds sont stockés dans des tableaux plats, les
+ * feuilles en premier et la racine en dernier.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ */
+public final class HilbertRTree {
+    private static final int NODE_CAPACITY = 16;
+    private static final int HILBERT_SIDE = 1 << 16;
+
+    private final int size;
+
+    /* Bornes de chaque nœud : minX, minY, maxX, maxY */
+    private final double[] boxes;
+    /* Pour une feuille, index du rectangle dans la liste d'origine ; pour un
+     * nœud interne, position de son premier enfant */
+    private final int[] entries;
+    /* Position du premier nœud de chaque niveau, suivie du nombre total de
+     * nœuds */
+    private final int[] levels;
+
+    /**
+     * Construit l'index des rectangles donnés
+     *
+     * @param rectangles
+     *            Rectangles à indexer
+     */
+    public HilbertRTree(List<Rectangle> rectangles) {
+        this.size = rectangles.size();
+
+        /* Nombre de nœuds de chaque niveau */
+        int[] counts = new int[32];
+        int levelCount = 0;
+        int total = 0;
+        int n = this.size;
+        do {
+            counts[levelCount++] = n;
+            total += n;
+            n = (n + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        } while (counts[levelCount - 1] > 1);
+
+        this.levels = new int[levelCount + 1];
+        for (int l = 0; l < levelCount; l++)
+            this.levels[l + 1] = this.levels[l] + counts[l];
+
+        this.boxes = new double[4 * total];
+        this.entries = new int[total];
+
+        if (this.size == 0)
+            return;
+
+        this.fillLeaves(rectangles);
+
+        for (int l = 1; l < levelCount; l++) {
+            int childStart = this.levels[l - 1], childEnd = this.levels[l];
+
+            for (int node = this.levels[l], child = childStart; child < childEnd; node++) {
+                int end = Math.min(child + NODE_CAPACITY, childEnd);
+                this.entries[node] = child;
+
+                double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+                double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+                for (; child < end; child++) {
+                    minX = Math.min(minX, this.boxes[4 * child]);
+                    minY = Math.min(minY, this.boxes[4 * child + 1]);
+                    maxX = Math.max(maxX, this.boxes[4 * child + 2]);
+                    maxY = Math.max(maxY, this.boxes[4 * child + 3]);
+                }
+
+                this.setBox(node, minX, minY, maxX, maxY);
+            }
+        }
+    }
+
+    /**
+     * Trie les rectangles selon la courbe de Hilbert et en fait les feuilles
+     * de l'arbre
+     *
+     * @param rectangles
+     *            Rectangles à indexer
+     */
+    private void fillLeaves(List<Rectangle> rectangles) {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (Rectangle r : rectangles) {
+            minX = Math.min(minX, r.minX());
+            minY = Math.min(minY, r.minY());
+            maxX = Math.max(maxX, r.maxX());
+            maxY = Math.max(maxY, r.maxY());
+        }
+
+        double scaleX = (maxX > minX) ? (HILBERT_SIDE - 1) / (maxX - minX) : 0;
+        double scaleY = (maxY > minY) ? (HILBERT_SIDE - 1) / (maxY - minY) : 0;
+
+        /* Position sur la courbe dans les bits de poids fort, index d'origine
+         * dans ceux de poids faible */
+        long[] keys = new long[this.size];
+        for (int i = 0; i < this.size; i++) {
+            Rectangle r = rectangles.get(i);
+            int x = (int)((0.5 * (r.minX() + r.maxX()) - minX) * scaleX);
+            int y = (int)((0.5 * (r.minY() + r.maxY()) - minY) * scaleY);
+
+            keys[i] = (hilbert(x, y) << 31) | i;
+        }
+        Arrays.sort(keys);
+
+        for (int leaf = 0; leaf < this.size; leaf++) {
+            int index = (int)(keys[leaf] & Integer.MAX_VALUE);
+            Rectangle r = rectangles.get(index);
+
+            this.entries[leaf] = index;
+            this.setBox(leaf, r.minX(), r.minY(), r.maxX(), r.maxY());
+        }
+    }
+
+    private void setBox(int node, double minX, double minY, double maxX, double maxY) {
+        this.boxes[4 * node] = minX;
+        this.boxes[4 * node + 1] = minY;
+        this.boxes[4 * node + 2] = maxX;
+        this.boxes[4 * node + 3] = maxY;
+    }
+
+    /**
+     * Retourne le nombre de rectangles indexés
+     *
+     * @return Nombre de rectangles
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Retourne les index, dans la liste d'origine, des rectangles ayant au
+     * moins un point commun avec la zone donnée
+     *
+     * @param area
+     *            Zone recherchée
+     * @return Index des rectangles trouvés, dans l'ordre croissant
+     */
+    public int[] search(Rectangle area) {
+        if (this.size == 0)
+            return new int[0];
+
+        int[] found = new int[16];
+        int foundCount = 0;
+
+        /* Pile des nœuds à visiter et de leur niveau */
+        int[] stack = new int[16];
+        int top = 0;
+
+        int root = this.levels.length - 2;
+        stack[top++] = this.levels[root];
+        stack[top++] = root;
+
+        while (top > 0) {
+            int level = stack[--top];
+            int node = stack[--top];
+
+            if (!this.intersects(node, area))
+                continue;
+
+            if (level == 0) {
+                if (foundCount == found.length)
+                    found = Arrays.copyOf(found, 2 * foundCount);
+                found[foundCount++] = this.entries[node];
+            } else {
+                int end = Math.min(this.entries[node] + NODE_CAPACITY, this.levels[level]);
+                for (int child = this.entries[node]; child < end; child++) {
+                    if (top + 2 > stack.length)
+                        stack = Arrays.copyOf(stack, 2 * stack.length);
+                    stack[top++] = child;
+                    stack[top++] = level - 1;
+                }
+            }
+        }
+
+        int[] result = Arrays.copyOf(found, foundCount);
+        Arrays.sort(result);
+
+        return result;
+    }
+
+    private boolean intersects(int node, Rectangle area) {
+        return this.boxes[4 * node] <= area.maxX()
+            && this.boxes[4 * node + 1] <= area.maxY()
+            && area.minX() <= this.boxes[4 * node + 2]
+            && area.minY() <= this.boxes[4 * node + 3];
+    }
+
+    /**
+     * Calcule la position d'un point sur la courbe de Hilbert couvrant une
+     * grille de 2^16 x 2^16 cases
+     *
+     * @param x
+     *            Colonne du point
+     * @param y
+     *            Ligne du point
+     * @return Position du point sur la courbe
+     */
+    static long hilbert(int x, int y) {
+        long d = 0;
+
+        for (int s = HILBERT_SIDE / 2; s > 0; s /= 2) {
+            int rx = (x & s) != 0 ? 1 : 0;
+            int ry = (y & s) != 0 ? 1 : 0;
+            d += (long)s * s * ((3 * rx) ^ ry);
+
+            /* Rotation du quadrant */
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = HILBERT_SIDE - 1 - x;
+                    y = HILBERT_SIDE - 1 - y;
+                }
+
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+
+        return d;
+    }
+}
@@ -20,6 +20,20 @@ public final class OpenPolyLine extends PolyLine {
         super(points);
     }
 
+    /**
+     * Construit une polyligne ouverte de sommets de coordonnées données
+     *
+     * @param coordinates
+     *            Coordonnées des sommets, dans l'ordre x0, y0, x1, y1, ...
+     */
+    public OpenPolyLine(double[] coordinates) {
+        this(coordinates, true);
+    }
+
+    OpenPolyLine(double[] coordinates, boolean copy) {
+        super((copy && coordinates != null) ? coordinates.clone() : coordinates);
+    }
+
     public boolean isClosed() {
         return false;
     }
@@ -53,6 +53,22 @@ public final class Point {
      * @return Changement de repère correspondant
      */
     public static Function<Point, Point> alignedCoordinateChange(Point p1a, Point p1b, Point p2a, Point p2b) {
+        double[] c = alignedCoordinateChangeCoefficients(p1a, p1b, p2a, p2b);
+        double ax = c[0], bx = c[1], ay = c[2], by = c[3];
+
+        return (p) -> new Point(ax*p.x+bx, ay*p.y+by);
+    }
+
+    /**
+     * Retourne les coefficients du changement de repère étant donnés deux paires de points
+     * dans 2 repères différents, pour l'appliquer directement à des coordonnées
+     * @param p1a Point 1 dans le repère a
+     * @param p2a Point 2 dans le repère a
+     * @param p1b Point 1 dans le repère b
+     * @param p2b Point 2 dans le repère b
+     * @return Coefficients { ax, bx, ay, by } tels que x' = ax*x+bx et y' = ay*y+by
+     */
+    public static double[] alignedCoordinateChangeCoefficients(Point p1a, Point p1b, Point p2a, Point p2b) {
         if(p1a.x() == p2a.x() || p1a.y() == p2a.y())
             throw new IllegalArgumentException("Le point 1 et 2 sont alignés. Il est donc impossible de définir un changement de repère");
         
@@ -62,6 +78,6 @@ public final class Point {
         double ay = (p1b.y-p2b.y)/(p1a.y-p2a.y);
         double by = (p1a.y*p2b.y-p2a.y*p1b.y)/(p1a.y-p2a.y);
         
-        return (p) -> new Point(ax*p.x+bx, ay*p.y+by);
+        return new double[] { ax, bx, ay, by };
     }
 }
@@ -1,17 +1,23 @@
 package ch.epfl.imhof.geometry;
 
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.Collections;
+import java.util.RandomAccess;
 
 /**
  * Une polyligne immuable, formée par une liste de points.
  *
+ * Les coordonnées des points sont rangées dans un unique tableau
+ * (x0, y0, x1, y1, ...) ; la liste de points n'en est qu'une vue, dont les
+ * points sont créés à la demande.
+ *
  * @author Thierry Treyer (235116)
  * @author Dominique Roduit (234868)
  */
 public abstract class PolyLine {
+    private final double[] coordinates;
+    private final Rectangle bounds;
     private final List<Point> points;
 
     /**
@@ -23,10 +29,60 @@ public abstract class PolyLine {
      *             Si la liste de points est vide
      */
     public PolyLine(List<Point> points) {
-        if (!areValidPoints(points))
+        this(toCoordinates(points));
+    }
+
+    /**
+     * Construit une PolyLine avec les coordonnées données, sans les copier.
+     *
+     * @param coordinates
+     *            Coordonnées des points, dans l'ordre x0, y0, x1, y1, ...
+     * @throws IllegalArgumentException
+     *             Si le tableau ne contient aucun point ou un nombre impair de
+     *             coordonnées
+     */
+    PolyLine(double[] coordinates) {
+        if (!areValidCoordinates(coordinates))
             throw new IllegalArgumentException("Invalid list of points");
 
-        this.points = Collections.unmodifiableList(new ArrayList<>(points));
+        this.coordinates = coordinates;
+        this.bounds = bounds(coordinates);
+        this.points = new PointList();
+    }
+
+    private static double[] toCoordinates(List<Point> points) {
+        if (points == null)
+            return null;
+
+        double[] coordinates = new double[2 * points.size()];
+        int i = 0;
+        for (Point p : points) {
+            coordinates[i++] = p.x();
+            coordinates[i++] = p.y();
+        }
+
+        return coordinates;
+    }
+
+    /**
+     * Calcule la boîte englobante des coordonnées données
+     *
+     * @param coordinates
+     *            Coordonnées d'au moins un point
+     * @return Plus petit rectangle contenant tous les points
+     */
+    private static Rectangle bounds(double[] coordinates) {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+
+        for (int i = 0; i < coordinates.length; i += 2) {
+            minX = Math.min(minX, coordinates[i]);
+            minY = Math.min(minY, coordinates[i + 1]);
+            maxX = Math.max(maxX, coordinates[i]);
+            maxY = Math.max(maxY, coordinates[i + 1]);
+        }
+
+        return new Rectangle(minX, minY, maxX, maxY);
     }
 
     /**
@@ -38,24 +94,77 @@ public abstract class PolyLine {
         return this.points;
     }
 
+    /**
+     * Retourne le nombre de points de la PolyLine
+     *
+     * @return Nombre de points, au moins 1
+     */
+    public int pointCount() {
+        return this.coordinates.length / 2;
+    }
+
+    /**
+     * Retourne l'abscisse du point d'index donné
+     *
+     * @param index
+     *            Index du point, dans [0;pointCount()[
+     * @return Abscisse du point
+     */
+    public double x(int index) {
+        return this.coordinates[2 * index];
+    }
+
+    /**
+     * Retourne l'ordonnée du point d'index donné
+     *
+     * @param index
+     *            Index du point, dans [0;pointCount()[
+     * @return Ordonnée du point
+     */
+    public double y(int index) {
+        return this.coordinates[2 * index + 1];
+    }
+
+    /**
+     * Copie les coordonnées des points dans le tableau donné, dans l'ordre
+     * x0, y0, x1, y1, ...
+     *
+     * @param destination
+     *            Tableau de destination
+     * @param offset
+     *            Position de la première coordonnée dans le tableau
+     */
+    public void copyCoordinates(double[] destination, int offset) {
+        System.arraycopy(this.coordinates, 0, destination, offset, this.coordinates.length);
+    }
+
     /**
      * Retourne le premier point de la PolyLine
      *
      * @return Le premier point de la PolyLine
      */
     public Point firstPoint() {
-        return this.points.get(0);
+        return new Point(this.coordinates[0], this.coordinates[1]);
+    }
+
+    /**
+     * Retourne la boîte englobante de la PolyLine
+     *
+     * @return Plus petit rectangle contenant tous les points de la PolyLine
+     */
+    public Rectangle bounds() {
+        return this.bounds;
     }
 
     /**
-     * Vérifie que la liste de points passée en paramètre correspond aux
-     * critères nécessaires à une PolyLine. C.a.d. : la liste n'est pas null et
-     * la liste contient au moins un élément.
+     * Vérifie que le tableau de coordonnées passé en paramètre correspond aux
+     * critères nécessaires à une PolyLine. C.a.d. : le tableau n'est pas null
+     * et contient au moins un point, décrit par deux coordonnées.
      *
-     * @return True si la liste correspond aux critères
+     * @return True si le tableau correspond aux critères
      */
-    private boolean areValidPoints(List<Point> points) {
-        return (points != null && points.size() > 0);
+    private static boolean areValidCoordinates(double[] coordinates) {
+        return (coordinates != null && coordinates.length > 0 && coordinates.length % 2 == 0);
     }
 
     /**
@@ -65,6 +174,24 @@ public abstract class PolyLine {
      */
     public abstract boolean isClosed();
 
+    /**
+     * Vue non modifiable des coordonnées sous forme de liste de points
+     */
+    private final class PointList extends AbstractList<Point> implements RandomAccess {
+        @Override
+        public Point get(int index) {
+            if (index < 0 || index >= this.size())
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size());
+
+            return new Point(PolyLine.this.x(index), PolyLine.this.y(index));
+        }
+
+        @Override
+        public int size() {
+            return PolyLine.this.pointCount();
+        }
+    }
+
     /**
      * Sert de bâtisseur aux deux sous-classes de PolyLine et permet de
      * construire une polyligne en plusieurs étapes
@@ -73,8 +200,9 @@ public abstract class PolyLine {
      * @author Dominique Roduit (234868)
      */
     public static class Builder {
-        /** La liste des points de la future PolyLine. */
-        private final List<Point> points = new LinkedList<>();
+        /** Les coordonnées des points de la future PolyLine. */
+        private double[] coordinates = new double[16];
+        private int size = 0;
 
         /**
          * Ajoute un point à la liste des points de la future PolyLine.
@@ -83,7 +211,24 @@ public abstract class PolyLine {
          *            Le point à ajouter à la liste
          */
         public void addPoint(Point p) {
-            this.points.add(p);
+            this.addPoint(p.x(), p.y());
+        }
+
+        /**
+         * Ajoute un point, donné par ses coordonnées, à la liste des points de
+         * la future PolyLine.
+         *
+         * @param x
+         *            Abscisse du point
+         * @param y
+         *            Ordonnée du point
+         */
+        public void addPoint(double x, double y) {
+            if (this.size == this.coordinates.length)
+                this.coordinates = Arrays.copyOf(this.coordinates, 2 * this.size);
+
+            this.coordinates[this.size++] = x;
+            this.coordinates[this.size++] = y;
         }
 
         /**
@@ -92,7 +237,7 @@ public abstract class PolyLine {
          * @return Un objet OpenPolyLine initialisé avec les points ajoutés
          */
         public OpenPolyLine buildOpen() {
-            return new OpenPolyLine(this.points);
+            return new OpenPolyLine(Arrays.copyOf(this.coordinates, this.size), false);
         }
 
         /**
@@ -101,7 +246,7 @@ public abstract class PolyLine {
          * @return Un objet ClosedPolyLine initialisé avec les points ajoutés
          */
         public ClosedPolyLine buildClosed() {
-            return new ClosedPolyLine(this.points);
+            return new ClosedPolyLine(Arrays.copyOf(this.coordinates, this.size), false);
         }
     }
 }
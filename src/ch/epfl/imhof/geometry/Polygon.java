@@ -55,4 +55,13 @@ public final class Polygon {
         return this.holes;
     }
 
+    /**
+     * Retourne la boîte englobante du Polygon, qui est celle de son contour,
+     * les trous étant à l'intérieur de celui-ci.
+     *
+     * @return Boîte englobante du contour
+     */
+    public Rectangle bounds() {
+        return this.shell.bounds();
+    }
 }
@@ -0,0 +1,120 @@
+package ch.epfl.imhof.geometry;
+
+/**
+ * Un rectangle immuable aux côtés parallèles aux axes, utilisé comme boîte
+ * englobante des formes géométriques.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ */
+public final class Rectangle {
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+
+    /**
+     * Construit un rectangle à partir de ses bornes
+     *
+     * @param minX
+     *            Abscisse minimale
+     * @param minY
+     *            Ordonnée minimale
+     * @param maxX
+     *            Abscisse maximale
+     * @param maxY
+     *            Ordonnée maximale
+     * @throws IllegalArgumentException
+     *             Si une borne minimale est supérieure à la borne maximale
+     *             correspondante
+     */
+    public Rectangle(double minX, double minY, double maxX, double maxY) {
+        if (!(minX <= maxX && minY <= maxY))
+            throw new IllegalArgumentException("Les bornes du rectangle sont inversées");
+
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    /**
+     * Construit le plus petit rectangle contenant les deux points donnés
+     *
+     * @param p1
+     *            Premier point
+     * @param p2
+     *            Second point
+     * @return Rectangle dont les points sont deux coins opposés
+     */
+    public static Rectangle of(Point p1, Point p2) {
+        return new Rectangle(Math.min(p1.x(), p2.x()), Math.min(p1.y(), p2.y()),
+                Math.max(p1.x(), p2.x()), Math.max(p1.y(), p2.y()));
+    }
+
+    /**
+     * @return Abscisse minimale
+     */
+    public double minX() {
+        return this.minX;
+    }
+
+    /**
+     * @return Ordonnée minimale
+     */
+    public double minY() {
+        return this.minY;
+    }
+
+    /**
+     * @return Abscisse maximale
+     */
+    public double maxX() {
+        return this.maxX;
+    }
+
+    /**
+     * @return Ordonnée maximale
+     */
+    public double maxY() {
+        return this.maxY;
+    }
+
+    /**
+     * Retourne vrai ssi ce rectangle et celui donné ont au moins un point
+     * commun (bords compris)
+     *
+     * @param that
+     *            Autre rectangle
+     * @return true si les rectangles se chevauchent ou se touchent
+     */
+    public boolean intersects(Rectangle that) {
+        return this.minX <= that.maxX && that.minX <= this.maxX
+            && this.minY <= that.maxY && that.minY <= this.maxY;
+    }
+
+    /**
+     * Retourne vrai ssi le rectangle donné est entièrement contenu dans
+     * celui-ci (bords compris)
+     *
+     * @param that
+     *            Autre rectangle
+     * @return true si tous les points de that appartiennent à ce rectangle
+     */
+    public boolean contains(Rectangle that) {
+        return this.minX <= that.minX && that.maxX <= this.maxX
+            && this.minY <= that.minY && that.maxY <= this.maxY;
+    }
+
+    /**
+     * Retourne ce rectangle agrandi de la marge donnée de chaque côté
+     *
+     * @param margin
+     *            Marge, positive ou nulle
+     * @return Rectangle agrandi
+     */
+    public Rectangle expandedBy(double margin) {
+        return new Rectangle(this.minX - margin, this.minY - margin,
+                this.maxX + margin, this.maxY + margin);
+    }
+}
@@ -0,0 +1,138 @@
+package ch.epfl.imhof.osm;
+
+import java.util.Arrays;
+
+/**
+ * Table associative d'entiers longs vers des entiers positifs, à adressage
+ * ouvert. Contrairement à un HashMap&lt;Long, Integer&gt;, aucune entrée ni
+ * aucun objet encapsulant les clefs ou les valeurs n'est alloué.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ */
+final class LongIntMap {
+    private static final int ABSENT = -1;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size = 0;
+
+    /**
+     * Construit une table vide
+     */
+    LongIntMap() {
+        this(16);
+    }
+
+    /**
+     * Construit une table vide pouvant contenir le nombre d'entrées donné
+     * sans être agrandie
+     * @param expectedSize Nombre d'entrées attendues
+     */
+    LongIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, (int)(expectedSize / LOAD_FACTOR)) - 1) << 1;
+        this.allocate(capacity);
+    }
+
+    /**
+     * Retourne le nombre d'entrées de la table
+     * @return Nombre d'entrées
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Retourne la valeur associée à la clef donnée
+     * @param key Clef recherchée
+     * @return Valeur associée, ou -1 si la clef est absente
+     */
+    int get(long key) {
+        int slot = this.slotOf(key);
+        return this.values[slot];
+    }
+
+    /**
+     * Retourne vrai ssi la table contient la clef donnée
+     * @param key Clef recherchée
+     * @return true si la clef est présente
+     */
+    boolean contains(long key) {
+        return this.get(key) != ABSENT;
+    }
+
+    /**
+     * Associe la valeur donnée à la clef donnée, en remplaçant la valeur
+     * précédente s'il y en avait une.
+     * @param key Clef
+     * @param value Valeur, positive ou nulle
+     * @throws IllegalArgumentException Si la valeur est négative
+     */
+    void put(long key, int value) {
+        if (value < 0)
+            throw new IllegalArgumentException("La valeur doit être positive");
+
+        int slot = this.slotOf(key);
+        if (this.values[slot] == ABSENT) {
+            this.keys[slot] = key;
+            this.size += 1;
+        }
+        this.values[slot] = value;
+
+        if (this.size > LOAD_FACTOR * this.keys.length)
+            this.grow();
+    }
+
+    /**
+     * Retourne la case contenant la clef donnée, ou la case libre où elle
+     * devrait être insérée.
+     * @param key Clef recherchée
+     * @return Index de la case
+     */
+    private int slotOf(long key) {
+        int slot = hash(key) & this.mask;
+
+        while (this.values[slot] != ABSENT && this.keys[slot] != key)
+            slot = (slot + 1) & this.mask;
+
+        return slot;
+    }
+
+    /**
+     * Double la capacité de la table et y réinsère les entrées
+     */
+    private void grow() {
+        long[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+
+        this.allocate(2 * oldKeys.length);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != ABSENT) {
+                int slot = this.slotOf(oldKeys[i]);
+                this.keys[slot] = oldKeys[i];
+                this.values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+
+        Arrays.fill(this.values, ABSENT);
+    }
+
+    /**
+     * Mélange les bits de la clef, les identifiants OSM étant souvent contigus
+     * @param key Clef à hacher
+     * @return Valeur de hachage
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,70 @@
+package ch.epfl.imhof.osm;
+
+import java.util.Arrays;
+
+/**
+ * Index compact des positions des nœuds OSM. Les coordonnées sont stockées
+ * à la suite dans un tableau de doubles, à la case associée à l'identifiant
+ * du nœud.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ */
+final class NodeIndex {
+    private final LongIntMap slots = new LongIntMap();
+    private double[] coordinates = new double[2 * 16];
+
+    /**
+     * Retourne le nombre de nœuds indexés
+     * @return Nombre de nœuds
+     */
+    int size() {
+        return this.slots.size();
+    }
+
+    /**
+     * Ajoute (ou remplace) la position du nœud donné
+     * @param id Identifiant du nœud
+     * @param longitude Longitude du nœud (en radians)
+     * @param latitude Latitude du nœud (en radians)
+     */
+    void put(long id, double longitude, double latitude) {
+        int slot = this.slots.get(id);
+
+        if (slot < 0) {
+            slot = this.slots.size();
+            this.slots.put(id, slot);
+
+            if (2 * slot + 1 >= this.coordinates.length)
+                this.coordinates = Arrays.copyOf(this.coordinates, 2 * this.coordinates.length);
+        }
+
+        this.coordinates[2 * slot] = longitude;
+        this.coordinates[2 * slot + 1] = latitude;
+    }
+
+    /**
+     * Retourne la case du nœud donné
+     * @param id Identifiant du nœud
+     * @return Case du nœud, ou -1 si le nœud n'est pas indexé
+     */
+    int slot(long id) {
+        return this.slots.get(id);
+    }
+
+    /**
+     * @param slot Case d'un nœud
+     * @return Longitude du nœud (en radians)
+     */
+    double longitude(int slot) {
+        return this.coordinates[2 * slot];
+    }
+
+    /**
+     * @param slot Case d'un nœud
+     * @return Latitude du nœud (en radians)
+     */
+    double latitude(int slot) {
+        return this.coordinates[2 * slot + 1];
+    }
+}
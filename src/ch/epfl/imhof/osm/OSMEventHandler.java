@@ -0,0 +1,65 @@
+package ch.epfl.imhof.osm;
+
+/**
+ * Reçoit les éléments d'un fichier OSM au fur et à mesure de sa lecture, les
+ * attributs des balises étant déjà décodés. Chaque appel à une méthode start
+ * (ou à nodeRef, tag et member) est suivi, une fois la balise correspondante
+ * fermée, d'un appel à end.
+ *
+ * Par défaut, toutes les méthodes ignorent l'élément reçu.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ */
+interface OSMEventHandler {
+    /**
+     * Début d'un nœud
+     * @param id Identifiant du nœud
+     * @param longitude Longitude du nœud (en degrés)
+     * @param latitude Latitude du nœud (en degrés)
+     */
+    default void startNode(long id, double longitude, double latitude) {}
+
+    /**
+     * Début d'un chemin
+     * @param id Identifiant du chemin
+     */
+    default void startWay(long id) {}
+
+    /**
+     * Référence à un nœud du chemin en cours
+     * @param ref Identifiant du nœud référencé
+     */
+    default void nodeRef(long ref) {}
+
+    /**
+     * Attribut de l'entité en cours
+     * @param key Clef de l'attribut
+     * @param value Valeur de l'attribut
+     */
+    default void tag(String key, String value) {}
+
+    /**
+     * Début d'une relation
+     * @param id Identifiant de la relation
+     */
+    default void startRelation(long id) {}
+
+    /**
+     * Membre de la relation en cours
+     * @param type Type du membre
+     * @param ref Identifiant du membre
+     * @param role Rôle du membre
+     */
+    default void member(OSMRelation.Member.Type type, long ref, String role) {}
+
+    /**
+     * Début d'une balise sans signification pour la carte
+     */
+    default void startOther() {}
+
+    /**
+     * Fermeture de la dernière balise ouverte
+     */
+    default void end() {}
+}
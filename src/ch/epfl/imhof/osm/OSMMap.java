@@ -8,6 +8,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import ch.epfl.imhof.Attributes;
+import ch.epfl.imhof.PointGeo;
+
 /**
  * Représente une carte OpenStreetMap, c'est-à-dire un ensemble de chemins et de
  * relations
@@ -61,10 +64,35 @@ public final class OSMMap {
      *
      */
     public static final class Builder {
+        private static final Attributes NO_ATTRIBUTES = new Attributes(Collections.emptyMap());
+
         private final Map<Long, OSMNode> nodes = new HashMap<>();
         private final Map<Long, OSMWay> ways = new HashMap<>();
         private final Map<Long, OSMRelation> relations = new HashMap<>();
 
+        private final NodeIndex compactNodes;
+        private final Map<Long, Attributes> compactAttributes = new HashMap<>();
+
+        /**
+         * Construit un bâtisseur conservant chaque nœud ajouté tel quel
+         */
+        public Builder() {
+            this(false);
+        }
+
+        /**
+         * Construit un bâtisseur. En mode compact, seule la position des nœuds
+         * (et les attributs des nœuds qui en ont) est conservée, dans un index
+         * primitif ; les objets OSMNode ne sont créés qu'à leur première
+         * demande, une seule fois par nœud.
+         *
+         * @param compactNodes
+         *            true pour stocker les nœuds de manière compacte
+         */
+        public Builder(boolean compactNodes) {
+            this.compactNodes = compactNodes ? new NodeIndex() : null;
+        }
+
         /**
          * Ajoute le nœud donné au bâtisseur
          * 
@@ -72,8 +100,20 @@ public final class OSMMap {
          *            Nouveau noeud à ajouter au bâtisseur
          */
         public void addNode(OSMNode newNode) {
-            nodes.put(newNode.id(),
-                    Objects.requireNonNull(newNode, "node ne peut être null"));
+            Objects.requireNonNull(newNode, "node ne peut être null");
+
+            if (this.compactNodes == null) {
+                nodes.put(newNode.id(), newNode);
+            } else {
+                PointGeo position = newNode.position();
+                nodes.remove(newNode.id());
+                this.compactNodes.put(newNode.id(), position.longitude(), position.latitude());
+
+                if (newNode.attributes().isEmpty())
+                    this.compactAttributes.remove(newNode.id());
+                else
+                    this.compactAttributes.put(newNode.id(), newNode.attributes());
+            }
         }
 
         /**
@@ -85,7 +125,23 @@ public final class OSMMap {
          * @return le noeud correspondant à l'identifiant passé
          */
         public OSMNode nodeForId(long id) {
-            return nodes.get(id);
+            OSMNode node = nodes.get(id);
+
+            if (node == null && this.compactNodes != null) {
+                int slot = this.compactNodes.slot(id);
+
+                if (slot >= 0) {
+                    PointGeo position = new PointGeo(
+                            this.compactNodes.longitude(slot),
+                            this.compactNodes.latitude(slot));
+                    node = new OSMNode(id, position,
+                            this.compactAttributes.getOrDefault(id, NO_ATTRIBUTES));
+
+                    nodes.put(id, node);
+                }
+            }
+
+            return node;
         }
 
         /**
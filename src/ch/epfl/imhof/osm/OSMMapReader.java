@@ -2,8 +2,14 @@ package ch.epfl.imhof.osm;
 
 import java.io.*;
 import java.util.zip.GZIPInputStream;
-import java.util.Deque;
-import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.xml.sax.*;
 import org.xml.sax.helpers.*;
@@ -19,7 +25,38 @@ import ch.epfl.imhof.*;
  *
  */
 public final class OSMMapReader {
-    private static OSMMap.Builder mapBuilder;
+    /**
+     * Manière de stocker les nœuds pendant la lecture
+     */
+    public static enum Mode {
+        /** Chaque nœud est conservé sous forme d'objet OSMNode */
+        STANDARD,
+        /**
+         * Seules les positions des nœuds sont conservées dans un index
+         * primitif, les objets OSMNode n'étant créés que pour les nœuds
+         * référencés
+         */
+        LOW_MEMORY,
+        /**
+         * Comme LOW_MEMORY, mais une première lecture du fichier collecte
+         * les nœuds référencés afin de n'indexer qu'eux
+         */
+        LOW_MEMORY_TWO_PASS
+    }
+
+    /**
+     * Analyseur utilisé pour lire les fichiers OSM
+     */
+    public static enum Parser {
+        /** Parseur SAX de la bibliothèque standard */
+        SAX,
+        /**
+         * Analyseur travaillant directement sur les octets du fichier, plus
+         * rapide mais ne reconnaissant que le sous-ensemble de XML utilisé
+         * par les fichiers OSM
+         */
+        SCANNER
+    }
 
     private static final String OSM_NODE = "node";
     private static final String OSM_WAY = "way";
@@ -35,120 +72,124 @@ public final class OSMMapReader {
      * @author Thierry Treyer (235116)
      * @author Dominique Roduit (234868)
      */
-    public static final class OSMMapReaderHandler extends DefaultHandler {
-        private Deque<Entity> entities = new ArrayDeque<>(16);
+    public static final class OSMMapReaderHandler extends DefaultHandler
+            implements OSMEventHandler {
+        private Type[] types = new Type[16];
+        private OSMEntity.Builder[] builders = new OSMEntity.Builder[16];
+        private int depth = 0;
         /* ^ Le Handler utilise une pile pour stocker les balises ouvertes au
          * fur et à mesure de la lecture du fichier XML. Les balises sont
-         * retirées de la pile à leur fermeture.
+         * retirées de la pile à leur fermeture. Le type et le bâtisseur de
+         * chaque balise sont stockés dans deux tableaux, afin de ne créer
+         * aucun objet par balise.
          */
 
+        private final OSMMap.Builder mapBuilder;
+        private final LongIntMap referencedNodes;
+
         /**
-         * Représente une balise rencontrée par le parseur XML. Il contient le
-         * type de la balise, ainsi que le bâtisseur associé à ce type de
-         * balises.
-         *
-         * @author Thierry Treyer (235116)
-         * @author Dominique Roduit (234868)
+         * Type d'une balise rencontrée par le parseur XML
          */
-        private static class Entity {
-            public static enum Type {
-                NODE, WAY, ND, RELATION, MEMBER, TAG, UNKNOWN
-            }
-
-            private final Type type;
-            private final OSMEntity.Builder builder;
-
-            /**
-             * Construit une entitée avec son type et son bâtisseur
-             *
-             * @param type
-             *            Type de l'entité (@see
-             *            {@link OSMMapReader.OSMMapReaderHandler.Type})
-             * @param builder
-             *            Bâtisseur de l'entité
-             */
-            public Entity(Type type, OSMEntity.Builder builder) {
-                this.type = type;
-                this.builder = builder;
-            }
-
-            /**
-             * Retourne le type de l'entité OSM
-             * 
-             * @return Type de l'entité
-             */
-            public Type type() {
-                return this.type;
-            }
+        private static enum Type {
+            NODE, WAY, ND, RELATION, MEMBER, TAG, UNKNOWN
+        }
 
-            /**
-             * Retourne le builder de l'entitée OSM
-             * 
-             * @return Builder de l'entitée
-             */
-            public OSMEntity.Builder builder() {
-                return this.builder;
-            }
+        /**
+         * Construit un gestionnaire ajoutant toutes les entités lues au
+         * bâtisseur donné. Chaque lecture doit utiliser son propre
+         * gestionnaire.
+         *
+         * @param mapBuilder
+         *            Bâtisseur de la carte en cours de lecture
+         */
+        public OSMMapReaderHandler(OSMMap.Builder mapBuilder) {
+            this(mapBuilder, null);
+        }
 
+        /**
+         * Construit un gestionnaire ne conservant que les nœuds donnés
+         *
+         * @param mapBuilder
+         *            Bâtisseur de la carte en cours de lecture
+         * @param referencedNodes
+         *            Identifiants des nœuds à conserver, ou null pour tous
+         *            les conserver
+         */
+        OSMMapReaderHandler(OSMMap.Builder mapBuilder, LongIntMap referencedNodes) {
+            this.mapBuilder = mapBuilder;
+            this.referencedNodes = referencedNodes;
         }
 
         /**
          * Callback lorsqu'une balise ouvrante est rencontrée.
          *
-         * Ajoute l'Entity associé à la balise sur la pile.
+         * Ajoute le type et le bâtisseur associés à la balise sur la pile.
          */
         public void startElement(String uri, String lName, String qName,
                 org.xml.sax.Attributes attr) throws SAXException {
-            switch (lName) {
-            case OSM_NODE:
-                this.addNode(attr);
-                break;
-            case OSM_WAY:
-                this.addWay(attr);
-                break;
-            case OSM_ND:
-                this.addNodeRef(attr);
-                break;
-            case OSM_TAG:
-                this.addTag(attr);
-                break;
-            case OSM_RELATION:
-                this.addRelation(attr);
-                break;
-            case OSM_MEMBER:
-                this.addRelationMember(attr);
-                break;
-            default:
-                this.entities.addLast(new Entity(Entity.Type.UNKNOWN, null));
-                break;
-            }
+            SAXAdapter.startElement(this, lName, attr);
         }
 
         /**
          * Callback lorsqu'une balise fermante est rencontrée.
          *
          * Finalise la construction de la balise au sommet de la pile, puis
-         * retire l'Entity de la pile.
+         * la retire de la pile.
          */
         public void endElement(String uri, String lName, String qName)
                 throws SAXException {
-            Entity entity = this.entities.removeLast();
+            this.end();
+        }
+
+        /**
+         * Ajoute une balise au sommet de la pile
+         *
+         * @param type
+         *            Type de la balise
+         * @param builder
+         *            Bâtisseur associé à la balise, ou null
+         */
+        private void push(Type type, OSMEntity.Builder builder) {
+            if (this.depth == this.types.length) {
+                this.types = Arrays.copyOf(this.types, 2 * this.depth);
+                this.builders = Arrays.copyOf(this.builders, 2 * this.depth);
+            }
+
+            this.types[this.depth] = type;
+            this.builders[this.depth] = builder;
+            this.depth += 1;
+        }
+
+        /**
+         * Retourne le type de la balise au sommet de la pile
+         *
+         * @return Type de la balise, ou null si la pile est vide
+         */
+        private Type parentType() {
+            return (this.depth == 0) ? null : this.types[this.depth - 1];
+        }
 
-            OSMEntity.Builder builder = entity.builder();
+        @Override
+        public void end() {
+            this.depth -= 1;
+
+            Type type = this.types[this.depth];
+            OSMEntity.Builder builder = this.builders[this.depth];
+            this.builders[this.depth] = null;
 
             /* Ignorer les builder incomplets */
             if (builder == null || builder.isIncomplete())
                 return;
 
-            switch (entity.type()) {
+            switch (type) {
             case NODE:
-                mapBuilder.addNode(((OSMNode.Builder) builder).build());
+                this.mapBuilder.addNode(((OSMNode.Builder) builder).build());
                 break;
             case WAY:
-                mapBuilder.addWay(((OSMWay.Builder) builder).build());
+                this.mapBuilder.addWay(((OSMWay.Builder) builder).build());
                 break;
             case RELATION:
-                mapBuilder.addRelation(((OSMRelation.Builder) builder).build());
+                this.mapBuilder.addRelation(((OSMRelation.Builder) builder).build());
                 break;
             case ND:
             case MEMBER:
@@ -160,141 +201,223 @@ public final class OSMMapReader {
 
         /**
          * Ajout d'un nœud dans la pile.
-         *
-         * @param attr
-         *            Attributs attachés au nœud
          */
-        private void addNode(org.xml.sax.Attributes attr) {
-            long id = Long.parseLong(attr.getValue("id"));
-            double lon = Math
-                    .toRadians(Double.parseDouble(attr.getValue("lon")));
-            double lat = Math
-                    .toRadians(Double.parseDouble(attr.getValue("lat")));
+        @Override
+        public void startNode(long id, double longitude, double latitude) {
+            /* Les nœuds qu'aucun chemin ni relation ne référence sont ignorés */
+            if (this.referencedNodes != null && !this.referencedNodes.contains(id)) {
+                this.push(Type.NODE, null);
+                return;
+            }
 
-            OSMNode.Builder nb = new OSMNode.Builder(id, new PointGeo(lon, lat));
+            PointGeo position = new PointGeo(Math.toRadians(longitude),
+                    Math.toRadians(latitude));
 
-            this.entities.addLast(new Entity(Entity.Type.NODE, nb));
+            this.push(Type.NODE, new OSMNode.Builder(id, position));
         }
 
         /**
          * Ajout d'un chemin dans la pile.
-         *
-         * @param attr
-         *            Attributs attachés au chemin
          */
-        private void addWay(org.xml.sax.Attributes attr) {
-            long id = Long.parseLong(attr.getValue("id"));
-
-            OSMWay.Builder wb = new OSMWay.Builder(id);
-
-            this.entities.addLast(new Entity(Entity.Type.WAY, wb));
+        @Override
+        public void startWay(long id) {
+            this.push(Type.WAY, new OSMWay.Builder(id));
         }
 
         /**
          * Ajout d'un noeud au bâtisseur du dernier chemin dans la pile.
          *
-         * @param attr
-         *            Attributs attachés à la référence du nœud
          * @throws IllegalStateException
          *             Si le bâtisseur parent n'est pas du type WAY
          */
-        private void addNodeRef(org.xml.sax.Attributes attr) {
-            long ref = Long.parseLong(attr.getValue("ref"));
-
-            OSMNode node = mapBuilder.nodeForId(ref);
-            Entity parent = this.entities.getLast();
+        @Override
+        public void nodeRef(long ref) {
+            OSMNode node = this.mapBuilder.nodeForId(ref);
 
             /* Contrôle du type du bâtisseur parent */
-            if (parent.type() != Entity.Type.WAY)
+            if (this.parentType() != Type.WAY)
                 throw new IllegalStateException(
                         "Le bâtisseur parent doit être du type WAY, et non "
-                                + parent.type());
+                                + this.parentType());
 
-            OSMWay.Builder builder = (OSMWay.Builder) parent.builder();
+            OSMWay.Builder builder = (OSMWay.Builder) this.builders[this.depth - 1];
 
             if (node == null)
                 builder.setIncomplete();
             else
                 builder.addNode(node);
 
-            this.entities.addLast(new Entity(Entity.Type.ND, null));
+            this.push(Type.ND, null);
         }
 
         /**
          * Ajout d'un attribut à la dernière entité dans la pile.
-         *
-         * @param attr
-         *            Attributs attachés à l'élément
          */
-        private void addTag(org.xml.sax.Attributes attr) {
-            String key = attr.getValue("k");
-            String value = attr.getValue("v");
-
-            this.entities.getLast().builder().setAttribute(key, value);
+        @Override
+        public void tag(String key, String value) {
+            OSMEntity.Builder parent = (this.depth == 0) ? null : this.builders[this.depth - 1];
+            if (parent != null)
+                parent.setAttribute(key, value);
 
-            this.entities.addLast(new Entity(Entity.Type.TAG, null));
+            this.push(Type.TAG, null);
         }
 
         /**
          * Ajout d'une relation dans la pile.
-         *
-         * @param attr
-         *            Attributs attachés à la relation
          */
-        private void addRelation(org.xml.sax.Attributes attr) {
-            long id = Long.parseLong(attr.getValue("id"));
-
-            OSMRelation.Builder rel = new OSMRelation.Builder(id);
-
-            this.entities.addLast(new Entity(Entity.Type.RELATION, rel));
+        @Override
+        public void startRelation(long id) {
+            this.push(Type.RELATION, new OSMRelation.Builder(id));
         }
 
         /**
          * Ajout d'un membre à la dernière relation dans la pile.
          *
-         * @param attr
-         *            Attributs attachés au membre
          * @throws IllegalStateException
          *             Si le bâtisseur parent n'est pas du type RELATION
          */
-        private void addRelationMember(org.xml.sax.Attributes attr) throws SAXException {
-            long ref = Long.parseLong(attr.getValue("ref"));
-            OSMRelation.Member.Type type = OSMRelation.Member.Type.valueOf(attr
-                    .getValue("type").toUpperCase());
-            String role = attr.getValue("role");
-
+        @Override
+        public void member(OSMRelation.Member.Type type, long ref, String role) {
             OSMEntity member = null;
             switch (type) {
             case NODE:
-                member = mapBuilder.nodeForId(ref);
+                member = this.mapBuilder.nodeForId(ref);
                 break;
             case WAY:
-                member = mapBuilder.wayForId(ref);
+                member = this.mapBuilder.wayForId(ref);
                 break;
             case RELATION:
-                member = mapBuilder.relationForId(ref);
+                member = this.mapBuilder.relationForId(ref);
                 break;
             default:
-                throw new SAXException();
+                break;
             }
 
-            Entity parent = this.entities.getLast();
-
             /* Contrôle du type du bâtisseur parent */
-            if (parent.type() != Entity.Type.RELATION)
+            if (this.parentType() != Type.RELATION)
                 throw new IllegalStateException(
                         "Le bâtisseur parent doit être du type RELATION, et non "
-                                + parent.type());
+                                + this.parentType());
 
-            OSMRelation.Builder builder = (OSMRelation.Builder) this.entities
-                    .getLast().builder();
+            OSMRelation.Builder builder = (OSMRelation.Builder) this.builders[this.depth - 1];
 
             if (member == null)
                 builder.setIncomplete();
             else
                 builder.addMember(type, role, member);
 
-            this.entities.addLast(new Entity(Entity.Type.MEMBER, null));
+            this.push(Type.MEMBER, null);
+        }
+
+        @Override
+        public void startOther() {
+            this.push(Type.UNKNOWN, null);
+        }
+    }
+
+    /**
+     * Gestionnaire de contenu SAX décodant les attributs des balises OSM et
+     * les transmettant à un OSMEventHandler.
+     *
+     * @author Thierry Treyer (235116)
+     * @author Dominique Roduit (234868)
+     */
+    private static final class SAXAdapter extends DefaultHandler {
+        private final OSMEventHandler handler;
+
+        /**
+         * Construit un adaptateur transmettant les éléments lus au
+         * gestionnaire donné
+         *
+         * @param handler
+         *            Gestionnaire recevant les éléments
+         */
+        SAXAdapter(OSMEventHandler handler) {
+            this.handler = handler;
+        }
+
+        public void startElement(String uri, String lName, String qName,
+                org.xml.sax.Attributes attr) throws SAXException {
+            startElement(this.handler, lName, attr);
+        }
+
+        public void endElement(String uri, String lName, String qName)
+                throws SAXException {
+            this.handler.end();
+        }
+
+        /**
+         * Décode les attributs de la balise ouvrante donnée et la transmet au
+         * gestionnaire donné
+         *
+         * @param handler
+         *            Gestionnaire recevant l'élément
+         * @param lName
+         *            Nom de la balise
+         * @param attr
+         *            Attributs de la balise
+         */
+        static void startElement(OSMEventHandler handler, String lName,
+                org.xml.sax.Attributes attr) {
+            switch (lName) {
+            case OSM_NODE:
+                handler.startNode(Long.parseLong(attr.getValue("id")),
+                        Double.parseDouble(attr.getValue("lon")),
+                        Double.parseDouble(attr.getValue("lat")));
+                break;
+            case OSM_WAY:
+                handler.startWay(Long.parseLong(attr.getValue("id")));
+                break;
+            case OSM_ND:
+                handler.nodeRef(Long.parseLong(attr.getValue("ref")));
+                break;
+            case OSM_TAG:
+                handler.tag(attr.getValue("k"), attr.getValue("v"));
+                break;
+            case OSM_RELATION:
+                handler.startRelation(Long.parseLong(attr.getValue("id")));
+                break;
+            case OSM_MEMBER:
+                handler.member(OSMRelation.Member.Type.valueOf(attr
+                        .getValue("type").toUpperCase()),
+                        Long.parseLong(attr.getValue("ref")),
+                        attr.getValue("role"));
+                break;
+            default:
+                handler.startOther();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Gestionnaire collectant les identifiants des nœuds référencés par les
+     * chemins et les relations.
+     *
+     * @author Thierry Treyer (235116)
+     * @author Dominique Roduit (234868)
+     */
+    private static final class ReferencedNodesHandler implements OSMEventHandler {
+        private final LongIntMap referencedNodes = new LongIntMap();
+
+        @Override
+        public void nodeRef(long ref) {
+            this.referencedNodes.put(ref, 0);
+        }
+
+        @Override
+        public void member(OSMRelation.Member.Type type, long ref, String role) {
+            if (type == OSMRelation.Member.Type.NODE)
+                this.referencedNodes.put(ref, 0);
+        }
+
+        /**
+         * Retourne les identifiants des nœuds référencés
+         *
+         * @return Ensemble des identifiants (associés à 0)
+         */
+        LongIntMap referencedNodes() {
+            return this.referencedNodes;
         }
     }
 
@@ -323,18 +446,243 @@ public final class OSMMapReader {
      */
     public static OSMMap readOSMFile(String fileName, boolean unGZip)
             throws IOException, SAXException {
-        mapBuilder = new OSMMap.Builder();
+        return readOSMFile(fileName, unGZip, Mode.STANDARD);
+    }
+
+    /**
+     * Lit la carte OSM contenue dans le fichier de nom donné, en le
+     * décompressant avec gzip ssi le second argument est vrai, et en stockant
+     * les nœuds selon le mode donné. La carte obtenue ne dépend pas du mode.
+     *
+     * @param fileName
+     *            Nom du fichier OSM à parser
+     * @param unGZip
+     *            true si le fichier est compressé
+     * @param mode
+     *            Manière de stocker les nœuds pendant la lecture
+     * @return Carte OpenStreetMap à partir de données stockées dans un fichier
+     *         au format OSM.
+     * @throws IOException
+     *             En cas d'erreur d'entrée/sortie, par exemple si le fichier
+     *             n'existe pas
+     * @throws SAXException
+     *             En cas d'erreur dans le format du fichier XML contenant la
+     *             carte
+     */
+    public static OSMMap readOSMFile(String fileName, boolean unGZip, Mode mode)
+            throws IOException, SAXException {
+        return readOSMFile(fileName, unGZip, mode, Parser.SAX);
+    }
 
+    /**
+     * Lit la carte OSM contenue dans le fichier de nom donné, en le
+     * décompressant avec gzip ssi le second argument est vrai, en stockant
+     * les nœuds selon le mode donné et en utilisant l'analyseur donné. La
+     * carte obtenue ne dépend ni du mode ni de l'analyseur.
+     *
+     * @param fileName
+     *            Nom du fichier OSM à parser
+     * @param unGZip
+     *            true si le fichier est compressé
+     * @param mode
+     *            Manière de stocker les nœuds pendant la lecture
+     * @param parser
+     *            Analyseur à utiliser
+     * @return Carte OpenStreetMap à partir de données stockées dans un fichier
+     *         au format OSM.
+     * @throws IOException
+     *             En cas d'erreur d'entrée/sortie, par exemple si le fichier
+     *             n'existe pas
+     * @throws SAXException
+     *             En cas d'erreur dans le format du fichier XML contenant la
+     *             carte
+     */
+    public static OSMMap readOSMFile(String fileName, boolean unGZip, Mode mode,
+            Parser parser) throws IOException, SAXException {
+        LongIntMap referencedNodes = null;
+
+        if (mode == Mode.LOW_MEMORY_TWO_PASS) {
+            ReferencedNodesHandler firstPass = new ReferencedNodesHandler();
+            parse(fileName, unGZip, parser, firstPass);
+            referencedNodes = firstPass.referencedNodes();
+        }
+
+        OSMMap.Builder mapBuilder = new OSMMap.Builder(mode != Mode.STANDARD);
+        parse(fileName, unGZip, parser, new OSMMapReaderHandler(mapBuilder, referencedNodes));
+
+        return mapBuilder.build();
+    }
+
+    /**
+     * Lit la carte OSM contenue dans le fichier au format PBF de nom donné,
+     * en stockant les nœuds selon le mode donné. Les blocs du fichier sont
+     * décompressés et décodés en parallèle. La carte obtenue est identique à
+     * celle que retournerait readOSMFile pour le même fichier au format XML.
+     *
+     * @param fileName
+     *            Nom du fichier PBF à lire
+     * @param mode
+     *            Manière de stocker les nœuds pendant la lecture
+     * @param parallelism
+     *            Nombre de blocs décodés simultanément
+     * @return Carte OpenStreetMap à partir de données stockées dans un fichier
+     *         au format PBF.
+     * @throws IllegalArgumentException
+     *             Si le parallélisme n'est pas strictement positif
+     * @throws IOException
+     *             En cas d'erreur d'entrée/sortie, par exemple si le fichier
+     *             n'existe pas, ou si le fichier est mal formé
+     */
+    public static OSMMap readPBFFile(String fileName, Mode mode, int parallelism)
+            throws IOException {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Le parallélisme doit être strictement positif");
+
+        LongIntMap referencedNodes = null;
+
+        if (mode == Mode.LOW_MEMORY_TWO_PASS) {
+            ReferencedNodesHandler firstPass = new ReferencedNodesHandler();
+            parsePBF(fileName, parallelism, firstPass);
+            referencedNodes = firstPass.referencedNodes();
+        }
+
+        OSMMap.Builder mapBuilder = new OSMMap.Builder(mode != Mode.STANDARD);
+        parsePBF(fileName, parallelism, new OSMMapReaderHandler(mapBuilder, referencedNodes));
+
+        return mapBuilder.build();
+    }
+
+    /**
+     * Lit les cartes OSM contenues dans les fichiers de noms donnés, en
+     * parallèle, et les fusionne en une seule carte.
+     *
+     * Chaque fichier est lu indépendamment des autres : un chemin ou une
+     * relation ne peut donc référencer que des entités de son propre fichier,
+     * ce qui est le cas des extraits régionaux usuels. Les chemins et
+     * relations présents dans plusieurs fichiers, comme ceux qui longent la
+     * frontière de deux extraits voisins, n'apparaissent qu'une fois dans la
+     * carte : seule la version du premier fichier de la liste qui les
+     * contient est conservée, quel que soit l'ordre de fin des lectures.
+     *
+     * @param fileNames
+     *            Noms des fichiers OSM à parser
+     * @param unGZip
+     *            true si les fichiers sont compressés
+     * @param mode
+     *            Manière de stocker les nœuds pendant la lecture
+     * @param parser
+     *            Analyseur à utiliser
+     * @param parallelism
+     *            Nombre maximal de fichiers lus simultanément
+     * @return Carte OpenStreetMap réunissant les données de tous les fichiers
+     * @throws IllegalArgumentException
+     *             Si le parallélisme n'est pas strictement positif
+     * @throws IOException
+     *             En cas d'erreur d'entrée/sortie, par exemple si l'un des
+     *             fichiers n'existe pas
+     * @throws SAXException
+     *             En cas d'erreur dans le format de l'un des fichiers
+     */
+    public static OSMMap readOSMFiles(List<String> fileNames, boolean unGZip,
+            Mode mode, Parser parser, int parallelism) throws IOException, SAXException {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Le parallélisme doit être strictement positif");
+
+        List<Callable<OSMMap>> readers = new ArrayList<>(fileNames.size());
+        for (String fileName : fileNames)
+            readers.add(() -> readOSMFile(fileName, unGZip, mode, parser));
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(parallelism, fileNames.size())));
+        OSMMap.Builder mapBuilder = new OSMMap.Builder();
+
+        try {
+            /* Les cartes sont fusionnées dans l'ordre des fichiers afin que
+             * le résultat ne dépende pas de l'ordonnancement des lectures */
+            for (Future<OSMMap> future : executor.invokeAll(readers)) {
+                OSMMap map = future.get();
+
+                for (OSMWay way : map.ways()) {
+                    if (mapBuilder.wayForId(way.id()) == null)
+                        mapBuilder.addWay(way);
+                }
+                for (OSMRelation relation : map.relations()) {
+                    if (mapBuilder.relationForId(relation.id()) == null)
+                        mapBuilder.addRelation(relation);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Lecture des fichiers OSM interrompue");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof SAXException)
+                throw (SAXException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw (Error) cause;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return mapBuilder.build();
+    }
+
+    /**
+     * Parcourt le fichier OSM donné avec l'analyseur et le gestionnaire
+     * donnés
+     *
+     * @param fileName
+     *            Nom du fichier OSM à parser
+     * @param unGZip
+     *            true si le fichier est compressé
+     * @param parser
+     *            Analyseur à utiliser
+     * @param handler
+     *            Gestionnaire recevant les éléments lus
+     * @throws IOException
+     *             En cas d'erreur d'entrée/sortie
+     * @throws SAXException
+     *             En cas d'erreur dans le format du fichier XML
+     */
+    private static void parse(String fileName, boolean unGZip, Parser parser,
+            OSMEventHandler handler) throws IOException, SAXException {
         try (InputStream file = new BufferedInputStream(new FileInputStream(
                 fileName))) {
             InputStream input = (!unGZip) ? file : new GZIPInputStream(file);
 
-            XMLReader reader = XMLReaderFactory.createXMLReader();
-            reader.setErrorHandler(null); // On gère nous-même les exceptions
-            reader.setContentHandler(new OSMMapReaderHandler());
-            reader.parse(new InputSource(input));
+            if (parser == Parser.SCANNER) {
+                new OSMXMLScanner(input, handler).scan();
+            } else {
+                XMLReader reader = XMLReaderFactory.createXMLReader();
+                reader.setErrorHandler(null); // On gère nous-même les exceptions
+                reader.setContentHandler(new SAXAdapter(handler));
+                reader.parse(new InputSource(input));
+            }
         }
+    }
 
-        return mapBuilder.build();
+    /**
+     * Parcourt le fichier PBF donné avec le gestionnaire donné
+     *
+     * @param fileName
+     *            Nom du fichier PBF à lire
+     * @param parallelism
+     *            Nombre de blocs décodés simultanément
+     * @param handler
+     *            Gestionnaire recevant les éléments lus
+     * @throws IOException
+     *             En cas d'erreur d'entrée/sortie ou si le fichier est mal
+     *             formé
+     */
+    private static void parsePBF(String fileName, int parallelism,
+            OSMEventHandler handler) throws IOException {
+        try (InputStream input = new BufferedInputStream(new FileInputStream(
+                fileName))) {
+            PBFReader.read(input, handler, parallelism);
+        }
     }
 }
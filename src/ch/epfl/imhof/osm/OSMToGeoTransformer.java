@@ -6,12 +6,14 @@ import java.util.List;
 import java.util.LinkedList;
 import java.util.Set;
 import java.util.HashSet;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 import ch.epfl.imhof.Attributed;
 import ch.epfl.imhof.Attributes;
 import ch.epfl.imhof.Map;
-import ch.epfl.imhof.Graph;
+import ch.epfl.imhof.TagDictionary;
 import ch.epfl.imhof.geometry.ClosedPolyLine;
 import ch.epfl.imhof.projection.*;
 import ch.epfl.imhof.geometry.*;
@@ -19,6 +21,10 @@ import ch.epfl.imhof.geometry.*;
 /**
  * Représente un convertisseur de données OSM en carte
  * 
+ * Les chemins et les relations sont convertis en parallèle. Le convertisseur
+ * n'a pas d'état propre à une conversion et peut donc être utilisé par
+ * plusieurs fils d'exécution à la fois.
+ * 
  * @author Thierry Treyer (235116)
  * @author Dominique Roduit (234868)
  *
@@ -47,7 +53,12 @@ public final class OSMToGeoTransformer {
             Arrays.asList("building", "landuse", "layer", "leisure", "natural",
                     "waterway"));
 
-    private Map.Builder mapBuilder;
+    /* Les valeurs des attributs conservés sont celles que testent les
+     * peintres, elles sont donc indexées */
+    static {
+        FILTER_POLYLINE_ATTRS.forEach(TagDictionary::indexValuesOf);
+        FILTER_POLYGONE_ATTRS.forEach(TagDictionary::indexValuesOf);
+    }
 
     /**
      * Construit un convertisseur d'entités OSM en entités géométriques
@@ -73,22 +84,33 @@ public final class OSMToGeoTransformer {
      * @return Carte géométrique projetée
      */
     public Map transform(OSMMap map) {
-        this.mapBuilder = new Map.Builder();
-
-        for (OSMWay way : map.ways())
-            this.buildWay(way);
-
-        for (OSMRelation relation : map.relations()) {
-            if (isMultipolygon(relation)) {
-                List<Attributed<Polygon>> polygons = this.assemblePolygon(
-                        relation, relation.attributes());
-
-                for (Attributed<Polygon> polygon : polygons)
-                    this.mapBuilder.addPolygon(polygon);
-            }
-        }
-
-        return this.mapBuilder.build();
+        Map.Builder mapBuilder = new Map.Builder();
+
+        /* Les flots parallèles conservent l'ordre de la carte OSM : la carte
+         * produite ne dépend pas du nombre de fils d'exécution */
+        List<Attributed<PolyLine>> polyLines = map.ways().parallelStream()
+                .filter(way -> !this.isArea(way))
+                .map(this::buildPolyLine)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        List<Attributed<Polygon>> areas = map.ways().parallelStream()
+                .filter(this::isArea)
+                .map(this::buildArea)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        List<Attributed<Polygon>> multipolygons = map.relations().parallelStream()
+                .filter(this::isMultipolygon)
+                .flatMap(relation -> this.assemblePolygon(relation,
+                        relation.attributes()).stream())
+                .collect(Collectors.toList());
+
+        polyLines.forEach(mapBuilder::addPolyLine);
+        areas.forEach(mapBuilder::addPolygon);
+        multipolygons.forEach(mapBuilder::addPolygon);
+
+        return mapBuilder.build();
     }
 
     /**
@@ -105,107 +127,62 @@ public final class OSMToGeoTransformer {
     }
 
     /**
-     * Construit le PolyLine ou Polygone associé au chemin donné et y attache
-     * les attributs fitrés.
-     * 
+     * Projette les noeuds du chemin donné dans un bâtisseur de polyligne
+     *
+     * Un noeud partagé par plusieurs chemins est projeté une fois par chemin :
+     * la projection ne coûte que quelques nanosecondes, bien moins que la
+     * recherche de sa position projetée dans une table indexée par
+     * l'identifiant du noeud.
+     *
      * @param way
-     *            Le chemin OSM à transformer en entité géométrique
+     *            Le chemin OSM dont on veut les points
+     * @return Bâtisseur contenant les points projetés du chemin
      */
-    private void buildWay(OSMWay way) {
+    private PolyLine.Builder projectedNodes(OSMWay way) {
         PolyLine.Builder builder = new PolyLine.Builder();
 
         for (OSMNode node : way.nonRepeatingNodes())
             builder.addPoint(this.projection.project(node.position()));
 
-        if (this.isArea(way)) {
-            Polygon polygon = new Polygon(builder.buildClosed());
-            Attributes attr = way.attributes().keepOnlyKeys(
-                    FILTER_POLYGONE_ATTRS);
-
-            if (!attr.isEmpty())
-                this.mapBuilder.addPolygon(new Attributed<Polygon>(polygon,
-                        attr));
-        } else {
-            PolyLine poly = (way.isClosed()) ? builder.buildClosed() : builder
-                    .buildOpen();
-            Attributes attr = way.attributes().keepOnlyKeys(
-                    FILTER_POLYLINE_ATTRS);
-
-            if (!attr.isEmpty())
-                this.mapBuilder
-                        .addPolyLine(new Attributed<PolyLine>(poly, attr));
-        }
+        return builder;
     }
 
     /**
-     * Construction du graphe pour les membres d'une relation ayant le rôle
-     * donné.
+     * Construit le Polygone associé au chemin de type area donné et y attache
+     * les attributs fitrés.
      * 
-     * @param relation
-     *            Relation contenant les membres avec lesquels on veut
-     *            construire le graphe
-     * @param role
-     *            Rôle des membres de la relation dont on veut construire le
-     *            graphe
-     * @return Le graphe pour les membres de la relation ayant le rôle donné
+     * @param way
+     *            Le chemin OSM à transformer en polygone
+     * @return Polygone attribué, ou null s'il ne reste aucun attribut
      */
-    private Graph<OSMNode> buildGraphForRole(OSMRelation relation, String role) {
-        Graph.Builder<OSMNode> graphBuilder = new Graph.Builder<OSMNode>();
-
-        /* Construction du graph */
-        for (OSMRelation.Member member : relation.members()) {
-            if (member.type() != OSMRelation.Member.Type.WAY)
-                continue;
-            if (!member.role().equals(role))
-                continue;
-
-            OSMWay way = (OSMWay) member.member();
-            List<OSMNode> nodes = way.nodes();
-
-            for (int i = 1, l = nodes.size(); i < l; i++) {
-                OSMNode n1 = nodes.get(i - 1);
-                OSMNode n2 = nodes.get(i);
-
-                graphBuilder.addNode(n1);
-                graphBuilder.addNode(n2);
-
-                graphBuilder.addEdge(n1, n2);
-            }
-        }
-
-        Graph<OSMNode> graph = graphBuilder.build();
+    private Attributed<Polygon> buildArea(OSMWay way) {
+        Attributes attr = way.attributes().keepOnlyKeys(FILTER_POLYGONE_ATTRS);
+        if (attr.isEmpty())
+            return null;
 
-        /* Contrôle du nombre de voisins */
-        for (OSMNode node : graph.nodes()) {
-            if (graph.neighborsOf(node).size() != 2)
-                return new Graph<>(new HashMap<>()); // Un graph vide
-        }
+        Polygon polygon = new Polygon(this.projectedNodes(way).buildClosed());
 
-        return graph;
+        return new Attributed<Polygon>(polygon, attr);
     }
 
     /**
-     * Sélectionne un noeud encore non visité parmi l'ensemble des noeuds et le
-     * marque comme visité.
+     * Construit le PolyLine associé au chemin donné, qui n'est pas de type
+     * area, et y attache les attributs fitrés.
      * 
-     * @param nodes
-     *            Ensemble des noeuds
-     * @param visited
-     *            Noeuds déjà visités
-     * @return Noeud encore non visité qui se trouve dans l'ensemble node privé
-     *         de l'ensemble visited ou null si aucun noeud n'a pas déjà été
-     *         visité.
+     * @param way
+     *            Le chemin OSM à transformer en polyligne
+     * @return Polyligne attribuée, ou null s'il ne reste aucun attribut
      */
-    private OSMNode pickUnvisitedNode(Set<OSMNode> nodes, Set<OSMNode> visited) {
-        for (OSMNode node : nodes) {
-            if (!visited.contains(node)) {
-                visited.add(node);
+    private Attributed<PolyLine> buildPolyLine(OSMWay way) {
+        Attributes attr = way.attributes().keepOnlyKeys(FILTER_POLYLINE_ATTRS);
+        if (attr.isEmpty())
+            return null;
 
-                return node;
-            }
-        }
+        PolyLine.Builder builder = this.projectedNodes(way);
+        PolyLine poly = (way.isClosed()) ? builder.buildClosed() : builder
+                .buildOpen();
 
-        return null;
+        return new Attributed<PolyLine>(poly, attr);
     }
 
     /**
@@ -222,30 +199,18 @@ public final class OSMToGeoTransformer {
      *         vide si le calcul des anneaux échoue
      */
     private List<ClosedPolyLine> ringsForRole(OSMRelation relation, String role) {
-        Graph<OSMNode> graph = buildGraphForRole(relation, role);
-
-        Set<OSMNode> nodesSet = graph.nodes();
-        Set<OSMNode> visitedNodes = new HashSet<>();
-
-        List<ClosedPolyLine> rings = new LinkedList<>();
+        RingBuilder ringBuilder = new RingBuilder();
 
-        OSMNode current = null;
-        while ((current = this.pickUnvisitedNode(nodesSet, visitedNodes)) != null) {
-            /* ^ On débute un anneau en sélectionnant un noeud non visité... */
-            PolyLine.Builder builder = new PolyLine.Builder();
-
-            do {
-                builder.addPoint(this.projection.project(current.position()));
-            } while ((current = this.pickUnvisitedNode(
-                    graph.neighborsOf(current), visitedNodes)) != null);
-            /* ^ On parcours successivement les noeuds de l'anneau en
-             * sélectionnant un voisin non-visité du noeud courant
-             */
+        for (OSMRelation.Member member : relation.members()) {
+            if (member.type() != OSMRelation.Member.Type.WAY)
+                continue;
+            if (!member.role().equals(role))
+                continue;
 
-            rings.add(builder.buildClosed());
+            ringBuilder.addWay((OSMWay) member.member());
         }
 
-        return rings;
+        return ringBuilder.rings(this.projection);
     }
 
     /**
@@ -260,6 +225,11 @@ public final class OSMToGeoTransformer {
      * @return true si la polyligne inner est contenue dans la polyligne outer
      */
     private boolean isInside(ClosedPolyLine inner, ClosedPolyLine outer) {
+        /* Un sommet hors de la boîte englobante de outer n'est pas contenu
+         * dans outer */
+        if (!outer.bounds().contains(inner.bounds()))
+            return false;
+
         for (Point p : inner.points()) {
             if (!outer.containsPoint(p))
                 return false;
@@ -291,7 +261,8 @@ public final class OSMToGeoTransformer {
         List<ClosedPolyLine> inners = this.ringsForRole(relation, "inner");
         List<ClosedPolyLine> outers = this.ringsForRole(relation, "outer");
 
-        java.util.Map<ClosedPolyLine, List<ClosedPolyLine>> rawPolygons = new HashMap<>();
+        /* Les polygones sont produits dans l'ordre des anneaux extérieurs */
+        java.util.Map<ClosedPolyLine, List<ClosedPolyLine>> rawPolygons = new LinkedHashMap<>();
         for (ClosedPolyLine outer : outers)
             rawPolygons.put(outer, new LinkedList<>());
 
@@ -0,0 +1,612 @@
+package ch.epfl.imhof.osm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Analyseur de fichiers OSM travaillant directement sur les octets du flux.
+ *
+ * Seul le sous-ensemble de XML utilisé par les fichiers OSM est reconnu :
+ * balises, attributs, commentaires, instructions de traitement et
+ * déclarations. Les identifiants et les coordonnées sont lus sans passer par
+ * des chaînes de caractères, seuls les attributs textuels (clefs, valeurs,
+ * rôles) en créant une.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ */
+final class OSMXMLScanner {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final byte[] NODE = ascii("node");
+    private static final byte[] WAY = ascii("way");
+    private static final byte[] ND = ascii("nd");
+    private static final byte[] TAG = ascii("tag");
+    private static final byte[] RELATION = ascii("relation");
+    private static final byte[] MEMBER = ascii("member");
+
+    /* Puissances de dix représentables exactement par un double */
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1d;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = 10d * POWERS_OF_TEN[i - 1];
+    }
+
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    /**
+     * Type de la balise en cours de lecture
+     */
+    private static enum Element {
+        NODE, WAY, ND, TAG, RELATION, MEMBER, OTHER
+    }
+
+    private final InputStream input;
+    private final OSMEventHandler handler;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    /* Nombre d'octets lus avant le début du tampon */
+    private long consumed = 0;
+
+    private final byte[] name = new byte[16];
+    private int nameLength;
+    private byte[] value = new byte[256];
+    private int valueLength;
+
+    /* Attributs de la balise en cours de lecture */
+    private long id;
+    private long ref;
+    private double lon;
+    private double lat;
+    private String key;
+    private String text;
+    private String role;
+    private String type;
+    private int found;
+
+    private static final int ID = 1, REF = 2, LON = 4, LAT = 8, K = 16, V = 32,
+            ROLE = 64, TYPE = 128;
+
+    /**
+     * Construit un analyseur lisant le flux donné
+     *
+     * @param input
+     *            Flux contenant le fichier OSM, décompressé
+     * @param handler
+     *            Gestionnaire recevant les éléments lus
+     */
+    OSMXMLScanner(InputStream input, OSMEventHandler handler) {
+        this.input = input;
+        this.handler = handler;
+    }
+
+    /**
+     * Lit l'intégralité du flux en transmettant les éléments au gestionnaire
+     *
+     * @throws IOException
+     *             En cas d'erreur d'entrée/sortie
+     * @throws SAXException
+     *             Si le flux n'est pas un fichier OSM bien formé
+     */
+    void scan() throws IOException, SAXException {
+        int c;
+        while ((c = this.read()) != -1) {
+            if (c != '<')
+                continue;
+
+            c = this.next();
+            if (c == '?') {
+                this.skipPast('?', '>');
+            } else if (c == '!') {
+                this.skipDeclaration();
+            } else if (c == '/') {
+                this.skipPast('>');
+                this.handler.end();
+            } else {
+                this.scanElement(c);
+            }
+        }
+    }
+
+    /**
+     * Lit une balise ouvrante (ou vide) dont le premier caractère est donné
+     *
+     * @param first
+     *            Premier caractère du nom de la balise
+     * @throws IOException
+     *             En cas d'erreur d'entrée/sortie
+     * @throws SAXException
+     *             Si la balise est mal formée
+     */
+    private void scanElement(int first) throws IOException, SAXException {
+        int c = this.readName(first);
+        Element element = this.element();
+        boolean empty = false;
+
+        /* Les attributs absents valent null, comme avec SAX */
+        this.found = 0;
+        this.key = this.text = this.role = this.type = null;
+
+        while (true) {
+            c = this.skipWhitespace(c);
+
+            if (c == '>')
+                break;
+            if (c == '/') {
+                if (this.next() != '>')
+                    throw this.error("Balise vide mal formée");
+                empty = true;
+                break;
+            }
+
+            c = this.skipWhitespace(this.readName(c));
+            if (c != '=')
+                throw this.error("Attribut sans valeur");
+
+            int quote = this.skipWhitespace(this.next());
+            if (quote != '"' && quote != '\'')
+                throw this.error("Valeur d'attribut sans guillemets");
+
+            this.readValue(quote);
+            if (element != Element.OTHER) {
+                try {
+                    this.decodeAttribute();
+                } catch (IllegalArgumentException e) {
+                    /* Nombre ou référence d'entité mal formé */
+                    SAXException error = this.error("Valeur d'attribut invalide : " + e.getMessage());
+                    error.initCause(e);
+                    throw error;
+                }
+            }
+
+            c = this.next();
+        }
+
+        switch (element) {
+        case NODE:
+            this.require(ID | LON | LAT);
+            this.handler.startNode(this.id, this.lon, this.lat);
+            break;
+        case WAY:
+            this.require(ID);
+            this.handler.startWay(this.id);
+            break;
+        case ND:
+            this.require(REF);
+            this.handler.nodeRef(this.ref);
+            break;
+        case TAG:
+            this.handler.tag(this.key, this.text);
+            break;
+        case RELATION:
+            this.require(ID);
+            this.handler.startRelation(this.id);
+            break;
+        case MEMBER:
+            this.require(REF | TYPE);
+            this.handler.member(OSMRelation.Member.Type.valueOf(this.type
+                    .toUpperCase()), this.ref, this.role);
+            break;
+        default:
+            this.handler.startOther();
+            break;
+        }
+
+        if (empty)
+            this.handler.end();
+    }
+
+    /**
+     * Décode l'attribut qui vient d'être lu, si la carte en a besoin
+     */
+    private void decodeAttribute() {
+        switch (this.nameLength) {
+        case 1:
+            if (this.name[0] == 'k') {
+                this.key = this.string();
+                this.found |= K;
+            } else if (this.name[0] == 'v') {
+                this.text = this.string();
+                this.found |= V;
+            }
+            break;
+        case 2:
+            if (this.nameIs('i', 'd')) {
+                this.id = this.parseLong();
+                this.found |= ID;
+            }
+            break;
+        case 3:
+            if (this.nameIs('r', 'e', 'f')) {
+                this.ref = this.parseLong();
+                this.found |= REF;
+            } else if (this.nameIs('l', 'o', 'n')) {
+                this.lon = this.parseDouble();
+                this.found |= LON;
+            } else if (this.nameIs('l', 'a', 't')) {
+                this.lat = this.parseDouble();
+                this.found |= LAT;
+            }
+            break;
+        case 4:
+            if (this.nameIs('r', 'o', 'l', 'e')) {
+                this.role = this.string();
+                this.found |= ROLE;
+            } else if (this.nameIs('t', 'y', 'p', 'e')) {
+                this.type = this.string();
+                this.found |= TYPE;
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Vérifie que les attributs donnés ont été lus
+     *
+     * @param attributes
+     *            Masque des attributs requis
+     * @throws SAXException
+     *             Si l'un des attributs manque
+     */
+    private void require(int attributes) throws SAXException {
+        if ((this.found & attributes) != attributes)
+            throw this.error("Attribut requis manquant");
+    }
+
+    /**
+     * Identifie la balise dont le nom vient d'être lu
+     *
+     * @return Type de la balise
+     */
+    private Element element() {
+        if (this.nameEquals(NODE))
+            return Element.NODE;
+        if (this.nameEquals(ND))
+            return Element.ND;
+        if (this.nameEquals(TAG))
+            return Element.TAG;
+        if (this.nameEquals(WAY))
+            return Element.WAY;
+        if (this.nameEquals(MEMBER))
+            return Element.MEMBER;
+        if (this.nameEquals(RELATION))
+            return Element.RELATION;
+        return Element.OTHER;
+    }
+
+    private boolean nameEquals(byte[] expected) {
+        if (this.nameLength != expected.length)
+            return false;
+
+        for (int i = 0; i < expected.length; i++) {
+            if (this.name[i] != expected[i])
+                return false;
+        }
+        return true;
+    }
+
+    private boolean nameIs(char... expected) {
+        for (int i = 0; i < expected.length; i++) {
+            if (this.name[i] != expected[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Lit un nom (de balise ou d'attribut). Seuls les premiers caractères
+     * sont conservés, les noms plus longs ne correspondant à aucun nom
+     * utile.
+     *
+     * @param first
+     *            Premier caractère du nom
+     * @return Premier caractère suivant le nom
+     * @throws IOException
+     *             En cas d'erreur d'entrée/sortie
+     * @throws SAXException
+     *             Si le flux se termine
+     */
+    private int readName(int first) throws IOException, SAXException {
+        int c = first;
+        this.nameLength = 0;
+
+        while (!isWhitespace(c) && c != '=' && c != '/' && c != '>') {
+            if (this.nameLength < this.name.length)
+                this.name[this.nameLength] = (byte)c;
+            this.nameLength += 1;
+            c = this.next();
+        }
+
+        if (this.nameLength > this.name.length)
+            this.nameLength = -1;
+
+        return c;
+    }
+
+    /**
+     * Lit les octets d'une valeur d'attribut, jusqu'au guillemet fermant
+     *
+     * @param quote
+     *            Guillemet délimitant la valeur
+     * @throws IOException
+     *             En cas d'erreur d'entrée/sortie
+     * @throws SAXException
+     *             Si le flux se termine
+     */
+    private void readValue(int quote) throws IOException, SAXException {
+        this.valueLength = 0;
+
+        int c;
+        while ((c = this.next()) != quote) {
+            if (this.valueLength == this.value.length)
+                this.value = Arrays.copyOf(this.value, 2 * this.value.length);
+            this.value[this.valueLength++] = (byte)c;
+        }
+    }
+
+    /**
+     * Interprète la valeur lue comme un entier long
+     *
+     * @return Valeur de l'attribut
+     * @throws NumberFormatException
+     *             Si la valeur n'est pas un entier
+     */
+    private long parseLong() {
+        int i = 0;
+        boolean negative = this.valueLength > 0 && this.value[0] == '-';
+        if (negative)
+            i += 1;
+
+        /* Les valeurs inhabituelles sont laissées à Long.parseLong */
+        if (i == this.valueLength || this.valueLength - i > 18)
+            return Long.parseLong(this.string());
+
+        long result = 0;
+        for (; i < this.valueLength; i++) {
+            int digit = this.value[i] - '0';
+            if (digit < 0 || digit > 9)
+                return Long.parseLong(this.string());
+            result = 10 * result + digit;
+        }
+
+        return negative ? -result : result;
+    }
+
+    /**
+     * Interprète la valeur lue comme un nombre à virgule flottante. Les
+     * nombres décimaux simples, comme les coordonnées OSM, sont calculés en
+     * divisant leur mantisse entière par une puissance de dix : ces deux
+     * valeurs étant exactes, le résultat est arrondi correctement et est
+     * identique à celui de Double.parseDouble.
+     *
+     * @return Valeur de l'attribut
+     * @throws NumberFormatException
+     *             Si la valeur n'est pas un nombre
+     */
+    private double parseDouble() {
+        int i = 0;
+        boolean negative = this.valueLength > 0 && this.value[0] == '-';
+        if (negative)
+            i += 1;
+
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+
+        for (; i < this.valueLength; i++) {
+            int c = this.value[i];
+
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (c >= '0' && c <= '9') {
+                mantissa = 10 * mantissa + (c - '0');
+                digits += 1;
+                if (decimals >= 0)
+                    decimals += 1;
+
+                if (mantissa >= MAX_EXACT_MANTISSA)
+                    return Double.parseDouble(this.string());
+            } else {
+                return Double.parseDouble(this.string());
+            }
+        }
+
+        if (digits == 0 || decimals >= POWERS_OF_TEN.length)
+            return Double.parseDouble(this.string());
+
+        double result = (decimals <= 0) ? mantissa : mantissa / POWERS_OF_TEN[decimals];
+        return negative ? -result : result;
+    }
+
+    /**
+     * Décode la valeur lue en chaîne de caractères, en remplaçant les
+     * références d'entités et en normalisant les blancs comme le fait un
+     * parseur XML.
+     *
+     * @return Valeur de l'attribut
+     */
+    private String string() {
+        boolean plain = true;
+        for (int i = 0; i < this.valueLength && plain; i++) {
+            byte b = this.value[i];
+            plain = b != '&' && b != '\t' && b != '\n' && b != '\r';
+        }
+
+        if (plain)
+            return new String(this.value, 0, this.valueLength, StandardCharsets.UTF_8);
+
+        StringBuilder sb = new StringBuilder(this.valueLength);
+        int start = 0;
+
+        for (int i = 0; i < this.valueLength; i++) {
+            byte b = this.value[i];
+
+            if (b == '\t' || b == '\n' || b == '\r') {
+                sb.append(new String(this.value, start, i - start, StandardCharsets.UTF_8));
+                sb.append(' ');
+                start = i + 1;
+            } else if (b == '&') {
+                int end = i + 1;
+                while (end < this.valueLength && this.value[end] != ';')
+                    end += 1;
+                if (end == this.valueLength)
+                    throw new IllegalArgumentException("Référence d'entité non terminée");
+
+                sb.append(new String(this.value, start, i - start, StandardCharsets.UTF_8));
+                sb.appendCodePoint(entity(new String(this.value, i + 1, end - i - 1,
+                        StandardCharsets.US_ASCII)));
+                i = end;
+                start = end + 1;
+            }
+        }
+        sb.append(new String(this.value, start, this.valueLength - start, StandardCharsets.UTF_8));
+
+        return sb.toString();
+    }
+
+    /**
+     * Retourne le caractère désigné par la référence d'entité donnée
+     *
+     * @param name
+     *            Référence, sans l'esperluette ni le point-virgule
+     * @return Point de code du caractère
+     * @throws IllegalArgumentException
+     *             Si l'entité est inconnue
+     */
+    private static int entity(String name) {
+        switch (name) {
+        case "amp":
+            return '&';
+        case "lt":
+            return '<';
+        case "gt":
+            return '>';
+        case "quot":
+            return '"';
+        case "apos":
+            return '\'';
+        default:
+            if (name.startsWith("#x"))
+                return Integer.parseInt(name.substring(2), 16);
+            if (name.startsWith("#"))
+                return Integer.parseInt(name.substring(1));
+            throw new IllegalArgumentException("Entité inconnue : " + name);
+        }
+    }
+
+    /**
+     * Ignore un commentaire, une section CDATA ou une déclaration
+     *
+     * @throws IOException
+     *             En cas d'erreur d'entrée/sortie
+     * @throws SAXException
+     *             Si le flux se termine
+     */
+    private void skipDeclaration() throws IOException, SAXException {
+        int c = this.next();
+
+        if (c == '-')
+            this.skipPast('-', '-', '>');
+        else if (c == '[')
+            this.skipPast(']', ']', '>');
+        else if (c != '>')
+            this.skipPast('>');
+    }
+
+    /**
+     * Avance jusqu'après la suite de caractères donnée
+     *
+     * @param end
+     *            Suite de caractères terminant la zone ignorée
+     * @throws IOException
+     *             En cas d'erreur d'entrée/sortie
+     * @throws SAXException
+     *             Si le flux se termine avant la suite de caractères
+     */
+    private void skipPast(char... end) throws IOException, SAXException {
+        /* Les derniers caractères lus sont accumulés dans un entier */
+        int expected = 0, mask = 0;
+        for (char c : end) {
+            expected = (expected << 8) | c;
+            mask = (mask << 8) | 0xFF;
+        }
+
+        int last = 0;
+        do {
+            last = ((last << 8) | this.next()) & mask;
+        } while (last != expected);
+    }
+
+    private int skipWhitespace(int c) throws IOException, SAXException {
+        while (isWhitespace(c))
+            c = this.next();
+        return c;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r';
+    }
+
+    /**
+     * Lit l'octet suivant, le flux ne devant pas être terminé
+     *
+     * @return Octet lu
+     * @throws IOException
+     *             En cas d'erreur d'entrée/sortie
+     * @throws SAXException
+     *             Si le flux est terminé
+     */
+    private int next() throws IOException, SAXException {
+        int c = this.read();
+        if (c == -1)
+            throw this.error("Fin de fichier inattendue");
+        return c;
+    }
+
+    /**
+     * Lit l'octet suivant
+     *
+     * @return Octet lu, ou -1 à la fin du flux
+     * @throws IOException
+     *             En cas d'erreur d'entrée/sortie
+     */
+    private int read() throws IOException {
+        if (this.position == this.limit) {
+            this.consumed += this.limit;
+            this.limit = this.input.read(this.buffer);
+            this.position = 0;
+
+            if (this.limit <= 0) {
+                this.limit = 0;
+                return -1;
+            }
+        }
+
+        return this.buffer[this.position++] & 0xFF;
+    }
+
+    /**
+     * Construit l'exception signalant une erreur de format à la position
+     * courante
+     *
+     * @param message
+     *            Description de l'erreur
+     * @return Exception à lever
+     */
+    private SAXException error(String message) {
+        return new SAXException(message + " (octet " + (this.consumed + this.position) + ")");
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,693 @@
+package ch.epfl.imhof.osm;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Lecteur de fichiers OSM au format PBF.
+ *
+ * Le fichier est une suite de blocs compressés indépendants. Ils sont lus
+ * séquentiellement, puis décompressés et décodés en parallèle ; les éléments
+ * de chaque bloc sont enregistrés, puis transmis au gestionnaire dans l'ordre
+ * du fichier. Le gestionnaire reçoit donc exactement la même suite
+ * d'éléments que si le fichier était au format XML.
+ *
+ * Les coordonnées sont calculées en divisant un nombre entier de
+ * nanodegrés par 10^9, ce qui donne le même double que la lecture du
+ * nombre décimal correspondant dans un fichier XML.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ */
+final class PBFReader {
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+    private static final String OSM_HEADER = "OSMHeader";
+    private static final String OSM_DATA = "OSMData";
+    private static final List<String> SUPPORTED_FEATURES = Arrays.asList(
+            "OsmSchema-V0.6", "DenseNodes");
+
+    private static final double NANO = 1e9;
+
+    /**
+     * Constructeur vide non-instanciable
+     */
+    private PBFReader() {
+    }
+
+    /**
+     * Lit le fichier PBF contenu dans le flux donné et transmet ses éléments
+     * au gestionnaire donné
+     *
+     * @param input
+     *            Flux contenant le fichier PBF
+     * @param handler
+     *            Gestionnaire recevant les éléments lus
+     * @param parallelism
+     *            Nombre de blocs décodés simultanément
+     * @throws IOException
+     *             En cas d'erreur d'entrée/sortie ou si le fichier est mal
+     *             formé ou utilise une fonctionnalité non supportée
+     */
+    static void read(InputStream input, OSMEventHandler handler, int parallelism)
+            throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+
+        /* Blocs en cours de décodage, dans l'ordre du fichier. Leur nombre
+         * est borné afin de limiter la mémoire utilisée. */
+        Deque<Future<Recording>> pending = new ArrayDeque<>();
+
+        try {
+            byte[] blob;
+            while ((blob = nextBlob(in)) != null) {
+                if (blob.length == 0)
+                    continue;
+
+                final byte[] data = blob;
+                pending.addLast(executor.submit(() -> decodeBlock(inflate(data))));
+
+                if (pending.size() >= 2 * parallelism)
+                    pending.removeFirst().get().replay(handler);
+            }
+
+            while (!pending.isEmpty())
+                pending.removeFirst().get().replay(handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Lecture du fichier PBF interrompue");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw (Error) cause;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Lit le prochain bloc du fichier. Les blocs d'en-tête sont vérifiés
+     * immédiatement et les blocs de type inconnu ignorés.
+     *
+     * @param in
+     *            Flux contenant le fichier PBF
+     * @return Bloc de données encore compressé, un tableau vide pour un bloc
+     *         sans données, ou null à la fin du fichier
+     * @throws IOException
+     *             En cas d'erreur d'entrée/sortie ou si le fichier est mal
+     *             formé
+     */
+    private static byte[] nextBlob(DataInputStream in) throws IOException {
+        int headerSize;
+        try {
+            headerSize = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+
+        if (headerSize < 0 || headerSize > MAX_HEADER_SIZE)
+            throw new IOException("En-tête de bloc PBF invalide");
+
+        byte[] header = new byte[headerSize];
+        in.readFully(header);
+
+        String type = null;
+        int dataSize = -1;
+
+        ProtobufReader blobHeader = new ProtobufReader(header);
+        while (blobHeader.next()) {
+            switch (blobHeader.field()) {
+            case 1:
+                type = blobHeader.string();
+                break;
+            case 3:
+                dataSize = (int)blobHeader.varint();
+                break;
+            default:
+                blobHeader.skip();
+                break;
+            }
+        }
+
+        if (type == null || dataSize < 0 || dataSize > MAX_BLOB_SIZE)
+            throw new IOException("En-tête de bloc PBF invalide");
+
+        byte[] blob = new byte[dataSize];
+        in.readFully(blob);
+
+        switch (type) {
+        case OSM_HEADER:
+            checkHeader(inflate(blob));
+            return new byte[0];
+        case OSM_DATA:
+            return blob;
+        default:
+            return new byte[0];
+        }
+    }
+
+    /**
+     * Vérifie que toutes les fonctionnalités requises par le fichier sont
+     * supportées
+     *
+     * @param data
+     *            Bloc d'en-tête décompressé
+     * @throws IOException
+     *             Si une fonctionnalité requise n'est pas supportée
+     */
+    private static void checkHeader(byte[] data) throws IOException {
+        ProtobufReader header = new ProtobufReader(data);
+
+        while (header.next()) {
+            if (header.field() == 4) {
+                String feature = header.string();
+                if (!SUPPORTED_FEATURES.contains(feature))
+                    throw new IOException("Fonctionnalité PBF non supportée : " + feature);
+            } else {
+                header.skip();
+            }
+        }
+    }
+
+    /**
+     * Décompresse un bloc
+     *
+     * @param blob
+     *            Bloc tel que stocké dans le fichier
+     * @return Contenu décompressé du bloc
+     * @throws IOException
+     *             Si le bloc est mal formé ou utilise une compression non
+     *             supportée
+     */
+    private static byte[] inflate(byte[] blob) throws IOException {
+        ProtobufReader reader = new ProtobufReader(blob);
+        byte[] zlib = null;
+        int rawSize = -1;
+
+        while (reader.next()) {
+            switch (reader.field()) {
+            case 1:
+                return reader.bytes();
+            case 2:
+                rawSize = (int)reader.varint();
+                break;
+            case 3:
+                zlib = reader.bytes();
+                break;
+            case 4:
+            case 5:
+            case 6:
+            case 7:
+                throw new IOException("Compression PBF non supportée");
+            default:
+                reader.skip();
+                break;
+            }
+        }
+
+        if (zlib == null || rawSize < 0 || rawSize > MAX_BLOB_SIZE)
+            throw new IOException("Bloc PBF invalide");
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(zlib);
+
+            byte[] raw = new byte[rawSize];
+            int length = 0;
+            while (length < rawSize && !inflater.finished()) {
+                int n = inflater.inflate(raw, length, rawSize - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                length += n;
+            }
+
+            if (length != rawSize)
+                throw new IOException("Bloc PBF tronqué");
+
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("Bloc PBF corrompu", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Décode un bloc de données (PrimitiveBlock)
+     *
+     * @param data
+     *            Bloc décompressé
+     * @return Éléments du bloc, dans l'ordre
+     * @throws IOException
+     *             Si le bloc est mal formé
+     */
+    private static Recording decodeBlock(byte[] data) throws IOException {
+        ProtobufReader block = new ProtobufReader(data);
+
+        String[] strings = new String[0];
+        List<ProtobufReader> groups = new ArrayList<>();
+        Coordinates coordinates = new Coordinates();
+
+        /* Les paramètres des coordonnées pouvant suivre les groupes, ceux-ci
+         * ne sont décodés qu'une fois le bloc entièrement parcouru */
+        while (block.next()) {
+            switch (block.field()) {
+            case 1:
+                strings = stringTable(block.message());
+                break;
+            case 2:
+                groups.add(block.message());
+                break;
+            case 17:
+                coordinates.granularity = block.varint();
+                break;
+            case 19:
+                coordinates.latOffset = block.varint();
+                break;
+            case 20:
+                coordinates.lonOffset = block.varint();
+                break;
+            default:
+                block.skip();
+                break;
+            }
+        }
+
+        Recording recording = new Recording();
+        for (ProtobufReader group : groups) {
+            while (group.next()) {
+                switch (group.field()) {
+                case 1:
+                    decodeNode(group.message(), strings, coordinates, recording);
+                    break;
+                case 2:
+                    decodeDenseNodes(group.message(), strings, coordinates, recording);
+                    break;
+                case 3:
+                    decodeWay(group.message(), strings, recording);
+                    break;
+                case 4:
+                    decodeRelation(group.message(), strings, recording);
+                    break;
+                default:
+                    group.skip();
+                    break;
+                }
+            }
+        }
+
+        return recording;
+    }
+
+    /**
+     * Paramètres de conversion des coordonnées d'un bloc en degrés
+     */
+    private static final class Coordinates {
+        long granularity = 100;
+        long latOffset = 0;
+        long lonOffset = 0;
+
+        double longitude(long lon) {
+            return (this.lonOffset + this.granularity * lon) / NANO;
+        }
+
+        double latitude(long lat) {
+            return (this.latOffset + this.granularity * lat) / NANO;
+        }
+    }
+
+    private static String[] stringTable(ProtobufReader table) throws IOException {
+        List<String> strings = new ArrayList<>();
+
+        while (table.next()) {
+            if (table.field() == 1)
+                strings.add(table.string());
+            else
+                table.skip();
+        }
+
+        return strings.toArray(new String[strings.size()]);
+    }
+
+    private static void decodeNode(ProtobufReader node, String[] strings,
+            Coordinates coordinates, Recording recording) throws IOException {
+        long id = 0, lat = 0, lon = 0;
+        ProtobufReader keys = null, values = null;
+
+        while (node.next()) {
+            switch (node.field()) {
+            case 1:
+                id = node.sint64();
+                break;
+            case 2:
+                keys = node.message();
+                break;
+            case 3:
+                values = node.message();
+                break;
+            case 8:
+                lat = node.sint64();
+                break;
+            case 9:
+                lon = node.sint64();
+                break;
+            default:
+                node.skip();
+                break;
+            }
+        }
+
+        recording.startNode(id, coordinates.longitude(lon), coordinates.latitude(lat));
+        decodeTags(keys, values, strings, recording);
+        recording.end();
+    }
+
+    private static void decodeDenseNodes(ProtobufReader dense, String[] strings,
+            Coordinates coordinates, Recording recording) throws IOException {
+        ProtobufReader ids = null, lats = null, lons = null, keysValues = null;
+
+        while (dense.next()) {
+            switch (dense.field()) {
+            case 1:
+                ids = dense.message();
+                break;
+            case 8:
+                lats = dense.message();
+                break;
+            case 9:
+                lons = dense.message();
+                break;
+            case 10:
+                keysValues = dense.message();
+                break;
+            default:
+                dense.skip();
+                break;
+            }
+        }
+
+        if (ids == null)
+            return;
+        if (lats == null || lons == null)
+            throw new IOException("Nœuds PBF sans coordonnées");
+
+        /* Identifiants et coordonnées sont codés par différences successives */
+        long id = 0, lat = 0, lon = 0;
+        while (ids.hasRemaining()) {
+            id += ids.sint64();
+            lat += lats.sint64();
+            lon += lons.sint64();
+
+            recording.startNode(id, coordinates.longitude(lon), coordinates.latitude(lat));
+
+            /* Les attributs de chaque nœud sont terminés par un 0 */
+            if (keysValues != null) {
+                int key;
+                while (keysValues.hasRemaining() && (key = (int)keysValues.varint()) != 0) {
+                    recording.tag(string(strings, key),
+                            string(strings, (int)keysValues.varint()));
+                    recording.end();
+                }
+            }
+
+            recording.end();
+        }
+    }
+
+    private static void decodeWay(ProtobufReader way, String[] strings,
+            Recording recording) throws IOException {
+        long id = 0;
+        ProtobufReader keys = null, values = null, refs = null;
+
+        while (way.next()) {
+            switch (way.field()) {
+            case 1:
+                id = way.varint();
+                break;
+            case 2:
+                keys = way.message();
+                break;
+            case 3:
+                values = way.message();
+                break;
+            case 8:
+                refs = way.message();
+                break;
+            default:
+                way.skip();
+                break;
+            }
+        }
+
+        recording.startWay(id);
+
+        long ref = 0;
+        while (refs != null && refs.hasRemaining()) {
+            ref += refs.sint64();
+            recording.nodeRef(ref);
+            recording.end();
+        }
+
+        decodeTags(keys, values, strings, recording);
+        recording.end();
+    }
+
+    private static void decodeRelation(ProtobufReader relation, String[] strings,
+            Recording recording) throws IOException {
+        long id = 0;
+        ProtobufReader keys = null, values = null, roles = null, memberIds = null,
+                types = null;
+
+        while (relation.next()) {
+            switch (relation.field()) {
+            case 1:
+                id = relation.varint();
+                break;
+            case 2:
+                keys = relation.message();
+                break;
+            case 3:
+                values = relation.message();
+                break;
+            case 8:
+                roles = relation.message();
+                break;
+            case 9:
+                memberIds = relation.message();
+                break;
+            case 10:
+                types = relation.message();
+                break;
+            default:
+                relation.skip();
+                break;
+            }
+        }
+
+        recording.startRelation(id);
+
+        long memberId = 0;
+        while (memberIds != null && memberIds.hasRemaining()) {
+            if (roles == null || types == null)
+                throw new IOException("Membres de relation PBF incomplets");
+
+            memberId += memberIds.sint64();
+            String role = string(strings, (int)roles.varint());
+            OSMRelation.Member.Type type;
+
+            switch ((int)types.varint()) {
+            case 0:
+                type = OSMRelation.Member.Type.NODE;
+                break;
+            case 1:
+                type = OSMRelation.Member.Type.WAY;
+                break;
+            case 2:
+                type = OSMRelation.Member.Type.RELATION;
+                break;
+            default:
+                throw new IOException("Type de membre PBF inconnu");
+            }
+
+            recording.member(type, memberId, role);
+            recording.end();
+        }
+
+        decodeTags(keys, values, strings, recording);
+        recording.end();
+    }
+
+    private static void decodeTags(ProtobufReader keys, ProtobufReader values,
+            String[] strings, Recording recording) throws IOException {
+        if (keys == null)
+            return;
+        if (values == null)
+            throw new IOException("Attributs PBF sans valeurs");
+
+        while (keys.hasRemaining()) {
+            recording.tag(string(strings, (int)keys.varint()),
+                    string(strings, (int)values.varint()));
+            recording.end();
+        }
+    }
+
+    private static String string(String[] strings, int index) throws IOException {
+        if (index < 0 || index >= strings.length)
+            throw new IOException("Chaîne PBF inexistante : " + index);
+        return strings[index];
+    }
+
+    /**
+     * Enregistrement compact d'une suite d'éléments, pouvant être rejouée
+     * plus tard sur un autre gestionnaire
+     */
+    private static final class Recording implements OSMEventHandler {
+        private static final byte NODE = 0, WAY = 1, ND = 2, TAG = 3,
+                RELATION = 4, MEMBER = 5, OTHER = 6, END = 7;
+        private static final OSMRelation.Member.Type[] MEMBER_TYPES =
+                OSMRelation.Member.Type.values();
+
+        private byte[] events = new byte[1024];
+        private int eventCount = 0;
+        private long[] longs = new long[256];
+        private int longCount = 0;
+        private double[] doubles = new double[256];
+        private int doubleCount = 0;
+        private String[] strings = new String[256];
+        private int stringCount = 0;
+
+        private void event(byte event) {
+            if (this.eventCount == this.events.length)
+                this.events = Arrays.copyOf(this.events, 2 * this.eventCount);
+            this.events[this.eventCount++] = event;
+        }
+
+        private void add(long value) {
+            if (this.longCount == this.longs.length)
+                this.longs = Arrays.copyOf(this.longs, 2 * this.longCount);
+            this.longs[this.longCount++] = value;
+        }
+
+        private void add(double value) {
+            if (this.doubleCount == this.doubles.length)
+                this.doubles = Arrays.copyOf(this.doubles, 2 * this.doubleCount);
+            this.doubles[this.doubleCount++] = value;
+        }
+
+        private void add(String value) {
+            if (this.stringCount == this.strings.length)
+                this.strings = Arrays.copyOf(this.strings, 2 * this.stringCount);
+            this.strings[this.stringCount++] = value;
+        }
+
+        @Override
+        public void startNode(long id, double longitude, double latitude) {
+            this.event(NODE);
+            this.add(id);
+            this.add(longitude);
+            this.add(latitude);
+        }
+
+        @Override
+        public void startWay(long id) {
+            this.event(WAY);
+            this.add(id);
+        }
+
+        @Override
+        public void nodeRef(long ref) {
+            this.event(ND);
+            this.add(ref);
+        }
+
+        @Override
+        public void tag(String key, String value) {
+            this.event(TAG);
+            this.add(key);
+            this.add(value);
+        }
+
+        @Override
+        public void startRelation(long id) {
+            this.event(RELATION);
+            this.add(id);
+        }
+
+        @Override
+        public void member(OSMRelation.Member.Type type, long ref, String role) {
+            this.event(MEMBER);
+            this.add(type.ordinal());
+            this.add(ref);
+            this.add(role);
+        }
+
+        @Override
+        public void startOther() {
+            this.event(OTHER);
+        }
+
+        @Override
+        public void end() {
+            this.event(END);
+        }
+
+        /**
+         * Transmet les éléments enregistrés au gestionnaire donné
+         * @param handler Gestionnaire recevant les éléments
+         */
+        void replay(OSMEventHandler handler) {
+            int l = 0, d = 0, s = 0;
+
+            for (int i = 0; i < this.eventCount; i++) {
+                switch (this.events[i]) {
+                case NODE:
+                    handler.startNode(this.longs[l++], this.doubles[d], this.doubles[d + 1]);
+                    d += 2;
+                    break;
+                case WAY:
+                    handler.startWay(this.longs[l++]);
+                    break;
+                case ND:
+                    handler.nodeRef(this.longs[l++]);
+                    break;
+                case TAG:
+                    handler.tag(this.strings[s], this.strings[s + 1]);
+                    s += 2;
+                    break;
+                case RELATION:
+                    handler.startRelation(this.longs[l++]);
+                    break;
+                case MEMBER:
+                    handler.member(MEMBER_TYPES[(int)this.longs[l]], this.longs[l + 1], this.strings[s++]);
+                    l += 2;
+                    break;
+                case OTHER:
+                    handler.startOther();
+                    break;
+                default:
+                    handler.end();
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package ch.epfl.imhof.osm;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Lecteur minimal de messages encodés au format Protocol Buffers, travaillant
+ * sur une portion d'un tableau d'octets.
+ *
+ * Un message est parcouru champ par champ : next passe au champ suivant,
+ * dont le numéro est donné par field, puis l'une des méthodes de lecture
+ * (ou skip) en consomme la valeur.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ */
+final class ProtobufReader {
+    private static final int VARINT = 0;
+    private static final int FIXED64 = 1;
+    private static final int LENGTH_DELIMITED = 2;
+    private static final int FIXED32 = 5;
+
+    private final byte[] data;
+    private final int limit;
+    private int position;
+    private int tag;
+
+    /**
+     * Construit un lecteur parcourant tout le tableau donné
+     * @param data Message encodé
+     */
+    ProtobufReader(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    /**
+     * Construit un lecteur parcourant une portion du tableau donné
+     * @param data Tableau contenant le message encodé
+     * @param offset Position du début du message
+     * @param length Longueur du message
+     */
+    ProtobufReader(byte[] data, int offset, int length) {
+        this.data = data;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * Retourne vrai ssi des octets restent à lire
+     * @return true s'il reste des octets
+     */
+    boolean hasRemaining() {
+        return this.position < this.limit;
+    }
+
+    /**
+     * Passe au champ suivant du message
+     * @return true si un champ a été lu, false à la fin du message
+     * @throws IOException Si le message est tronqué
+     */
+    boolean next() throws IOException {
+        if (!this.hasRemaining())
+            return false;
+
+        this.tag = (int)this.varint();
+        return true;
+    }
+
+    /**
+     * Retourne le numéro du champ courant
+     * @return Numéro du champ
+     */
+    int field() {
+        return this.tag >>> 3;
+    }
+
+    /**
+     * Lit un entier encodé en longueur variable (int32, int64, uint32, enum…)
+     * @return Valeur lue
+     * @throws IOException Si le message est tronqué
+     */
+    long varint() throws IOException {
+        long result = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (this.position >= this.limit)
+                throw new IOException("Message protobuf tronqué");
+
+            byte b = this.data[this.position++];
+            result |= (long)(b & 0x7F) << shift;
+
+            if (b >= 0)
+                return result;
+        }
+
+        throw new IOException("Entier protobuf trop long");
+    }
+
+    /**
+     * Lit un entier signé encodé en zigzag (sint32, sint64)
+     * @return Valeur lue
+     * @throws IOException Si le message est tronqué
+     */
+    long sint64() throws IOException {
+        long v = this.varint();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * Lit la valeur délimitée du champ courant (sous-message, chaîne,
+     * octets ou champ répété compacté)
+     * @return Lecteur limité à la valeur du champ
+     * @throws IOException Si le champ n'est pas délimité ou si le message est tronqué
+     */
+    ProtobufReader message() throws IOException {
+        int length = this.length();
+        ProtobufReader reader = new ProtobufReader(this.data, this.position, length);
+        this.position += length;
+
+        return reader;
+    }
+
+    /**
+     * Lit la valeur du champ courant sous forme d'octets
+     * @return Copie des octets de la valeur
+     * @throws IOException Si le champ n'est pas délimité ou si le message est tronqué
+     */
+    byte[] bytes() throws IOException {
+        int length = this.length();
+        byte[] bytes = Arrays.copyOfRange(this.data, this.position, this.position + length);
+        this.position += length;
+
+        return bytes;
+    }
+
+    /**
+     * Lit la valeur du champ courant sous forme de chaîne UTF-8
+     * @return Chaîne lue
+     * @throws IOException Si le champ n'est pas délimité ou si le message est tronqué
+     */
+    String string() throws IOException {
+        int length = this.length();
+        String s = new String(this.data, this.position, length, StandardCharsets.UTF_8);
+        this.position += length;
+
+        return s;
+    }
+
+    /**
+     * Ignore la valeur du champ courant
+     * @throws IOException Si le type du champ est inconnu ou si le message est tronqué
+     */
+    void skip() throws IOException {
+        switch (this.tag & 7) {
+        case VARINT:
+            this.varint();
+            break;
+        case FIXED64:
+            this.advance(8);
+            break;
+        case LENGTH_DELIMITED:
+            this.advance(this.length());
+            break;
+        case FIXED32:
+            this.advance(4);
+            break;
+        default:
+            throw new IOException("Type de champ protobuf inconnu : " + (this.tag & 7));
+        }
+    }
+
+    /**
+     * Lit la longueur d'une valeur délimitée et vérifie qu'elle tient dans
+     * le message
+     * @return Longueur de la valeur
+     * @throws IOException Si le champ n'est pas délimité ou si le message est tronqué
+     */
+    private int length() throws IOException {
+        if ((this.tag & 7) != LENGTH_DELIMITED)
+            throw new IOException("Le champ protobuf " + this.field() + " n'est pas délimité");
+
+        long length = this.varint();
+        if (length < 0 || length > this.limit - this.position)
+            throw new IOException("Message protobuf tronqué");
+
+        return (int)length;
+    }
+
+    private void advance(int length) throws IOException {
+        if (length > this.limit - this.position)
+            throw new IOException("Message protobuf tronqué");
+        this.position += length;
+    }
+}
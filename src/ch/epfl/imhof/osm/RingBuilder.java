@@ -0,0 +1,176 @@
+package ch.epfl.imhof.osm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.projection.Projection;
+
+/**
+ * Assembleur des anneaux formés par un ensemble de chemins, mis bout à bout
+ * par leurs noeuds communs.
+ *
+ * Les noeuds sont numérotés au moyen d'une table indexée par leur
+ * identifiant, et leurs (au plus deux) voisins sont rangés dans un tableau
+ * d'entiers, de sorte que l'assemblage se fait en temps linéaire sans allouer
+ * d'objet par noeud. Comme pour un graphe, chaque noeud doit avoir exactement
+ * deux voisins distincts ; dans le cas contraire, aucun anneau n'est produit.
+ *
+ * Chaque anneau débute au premier noeud du premier chemin qu'il contient et
+ * suit le sens de ce chemin, de sorte qu'un chemin déjà fermé donne un anneau
+ * identique à lui-même.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ */
+final class RingBuilder {
+    private static final int NONE = -1;
+
+    private final LongIntMap indices = new LongIntMap();
+    private OSMNode[] nodes = new OSMNode[16];
+    /* Voisins du noeud i : neighbors[2 * i] et neighbors[2 * i + 1] */
+    private int[] neighbors = new int[32];
+    private int nodeCount = 0;
+
+    /* Deux premiers noeuds de chaque chemin, qui fixent le début et le sens
+     * des anneaux */
+    private int[] wayStarts = new int[16];
+    private int wayCount = 0;
+
+    private boolean valid = true;
+
+    /**
+     * Ajoute un chemin à l'ensemble des chemins à assembler
+     *
+     * @param way
+     *            Chemin à ajouter
+     */
+    void addWay(OSMWay way) {
+        List<OSMNode> wayNodes = way.nodes();
+        if (!this.valid || wayNodes.size() < 2)
+            return;
+
+        int previous = this.indexOf(wayNodes.get(0));
+
+        if (2 * this.wayCount == this.wayStarts.length)
+            this.wayStarts = Arrays.copyOf(this.wayStarts, 2 * this.wayStarts.length);
+        this.wayStarts[2 * this.wayCount] = previous;
+
+        for (int i = 1, l = wayNodes.size(); i < l; i++) {
+            int current = this.indexOf(wayNodes.get(i));
+            if (i == 1)
+                this.wayStarts[2 * this.wayCount + 1] = current;
+
+            if (!this.link(previous, current) || !this.link(current, previous)) {
+                this.valid = false;
+                return;
+            }
+
+            previous = current;
+        }
+
+        this.wayCount += 1;
+    }
+
+    private int indexOf(OSMNode node) {
+        int index = this.indices.get(node.id());
+        if (index != NONE)
+            return index;
+
+        index = this.nodeCount++;
+        if (index == this.nodes.length) {
+            this.nodes = Arrays.copyOf(this.nodes, 2 * index);
+            this.neighbors = Arrays.copyOf(this.neighbors, 4 * index);
+        }
+
+        this.indices.put(node.id(), index);
+        this.nodes[index] = node;
+        this.neighbors[2 * index] = NONE;
+        this.neighbors[2 * index + 1] = NONE;
+
+        return index;
+    }
+
+    /**
+     * Ajoute to aux voisins de from, s'il n'y figure pas déjà
+     *
+     * @return false si from a alors plus de deux voisins distincts
+     */
+    private boolean link(int from, int to) {
+        int first = this.neighbors[2 * from];
+        if (first == to)
+            return true;
+        if (first == NONE) {
+            this.neighbors[2 * from] = to;
+            return true;
+        }
+
+        int second = this.neighbors[2 * from + 1];
+        if (second == to)
+            return true;
+        if (second == NONE) {
+            this.neighbors[2 * from + 1] = to;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Retourne les anneaux formés par les chemins ajoutés, dans l'ordre des
+     * chemins
+     *
+     * @param projection
+     *            Projection à appliquer à la position des noeuds
+     * @return Anneaux projetés, ou liste vide si un noeud n'a pas exactement
+     *         deux voisins
+     */
+    List<ClosedPolyLine> rings(Projection projection) {
+        if (!this.valid)
+            return new ArrayList<>();
+
+        for (int i = 0; i < this.nodeCount; i++) {
+            if (this.neighbors[2 * i + 1] == NONE)
+                return new ArrayList<>();
+        }
+
+        boolean[] visited = new boolean[this.nodeCount];
+        List<ClosedPolyLine> rings = new ArrayList<>();
+
+        for (int w = 0; w < this.wayCount; w++) {
+            int current = this.wayStarts[2 * w];
+            if (visited[current])
+                continue;
+
+            PolyLine.Builder builder = new PolyLine.Builder();
+            visited[current] = true;
+            builder.addPoint(projection.project(this.nodes[current].position()));
+
+            int preferred = this.wayStarts[2 * w + 1];
+            int next = visited[preferred] ? this.unvisitedNeighbor(current, visited) : preferred;
+
+            while (next != NONE) {
+                current = next;
+                visited[current] = true;
+                builder.addPoint(projection.project(this.nodes[current].position()));
+
+                next = this.unvisitedNeighbor(current, visited);
+            }
+
+            rings.add(builder.buildClosed());
+        }
+
+        return rings;
+    }
+
+    private int unvisitedNeighbor(int node, boolean[] visited) {
+        for (int n = 2 * node; n < 2 * node + 2; n++) {
+            if (!visited[this.neighbors[n]])
+                return this.neighbors[n];
+        }
+
+        return NONE;
+    }
+}
@@ -0,0 +1,443 @@
+package ch.epfl.imhof.painting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+
+/**
+ * Peintre obtenu en aplatissant un arbre de peintres en une suite d'étapes.
+ *
+ * Chaque étape est un peintre élémentaire accompagné des filtres et de la
+ * couche qui s'appliquent à lui. Lors du dessin, chaque entité de la carte
+ * n'est examinée qu'une seule fois : sa couche est lue, chaque filtre
+ * distinct est évalué au plus une fois, et l'entité est rangée dans le
+ * compartiment de toutes les étapes qu'elle satisfait. Les étapes sont
+ * ensuite dessinées dans l'ordre, chacune parcourant son compartiment dans
+ * l'ordre de la carte, ce qui produit exactement les mêmes appels à la toile
+ * que le peintre d'origine.
+ *
+ * Les peintres dont la structure est inconnue (lambdas écrites par
+ * l'utilisateur) deviennent des étapes opaques, auxquelles on passe une carte
+ * ne contenant que les entités satisfaisant leurs filtres.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ */
+final class CompiledPainter implements Painter {
+    private static final int MIN_LAYER = -5;
+    private static final int MAX_LAYER = 5;
+    private static final int ANY_LAYER = Integer.MIN_VALUE;
+
+    private static final byte UNKNOWN = 0;
+    private static final byte MATCH = 1;
+    private static final byte NO_MATCH = 2;
+
+    private final List<Step> steps;
+    private final List<Predicate<Attributed<?>>> predicates;
+    private final Classifier polyLineClassifier;
+    private final Classifier polygonClassifier;
+
+    /**
+     * Compile le peintre donné
+     *
+     * @param painter
+     *            Peintre à compiler
+     */
+    CompiledPainter(Painter painter) {
+        List<Step> steps = new ArrayList<>();
+        flatten(painter, Collections.emptyList(), ANY_LAYER, steps);
+        this.steps = Collections.unmodifiableList(steps);
+
+        /* Numérotation des filtres distincts et des chaînes de filtres */
+        IdentityHashMap<Predicate<Attributed<?>>, Integer> predicateIds = new IdentityHashMap<>();
+        List<Predicate<Attributed<?>>> predicates = new ArrayList<>();
+        int[][] chains = new int[steps.size()][];
+
+        for (int s = 0; s < steps.size(); s++) {
+            List<Predicate<Attributed<?>>> filters = steps.get(s).filters;
+            chains[s] = new int[filters.size()];
+
+            for (int f = 0; f < filters.size(); f++) {
+                Integer id = predicateIds.get(filters.get(f));
+                if (id == null) {
+                    id = predicates.size();
+                    predicateIds.put(filters.get(f), id);
+                    predicates.add(filters.get(f));
+                }
+                chains[s][f] = id;
+            }
+        }
+        this.predicates = predicates;
+
+        this.polyLineClassifier = new Classifier(steps, chains, true);
+        this.polygonClassifier = new Classifier(steps, chains, false);
+    }
+
+    /**
+     * Aplatit récursivement un arbre de peintres en étapes
+     *
+     * @param painter
+     *            Peintre à aplatir
+     * @param filters
+     *            Filtres hérités des peintres englobants
+     * @param layer
+     *            Couche imposée par les peintres englobants, ou ANY_LAYER
+     * @param steps
+     *            Liste à laquelle ajouter les étapes, dans l'ordre de dessin
+     */
+    private static void flatten(Painter painter, List<Predicate<Attributed<?>>> filters, int layer, List<Step> steps) {
+        if (painter instanceof Filtered) {
+            Filtered filtered = (Filtered)painter;
+            List<Predicate<Attributed<?>>> innerFilters = new ArrayList<>(filters);
+            innerFilters.add(filtered.filter);
+
+            flatten(filtered.painter, Collections.unmodifiableList(innerFilters), layer, steps);
+        } else if (painter instanceof Stacked) {
+            Stacked stacked = (Stacked)painter;
+
+            flatten(stacked.below, filters, layer, steps);
+            flatten(stacked.above, filters, layer, steps);
+        } else if (painter instanceof Layered) {
+            /* Une couche déjà imposée ne laisse passer que les entités de
+             * cette couche : les autres couches seraient dessinées à vide */
+            for (int l = MIN_LAYER; l <= MAX_LAYER; l++) {
+                if (layer == ANY_LAYER || layer == l)
+                    flatten(((Layered)painter).painter, filters, l, steps);
+            }
+        } else if (painter instanceof CompiledPainter) {
+            for (Step step : ((CompiledPainter)painter).steps) {
+                if (layer != ANY_LAYER && step.layer != ANY_LAYER && layer != step.layer)
+                    continue;
+
+                List<Predicate<Attributed<?>>> innerFilters = new ArrayList<>(filters);
+                innerFilters.addAll(step.filters);
+
+                steps.add(new Step(step.painter, Collections.unmodifiableList(innerFilters),
+                        (layer == ANY_LAYER) ? step.layer : layer));
+            }
+        } else {
+            steps.add(new Step(painter, filters, layer));
+        }
+    }
+
+    @Override
+    public void drawMap(Map map, Canvas canvas) {
+        List<Attributed<PolyLine>> polyLines = map.polyLines();
+        List<Attributed<Polygon>> polygons = map.polygons();
+
+        int[][] polyLineBuckets = this.polyLineClassifier.classify(polyLines, this.predicates);
+        int[][] polygonBuckets = this.polygonClassifier.classify(polygons, this.predicates);
+
+        for (int s = 0; s < this.steps.size(); s++) {
+            Painter painter = this.steps.get(s).painter;
+
+            if (painter instanceof Primitive) {
+                Primitive primitive = (Primitive)painter;
+
+                if (primitive.drawsPolyLines()) {
+                    for (int i : polyLineBuckets[s])
+                        primitive.drawPolyLine(polyLines.get(i).value(), canvas);
+                } else {
+                    for (int i : polygonBuckets[s])
+                        primitive.drawPolygon(polygons.get(i).value(), canvas);
+                }
+            } else {
+                Map.Builder mb = new Map.Builder();
+                for (int i : polyLineBuckets[s])
+                    mb.addPolyLine(polyLines.get(i));
+                for (int i : polygonBuckets[s])
+                    mb.addPolygon(polygons.get(i));
+
+                painter.drawMap(mb.build(), canvas);
+            }
+        }
+    }
+
+    @Override
+    public Painter compile() {
+        return this;
+    }
+
+    /**
+     * Peintre élémentaire (un seul style) accompagné de ses filtres et de sa
+     * couche
+     */
+    private static final class Step {
+        private final Painter painter;
+        private final List<Predicate<Attributed<?>>> filters;
+        private final int layer;
+
+        private Step(Painter painter, List<Predicate<Attributed<?>>> filters, int layer) {
+            this.painter = painter;
+            this.filters = filters;
+            this.layer = layer;
+        }
+
+        private boolean usesPolyLines() {
+            return !(this.painter instanceof Primitive) || ((Primitive)this.painter).drawsPolyLines();
+        }
+
+        private boolean usesPolygons() {
+            return !(this.painter instanceof Primitive) || !((Primitive)this.painter).drawsPolyLines();
+        }
+    }
+
+    /**
+     * Répartition des entités d'une liste (polylignes ou polygones) entre les
+     * étapes qui les dessinent.
+     *
+     * Les étapes partageant la même chaîne de filtres forment une règle ; une
+     * entité satisfaisant une règle va dans les étapes de cette règle sans
+     * couche imposée, et dans celles dont la couche est la sienne.
+     */
+    private static final class Classifier {
+        private final int stepCount;
+        private final int[][] rules;
+        private final int[][] anyLayerSteps;
+        private final int[][][] layerSteps;
+        private final boolean layered;
+
+        private Classifier(List<Step> steps, int[][] chains, boolean polyLines) {
+            this.stepCount = steps.size();
+
+            HashMap<List<Integer>, Integer> ruleIds = new HashMap<>();
+            List<int[]> rules = new ArrayList<>();
+            List<List<Integer>> anyLayerSteps = new ArrayList<>();
+            List<List<List<Integer>>> layerSteps = new ArrayList<>();
+            boolean layered = false;
+
+            for (int s = 0; s < steps.size(); s++) {
+                Step step = steps.get(s);
+                if (polyLines ? !step.usesPolyLines() : !step.usesPolygons())
+                    continue;
+
+                List<Integer> chain = IntStream.of(chains[s]).boxed().collect(Collectors.toList());
+                Integer rule = ruleIds.get(chain);
+                if (rule == null) {
+                    rule = rules.size();
+                    ruleIds.put(chain, rule);
+                    rules.add(chains[s]);
+                    anyLayerSteps.add(new ArrayList<>());
+
+                    List<List<Integer>> byLayer = new ArrayList<>();
+                    for (int l = MIN_LAYER; l <= MAX_LAYER; l++)
+                        byLayer.add(new ArrayList<>());
+                    layerSteps.add(byLayer);
+                }
+
+                if (step.layer == ANY_LAYER) {
+                    anyLayerSteps.get(rule).add(s);
+                } else {
+                    layerSteps.get(rule).get(step.layer - MIN_LAYER).add(s);
+                    layered = true;
+                }
+            }
+
+            this.rules = rules.toArray(new int[rules.size()][]);
+            this.anyLayerSteps = new int[rules.size()][];
+            this.layerSteps = new int[rules.size()][MAX_LAYER - MIN_LAYER + 1][];
+            for (int r = 0; r < rules.size(); r++) {
+                this.anyLayerSteps[r] = toArray(anyLayerSteps.get(r));
+                for (int l = 0; l <= MAX_LAYER - MIN_LAYER; l++)
+                    this.layerSteps[r][l] = toArray(layerSteps.get(r).get(l));
+            }
+            this.layered = layered;
+        }
+
+        private static int[] toArray(List<Integer> list) {
+            return list.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        /**
+         * Range chaque entité dans le compartiment des étapes qui la dessinent
+         *
+         * @param features
+         *            Entités à répartir
+         * @param predicates
+         *            Filtres distincts du peintre
+         * @return Pour chaque étape, index des entités qu'elle dessine, dans
+         *         l'ordre de la liste
+         */
+        private <T> int[][] classify(List<Attributed<T>> features, List<Predicate<Attributed<?>>> predicates) {
+            int[][] buckets = new int[this.stepCount][];
+            int[] sizes = new int[this.stepCount];
+            for (int s = 0; s < this.stepCount; s++)
+                buckets[s] = new int[0];
+
+            byte[] results = new byte[predicates.size()];
+
+            for (int i = 0; i < features.size(); i++) {
+                Attributed<T> feature = features.get(i);
+                Arrays.fill(results, UNKNOWN);
+
+                int layer = this.layered ? feature.attributes().layer() : ANY_LAYER;
+                boolean knownLayer = MIN_LAYER <= layer && layer <= MAX_LAYER;
+
+                for (int r = 0; r < this.rules.length; r++) {
+                    if (!matches(this.rules[r], feature, predicates, results))
+                        continue;
+
+                    add(buckets, sizes, this.anyLayerSteps[r], i);
+                    if (knownLayer)
+                        add(buckets, sizes, this.layerSteps[r][layer - MIN_LAYER], i);
+                }
+            }
+
+            for (int s = 0; s < this.stepCount; s++)
+                buckets[s] = Arrays.copyOf(buckets[s], sizes[s]);
+
+            return buckets;
+        }
+
+        private static boolean matches(int[] chain, Attributed<?> feature, List<Predicate<Attributed<?>>> predicates, byte[] results) {
+            for (int p : chain) {
+                if (results[p] == UNKNOWN)
+                    results[p] = predicates.get(p).test(feature) ? MATCH : NO_MATCH;
+                if (results[p] == NO_MATCH)
+                    return false;
+            }
+
+            return true;
+        }
+
+        private static void add(int[][] buckets, int[] sizes, int[] steps, int index) {
+            for (int s : steps) {
+                if (sizes[s] == buckets[s].length)
+                    buckets[s] = Arrays.copyOf(buckets[s], Math.max(16, 2 * sizes[s]));
+                buckets[s][sizes[s]++] = index;
+            }
+        }
+    }
+
+    /**
+     * Peintre dessinant toutes les entités d'une sorte avec un seul style
+     */
+    static final class Primitive implements Painter {
+        enum Kind { POLYGON, LINE, OUTLINE }
+
+        private final Kind kind;
+        private final Color color;
+        private final LineStyle style;
+
+        /**
+         * Construit un peintre élémentaire
+         *
+         * @param kind
+         *            Sorte de dessin
+         * @param color
+         *            Couleur de remplissage, pour Kind.POLYGON
+         * @param style
+         *            Style des traits, pour Kind.LINE et Kind.OUTLINE
+         */
+        Primitive(Kind kind, Color color, LineStyle style) {
+            this.kind = kind;
+            this.color = color;
+            this.style = style;
+        }
+
+        private boolean drawsPolyLines() {
+            return this.kind == Kind.LINE;
+        }
+
+        private void drawPolyLine(PolyLine polyLine, Canvas canvas) {
+            canvas.drawPolyline(polyLine, this.style);
+        }
+
+        private void drawPolygon(Polygon polygon, Canvas canvas) {
+            if (this.kind == Kind.POLYGON) {
+                canvas.drawPolygon(polygon, this.color);
+            } else {
+                for (ClosedPolyLine h : polygon.holes())
+                    canvas.drawPolyline(h, this.style);
+
+                canvas.drawPolyline(polygon.shell(), this.style);
+            }
+        }
+
+        @Override
+        public void drawMap(Map map, Canvas canvas) {
+            if (this.drawsPolyLines()) {
+                for (Attributed<PolyLine> p : map.polyLines())
+                    this.drawPolyLine(p.value(), canvas);
+            } else {
+                for (Attributed<Polygon> p : map.polygons())
+                    this.drawPolygon(p.value(), canvas);
+            }
+        }
+    }
+
+    /**
+     * Peintre ne considérant que les entités satisfaisant un filtre
+     */
+    static final class Filtered implements Painter {
+        private final Painter painter;
+        private final Predicate<Attributed<?>> filter;
+
+        Filtered(Painter painter, Predicate<Attributed<?>> filter) {
+            this.painter = painter;
+            this.filter = filter;
+        }
+
+        @Override
+        public void drawMap(Map map, Canvas canvas) {
+            Map.Builder mb = new Map.Builder();
+
+            map.polyLines().stream().filter(this.filter).forEach(mb::addPolyLine);
+            map.polygons().stream().filter(this.filter).forEach(mb::addPolygon);
+
+            this.painter.drawMap(mb.build(), canvas);
+        }
+    }
+
+    /**
+     * Peintre dessinant un peintre par dessus un autre
+     */
+    static final class Stacked implements Painter {
+        private final Painter below;
+        private final Painter above;
+
+        Stacked(Painter below, Painter above) {
+            this.below = below;
+            this.above = above;
+        }
+
+        @Override
+        public void drawMap(Map map, Canvas canvas) {
+            this.below.drawMap(map, canvas);
+            this.above.drawMap(map, canvas);
+        }
+    }
+
+    /**
+     * Peintre dessinant la carte couche par couche, de la couche -5 à la
+     * couche +5
+     */
+    static final class Layered implements Painter {
+        private final Painter painter;
+
+        Layered(Painter painter) {
+            this.painter = painter;
+        }
+
+        @Override
+        public void drawMap(Map map, Canvas canvas) {
+            IntStream.iterate(MAX_LAYER, i -> i - 1)
+                .limit(MAX_LAYER - MIN_LAYER + 1)
+                .mapToObj( layer -> this.painter.when(Filters.onLayer(layer)) )
+                .reduce( (la, lb) -> la.above(lb) )
+                .ifPresent( painter -> painter.drawMap(map, canvas) );
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package ch.epfl.imhof.painting;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.stream.IntStream;
+
+/**
+ * Composition d'images par multiplication de leurs couleurs, telle que celle
+ * du relief ombré et de la carte.
+ *
+ * Les pixels sont lus et écrits directement dans les tampons des images
+ * lorsque celles-ci sont de type TYPE_INT_RGB ou TYPE_INT_ARGB, et les
+ * composantes sont multipliées en arithmétique entière. Les lignes sont
+ * traitées en parallèle, chacune dans l'ordre de la mémoire.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ */
+public final class Compositor {
+    /**
+     * Constructeur vide non-instanciable
+     */
+    private Compositor() {}
+
+    /**
+     * Retourne une nouvelle image dont chaque pixel est le produit des
+     * couleurs des pixels correspondants des deux images données, comme le
+     * calcule Color.multiplyWith
+     *
+     * @param back
+     *            Image arrière
+     * @param front
+     *            Image superposée
+     * @return Image résultant de la multiplication des deux images, de type
+     *         TYPE_INT_RGB
+     * @throws IllegalArgumentException
+     *             Si les images n'ont pas la même taille
+     */
+    public static BufferedImage multiply(BufferedImage back, BufferedImage front) {
+        checkSameSize(back, front);
+
+        BufferedImage composed = new BufferedImage(back.getWidth(), back.getHeight(),
+                BufferedImage.TYPE_INT_RGB);
+        multiply(back, front, composed);
+
+        return composed;
+    }
+
+    /**
+     * Multiplie, en place, les couleurs de l'image de destination par celles
+     * de l'image donnée, sans allouer de troisième image
+     *
+     * @param image
+     *            Image à multiplier, par exemple le relief
+     * @param destination
+     *            Image modifiée, par exemple l'image de la carte
+     * @throws IllegalArgumentException
+     *             Si les images n'ont pas la même taille
+     */
+    public static void multiplyInto(BufferedImage image, BufferedImage destination) {
+        checkSameSize(image, destination);
+
+        multiply(image, destination, destination);
+    }
+
+    private static void checkSameSize(BufferedImage a, BufferedImage b) {
+        if (a.getWidth() != b.getWidth() || a.getHeight() != b.getHeight())
+            throw new IllegalArgumentException("Les images n'ont pas la même taille");
+    }
+
+    /**
+     * Écrit dans l'image composed le produit des images back et front, qui
+     * peuvent être composed elle-même
+     */
+    private static void multiply(BufferedImage back, BufferedImage front, BufferedImage composed) {
+        int width = composed.getWidth();
+        Pixels b = Pixels.of(back), f = Pixels.of(front), c = Pixels.of(composed);
+
+        IntStream.range(0, composed.getHeight()).parallel().forEach(y -> {
+            if (b != null && f != null && c != null) {
+                multiplyRow(b.data, b.index(0, y), f.data, f.index(0, y), c.data, c.index(0, y),
+                        c.opaque, width);
+            } else {
+                /* Images d'un autre type : une ligne est copiée à la fois */
+                int[] backRow = back.getRGB(0, y, width, 1, null, 0, width);
+                int[] frontRow = front.getRGB(0, y, width, 1, null, 0, width);
+
+                multiplyRow(backRow, 0, frontRow, 0, backRow, 0, true, width);
+                composed.setRGB(0, y, width, 1, backRow, 0, width);
+            }
+        });
+    }
+
+    /**
+     * Multiplie une ligne de pixels empaquetés (0xAARRGGBB)
+     *
+     * @param opaque
+     *            Vrai si la composante alpha des pixels produits doit être
+     *            opaque
+     */
+    private static void multiplyRow(int[] back, int backIndex, int[] front, int frontIndex,
+            int[] composed, int composedIndex, boolean opaque, int width) {
+        int alpha = opaque ? 0xFF000000 : 0;
+
+        for (int x = 0; x < width; x++) {
+            int p = back[backIndex + x];
+            int q = front[frontIndex + x];
+
+            int r = multiply((p >>> 16) & 0xFF, (q >>> 16) & 0xFF);
+            int g = multiply((p >>> 8) & 0xFF, (q >>> 8) & 0xFF);
+            int b = multiply(p & 0xFF, q & 0xFF);
+
+            composed[composedIndex + x] = alpha | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    /**
+     * Produit de deux composantes de couleur dans [0;255], arrondi vers le
+     * bas : ⌊a·b/255⌋, calculé sans division
+     */
+    private static int multiply(int a, int b) {
+        int p = a * b;
+        return (p + 1 + (p >>> 8)) >>> 8;
+    }
+
+    /**
+     * Accès direct au tampon d'une image dont les pixels sont des entiers
+     * 0x(AA)RRGGBB
+     */
+    private static final class Pixels {
+        private final int[] data;
+        private final int origin;
+        private final int stride;
+        private final boolean opaque;
+
+        private Pixels(int[] data, int origin, int stride, boolean opaque) {
+            this.data = data;
+            this.origin = origin;
+            this.stride = stride;
+            this.opaque = opaque;
+        }
+
+        /**
+         * Retourne l'accès direct au tampon de l'image donnée, qui peut être
+         * une sous-image
+         *
+         * @return Accès au tampon, ou null si l'image n'est pas de type
+         *         TYPE_INT_RGB ou TYPE_INT_ARGB
+         */
+        static Pixels of(BufferedImage image) {
+            int type = image.getType();
+            if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB)
+                return null;
+
+            Raster raster = image.getRaster();
+            if (!(raster.getDataBuffer() instanceof DataBufferInt)
+                    || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel))
+                return null;
+
+            DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+            SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) raster.getSampleModel();
+
+            int origin = buffer.getOffset() + model.getOffset(
+                    -raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+
+            return new Pixels(buffer.getData(), origin, model.getScanlineStride(),
+                    type == BufferedImage.TYPE_INT_ARGB);
+        }
+
+        int index(int x, int y) {
+            return this.origin + y * this.stride + x;
+        }
+    }
+}
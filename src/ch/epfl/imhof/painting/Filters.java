@@ -1,17 +1,19 @@
 package ch.epfl.imhof.painting;
 
 import java.util.Arrays;
-import java.util.Set;
-import java.util.HashSet;
 import java.util.function.Predicate;
 
 import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.TagDictionary;
 
 /**
  * Filtres permettant de déterminer, étant donnée une entité attribuée,
  * si elle doit être gardée ou non.
  * 
  * Les filtres sont représentés au moyen de prédicats .
+ * Les noms et valeurs d'attributs sont traduits une fois pour toutes en
+ * identifiants (cf. TagDictionary), de sorte que l'évaluation d'un filtre se
+ * réduit à des comparaisons d'entiers.
  * 
  * @author Thierry Treyer (235116)
  * @author Dominique Roduit (234868)
@@ -30,7 +32,9 @@ public final class Filters {
      * @return Prédicat (cf. description de méthode)
      */
     public static Predicate<Attributed<?>> tagged(String attr) {
-        return (x) -> x.hasAttribute(attr);
+        int key = TagDictionary.id(attr);
+
+        return (x) -> x.attributes().contains(key);
     }
     
     /**
@@ -43,9 +47,18 @@ public final class Filters {
      * @return Prédicat (cf. description de méthode)
      */
     public static Predicate<Attributed<?>> tagged(String attr, String... values) {
-        Set<String> vals = new HashSet<>(Arrays.asList(values));
-            
-        return (x) -> x.hasAttribute(attr) && vals.contains(x.attributeValue(attr));
+        TagDictionary.indexValuesOf(attr);
+        int key = TagDictionary.id(attr);
+        int[] vals = Arrays.stream(values).distinct().mapToInt(TagDictionary::id).toArray();
+
+        return (x) -> {
+            int value = x.attributes().valueId(key);
+            for (int v : vals) {
+                if (v == value)
+                    return true;
+            }
+            return false;
+        };
     }
 
     /**
@@ -57,7 +70,9 @@ public final class Filters {
      * @return Prédicat (cf. description de méthode)
      */
     public static Predicate<Attributed<?>> notTagged (String attr) {
-        return (x) -> !x.hasAttribute(attr);
+        int key = TagDictionary.id(attr);
+
+        return (x) -> !x.attributes().contains(key);
     }
     
     /**
@@ -67,6 +82,6 @@ public final class Filters {
      * @return Prédicat (cf. description de méthode)
      */
     public static Predicate<Attributed<?>> onLayer(int layer) {
-        return (x) -> x.attributeValue("layer", 0) == layer;
+        return (x) -> x.attributes().layer() == layer;
     }
 }
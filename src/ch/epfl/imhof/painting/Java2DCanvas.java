@@ -1,7 +1,5 @@
 package ch.epfl.imhof.painting;
 
-import java.util.function.Function;
-
 import java.awt.Graphics2D;
 import java.awt.geom.Area;
 import java.awt.geom.Path2D;
@@ -26,7 +24,8 @@ public final class Java2DCanvas implements Canvas {
     private final BufferedImage image;    
     private final Graphics2D ctx;
 
-    private final Function<Point, Point> transform;
+    /* Coefficients du changement de repère vers la toile */
+    private final double ax, bx, ay, by;
     
     /**
      * Construit une image de la toile
@@ -42,7 +41,11 @@ public final class Java2DCanvas implements Canvas {
 
         Point canvasBottomLeft = new Point(0, height / pica);
         Point canvasTopRight   = new Point(width / pica, 0);
-        this.transform = Point.alignedCoordinateChange(bottomLeft, canvasBottomLeft, topRight, canvasTopRight);
+        double[] c = Point.alignedCoordinateChangeCoefficients(bottomLeft, canvasBottomLeft, topRight, canvasTopRight);
+        this.ax = c[0];
+        this.bx = c[1];
+        this.ay = c[2];
+        this.by = c[3];
         
         this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
         this.ctx = image.createGraphics();
@@ -80,17 +83,14 @@ public final class Java2DCanvas implements Canvas {
      * @return Chemin 2D de la polyligne donnée
      */
     private Path2D getPath(PolyLine polyline) {
-        Path2D path = new Path2D.Double();
+        int count = polyline.pointCount();
+        Path2D path = new Path2D.Double(Path2D.WIND_NON_ZERO, count);
         
         /* Un PolyLine a toujours au moins un point */
-        Point firstPoint = this.transform.apply(polyline.firstPoint());
-        path.moveTo(firstPoint.x(), firstPoint.y());
+        path.moveTo(this.ax * polyline.x(0) + this.bx, this.ay * polyline.y(0) + this.by);
 
-        polyline.points()
-            .stream()
-            .skip(1)
-            .map(this.transform)
-            .forEach( p -> path.lineTo(p.x(), p.y()) );
+        for (int i = 1; i < count; i++)
+            path.lineTo(this.ax * polyline.x(i) + this.bx, this.ay * polyline.y(i) + this.by);
         
         if (polyline.isClosed())
             path.closePath();
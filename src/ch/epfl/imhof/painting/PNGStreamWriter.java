@@ -0,0 +1,264 @@
+package ch.epfl.imhof.painting;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Écrivain d'images PNG (RGB, 8 bits par composante) recevant les lignes de
+ * l'image les unes après les autres, de haut en bas. Seules la ligne courante
+ * et la précédente sont conservées en mémoire, quelle que soit la taille de
+ * l'image.
+ *
+ * Comme le fait libpng, chaque ligne est filtrée avec celui des cinq filtres
+ * PNG qui donne la plus petite somme des différences absolues.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ */
+public final class PNGStreamWriter implements AutoCloseable {
+    private static final byte[] SIGNATURE = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private static final int NONE = 0, SUB = 1, UP = 2, AVERAGE = 3, PAETH = 4;
+
+    private final OutputStream out;
+    private final int width;
+    private final int height;
+    private final Deflater deflater;
+    private final DeflaterOutputStream idat;
+
+    /* Ligne courante et ligne précédente, non filtrées, puis ligne filtrée
+     * précédée du type de filtre, pour chacun des filtres */
+    private byte[] row, previousRow;
+    private final byte[][] filtered = new byte[5][];
+
+    private int rowsWritten = 0;
+
+    /**
+     * Construit un écrivain d'image PNG de la taille donnée, et écrit
+     * l'en-tête de l'image dans le flot donné
+     *
+     * @param out
+     *            Flot de destination, fermé par la méthode close
+     * @param width
+     *            Largeur de l'image (en pixels)
+     * @param height
+     *            Hauteur de l'image (en pixels)
+     * @throws IllegalArgumentException
+     *             Si l'une des dimensions n'est pas strictement positive
+     * @throws IOException
+     *             En cas d'erreur d'écriture
+     */
+    public PNGStreamWriter(OutputStream out, int width, int height) throws IOException {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Les dimensions de l'image doivent être positives");
+
+        this.out = out;
+        this.width = width;
+        this.height = height;
+
+        this.row = new byte[3 * width];
+        this.previousRow = new byte[3 * width];
+        for (int f = NONE; f <= PAETH; f++) {
+            this.filtered[f] = new byte[1 + 3 * width];
+            this.filtered[f][0] = (byte) f;
+        }
+
+        out.write(SIGNATURE);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(header);
+        data.writeInt(width);
+        data.writeInt(height);
+        data.writeByte(8); // Bits par composante
+        data.writeByte(2); // Couleurs RGB
+        data.writeByte(0); // Compression deflate
+        data.writeByte(0); // Filtrage adaptatif
+        data.writeByte(0); // Pas d'entrelacement
+        writeChunk(out, "IHDR", header.toByteArray(), header.size());
+
+        this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        this.idat = new DeflaterOutputStream(new ChunkOutputStream(out), this.deflater, CHUNK_SIZE);
+    }
+
+    /**
+     * Ajoute les lignes données à l'image, à la suite des lignes déjà
+     * écrites
+     *
+     * @param pixels
+     *            Pixels des lignes, empaquetés en 0xRRGGBB (l'éventuelle
+     *            composante alpha est ignorée)
+     * @param offset
+     *            Position du premier pixel de la première ligne
+     * @param stride
+     *            Écart entre les positions de deux lignes successives
+     * @param rows
+     *            Nombre de lignes à ajouter
+     * @throws IllegalArgumentException
+     *             Si l'image compte moins de lignes que celles déjà écrites et
+     *             ajoutées
+     * @throws IOException
+     *             En cas d'erreur d'écriture
+     */
+    public void writeRows(int[] pixels, int offset, int stride, int rows) throws IOException {
+        if (this.rowsWritten + rows > this.height)
+            throw new IllegalArgumentException("L'image ne compte que " + this.height + " lignes");
+
+        for (int y = 0; y < rows; y++) {
+            int start = offset + y * stride;
+            byte[] row = this.row;
+
+            for (int x = 0, i = 0; x < this.width; x++) {
+                int p = pixels[start + x];
+                row[i++] = (byte) (p >>> 16);
+                row[i++] = (byte) (p >>> 8);
+                row[i++] = (byte) p;
+            }
+
+            this.idat.write(this.filter());
+
+            this.row = this.previousRow;
+            this.previousRow = row;
+            this.rowsWritten += 1;
+        }
+    }
+
+    /**
+     * Filtre la ligne courante avec chacun des filtres PNG
+     *
+     * @return Ligne filtrée (précédée du type de filtre) dont la somme des
+     *         différences absolues est la plus petite
+     */
+    private byte[] filter() {
+        byte[] row = this.row, up = this.previousRow;
+        byte[] none = this.filtered[NONE], sub = this.filtered[SUB], upF = this.filtered[UP];
+        byte[] average = this.filtered[AVERAGE], paeth = this.filtered[PAETH];
+        long[] sums = new long[5];
+
+        for (int i = 0; i < row.length; i++) {
+            int x = row[i] & 0xFF;
+            int a = (i >= 3) ? row[i - 3] & 0xFF : 0;
+            int b = up[i] & 0xFF;
+            int c = (i >= 3) ? up[i - 3] & 0xFF : 0;
+
+            none[i + 1] = (byte) x;
+            sub[i + 1] = (byte) (x - a);
+            upF[i + 1] = (byte) (x - b);
+            average[i + 1] = (byte) (x - ((a + b) >>> 1));
+            paeth[i + 1] = (byte) (x - paethPredictor(a, b, c));
+
+            sums[NONE] += Math.abs(none[i + 1]);
+            sums[SUB] += Math.abs(sub[i + 1]);
+            sums[UP] += Math.abs(upF[i + 1]);
+            sums[AVERAGE] += Math.abs(average[i + 1]);
+            sums[PAETH] += Math.abs(paeth[i + 1]);
+        }
+
+        int best = NONE;
+        for (int f = SUB; f <= PAETH; f++) {
+            if (sums[f] < sums[best])
+                best = f;
+        }
+
+        return this.filtered[best];
+    }
+
+    private static int paethPredictor(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+
+        if (pa <= pb && pa <= pc)
+            return a;
+        else if (pb <= pc)
+            return b;
+        else
+            return c;
+    }
+
+    /**
+     * Termine l'image et ferme le flot de destination
+     *
+     * @throws IllegalStateException
+     *             Si toutes les lignes de l'image n'ont pas été écrites
+     * @throws IOException
+     *             En cas d'erreur d'écriture
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (this.rowsWritten != this.height)
+                throw new IllegalStateException("Seules " + this.rowsWritten + " des "
+                        + this.height + " lignes de l'image ont été écrites");
+
+            /* Le dernier bloc IDAT, incomplet, n'est écrit qu'au vidage */
+            this.idat.finish();
+            this.idat.flush();
+            writeChunk(this.out, "IEND", new byte[0], 0);
+        } finally {
+            this.deflater.end();
+            this.out.close();
+        }
+    }
+
+    /**
+     * Écrit un bloc PNG (longueur, type, données et somme de contrôle)
+     */
+    private static void writeChunk(OutputStream out, String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+
+        DataOutputStream chunk = new DataOutputStream(out);
+        chunk.writeInt(length);
+        chunk.write(typeBytes);
+        chunk.write(data, 0, length);
+        chunk.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Flot découpant les données compressées en blocs IDAT
+     */
+    private static final class ChunkOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int size = 0;
+
+        ChunkOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, CHUNK_SIZE - this.size);
+                System.arraycopy(b, off, this.buffer, this.size, n);
+                this.size += n;
+                off += n;
+                len -= n;
+
+                if (this.size == CHUNK_SIZE)
+                    this.flush();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (this.size > 0) {
+                writeChunk(this.out, "IDAT", this.buffer, this.size);
+                this.size = 0;
+            }
+        }
+    }
+}
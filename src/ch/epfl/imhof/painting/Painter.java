@@ -1,13 +1,9 @@
 package ch.epfl.imhof.painting;
 
 import java.util.function.Predicate;
-import java.util.stream.IntStream;
 
 import ch.epfl.imhof.Attributed;
 import ch.epfl.imhof.Map;
-import ch.epfl.imhof.geometry.ClosedPolyLine;
-import ch.epfl.imhof.geometry.PolyLine;
-import ch.epfl.imhof.geometry.Polygon;
 import ch.epfl.imhof.painting.LineStyle.LineCap;
 import ch.epfl.imhof.painting.LineStyle.LineJoin;
 
@@ -32,10 +28,7 @@ public interface Painter {
      * @return Peintre de base (cf. description de la méthode)
      */
     public static Painter polygon(Color color) {
-        return (map, canvas) -> {
-            for(Attributed<Polygon> p : map.polygons())
-                canvas.drawPolygon(p.value(), color);
-        };
+        return new CompiledPainter.Primitive(CompiledPainter.Primitive.Kind.POLYGON, color, null);
     }
 
     /**
@@ -44,10 +37,7 @@ public interface Painter {
      * @return Peintre de base (cf. description de la méthode)
      */
     public static Painter line(LineStyle style) {
-        return (map, canvas) -> {
-            for(Attributed<PolyLine> p : map.polyLines())
-                canvas.drawPolyline(p.value(), style);
-        };
+        return new CompiledPainter.Primitive(CompiledPainter.Primitive.Kind.LINE, null, style);
     }
     
     /**
@@ -80,14 +70,7 @@ public interface Painter {
      * @return Peintre de base (cf. description de la méthode)
      */
     public static Painter outline(LineStyle style) {
-        return (map, canvas) -> {
-            for(Attributed<Polygon> p : map.polygons()) {
-                for(ClosedPolyLine h : p.value().holes())
-                    canvas.drawPolyline(h, style);
-                
-                canvas.drawPolyline(p.value().shell(), style);
-            }
-        };
+        return new CompiledPainter.Primitive(CompiledPainter.Primitive.Kind.OUTLINE, null, style);
     }
     
     /**
@@ -122,14 +105,7 @@ public interface Painter {
      * @return Peintre de base (cf. description de la méthode)
      */
     public default Painter when(Predicate<Attributed<?>> p) {
-        return (map, canvas) -> {
-            Map.Builder mb = new Map.Builder();
-
-            map.polyLines().stream().filter(p).forEach(mb::addPolyLine);
-            map.polygons().stream().filter(p).forEach(mb::addPolygon);
-
-            this.drawMap(mb.build(), canvas);
-        };
+        return new CompiledPainter.Filtered(this, p);
     }
     
     /**
@@ -139,10 +115,7 @@ public interface Painter {
      * @return Peintre de base (cf. description de la méthode)
      */
     public default Painter above(Painter p) {
-        return (map, canvas) -> {
-            p.drawMap(map, canvas);
-            this.drawMap(map, canvas);
-        };
+        return new CompiledPainter.Stacked(p, this);
     }
     
     /**
@@ -152,13 +125,19 @@ public interface Painter {
      * @return Peintre de base (cf. description de la méthode)
      */
     public default Painter layered() {
-        return (map, canvas) -> {
-            IntStream.iterate(5, i -> i - 1)
-                .limit(11)
-                .mapToObj( layer -> this.when(Filters.onLayer(layer)) )
-                .reduce( (la, lb) -> la.above(lb) )
-                .ifPresent( painter -> painter.drawMap(map, canvas) );
-        };
+        return new CompiledPainter.Layered(this);
     }
-    
+
+    /**
+     * Retourne un peintre produisant exactement le même dessin que celui-ci,
+     * mais qui ne parcourt la carte qu'une seule fois au lieu de la filtrer à
+     * nouveau pour chaque appel à when et pour chaque couche.
+     * Les peintres définis autrement qu'au moyen des méthodes de cette
+     * interface sont conservés tels quels dans le peintre compilé.
+     * @return Peintre compilé
+     */
+    public default Painter compile() {
+        return new CompiledPainter(this);
+    }
+
 }
@@ -5,8 +5,7 @@ import ch.epfl.imhof.geometry.PolyLine;
 import ch.epfl.imhof.geometry.ClosedPolyLine;
 import ch.epfl.imhof.geometry.Polygon;
 
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.Formatter;
 
 import java.util.Set;
 import java.util.HashSet;
@@ -64,7 +63,8 @@ public final class SVGCanvas implements Canvas {
     private final int height;
     private final double pica;
 
-    private final Function<Point, Point> transform;
+    /* Coefficients du changement de repère vers la toile */
+    private final double ax, bx, ay, by;
 
     private final Set<LineStyle> lineStyles;
     private final Set<Color> polygonStyles;
@@ -91,7 +91,11 @@ public final class SVGCanvas implements Canvas {
 
         Point canvasBottomLeft = new Point(0, height / pica);
         Point canvasTopRight   = new Point(width / pica, 0);
-        this.transform = Point.alignedCoordinateChange(bottomLeft, canvasBottomLeft, topRight, canvasTopRight);
+        double[] c = Point.alignedCoordinateChangeCoefficients(bottomLeft, canvasBottomLeft, topRight, canvasTopRight);
+        this.ax = c[0];
+        this.bx = c[1];
+        this.ay = c[2];
+        this.by = c[3];
         
         // Création du document
         this.doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
@@ -123,13 +127,17 @@ public final class SVGCanvas implements Canvas {
         Element path = this.doc.createElement("path");
 
         // Création d'un chemin SVG
-        String pathData = polyline.points()
-                .stream()
-                .map(this.transform)
-                .map(p -> String.format("%f %f", p.x(), p.y()))
-                .collect(Collectors.joining(" L ", "M", (polyline.isClosed()) ? " Z" : ""));
+        StringBuilder pathData = new StringBuilder("M");
+        Formatter formatter = new Formatter(pathData);
+        for (int i = 0; i < polyline.pointCount(); i++) {
+            if (i > 0)
+                pathData.append(" L ");
+            formatter.format("%f %f", this.ax * polyline.x(i) + this.bx, this.ay * polyline.y(i) + this.by);
+        }
+        if (polyline.isClosed())
+            pathData.append(" Z");
 
-        path.setAttribute("d", pathData);
+        path.setAttribute("d", pathData.toString());
 
         return path;
     }
@@ -210,6 +218,19 @@ public final class SVGCanvas implements Canvas {
      * @param filepath Le chemin du fichier en sortie
      */
     public void write (String filepath) throws TransformerConfigurationException, TransformerException {
+        this.write(new StreamResult(new File(filepath)));
+    }
+
+    /**
+     * Écrit l'image vectorielle dans le flot donné, sans le fermer.
+     *
+     * @param out Le flot de sortie
+     */
+    public void write (OutputStream out) throws TransformerConfigurationException, TransformerException {
+        this.write(new StreamResult(out));
+    }
+
+    private void write (StreamResult result) throws TransformerConfigurationException, TransformerException {
         // Ajout des styles de base
         StringBuilder styleBuilder = new StringBuilder();
         styleBuilder.append(String.format("* { transform: scale(%f, %f); }", pica, pica));
@@ -234,7 +255,6 @@ public final class SVGCanvas implements Canvas {
         // Transformation du DOM en document XML
         Transformer t = TransformerFactory.newInstance().newTransformer();
         DOMSource source = new DOMSource(doc);
-        StreamResult result = new StreamResult(new File(filepath));
 
         t.transform(source, result);
     }
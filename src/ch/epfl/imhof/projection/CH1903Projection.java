@@ -8,51 +8,181 @@ import ch.epfl.imhof.geometry.Point;
  * coordonnées WGS84. Cette projection utilise les formules de projection de
  * Mercator, modifée pour se conformer aux coordonnées en CH1903.
  *
+ * Les versions par tableaux des méthodes de projection sont de simples
+ * boucles sans allocation ni branchement, que le compilateur JIT peut
+ * vectoriser ; elles donnent exactement les mêmes valeurs que les versions
+ * point par point.
+ *
  * @author Thierry Treyer (235116)
  * @author Dominique Roduit (234868)
  */
 public final class CH1903Projection implements Projection {
     public Point project(PointGeo pg) {
-        double lon = Math.toDegrees(pg.longitude());
-        double lat = Math.toDegrees(pg.latitude());
+        double lon1 = projectionLongitude(pg.longitude());
+        double lat1 = projectionLatitude(pg.latitude());
+
+        return new Point(projectedX(lon1, lat1), projectedY(lon1, lat1));
+    }
+
+    public PointGeo inverse(Point p) {
+        double x1 = inverseX(p.x());
+        double y1 = inverseY(p.y());
+
+        return new PointGeo(inverseLongitude(x1, y1), inverseLatitude(x1, y1));
+    }
+
+    @Override
+    public void project(double[] longitudes, double[] latitudes, double[] xs, double[] ys, int count) {
+        for (int i = 0; i < count; i++) {
+            double lon1 = projectionLongitude(longitudes[i]);
+            double lat1 = projectionLatitude(latitudes[i]);
+
+            xs[i] = projectedX(lon1, lat1);
+            ys[i] = projectedY(lon1, lat1);
+        }
+    }
+
+    @Override
+    public void inverse(double[] xs, double[] ys, double[] longitudes, double[] latitudes, int count) {
+        for (int i = 0; i < count; i++) {
+            double x1 = inverseX(xs[i]);
+            double y1 = inverseY(ys[i]);
+
+            longitudes[i] = inverseLongitude(x1, y1);
+            latitudes[i] = inverseLatitude(x1, y1);
+        }
+    }
+
+    /**
+     * Projection inverse ligne par ligne, dont les termes ne dépendant que de
+     * l'abscisse sont calculés à la création et ceux ne dépendant que de
+     * l'ordonnée une fois par ligne. Les opérations restantes sont faites dans
+     * le même ordre que dans la méthode inverse, dont les résultats sont donc
+     * reproduits exactement.
+     */
+    @Override
+    public RowInverse rowInverse(double[] xs, int count) {
+        return new Rows(xs, count);
+    }
+
+    /*
+     * Projection : longitude et latitude auxiliaires (en 10000") puis
+     * coordonnées CH1903
+     */
+
+    private static double projectionLongitude(double longitude) {
+        return (Math.toDegrees(longitude) * 3600 - 26782.5) / 10000;
+    }
 
-        double lon1 = (lon * 3600 - 26782.5) / 10000;
-        double lat1 = (lat * 3600 - 169028.66) / 10000;
+    private static double projectionLatitude(double latitude) {
+        return (Math.toDegrees(latitude) * 3600 - 169028.66) / 10000;
+    }
+
+    private static double projectedX(double lon1, double lat1) {
+        double lat2 = lat1 * lat1; // => lat2 = Math.pow(lat1, 2)
+        double lon3 = lon1 * lon1 * lon1; // => lon3 = Math.pow(lon1, 3)
+
+        return 600072.37 + 211455.93 * lon1 - 10938.51 * lon1 * lat1 - 0.36
+                * lon1 * lat2 - 44.54 * lon3;
+    }
 
+    private static double projectedY(double lon1, double lat1) {
         double lon2 = lon1 * lon1; // => lon2 = Math.pow(lon1, 2)
-        double lon3 = lon2 * lon1; // => lon3 = Math.pow(lon1, 3)
         double lat2 = lat1 * lat1; // => lat2 = Math.pow(lat1, 2)
         double lat3 = lat2 * lat1; // => lat3 = Math.pow(lat1, 3)
 
-        double x = 600072.37 + 211455.93 * lon1 - 10938.51 * lon1 * lat1 - 0.36
-                * lon1 * lat2 - 44.54 * lon3;
-        double y = 200147.07 + 308807.95 * lat1 + 3745.25 * lon2 + 76.63 * lat2
+        return 200147.07 + 308807.95 * lat1 + 3745.25 * lon2 + 76.63 * lat2
                 - 194.56 * lon2 * lat1 + 119.79 * lat3;
+    }
+
+    /*
+     * Inverse : coordonnées auxiliaires (en 1000 km) puis longitude et
+     * latitude
+     */
 
-        return new Point(x, y);
+    private static double inverseX(double x) {
+        return (x - 600000) / 1000000;
     }
 
-    public PointGeo inverse(Point p) {
-        double x = p.x();
-        double y = p.y();
+    private static double inverseY(double y) {
+        return (y - 200000) / 1000000;
+    }
+
+    private static double inverseLongitude(double x1, double y1) {
+        double x3 = x1 * x1 * x1; // => x3 = Math.pow(x1, 3)
+        double y2 = y1 * y1; // => y2 = Math.pow(y1, 2)
+
+        double lon0 = 2.6779094 + 4.728982 * x1 + 0.791484 * x1 * y1 + 0.1306
+                * x1 * y2 - 0.0436 * x3;
 
-        double x1 = (x - 600000) / 1000000;
-        double y1 = (y - 200000) / 1000000;
+        return Math.toRadians((100 * lon0) / 36);
+    }
 
+    private static double inverseLatitude(double x1, double y1) {
         double x2 = x1 * x1; // => x2 = Math.pow(x1, 2)
-        double x3 = x2 * x1; // => x3 = Math.pow(x1, 3)
         double y2 = y1 * y1; // => y2 = Math.pow(y1, 2)
         double y3 = y2 * y1; // => y3 = Math.pow(y1, 3)
 
-        double lon0 = 2.6779094 + 4.728982 * x1 + 0.791484 * x1 * y1 + 0.1306
-                * x1 * y2 - 0.0436 * x3;
         double lat0 = 16.9023892 + 3.238272 * y1 - 0.270978 * x2 - 0.002528
                 * y2 - 0.0447 * x2 * y1 - 0.0140 * y3;
 
-        double lon = (100 * lon0) / 36;
-        double lat = (100 * lat0) / 36;
-
-        return new PointGeo(Math.toRadians(lon), Math.toRadians(lat));
+        return Math.toRadians((100 * lat0) / 36);
     }
 
+    /**
+     * Projection inverse ligne par ligne de la projection CH1903
+     *
+     * @author Thierry Treyer (235116)
+     * @author Dominique Roduit (234868)
+     */
+    private static final class Rows implements RowInverse {
+        private final int count;
+
+        /* Termes de la longitude auxiliaire lon0 = a + b * y1 + c * y2 - d */
+        private final double[] a, b, c, d;
+        /* Termes en x de la latitude auxiliaire, -e et -f * y1 */
+        private final double[] e, f;
+
+        Rows(double[] xs, int count) {
+            this.count = count;
+            this.a = new double[count];
+            this.b = new double[count];
+            this.c = new double[count];
+            this.d = new double[count];
+            this.e = new double[count];
+            this.f = new double[count];
+
+            for (int i = 0; i < count; i++) {
+                double x1 = inverseX(xs[i]);
+                double x2 = x1 * x1;
+                double x3 = x2 * x1;
+
+                this.a[i] = 2.6779094 + 4.728982 * x1;
+                this.b[i] = 0.791484 * x1;
+                this.c[i] = 0.1306 * x1;
+                this.d[i] = 0.0436 * x3;
+                this.e[i] = 0.270978 * x2;
+                this.f[i] = 0.0447 * x2;
+            }
+        }
+
+        @Override
+        public void inverseRow(double y, double[] longitudes, double[] latitudes) {
+            double y1 = inverseY(y);
+            double y2 = y1 * y1;
+            double y3 = y2 * y1;
+
+            double lat = 16.9023892 + 3.238272 * y1;
+            double latY2 = 0.002528 * y2;
+            double latY3 = 0.0140 * y3;
+
+            for (int i = 0; i < this.count; i++) {
+                double lon0 = this.a[i] + this.b[i] * y1 + this.c[i] * y2 - this.d[i];
+                double lat0 = lat - this.e[i] - latY2 - this.f[i] * y1 - latY3;
+
+                longitudes[i] = Math.toRadians((100 * lon0) / 36);
+                latitudes[i] = Math.toRadians((100 * lat0) / 36);
+            }
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package ch.epfl.imhof.projection;
 
+import java.util.Arrays;
+
 import ch.epfl.imhof.geometry.Point;
 import ch.epfl.imhof.PointGeo;
 
@@ -25,4 +27,38 @@ public final class EquirectangularProjection implements Projection {
     public PointGeo inverse(Point p) {
         return new PointGeo(p.x(), p.y());
     }
+
+    /**
+     * Projection equirectangulaire de points géographiques, par simple copie
+     * des coordonnées
+     */
+    @Override
+    public void project(double[] longitudes, double[] latitudes, double[] xs, double[] ys, int count) {
+        System.arraycopy(longitudes, 0, xs, 0, count);
+        System.arraycopy(latitudes, 0, ys, 0, count);
+    }
+
+    /**
+     * Dé-projection équirectangulaire de points, par simple copie des
+     * coordonnées
+     */
+    @Override
+    public void inverse(double[] xs, double[] ys, double[] longitudes, double[] latitudes, int count) {
+        System.arraycopy(xs, 0, longitudes, 0, count);
+        System.arraycopy(ys, 0, latitudes, 0, count);
+    }
+
+    /**
+     * Dé-projection équirectangulaire ligne par ligne, par copie des
+     * abscisses
+     */
+    @Override
+    public RowInverse rowInverse(double[] xs, int count) {
+        double[] rowXs = Arrays.copyOf(xs, count);
+
+        return (y, longitudes, latitudes) -> {
+            System.arraycopy(rowXs, 0, longitudes, 0, count);
+            Arrays.fill(latitudes, 0, count, y);
+        };
+    }
 }
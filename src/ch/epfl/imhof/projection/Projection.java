@@ -1,5 +1,7 @@
 package ch.epfl.imhof.projection;
 
+import java.util.Arrays;
+
 import ch.epfl.imhof.geometry.Point;
 import ch.epfl.imhof.PointGeo;
 
@@ -32,4 +34,109 @@ public interface Projection {
      * @return Le point projetté en coordonnées géographiques
      */
     public PointGeo inverse(Point point);
+
+    /**
+     * Projette les points donnés en coordonnées géographiques vers des
+     * coordonnées cartésiennes. Les tableaux de sortie peuvent être ceux
+     * d'entrée.
+     *
+     * L'implémentation par défaut passe par project(PointGeo) et alloue donc
+     * deux objets par point ; les projections de ce paquetage la redéfinissent
+     * pour travailler sans allocation.
+     *
+     * @param longitudes
+     *            Longitudes des points (en radians)
+     * @param latitudes
+     *            Latitudes des points (en radians)
+     * @param xs
+     *            Tableau recevant l'abscisse de chaque point projeté
+     * @param ys
+     *            Tableau recevant l'ordonnée de chaque point projeté
+     * @param count
+     *            Nombre de points à traiter
+     */
+    public default void project(double[] longitudes, double[] latitudes, double[] xs, double[] ys, int count) {
+        for (int i = 0; i < count; i++) {
+            Point p = this.project(new PointGeo(longitudes[i], latitudes[i]));
+
+            xs[i] = p.x();
+            ys[i] = p.y();
+        }
+    }
+
+    /**
+     * Projette les points donnés en coordonnées cartésiennes vers des
+     * coordonnées géographiques. Les tableaux de sortie peuvent être ceux
+     * d'entrée.
+     *
+     * L'implémentation par défaut passe par inverse(Point) et alloue donc
+     * deux objets par point ; les projections de ce paquetage la redéfinissent
+     * pour travailler sans allocation.
+     *
+     * @param xs
+     *            Abscisses des points
+     * @param ys
+     *            Ordonnées des points
+     * @param longitudes
+     *            Tableau recevant la longitude (en radians) de chaque point
+     * @param latitudes
+     *            Tableau recevant la latitude (en radians) de chaque point
+     * @param count
+     *            Nombre de points à traiter
+     */
+    public default void inverse(double[] xs, double[] ys, double[] longitudes, double[] latitudes, int count) {
+        for (int i = 0; i < count; i++) {
+            PointGeo p = this.inverse(new Point(xs[i], ys[i]));
+
+            longitudes[i] = p.longitude();
+            latitudes[i] = p.latitude();
+        }
+    }
+
+    /**
+     * Retourne une projection inverse ligne par ligne de points ayant les
+     * abscisses données, telles que les lignes d'une image. Les termes ne
+     * dépendant que de l'abscisse peuvent ainsi être calculés une seule fois,
+     * et ceux ne dépendant que de l'ordonnée une fois par ligne.
+     *
+     * La projection retournée n'est pas prévue pour être utilisée par
+     * plusieurs fils d'exécution à la fois.
+     *
+     * @param xs
+     *            Abscisses des points de chaque ligne, copiées
+     * @param count
+     *            Nombre de points par ligne
+     * @return Projection inverse ligne par ligne
+     */
+    public default RowInverse rowInverse(double[] xs, int count) {
+        double[] rowXs = Arrays.copyOf(xs, count);
+        double[] rowYs = new double[count];
+
+        return (y, longitudes, latitudes) -> {
+            Arrays.fill(rowYs, y);
+            this.inverse(rowXs, rowYs, longitudes, latitudes, count);
+        };
+    }
+
+    /**
+     * Projection inverse des points d'une ligne d'ordonnée constante, dont les
+     * abscisses ont été fixées à la création
+     *
+     * @author Thierry Treyer (235116)
+     * @author Dominique Roduit (234868)
+     */
+    public interface RowInverse {
+        /**
+         * Projette les points de la ligne d'ordonnée donnée vers des
+         * coordonnées géographiques
+         *
+         * @param y
+         *            Ordonnée commune aux points de la ligne
+         * @param longitudes
+         *            Tableau recevant la longitude (en radians) de chaque point
+         * @param latitudes
+         *            Tableau recevant la latitude (en radians) de chaque point
+         */
+        public void inverseRow(double y, double[] longitudes, double[] latitudes);
+    }
 }
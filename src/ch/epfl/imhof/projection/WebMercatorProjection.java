@@ -0,0 +1,88 @@
+package ch.epfl.imhof.projection;
+
+import java.util.Arrays;
+
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.dem.Earth;
+import ch.epfl.imhof.geometry.Point;
+
+/**
+ * Implémentation de la projection Web Mercator (EPSG:3857), utilisée par les
+ * cartes en tuiles du web. La Terre y est une sphère du rayon de l'ellipsoïde
+ * WGS84 et les coordonnées sont en mètres, l'origine étant à l'intersection
+ * de l'équateur et du méridien de Greenwich.
+ *
+ * Le monde projeté est un carré de côté WORLD_SIZE, qui s'étend en latitude
+ * jusqu'à ±MAX_LATITUDE.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ */
+public final class WebMercatorProjection implements Projection {
+    /**
+     * Côté du monde projeté (en mètres)
+     */
+    public static final double WORLD_SIZE = 2 * Math.PI * Earth.RADIUS;
+
+    /**
+     * Latitude (en radians) des bords haut et bas du monde projeté
+     */
+    public static final double MAX_LATITUDE = Math.atan(Math.sinh(Math.PI));
+
+    public Point project(PointGeo pg) {
+        return new Point(projectedX(pg.longitude()), projectedY(pg.latitude()));
+    }
+
+    public PointGeo inverse(Point p) {
+        return new PointGeo(inverseLongitude(p.x()), inverseLatitude(p.y()));
+    }
+
+    @Override
+    public void project(double[] longitudes, double[] latitudes, double[] xs, double[] ys, int count) {
+        for (int i = 0; i < count; i++) {
+            xs[i] = projectedX(longitudes[i]);
+            ys[i] = projectedY(latitudes[i]);
+        }
+    }
+
+    @Override
+    public void inverse(double[] xs, double[] ys, double[] longitudes, double[] latitudes, int count) {
+        for (int i = 0; i < count; i++) {
+            longitudes[i] = inverseLongitude(xs[i]);
+            latitudes[i] = inverseLatitude(ys[i]);
+        }
+    }
+
+    /**
+     * Projection inverse ligne par ligne : la longitude ne dépend que de
+     * l'abscisse et la latitude que de l'ordonnée, cette dernière n'est donc
+     * calculée qu'une fois par ligne
+     */
+    @Override
+    public RowInverse rowInverse(double[] xs, int count) {
+        double[] rowLongitudes = new double[count];
+        for (int i = 0; i < count; i++)
+            rowLongitudes[i] = inverseLongitude(xs[i]);
+
+        return (y, longitudes, latitudes) -> {
+            System.arraycopy(rowLongitudes, 0, longitudes, 0, count);
+            Arrays.fill(latitudes, 0, count, inverseLatitude(y));
+        };
+    }
+
+    private static double projectedX(double longitude) {
+        return Earth.RADIUS * longitude;
+    }
+
+    private static double projectedY(double latitude) {
+        return Earth.RADIUS * Math.log(Math.tan(Math.PI / 4 + latitude / 2));
+    }
+
+    private static double inverseLongitude(double x) {
+        return x / Earth.RADIUS;
+    }
+
+    private static double inverseLatitude(double y) {
+        return Math.atan(Math.sinh(y / Earth.RADIUS));
+    }
+}
@@ -0,0 +1,47 @@
+package ch.epfl.imhof.tiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Enregistre les tuiles dans une arborescence zoom/x/y.png, telle que la
+ * lisent directement les visualiseurs de cartes web.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ */
+public final class DirectoryTileStore implements TileStore {
+    private final File root;
+
+    /**
+     * Construit un enregistreur de tuiles dans le répertoire donné, créé au
+     * besoin
+     *
+     * @param root
+     *            Répertoire racine de l'arborescence
+     */
+    public DirectoryTileStore(File root) {
+        this.root = root;
+    }
+
+    @Override
+    public void put(int zoom, int x, int y, byte[] image) throws IOException {
+        File directory = new File(this.root, zoom + File.separator + x);
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory())
+            throw new IOException("Impossible de créer le répertoire " + directory);
+
+        Files.write(new File(directory, y + ".png").toPath(), image);
+    }
+
+    /**
+     * Ne fait rien, chaque tuile étant écrite dès son ajout
+     */
+    @Override
+    public void commit() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
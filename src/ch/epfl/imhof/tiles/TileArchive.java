@@ -0,0 +1,241 @@
+package ch.epfl.imhof.tiles;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Archive de tuiles en un seul fichier, à la manière d'un fichier MBTiles
+ * mais sans dépendre d'une base de données.
+ *
+ * Le fichier contient, dans l'ordre :
+ * <ul>
+ * <li>un en-tête : signature et version ;</li>
+ * <li>les images des tuiles, à la suite, dans l'ordre où elles ont été
+ * ajoutées ;</li>
+ * <li>l'index des tuiles : zoom, x, y, position et taille de l'image de
+ * chacune ;</li>
+ * <li>la position de l'index, le nombre de tuiles et la signature.</li>
+ * </ul>
+ *
+ * L'archive est écrite dans un fichier temporaire, qui ne remplace le fichier
+ * de destination qu'à la validation, une fois l'index écrit. Une archive
+ * fermée sans avoir été validée est abandonnée, le fichier de destination
+ * restant inchangé.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ */
+public final class TileArchive implements TileStore {
+    private static final byte[] MAGIC = "IMHOFTIL".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = MAGIC.length + 4;
+    private static final int ENTRY_LENGTH = 1 + 4 + 4 + 8 + 4;
+    private static final int FOOTER_LENGTH = 8 + 4 + MAGIC.length;
+    /* Nombre d'entrées de l'index lues à la fois */
+    private static final int INDEX_BATCH = 1024;
+
+    private final File archive;
+    private final File temporary;
+    private final DataOutputStream out;
+
+    /* Index des tuiles écrites : zoom, x et y, puis position et taille */
+    private int[] coordinates = new int[3 * 64];
+    private long[] positions = new long[2 * 64];
+    private int tileCount = 0;
+    private long position = HEADER_LENGTH;
+    private boolean committed = false;
+
+    /**
+     * Crée une archive vide, qui remplacera le fichier donné à sa validation
+     *
+     * @param archive
+     *            Fichier de l'archive
+     * @throws IOException
+     *             En cas d'erreur d'écriture
+     */
+    public TileArchive(File archive) throws IOException {
+        this.archive = archive;
+
+        File directory = archive.getAbsoluteFile().getParentFile();
+        this.temporary = File.createTempFile(archive.getName(), ".tmp", directory);
+        this.out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(this.temporary), 1 << 16));
+
+        this.out.write(MAGIC);
+        this.out.writeInt(VERSION);
+    }
+
+    @Override
+    public synchronized void put(int zoom, int x, int y, byte[] image) throws IOException {
+        if (this.tileCount == this.positions.length / 2) {
+            this.coordinates = Arrays.copyOf(this.coordinates, 2 * this.coordinates.length);
+            this.positions = Arrays.copyOf(this.positions, 2 * this.positions.length);
+        }
+
+        int i = this.tileCount++;
+        this.coordinates[3 * i] = zoom;
+        this.coordinates[3 * i + 1] = x;
+        this.coordinates[3 * i + 2] = y;
+        this.positions[2 * i] = this.position;
+        this.positions[2 * i + 1] = image.length;
+
+        this.out.write(image);
+        this.position += image.length;
+    }
+
+    /**
+     * Écrit l'index des tuiles et remplace le fichier de destination par
+     * l'archive
+     *
+     * @throws IllegalStateException
+     *             Si l'archive a déjà été validée ou fermée
+     * @throws IOException
+     *             En cas d'erreur d'écriture
+     */
+    @Override
+    public synchronized void commit() throws IOException {
+        if (this.committed)
+            throw new IllegalStateException("L'archive de tuiles a déjà été validée");
+        this.committed = true;
+
+        try {
+            try (DataOutputStream out = this.out) {
+                for (int i = 0; i < this.tileCount; i++) {
+                    out.writeByte(this.coordinates[3 * i]);
+                    out.writeInt(this.coordinates[3 * i + 1]);
+                    out.writeInt(this.coordinates[3 * i + 2]);
+                    out.writeLong(this.positions[2 * i]);
+                    out.writeInt((int) this.positions[2 * i + 1]);
+                }
+
+                out.writeLong(this.position);
+                out.writeInt(this.tileCount);
+                out.write(MAGIC);
+            }
+
+            Files.move(this.temporary.toPath(), this.archive.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(this.temporary.toPath());
+        }
+    }
+
+    /**
+     * Abandonne l'archive si elle n'a pas été validée, en supprimant son
+     * fichier temporaire
+     *
+     * @throws IOException
+     *             En cas d'erreur d'écriture
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.committed)
+            return;
+        this.committed = true;
+
+        try {
+            this.out.close();
+        } finally {
+            Files.deleteIfExists(this.temporary.toPath());
+        }
+    }
+
+    /**
+     * Lit une tuile de l'archive donnée
+     *
+     * @param archive
+     *            Fichier de l'archive
+     * @param zoom
+     *            Niveau de zoom de la tuile
+     * @param x
+     *            Colonne de la tuile
+     * @param y
+     *            Ligne de la tuile
+     * @return Image encodée de la tuile, ou null si l'archive ne la contient
+     *         pas
+     * @throws IllegalArgumentException
+     *             Si le fichier n'est pas une archive de tuiles valide
+     * @throws IOException
+     *             En cas d'erreur de lecture
+     */
+    public static byte[] read(File archive, int zoom, int x, int y) throws IOException {
+        try (FileChannel channel = FileChannel.open(archive.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_LENGTH + FOOTER_LENGTH)
+                throw new IllegalArgumentException("Ce fichier n'est pas une archive de tuiles");
+
+            ByteBuffer header = readFully(channel, 0, HEADER_LENGTH);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || header.getInt() != VERSION)
+                throw new IllegalArgumentException("Ce fichier n'est pas une archive de tuiles");
+
+            ByteBuffer footer = readFully(channel, size - FOOTER_LENGTH, FOOTER_LENGTH);
+            long indexPosition = footer.getLong();
+            int tileCount = footer.getInt();
+            footer.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || indexPosition < HEADER_LENGTH || tileCount < 0
+                    || indexPosition + (long) tileCount * ENTRY_LENGTH != size - FOOTER_LENGTH)
+                throw new IllegalArgumentException("L'index de l'archive de tuiles est incomplet");
+
+            /* L'index est lu par blocs d'entrées, à des positions sur 64 bits */
+            ByteBuffer entries = ByteBuffer.allocate(INDEX_BATCH * ENTRY_LENGTH);
+            for (int first = 0; first < tileCount; first += INDEX_BATCH) {
+                int count = Math.min(INDEX_BATCH, tileCount - first);
+                entries.clear().limit(count * ENTRY_LENGTH);
+                readFully(channel, indexPosition + (long) first * ENTRY_LENGTH, entries);
+
+                for (int i = 0; i < count; i++) {
+                    entries.position(i * ENTRY_LENGTH);
+                    if (entries.get() != zoom || entries.getInt() != x || entries.getInt() != y)
+                        continue;
+
+                    long position = entries.getLong();
+                    int length = entries.getInt();
+                    if (position < HEADER_LENGTH || length < 0 || position + length > indexPosition)
+                        throw new IllegalArgumentException("Archive de tuiles tronquée : " + archive);
+
+                    return readFully(channel, position, length).array();
+                }
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Lit le nombre d'octets donné à partir de la position donnée
+     */
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(channel, position, buffer);
+        return buffer;
+    }
+
+    /**
+     * Remplit le tampon donné avec les octets lus à partir de la position
+     * donnée, puis le prépare à la lecture
+     *
+     * @throws IllegalArgumentException
+     *             Si le fichier se termine avant que le tampon soit plein
+     */
+    private static void readFully(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new IllegalArgumentException("Archive de tuiles tronquée");
+            position += read;
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,287 @@
+package ch.epfl.imhof.tiles;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.dem.ReliefShader;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.geometry.Rectangle;
+import ch.epfl.imhof.painting.Color;
+import ch.epfl.imhof.painting.Compositor;
+import ch.epfl.imhof.painting.Java2DCanvas;
+import ch.epfl.imhof.painting.PNGStreamWriter;
+import ch.epfl.imhof.painting.Painter;
+import ch.epfl.imhof.projection.Projection;
+import ch.epfl.imhof.projection.WebMercatorProjection;
+
+/**
+ * Générateur d'une pyramide de tuiles XYZ, telles que les affichent les
+ * visualiseurs de cartes web.
+ *
+ * La carte, le peintre et le relief ombré sont gardés en mémoire d'un niveau
+ * de zoom à l'autre, de sorte que leur chargement est partagé par toutes les
+ * tuiles. La carte doit avoir été projetée avec la projection Web Mercator.
+ *
+ * Les tuiles d'un niveau sont distribuées entre plusieurs fils d'exécution,
+ * qui prennent chacun la suivante dès qu'ils ont fini la leur. Une tuile que
+ * le modèle de terrain ne couvre pas entièrement est dessinée sans relief ;
+ * si de plus aucune entité ne la touche, elle n'est ni dessinée ni
+ * enregistrée.
+ *
+ * La résolution des tuiles est de 96 points par pouce pour des tuiles de 256
+ * pixels de côté, et proportionnelle à leur taille sinon : une tuile de 512
+ * pixels montre ainsi la même zone, avec des traits de même taille apparente.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ */
+public final class TilePyramid {
+    /**
+     * Projection dans laquelle la carte doit être projetée
+     */
+    public static final Projection PROJECTION = new WebMercatorProjection();
+
+    /**
+     * Niveau de zoom maximal
+     */
+    public static final int MAX_ZOOM = 24;
+
+    private static final int BASE_TILE_SIZE = 256;
+    private static final int BASE_DPI = 96;
+    /* Rayon de floutage du relief (en mètres sur l'image) */
+    private static final float GAUSS_FACTOR = 0.0017f;
+
+    private final Map map;
+    private final Painter painter;
+    private final ReliefShader reliefShader;
+    private final int tileSize;
+    private final double cullingMargin;
+    private final int parallelism;
+
+    private final int dpi;
+    private final float gaussRadius;
+
+    /**
+     * Construit un générateur de tuiles
+     *
+     * @param map
+     *            Carte projetée avec la projection Web Mercator
+     * @param painter
+     *            Peintre de la carte, utilisé par plusieurs fils d'exécution à
+     *            la fois
+     * @param reliefShader
+     *            Relief ombré, utilisant la projection Web Mercator, multiplié
+     *            aux tuiles, ou null pour n'en dessiner aucun
+     * @param tileSize
+     *            Côté des tuiles (en pixels), généralement 256 ou 512
+     * @param cullingMargin
+     *            Marge (en points) autour de chaque tuile dans laquelle une
+     *            entité est tout de même dessinée
+     * @param parallelism
+     *            Nombre de tuiles dessinées à la fois
+     * @throws IllegalArgumentException
+     *             Si la taille des tuiles ou le nombre de tuiles dessinées à
+     *             la fois n'est pas strictement positif
+     */
+    public TilePyramid(Map map, Painter painter, ReliefShader reliefShader, int tileSize,
+            double cullingMargin, int parallelism) {
+        if (tileSize <= 0)
+            throw new IllegalArgumentException("La taille des tuiles doit être positive");
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Le nombre de threads doit être positif");
+
+        this.map = map;
+        this.painter = painter;
+        this.reliefShader = reliefShader;
+        this.tileSize = tileSize;
+        this.cullingMargin = cullingMargin;
+        this.parallelism = parallelism;
+
+        this.dpi = Math.max(1, Math.round((float) BASE_DPI * tileSize / BASE_TILE_SIZE));
+        this.gaussRadius = (float) (this.dpi / 0.0254 * GAUSS_FACTOR);
+    }
+
+    /**
+     * Dessine et enregistre les tuiles des niveaux de zoom donnés qui touchent
+     * la zone donnée
+     *
+     * @param bottomLeft
+     *            Coin bas-gauche de la zone
+     * @param topRight
+     *            Coin haut-droite de la zone
+     * @param minZoom
+     *            Premier niveau de zoom
+     * @param maxZoom
+     *            Dernier niveau de zoom (inclus)
+     * @param store
+     *            Destination des tuiles
+     * @return Nombre de tuiles enregistrées
+     * @throws IllegalArgumentException
+     *             Si les niveaux de zoom ne sont pas compris entre 0 et
+     *             MAX_ZOOM ou ne sont pas dans l'ordre
+     * @throws IOException
+     *             En cas d'erreur d'écriture des tuiles
+     */
+    public int generate(PointGeo bottomLeft, PointGeo topRight, int minZoom, int maxZoom,
+            TileStore store) throws IOException {
+        if (minZoom < 0 || maxZoom > MAX_ZOOM || minZoom > maxZoom)
+            throw new IllegalArgumentException("Les niveaux de zoom doivent être compris entre 0 et " + MAX_ZOOM);
+
+        Point projectedBottomLeft = PROJECTION.project(bottomLeft);
+        Point projectedTopRight = PROJECTION.project(topRight);
+        AtomicInteger written = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(this.parallelism);
+        try {
+            for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+                int minX = tileIndex(projectedBottomLeft.x(), zoom);
+                int maxX = tileIndex(projectedTopRight.x(), zoom);
+                int minY = tileIndex(-projectedTopRight.y(), zoom);
+                int maxY = tileIndex(-projectedBottomLeft.y(), zoom);
+
+                int columns = maxX - minX + 1;
+                long tileCount = (long) columns * (maxY - minY + 1);
+                AtomicLong next = new AtomicLong();
+                int z = zoom;
+
+                /* Chaque fil d'exécution prend la tuile suivante, ligne après
+                 * ligne, jusqu'à ce qu'il n'en reste plus. Le premier qui
+                 * échoue épuise le compteur, de sorte que les autres
+                 * s'arrêtent après leur tuile en cours. */
+                List<Future<?>> workers = new ArrayList<>();
+                for (int i = 0; i < this.parallelism; i++) {
+                    workers.add(executor.submit(() -> {
+                        try {
+                            for (long t = next.getAndIncrement(); t < tileCount; t = next.getAndIncrement()) {
+                                if (Thread.currentThread().isInterrupted())
+                                    return null;
+
+                                int x = minX + (int) (t % columns);
+                                int y = minY + (int) (t / columns);
+                                if (this.renderTile(z, x, y, store))
+                                    written.incrementAndGet();
+                            }
+                        } catch (Throwable e) {
+                            next.set(tileCount);
+                            throw e;
+                        }
+                        return null;
+                    }));
+                }
+
+                try {
+                    for (Future<?> worker : workers)
+                        waitFor(worker);
+                } finally {
+                    /* Sans effet si tous ont terminé, interrompt les autres
+                     * si l'un d'eux a échoué */
+                    for (Future<?> worker : workers)
+                        worker.cancel(true);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return written.get();
+    }
+
+    /**
+     * Dessine et enregistre une tuile, si au moins une entité la touche ou
+     * que le modèle de terrain la couvre
+     *
+     * @return true si la tuile a été enregistrée
+     */
+    private boolean renderTile(int zoom, int x, int y, TileStore store) throws IOException {
+        double extent = tileExtent(zoom);
+        double half = WebMercatorProjection.WORLD_SIZE / 2;
+
+        Point bottomLeft = new Point(-half + x * extent, half - (y + 1) * extent);
+        Point topRight = new Point(-half + (x + 1) * extent, half - y * extent);
+
+        double margin = this.cullingMargin * extent / this.tileSize * this.dpi / 72d;
+        Map visibleMap = this.map.intersecting(Rectangle.of(bottomLeft, topRight).expandedBy(margin));
+        boolean shaded = this.reliefShader != null && this.reliefShader.covers(bottomLeft, topRight,
+                this.tileSize, this.tileSize, this.gaussRadius);
+        if (!shaded && visibleMap.polyLines().isEmpty() && visibleMap.polygons().isEmpty())
+            return false;
+
+        Java2DCanvas canvas = new Java2DCanvas(bottomLeft, topRight, this.tileSize,
+                this.tileSize, this.dpi, Color.WHITE);
+        this.painter.drawMap(visibleMap, canvas);
+
+        if (shaded) {
+            BufferedImage relief = this.reliefShader.shadedRelief(bottomLeft, topRight,
+                    this.tileSize, this.tileSize, this.gaussRadius);
+            Compositor.multiplyInto(relief, canvas.image());
+        }
+
+        int[] pixels = ((DataBufferInt) canvas.image().getRaster().getDataBuffer()).getData();
+        ByteArrayOutputStream image = new ByteArrayOutputStream();
+        try (PNGStreamWriter writer = new PNGStreamWriter(image, this.tileSize, this.tileSize)) {
+            writer.writeRows(pixels, 0, this.tileSize, this.tileSize);
+        }
+
+        store.put(zoom, x, y, image.toByteArray());
+        return true;
+    }
+
+    /**
+     * Retourne le côté (en mètres projetés) des tuiles du niveau de zoom donné
+     *
+     * @param zoom
+     *            Niveau de zoom
+     * @return Côté des tuiles
+     */
+    public static double tileExtent(int zoom) {
+        return Math.scalb(WebMercatorProjection.WORLD_SIZE, -zoom);
+    }
+
+    /**
+     * Retourne l'indice de la tuile du niveau de zoom donné contenant la
+     * coordonnée projetée donnée, mesurée depuis le bord ouest (pour les
+     * colonnes) ou depuis le bord nord, au signe près (pour les lignes)
+     *
+     * @param coordinate
+     *            Abscisse, ou opposé de l'ordonnée, en mètres projetés
+     * @param zoom
+     *            Niveau de zoom
+     * @return Indice de la tuile, ramené dans les bornes du monde
+     */
+    public static int tileIndex(double coordinate, int zoom) {
+        double index = Math.floor((coordinate + WebMercatorProjection.WORLD_SIZE / 2) / tileExtent(zoom));
+
+        return (int) Math.max(0, Math.min((1 << zoom) - 1, index));
+    }
+
+    /**
+     * Attend la fin d'un fil d'exécution, en propageant ses exceptions
+     */
+    private static void waitFor(Future<?> worker) throws IOException {
+        try {
+            worker.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Génération des tuiles interrompue", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+}
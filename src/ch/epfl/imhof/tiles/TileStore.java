@@ -0,0 +1,50 @@
+package ch.epfl.imhof.tiles;
+
+import java.io.IOException;
+
+/**
+ * Destination des tuiles d'une pyramide, identifiées par leur niveau de zoom
+ * et leurs coordonnées XYZ (la tuile 0/0/0 couvrant le monde entier, l'axe y
+ * étant dirigé vers le sud).
+ *
+ * Les tuiles sont ajoutées par plusieurs fils d'exécution à la fois.
+ *
+ * @author Thierry Treyer (235116)
+ * @author Dominique Roduit (234868)
+ */
+public interface TileStore extends AutoCloseable {
+    /**
+     * Enregistre une tuile
+     *
+     * @param zoom
+     *            Niveau de zoom de la tuile
+     * @param x
+     *            Colonne de la tuile, depuis l'ouest
+     * @param y
+     *            Ligne de la tuile, depuis le nord
+     * @param image
+     *            Image encodée (PNG) de la tuile
+     * @throws IOException
+     *             En cas d'erreur d'écriture
+     */
+    public void put(int zoom, int x, int y, byte[] image) throws IOException;
+
+    /**
+     * Valide l'enregistrement des tuiles, une fois toutes ajoutées. Les
+     * tuiles d'une destination fermée sans avoir été validée peuvent être
+     * abandonnées.
+     *
+     * @throws IOException
+     *             En cas d'erreur d'écriture
+     */
+    public void commit() throws IOException;
+
+    /**
+     * Libère les ressources de la destination
+     *
+     * @throws IOException
+     *             En cas d'erreur d'écriture
+     */
+    @Override
+    public void close() throws IOException;
+}
@@ -144,4 +144,66 @@ public class AttributesTest {
         assertTrue(testResult.isEmpty());
     }
 
+    @Test
+    public void valueIdMatchesDictionary () {
+        Attributes testAttributes = new Attributes(sampleAttributesValues());
+        assertEquals(TagDictionary.id("testValue 2"), testAttributes.valueId(TagDictionary.id("testKey 2")));
+        assertTrue(testAttributes.contains(TagDictionary.id("testKey 3")));
+        assertEquals(TagDictionary.UNKNOWN, testAttributes.valueId(TagDictionary.id("testKey 4")));
+        assertFalse(testAttributes.contains(TagDictionary.id("testKey 4")));
+    }
+
+    @Test
+    public void layerIsParsedOnce () {
+        assertEquals(-2, new Attributes.Builder().put("layer", "-2").build().layer());
+        assertEquals(0, new Attributes.Builder().put("layer", "bridge").build().layer());
+        assertEquals(0, new Attributes(sampleAttributesValues()).layer());
+    }
+
+    @Test
+    public void equalAttributesAreEqual () {
+        Attributes a = new Attributes(sampleAttributesValues());
+        Attributes b = new Attributes.Builder().put("testKey 3", "testValue 3")
+                .put("testKey 2", "testValue 2").put("testKey 1", "testValue 1").build();
+        assertTrue(a.equals(b));
+        assertEquals(a.hashCode(), b.hashCode());
+        assertFalse(a.equals(a.keepOnlyKeys(new HashSet<>())));
+    }
+
+    @Test
+    public void unindexedValuesAreNotRegistered () {
+        Attributes attributes = new Attributes.Builder()
+                .put("attributesTest name", "attributesTest Rue de Bourg 1").build();
+
+        assertEquals(TagDictionary.UNKNOWN, TagDictionary.lookup("attributesTest Rue de Bourg 1"));
+        assertEquals("attributesTest Rue de Bourg 1", attributes.get("attributesTest name"));
+        assertTrue(attributes.contains("attributesTest name"));
+    }
+
+    @Test
+    public void indexedValuesAreRegistered () {
+        TagDictionary.indexValuesOf("attributesTest indexed");
+        Attributes attributes = new Attributes.Builder()
+                .put("attributesTest indexed", "attributesTest value").build();
+
+        int valueId = TagDictionary.lookup("attributesTest value");
+        assertTrue(valueId != TagDictionary.UNKNOWN);
+        assertEquals(valueId, attributes.valueId(TagDictionary.lookup("attributesTest indexed")));
+    }
+
+    @Test
+    public void valuesRegisteredLaterAreStillFound () {
+        Attributes attributes = new Attributes.Builder()
+                .put("attributesTest key", "attributesTest late value").build();
+        int keyId = TagDictionary.lookup("attributesTest key");
+        assertEquals(TagDictionary.UNKNOWN, attributes.valueId(keyId));
+
+        int valueId = TagDictionary.id("attributesTest late value");
+        assertEquals(valueId, attributes.valueId(keyId));
+
+        Attributes later = new Attributes.Builder()
+                .put("attributesTest key", "attributesTest late value").build();
+        assertTrue(attributes.equals(later));
+        assertEquals(attributes.hashCode(), later.hashCode());
+    }
 }
@@ -0,0 +1,146 @@
+package ch.epfl.imhof;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.OpenPolyLine;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+import ch.epfl.imhof.projection.CH1903Projection;
+import ch.epfl.imhof.projection.EquirectangularProjection;
+
+public class MapSnapshotTest {
+    private static final byte[] HASH = new byte[32];
+    private static final byte[] OTHER_HASH = new byte[32];
+    static {
+        OTHER_HASH[0] = 1;
+    }
+
+    private static Map sampleMap () {
+        Attributes road = new Attributes.Builder().put("highway", "primary").put("name", "Route de Berne").build();
+        Attributes building = new Attributes.Builder().put("building", "yes").build();
+
+        ClosedPolyLine square = new ClosedPolyLine(Arrays.asList(
+                new Point(0, 0), new Point(10, 0), new Point(10, 10), new Point(0, 10)));
+        ClosedPolyLine hole = new ClosedPolyLine(Arrays.asList(
+                new Point(2, 2), new Point(4, 2), new Point(4, 4)));
+
+        Map.Builder builder = new Map.Builder();
+        builder.addPolyLine(new Attributed<>(new OpenPolyLine(Arrays.asList(
+                new Point(536000.125, 152000.5), new Point(536100.75, 152050.25))), road));
+        builder.addPolyLine(new Attributed<>(square, road));
+        builder.addPolygon(new Attributed<>(new Polygon(square, Collections.singletonList(hole)), building));
+        builder.addPolygon(new Attributed<>(new Polygon(hole), building));
+        return builder.build();
+    }
+
+    private static File temporaryFile () throws IOException {
+        File file = File.createTempFile("snapshot", ".map");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static void assertSamePoints (PolyLine expected, PolyLine actual) {
+        assertEquals(expected.isClosed(), actual.isClosed());
+        assertEquals(expected.points().size(), actual.points().size());
+        for (int i = 0; i < expected.points().size(); i++) {
+            assertEquals(expected.points().get(i).x(), actual.points().get(i).x(), 0);
+            assertEquals(expected.points().get(i).y(), actual.points().get(i).y(), 0);
+        }
+    }
+
+    @Test
+    public void savedMapIsLoadedIdentically () throws IOException {
+        Map map = sampleMap();
+        File file = temporaryFile();
+
+        MapSnapshot.save(map, file, HASH, new CH1903Projection());
+        Map loaded = MapSnapshot.load(file, HASH, new CH1903Projection());
+
+        assertEquals(2, loaded.polyLines().size());
+        assertEquals(2, loaded.polygons().size());
+
+        for (int i = 0; i < 2; i++) {
+            assertSamePoints(map.polyLines().get(i).value(), loaded.polyLines().get(i).value());
+            assertEquals("primary", loaded.polyLines().get(i).attributeValue("highway"));
+            assertEquals("Route de Berne", loaded.polyLines().get(i).attributeValue("name"));
+
+            Polygon expected = map.polygons().get(i).value();
+            Polygon actual = loaded.polygons().get(i).value();
+            assertSamePoints(expected.shell(), actual.shell());
+            assertEquals(expected.holes().size(), actual.holes().size());
+            for (int j = 0; j < expected.holes().size(); j++)
+                assertSamePoints(expected.holes().get(j), actual.holes().get(j));
+            assertTrue(loaded.polygons().get(i).hasAttribute("building"));
+            assertFalse(loaded.polygons().get(i).hasAttribute("highway"));
+        }
+    }
+
+    @Test
+    public void loadedAttributesHaveResolvedValueIds () throws IOException {
+        /* Clef et valeur qu'aucun autre test ni aucun filtre n'indexe */
+        Attributes attributes = new Attributes.Builder().put("snapshot_test_key", "snapshot_test_value").build();
+        Map.Builder builder = new Map.Builder();
+        builder.addPolyLine(new Attributed<>(new OpenPolyLine(Arrays.asList(
+                new Point(0, 0), new Point(1, 1))), attributes));
+
+        File file = temporaryFile();
+        MapSnapshot.save(builder.build(), file, HASH, new CH1903Projection());
+        assertEquals(TagDictionary.UNKNOWN, TagDictionary.lookup("snapshot_test_value"));
+
+        Map loaded = MapSnapshot.load(file, HASH, new CH1903Projection());
+        int keyId = TagDictionary.lookup("snapshot_test_key");
+        int valueId = loaded.polyLines().get(0).attributes().valueId(keyId);
+
+        assertTrue(valueId != TagDictionary.UNKNOWN);
+        assertEquals("snapshot_test_value", TagDictionary.string(valueId));
+    }
+
+    @Test
+    public void snapshotOfOtherSourceIsStale () throws IOException {
+        File file = temporaryFile();
+        MapSnapshot.save(sampleMap(), file, HASH, new CH1903Projection());
+
+        assertNull(MapSnapshot.load(file, OTHER_HASH, new CH1903Projection()));
+    }
+
+    @Test
+    public void snapshotOfOtherProjectionIsStale () throws IOException {
+        File file = temporaryFile();
+        MapSnapshot.save(sampleMap(), file, HASH, new CH1903Projection());
+
+        assertNull(MapSnapshot.load(file, HASH, new EquirectangularProjection()));
+    }
+
+    @Test
+    public void truncatedSnapshotIsIgnored () throws IOException {
+        File file = temporaryFile();
+        MapSnapshot.save(sampleMap(), file, HASH, new CH1903Projection());
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 12);
+        }
+
+        assertNull(MapSnapshot.load(file, HASH, new CH1903Projection()));
+    }
+
+    @Test
+    public void missingSnapshotIsIgnored () throws IOException {
+        File file = temporaryFile();
+        file.delete();
+
+        assertNull(MapSnapshot.load(file, HASH, new CH1903Projection()));
+    }
+}
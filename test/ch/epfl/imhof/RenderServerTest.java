@@ -0,0 +1,167 @@
+package ch.epfl.imhof;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import ch.epfl.imhof.dem.DigitalElevationModel;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+import ch.epfl.imhof.painting.Canvas;
+import ch.epfl.imhof.painting.Painter;
+
+public class RenderServerTest {
+    private static final String MAP = "/map?bbox=7.80,46.61,7.801,46.611&dpi=72";
+
+    /**
+     * Terrain plat, défini partout
+     */
+    private static final class FlatTerrain implements DigitalElevationModel {
+        public Vector3 normalAt(PointGeo point) {
+            return new Vector3(0, 0, 1);
+        }
+
+        public boolean covers(PointGeo southWest, PointGeo northEast) {
+            return true;
+        }
+
+        public void elevationsAt(double[] longitudes, double[] latitudes, float[] elevations, int count) {
+            for (int i = 0; i < count; i++)
+                elevations[i] = 0;
+        }
+
+        public void close() {}
+    }
+
+    /**
+     * Peintre ne dessinant rien, mais qui attend d'être libéré, sans se
+     * laisser interrompre, avant de rendre la main
+     */
+    private static final class BlockingPainter implements Painter {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        public void drawMap(Map map, Canvas canvas) {
+            this.started.countDown();
+
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    this.release.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private RenderServer server;
+
+    private void start(Painter painter, int queueCapacity, long timeoutMillis) throws Exception {
+        Map map = new Map(new ArrayList<Attributed<PolyLine>>(), new ArrayList<Attributed<Polygon>>());
+
+        this.server = new RenderServer(map, painter, new FlatTerrain(), 1, queueCapacity,
+                timeoutMillis, null);
+        this.server.start(0);
+    }
+
+    @After
+    public void stop() {
+        if (this.server != null)
+            this.server.stop(0);
+    }
+
+    private CompletableFuture<HttpResponse<String>> send(String path) {
+        HttpRequest request = HttpRequest.newBuilder(
+                URI.create("http://localhost:" + this.server.port() + path)).build();
+        return this.client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private int status(String path) throws Exception {
+        return this.send(path).get(10, TimeUnit.SECONDS).statusCode();
+    }
+
+    @Test
+    public void invalidRequestsAreRejectedWith400() throws Exception {
+        this.start((map, canvas) -> {}, 1, 10_000);
+
+        assertEquals(400, this.status("/map"));
+        assertEquals(400, this.status("/map?dpi=72"));
+        assertEquals(400, this.status("/map?bbox=7.80,46.61,7.801&dpi=72"));
+        assertEquals(400, this.status("/map?bbox=7.80,46.61,7.801,46.611"));
+        assertEquals(400, this.status("/map?bbox=7.80,abc,7.801,46.611&dpi=72"));
+        assertEquals(400, this.status("/map?bbox=7.80,46.61,7.801,46.611&dpi=7x"));
+        assertEquals(400, this.status(MAP + "&format=xyz"));
+        assertEquals(400, this.status("/map?bbox=7.80,46.61,7.801,95&dpi=72"));
+        assertEquals(400, this.status("/map?bbox=7.80,46.61,7.90,46.71&dpi=100000"));
+    }
+
+    @Test
+    public void validRequestReturnsAnImage() throws Exception {
+        this.start((map, canvas) -> {}, 1, 10_000);
+
+        HttpResponse<String> response = this.send(MAP + "&format=png").get(10, TimeUnit.SECONDS);
+
+        assertEquals(200, response.statusCode());
+        assertEquals("image/png", response.headers().firstValue("Content-Type").orElse(null));
+    }
+
+    @Test
+    public void requestsBeyondTheQueueAreRejectedWith503() throws Exception {
+        BlockingPainter painter = new BlockingPainter();
+        this.start(painter, 1, 10_000);
+
+        /* Une requête occupe l'unique fil de dessin ; des deux suivantes,
+         * l'une attend dans la file et l'autre est refusée aussitôt */
+        CompletableFuture<HttpResponse<String>> drawing = this.send(MAP);
+        assertTrue(painter.started.await(10, TimeUnit.SECONDS));
+
+        CompletableFuture<HttpResponse<String>> second = this.send(MAP);
+        CompletableFuture<HttpResponse<String>> third = this.send(MAP);
+
+        @SuppressWarnings("unchecked")
+        HttpResponse<String> rejected = (HttpResponse<String>) CompletableFuture.anyOf(second, third)
+                .get(10, TimeUnit.SECONDS);
+        assertEquals(503, rejected.statusCode());
+        assertEquals("1", rejected.headers().firstValue("Retry-After").orElse(null));
+
+        painter.release.countDown();
+
+        assertEquals(200, drawing.get(10, TimeUnit.SECONDS).statusCode());
+        CompletableFuture<HttpResponse<String>> queued = (rejected == second.getNow(null)) ? third : second;
+        assertEquals(200, queued.get(10, TimeUnit.SECONDS).statusCode());
+    }
+
+    @Test
+    public void timedOutRequestFreesItsQueueSlot() throws Exception {
+        BlockingPainter painter = new BlockingPainter();
+        this.start(painter, 1, 300);
+
+        CompletableFuture<HttpResponse<String>> drawing = this.send(MAP);
+        assertTrue(painter.started.await(10, TimeUnit.SECONDS));
+
+        /* La requête en attente dépasse le délai alors que le fil de dessin
+         * est toujours occupé : sa place dans la file doit être libérée,
+         * sans quoi la suivante serait refusée (503) */
+        assertEquals(504, this.status(MAP));
+        assertEquals(504, this.status(MAP));
+
+        assertEquals(504, drawing.get(10, TimeUnit.SECONDS).statusCode());
+        painter.release.countDown();
+    }
+}
@@ -0,0 +1,43 @@
+package ch.epfl.imhof;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class TagDictionaryTest {
+
+    @Test
+    public void equalStringsHaveSameId () {
+        int id = TagDictionary.id("highway");
+        assertEquals(id, TagDictionary.id(new String("highway")));
+        assertNotEquals(id, TagDictionary.id("railway"));
+        assertEquals("highway", TagDictionary.string(id));
+    }
+
+    @Test
+    public void lookupDoesNotRegister () {
+        assertEquals(TagDictionary.UNKNOWN, TagDictionary.lookup("tagDictionaryTest never registered"));
+        assertEquals(TagDictionary.UNKNOWN, TagDictionary.lookup("tagDictionaryTest never registered"));
+
+        int id = TagDictionary.id("tagDictionaryTest registered");
+        assertEquals(id, TagDictionary.lookup("tagDictionaryTest registered"));
+    }
+
+    @Test
+    public void nullHasAnId () {
+        int id = TagDictionary.id(null);
+        assertEquals(id, TagDictionary.lookup(null));
+        assertNull(TagDictionary.string(id));
+    }
+
+    @Test
+    public void manyStringsKeepTheirIds () {
+        int[] ids = new int[5000];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = TagDictionary.id("tagDictionaryTest " + i);
+        for (int i = 0; i < ids.length; i++)
+            assertEquals("tagDictionaryTest " + i, TagDictionary.string(ids[i]));
+    }
+}
@@ -0,0 +1,130 @@
+package ch.epfl.imhof;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.dem.DigitalElevationModel;
+import ch.epfl.imhof.dem.GaussianBlur;
+import ch.epfl.imhof.dem.ReliefShader;
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.OpenPolyLine;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+import ch.epfl.imhof.painting.PNGStreamWriter;
+import ch.epfl.imhof.painting.Painter;
+
+public class TiledMapRendererTest {
+    private static final Point BOTTOM_LEFT = new Point(532000, 152000);
+    private static final Point TOP_RIGHT = new Point(533200, 153000);
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 250;
+    private static final int DPI = 150;
+    /* Ne divise ni la largeur ni la hauteur de l'image */
+    private static final int TILE_SIZE = 64;
+
+    /**
+     * Terrain ondulé, défini partout, dont les normales varient sur quelques
+     * dizaines de pixels
+     */
+    private static final class WavyTerrain implements DigitalElevationModel {
+        public Vector3 normalAt(PointGeo point) {
+            double dx = 0.4 * Math.sin(point.longitude() * 40000);
+            double dy = 0.3 * Math.cos(point.latitude() * 30000);
+            return new Vector3(dx, dy, 1).normalized();
+        }
+
+        public boolean covers(PointGeo southWest, PointGeo northEast) {
+            return true;
+        }
+
+        public void elevationsAt(double[] longitudes, double[] latitudes, float[] elevations, int count) {
+            for (int i = 0; i < count; i++)
+                elevations[i] = (float) (500 + 10 * Math.sin(longitudes[i] * 40000));
+        }
+
+        public void close() {}
+    }
+
+    private static <T> Attributed<T> tagged(T geometry, String key, String value) {
+        HashMap<String, String> attributes = new HashMap<>();
+        attributes.put(key, value);
+        return new Attributed<>(geometry, new Attributes(attributes));
+    }
+
+    private static Map sampleMap() {
+        List<Attributed<PolyLine>> polyLines = new ArrayList<>();
+        List<Attributed<Polygon>> polygons = new ArrayList<>();
+
+        /* Forêt et bâtiment coupés par les tuiles, routes en diagonale
+         * traversant plusieurs tuiles et débordant du cadre. Aucun sommet
+         * ne tombe sur le bord d'un pixel, où la normalisation des traits
+         * par Java2D dépendrait des erreurs d'arrondi. */
+        polygons.add(tagged(new Polygon(new ClosedPolyLine(new double[] {
+                532103.7, 152101.3, 532702.9, 152151.7, 532651.1, 152802.3, 532149.3, 152697.1 })), "natural", "wood"));
+        polygons.add(tagged(new Polygon(new ClosedPolyLine(new double[] {
+                532801.3, 152601.7, 532989.1, 152598.9, 532991.7, 152790.3, 532798.7, 152793.1 })), "building", "yes"));
+        polyLines.add(tagged(new OpenPolyLine(new double[] {
+                531901.7, 151903.1, 532603.3, 152497.9, 533301.1, 152402.7 }), "highway", "primary"));
+        polyLines.add(tagged(new OpenPolyLine(new double[] {
+                532001.9, 153051.3, 532497.1, 152302.9, 533102.3, 151951.7 }), "highway", "residential"));
+        polyLines.add(tagged(new OpenPolyLine(new double[] {
+                532251.3, 151950.7, 532262.9, 153049.1 }), "waterway", "river"));
+
+        return new Map(polyLines, polygons);
+    }
+
+    @Test
+    public void tiledRenderMatchesWholeRender() throws Exception {
+        Map map = sampleMap();
+        Painter painter = SwissPainter.painter().compile();
+        DigitalElevationModel dem = new WavyTerrain();
+
+        BufferedImage whole;
+        try (ReliefShader shader = new ReliefShader(Main.PROJECTION, dem, Main.LIGHT_DIRECTION, 1,
+                GaussianBlur.Mode.AUTO, null)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Main.writeMap(map, painter, shader, BOTTOM_LEFT, TOP_RIGHT, WIDTH, HEIGHT, DPI, "png", out);
+            whole = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        }
+
+        BufferedImage tiled;
+        try (ReliefShader shader = new ReliefShader(Main.PROJECTION, dem, Main.LIGHT_DIRECTION, 1,
+                GaussianBlur.Mode.AUTO, null)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (PNGStreamWriter writer = new PNGStreamWriter(out, WIDTH, HEIGHT)) {
+                new TiledMapRenderer(painter, shader, TILE_SIZE, Main.CULLING_MARGIN, 3)
+                    .render(map, BOTTOM_LEFT, TOP_RIGHT, WIDTH, HEIGHT, DPI, Main.gaussRadius(DPI), writer);
+            }
+            tiled = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        }
+
+        assertEquals(WIDTH, tiled.getWidth());
+        assertEquals(HEIGHT, tiled.getHeight());
+
+        /* Seuls des arrondis de l'anticrénelage des traits coupés par les
+         * tuiles peuvent différer */
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int a = whole.getRGB(x, y), b = tiled.getRGB(x, y);
+
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    int difference = Math.abs(((a >>> shift) & 0xFF) - ((b >>> shift) & 0xFF));
+                    assertTrue("pixel (" + x + ", " + y + ") : " + Integer.toHexString(b)
+                            + " au lieu de " + Integer.toHexString(a), difference <= 2);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package ch.epfl.imhof.dem;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class HGTDigitalElevationModelTest {
+    /* Fichier de 5 x 5 points, soit des cellules d'un quart de degré */
+    private static final int SIDE = 5;
+    private static final int N = SIDE - 1;
+
+    private static File file;
+    private static HGTDigitalElevationModel dem;
+
+    /**
+     * Altitude du point (gx, gy) de la grille, comptée depuis le coin
+     * sud-ouest : fonction bilinéaire, que l'interpolation doit donc
+     * retrouver exactement dans chaque cellule
+     */
+    private static double elevation (double gx, double gy) {
+        return 3 * gx + 7 * gy + 2 * gx * gy;
+    }
+
+    @BeforeClass
+    public static void createFile () throws IOException {
+        File directory = Files.createTempDirectory("hgt").toFile();
+        file = new File(directory, "N46E007.hgt");
+
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            for (int row = 0; row < SIDE; row++)
+                for (int col = 0; col < SIDE; col++)
+                    out.writeShort((int)elevation(col, N - row));
+        }
+
+        dem = new HGTDigitalElevationModel(file);
+    }
+
+    @AfterClass
+    public static void deleteFile () throws IOException {
+        dem.close();
+        file.delete();
+        file.getParentFile().delete();
+    }
+
+    private static float elevationAt (double lonDeg, double latDeg) {
+        float[] elevations = new float[1];
+        dem.elevationsAt(new double[] { Math.toRadians(lonDeg) },
+                new double[] { Math.toRadians(latDeg) }, elevations, 1);
+        return elevations[0];
+    }
+
+    private static double expected (double lonDeg, double latDeg) {
+        return elevation((lonDeg - 7) * N, (latDeg - 46) * N);
+    }
+
+    @Test
+    public void elevationsAtGridPoints () {
+        assertEquals(expected(7, 46), elevationAt(7, 46), 1e-3);
+        assertEquals(expected(7.25, 46.5), elevationAt(7.25, 46.5), 1e-3);
+        assertEquals(expected(7.75, 46.25), elevationAt(7.75, 46.25), 1e-3);
+    }
+
+    @Test
+    public void elevationsAtCellMidpoints () {
+        assertEquals(expected(7.125, 46.125), elevationAt(7.125, 46.125), 1e-3);
+        assertEquals(expected(7.625, 46.875), elevationAt(7.625, 46.875), 1e-3);
+        assertEquals(expected(7.3, 46.7), elevationAt(7.3, 46.7), 1e-3);
+    }
+
+    @Test
+    public void elevationsOnNorthAndEastEdgesUseTheLastCell () {
+        assertEquals(expected(8, 46.3), elevationAt(8, 46.3), 1e-3);
+        assertEquals(expected(7.4, 47), elevationAt(7.4, 47), 1e-3);
+        assertEquals(expected(8, 47), elevationAt(8, 47), 1e-3);
+    }
+
+    @Test
+    public void batchMatchesSinglePoints () {
+        double[] lons = { 7.1, 7.9, 8, 7.5 };
+        double[] lats = { 46.9, 46.2, 47, 46 };
+        double[] lonRad = new double[lons.length];
+        double[] latRad = new double[lats.length];
+        for (int i = 0; i < lons.length; i++) {
+            lonRad[i] = Math.toRadians(lons[i]);
+            latRad[i] = Math.toRadians(lats[i]);
+        }
+
+        float[] elevations = new float[lons.length];
+        dem.elevationsAt(lonRad, latRad, elevations, lons.length);
+
+        for (int i = 0; i < lons.length; i++)
+            assertEquals(elevationAt(lons[i], lats[i]), elevations[i], 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void elevationsFailOutsideTheFile () {
+        elevationAt(8.1, 46.5);
+    }
+}
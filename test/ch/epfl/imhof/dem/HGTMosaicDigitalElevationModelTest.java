@@ -0,0 +1,145 @@
+package ch.epfl.imhof.dem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.epfl.imhof.PointGeo;
+
+public class HGTMosaicDigitalElevationModelTest {
+    /* Fichiers de 3 x 3 points, soit une cellule d'un demi-degré */
+    private static final int SIDE = 3;
+    private static final int N = SIDE - 1;
+
+    private static File directory;
+    private static HGTMosaicDigitalElevationModel dem;
+
+    /**
+     * Altitude du point (gx, gy) de la grille globale : fonction linéaire, que
+     * l'interpolation bilinéaire doit donc retrouver exactement
+     */
+    private static double elevation (double gx, double gy) {
+        return 3 * gx + 7 * gy;
+    }
+
+    private static void writeTile (String name, int lon, int lat) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(new File(directory, name)))) {
+            for (int row = 0; row < SIDE; row++)
+                for (int col = 0; col < SIDE; col++)
+                    out.writeShort((int)elevation(lon * N + col, (lat + 1) * N - row));
+        }
+    }
+
+    @BeforeClass
+    public static void createTiles () throws IOException {
+        directory = Files.createTempDirectory("mosaic").toFile();
+        writeTile("N46E007.hgt", 7, 46);
+        writeTile("N46E008.hgt", 8, 46);
+        dem = new HGTMosaicDigitalElevationModel(directory, 1);
+    }
+
+    @AfterClass
+    public static void deleteTiles () {
+        dem.close();
+        for (File file : directory.listFiles())
+            file.delete();
+        directory.delete();
+    }
+
+    private static float elevationAt (double lonDeg, double latDeg) {
+        float[] elevations = new float[1];
+        dem.elevationsAt(new double[] { Math.toRadians(lonDeg) },
+                new double[] { Math.toRadians(latDeg) }, elevations, 1);
+        return elevations[0];
+    }
+
+    private static double expected (double lonDeg, double latDeg) {
+        return elevation(lonDeg * N, latDeg * N);
+    }
+
+    @Test
+    public void elevationsAtGridPoints () {
+        assertEquals(expected(7.5, 46.5), elevationAt(7.5, 46.5), 1e-3);
+        assertEquals(expected(7, 46), elevationAt(7, 46), 1e-3);
+        assertEquals(expected(8.5, 46), elevationAt(8.5, 46), 1e-3);
+    }
+
+    @Test
+    public void elevationsAtCellMidpoints () {
+        assertEquals(expected(7.25, 46.25), elevationAt(7.25, 46.25), 1e-3);
+        assertEquals(expected(8.75, 46.75), elevationAt(8.75, 46.75), 1e-3);
+    }
+
+    @Test
+    public void elevationsAcrossSharedEdge () {
+        assertEquals(expected(8, 46.25), elevationAt(8, 46.25), 1e-3);
+        assertEquals(expected(7.9, 46.3), elevationAt(7.9, 46.3), 1e-3);
+        assertEquals(expected(8.1, 46.3), elevationAt(8.1, 46.3), 1e-3);
+    }
+
+    @Test
+    public void elevationsOnEastAndNorthEdgesOfTheMosaic () {
+        assertEquals(expected(9, 46.25), elevationAt(9, 46.25), 1e-3);
+        assertEquals(expected(7.25, 47), elevationAt(7.25, 47), 1e-3);
+        assertEquals(expected(9, 47), elevationAt(9, 47), 1e-3);
+    }
+
+    @Test
+    public void batchSpanningSeveralTiles () {
+        double[] lons = { 7.1, 8.2, 7.3, 8.9, 9 };
+        double[] lats = { 46.1, 46.6, 46.9, 47, 46 };
+        double[] lonRad = new double[lons.length];
+        double[] latRad = new double[lats.length];
+        for (int i = 0; i < lons.length; i++) {
+            lonRad[i] = Math.toRadians(lons[i]);
+            latRad[i] = Math.toRadians(lats[i]);
+        }
+
+        float[] elevations = new float[lons.length];
+        dem.elevationsAt(lonRad, latRad, elevations, lons.length);
+
+        for (int i = 0; i < lons.length; i++)
+            assertEquals(expected(lons[i], lats[i]), elevations[i], 1e-3);
+    }
+
+    private static boolean covers (double west, double south, double east, double north) {
+        return dem.covers(new PointGeo(Math.toRadians(west), Math.toRadians(south)),
+                new PointGeo(Math.toRadians(east), Math.toRadians(north)));
+    }
+
+    @Test
+    public void coverageSpansBothFiles () {
+        assertTrue(covers(7.1, 46.1, 7.9, 46.9));
+        assertTrue(covers(7.5, 46.2, 8.5, 46.8));
+        assertTrue(covers(7, 46.01, 8.99, 47));
+    }
+
+    @Test
+    public void coverageExcludesMissingFiles () {
+        assertFalse(covers(6.9, 46.1, 7.5, 46.5));
+        assertFalse(covers(8.5, 46.1, 9.25, 46.5));
+        assertFalse(covers(7.5, 46.5, 7.6, 47.25));
+        assertFalse(covers(7.5, 45.5, 7.6, 46.5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void elevationsFailOutsideTheMosaic () {
+        elevationAt(9.25, 46.25);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void elevationsFailNorthOfTheMosaic () {
+        elevationAt(7.25, 47.25);
+    }
+}
@@ -0,0 +1,121 @@
+package ch.epfl.imhof.dem;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReliefCacheTest {
+    private static final int WIDTH = 37, HEIGHT = 23;
+
+    private File directory;
+
+    @Before
+    public void createDirectory () throws IOException {
+        directory = Files.createTempDirectory("reliefs").toFile();
+    }
+
+    @After
+    public void deleteDirectory () {
+        for (File file : directory.listFiles())
+            file.delete();
+        directory.delete();
+    }
+
+    private static int[] randomRelief (long seed) {
+        Random rng = new Random(seed);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = rng.nextInt() & 0xFFFFFF;
+        return pixels;
+    }
+
+    private File onlyFile () {
+        File[] files = directory.listFiles();
+        assertEquals(1, files.length);
+        return files[0];
+    }
+
+    @Test
+    public void reliefsAreKeptInMemory () {
+        ReliefCache cache = new ReliefCache(1L << 20, null);
+        String key = ReliefCache.key("relief");
+        int[] pixels = randomRelief(1);
+
+        assertNull(cache.get(key, WIDTH, HEIGHT));
+        cache.put(key, pixels, WIDTH, HEIGHT);
+        assertSame(pixels, cache.get(key, WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void reliefsAreReadBackFromDisk () {
+        String key = ReliefCache.key("relief");
+        int[] pixels = randomRelief(2);
+
+        new ReliefCache(0, directory).put(key, pixels.clone(), WIDTH, HEIGHT);
+
+        /* Un autre cache, vide en mémoire, retrouve le relief sur disque */
+        assertArrayEquals(pixels, new ReliefCache(0, directory).get(key, WIDTH, HEIGHT));
+        assertNull(new ReliefCache(0, directory).get(ReliefCache.key("autre"), WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void truncatedFilesAreIgnored () throws IOException {
+        String key = ReliefCache.key("relief");
+        new ReliefCache(0, directory).put(key, randomRelief(3), WIDTH, HEIGHT);
+
+        File file = onlyFile();
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        for (int length : new int[] { bytes.length - 1, bytes.length / 2, 10, 0 }) {
+            Files.write(file.toPath(), Arrays.copyOf(bytes, length));
+            assertNull(new ReliefCache(0, directory).get(key, WIDTH, HEIGHT));
+        }
+    }
+
+    @Test
+    public void filesOfAnotherSizeAreIgnored () {
+        String key = ReliefCache.key("relief");
+        new ReliefCache(0, directory).put(key, randomRelief(4), WIDTH, HEIGHT);
+
+        assertNull(new ReliefCache(0, directory).get(key, HEIGHT, WIDTH));
+        assertNull(new ReliefCache(0, directory).get(key, WIDTH, HEIGHT + 1));
+    }
+
+    @Test
+    public void filesOfAnotherFormatAreIgnored () throws IOException {
+        String key = ReliefCache.key("relief");
+        new ReliefCache(0, directory).put(key, randomRelief(5), WIDTH, HEIGHT);
+
+        File file = onlyFile();
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        bytes[0] ^= 1;
+        Files.write(file.toPath(), bytes);
+
+        assertNull(new ReliefCache(0, directory).get(key, WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void failedWritesKeepTheReliefInMemory () throws IOException {
+        /* Un fichier ordinaire ne peut pas servir de répertoire */
+        File notADirectory = new File(directory, "fichier");
+        Files.write(notADirectory.toPath(), new byte[] { 1 });
+
+        ReliefCache cache = new ReliefCache(1L << 20, notADirectory);
+        String key = ReliefCache.key("relief");
+        int[] pixels = randomRelief(6);
+
+        cache.put(key, pixels, WIDTH, HEIGHT);
+        assertSame(pixels, cache.get(key, WIDTH, HEIGHT));
+        assertEquals(1, directory.listFiles().length);
+    }
+}
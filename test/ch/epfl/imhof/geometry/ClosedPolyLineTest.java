@@ -4,8 +4,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -122,4 +124,52 @@ public class ClosedPolyLineTest extends PolyLineTest {
         assertFalse(l2.containsPoint(new Point(33, 51)));
 
     }
+
+    private static boolean referenceContainsPoint (List<Point> ps, Point p) {
+        int index = 0;
+        for (int i = 0; i < ps.size(); i++) {
+            Point p1 = ps.get(i), p2 = ps.get((i + 1) % ps.size());
+            if (p1.y() <= p.y()) {
+                if (p2.y() > p.y() && (p1.x() - p.x()) * (p2.y() - p.y()) > (p2.x() - p.x()) * (p1.y() - p.y()))
+                    index += 1;
+            } else {
+                if (p2.y() <= p.y() && (p2.x() - p.x()) * (p1.y() - p.y()) > (p1.x() - p.x()) * (p2.y() - p.y()))
+                    index -= 1;
+            }
+        }
+        return index != 0;
+    }
+
+    @Test
+    public void largePolyLineContainsSamePointsAsReference () {
+        Random rng = new Random(235116);
+        for (int n : new int[] { 10, 63, 64, 500, 3000 }) {
+            /* Étoile irrégulière aux sommets entiers, pour tester aussi les
+             * points situés sur les sommets et les arêtes */
+            List<Point> ps = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                double angle = 2 * Math.PI * i / n;
+                double radius = 20 + rng.nextInt(80);
+                ps.add(new Point(Math.rint(radius * Math.cos(angle)), Math.rint(radius * Math.sin(angle))));
+            }
+            ClosedPolyLine l = new ClosedPolyLine(ps);
+
+            for (int q = 0; q < 2000; q++) {
+                Point p = (q % 4 == 0)
+                    ? ps.get(rng.nextInt(n))
+                    : new Point(rng.nextInt(240) - 120, rng.nextInt(240) - 120);
+                assertEquals(referenceContainsPoint(ps, p), l.containsPoint(p));
+            }
+        }
+    }
+
+    @Test
+    public void horizontalPolyLineContainsNothing () {
+        List<Point> ps = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            ps.add(new Point(i, 5));
+        ClosedPolyLine l = new ClosedPolyLine(ps);
+        assertFalse(l.containsPoint(new Point(50, 5)));
+        assertEquals(0, l.area(), 0);
+    }
 }
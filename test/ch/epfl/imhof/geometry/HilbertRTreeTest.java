@@ -0,0 +1,81 @@
+package ch.epfl.imhof.geometry;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class HilbertRTreeTest {
+
+    private static Rectangle randomRectangle (Random rng, double extent, double maxSize) {
+        double x = rng.nextDouble() * extent, y = rng.nextDouble() * extent;
+        return new Rectangle(x, y, x + rng.nextDouble() * maxSize, y + rng.nextDouble() * maxSize);
+    }
+
+    @Test
+    public void emptyTreeFindsNothing () {
+        HilbertRTree tree = new HilbertRTree(Collections.<Rectangle>emptyList());
+        assertEquals(0, tree.size());
+        assertEquals(0, tree.search(new Rectangle(-10, -10, 10, 10)).length);
+    }
+
+    @Test
+    public void singleRectangleIsFoundWhenTouched () {
+        HilbertRTree tree = new HilbertRTree(Collections.singletonList(new Rectangle(0, 0, 1, 1)));
+        assertArrayEquals(new int[] { 0 }, tree.search(new Rectangle(1, 1, 2, 2)));
+        assertEquals(0, tree.search(new Rectangle(1.5, 0, 2, 1)).length);
+    }
+
+    @Test
+    public void searchMatchesBruteForce () {
+        Random rng = new Random(2015);
+        List<Rectangle> rectangles = new ArrayList<>();
+        for (int i = 0; i < 5000; i++)
+            rectangles.add(randomRectangle(rng, 1000, 20));
+        HilbertRTree tree = new HilbertRTree(rectangles);
+        assertEquals(5000, tree.size());
+
+        for (int q = 0; q < 200; q++) {
+            Rectangle area = randomRectangle(rng, 1000, 150);
+
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < rectangles.size(); i++)
+                if (rectangles.get(i).intersects(area))
+                    expected.add(i);
+
+            int[] found = tree.search(area);
+            assertEquals(expected.size(), found.length);
+            for (int i = 0; i < found.length; i++)
+                assertEquals((int)expected.get(i), found[i]);
+        }
+    }
+
+    @Test
+    public void identicalRectanglesAreAllFound () {
+        List<Rectangle> rectangles = Collections.nCopies(100, new Rectangle(3, 3, 3, 3));
+        HilbertRTree tree = new HilbertRTree(rectangles);
+
+        Set<Integer> found = new HashSet<>();
+        for (int i : tree.search(new Rectangle(0, 0, 5, 5)))
+            found.add(i);
+        assertEquals(100, found.size());
+    }
+
+    @Test
+    public void hilbertCurveVisitsEveryCellOnce () {
+        Set<Long> positions = new HashSet<>();
+        for (int x = 0; x < 64; x++)
+            for (int y = 0; y < 64; y++)
+                assertTrue(positions.add(HilbertRTree.hilbert(x, y)));
+        assertFalse(positions.contains(-1L));
+    }
+}
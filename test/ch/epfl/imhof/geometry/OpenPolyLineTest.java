@@ -1,5 +1,6 @@
 package ch.epfl.imhof.geometry;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 
 import java.util.List;
@@ -30,4 +31,18 @@ public final class OpenPolyLineTest extends PolyLineTest {
             assertFalse(l.isClosed());
         }
     }
+
+    @Test
+    public void coordinatesAreCopiedBeforeBeingStored () {
+        double[] xy = { 1, 2, 3, 4 };
+        OpenPolyLine l = new OpenPolyLine(xy);
+        xy[0] = 42;
+        assertEquals(1, l.x(0), 0);
+        assertEquals(2, l.pointCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void oddCoordinateCountIsRejected () {
+        new OpenPolyLine(new double[] { 1, 2, 3 });
+    }
 }
@@ -117,4 +117,37 @@ public abstract class PolyLineTest {
         assertTrue(ol instanceof ClosedPolyLine);
         assertEqualsPoints(ol.points(), pts2, DELTA);
     }
+
+    @Test
+    public void boundsEncloseAllPoints () {
+        Rectangle bounds = newPolyLine(ptsPolygon).bounds();
+        assertEquals(28, bounds.minX(), DELTA);
+        assertEquals(46, bounds.minY(), DELTA);
+        assertEquals(43, bounds.maxX(), DELTA);
+        assertEquals(62, bounds.maxY(), DELTA);
+    }
+
+    @Test
+    public void coordinateAccessorsMatchPoints () {
+        PolyLine l = newPolyLine(ptsPolygon);
+        assertEquals(ptsPolygon.size(), l.pointCount());
+
+        double[] xy = new double[2 * l.pointCount() + 1];
+        l.copyCoordinates(xy, 1);
+        for (int i = 0; i < l.pointCount(); i++) {
+            assertEquals(ptsPolygon.get(i).x(), l.x(i), 0);
+            assertEquals(ptsPolygon.get(i).y(), l.y(i), 0);
+            assertEquals(ptsPolygon.get(i).x(), xy[2 * i + 1], 0);
+            assertEquals(ptsPolygon.get(i).y(), xy[2 * i + 2], 0);
+        }
+    }
+
+    @Test
+    public void builderAcceptsCoordinates () {
+        PolyLine.Builder builder = new PolyLine.Builder();
+        for (Point p : ptsPolygon)
+            builder.addPoint(p.x(), p.y());
+        assertEqualsPoints(builder.buildOpen().points(), ptsPolygon, 0);
+        assertEqualsPoints(builder.buildClosed().points(), ptsPolygon, 0);
+    }
 }
@@ -0,0 +1,57 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LongIntMapTest {
+
+    @Test
+    public void emptyMapContainsNothing () {
+        LongIntMap map = new LongIntMap();
+        assertEquals(0, map.size());
+        assertEquals(-1, map.get(42));
+        assertFalse(map.contains(0));
+    }
+
+    @Test
+    public void putThenGetReturnsValue () {
+        LongIntMap map = new LongIntMap();
+        map.put(3_000_000_000L, 7);
+        map.put(-12, 0);
+
+        assertEquals(7, map.get(3_000_000_000L));
+        assertEquals(0, map.get(-12));
+        assertTrue(map.contains(-12));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void putReplacesPreviousValue () {
+        LongIntMap map = new LongIntMap();
+        map.put(5, 1);
+        map.put(5, 2);
+
+        assertEquals(2, map.get(5));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void mapGrowsBeyondInitialCapacity () {
+        LongIntMap map = new LongIntMap(4);
+        for (int i = 0; i < 100_000; i++)
+            map.put(i * 31L, i);
+
+        assertEquals(100_000, map.size());
+        for (int i = 0; i < 100_000; i++)
+            assertEquals(i, map.get(i * 31L));
+        assertFalse(map.contains(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeValueIsRejected () {
+        new LongIntMap().put(1, -1);
+    }
+}
@@ -5,7 +5,18 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 import org.xml.sax.SAXParseException;
@@ -265,4 +276,118 @@ public class OSMMapReaderTest {
                 .getResource("/OSMtestFiles/testSimpleBuildingError.osm").getFile(), false);
     }
 
+    private static File osmFile (String content) throws IOException {
+        File file = File.createTempFile("extract", ".osm");
+        file.deleteOnExit();
+        Files.write(file.toPath(), ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<osm version=\"0.6\">\n" + content + "</osm>\n").getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String node (long id, double lon, double lat) {
+        return String.format(Locale.ROOT, " <node id=\"%d\" lat=\"%.7f\" lon=\"%.7f\"/>\n", id, lat, lon);
+    }
+
+    private static String way (long id, String tag, long... refs) {
+        StringBuilder way = new StringBuilder(" <way id=\"" + id + "\">");
+        for (long ref : refs)
+            way.append("<nd ref=\"").append(ref).append("\"/>");
+        return way.append(tag).append("</way>\n").toString();
+    }
+
+    /**
+     * Décrit une carte par ses chemins et relations, triés par identifiant
+     */
+    private static String describe (OSMMap map) {
+        StringBuilder description = new StringBuilder();
+
+        map.ways().stream().sorted((a, b) -> Long.compare(a.id(), b.id())).forEach(w -> {
+            description.append("w").append(w.id()).append(w.attributes().get("highway"));
+            for (OSMNode n : w.nodes())
+                description.append(String.format(Locale.ROOT, ",%d@%.5f", n.id(),
+                        Math.toDegrees(n.position().longitude())));
+            description.append('\n');
+        });
+        map.relations().stream().sorted((a, b) -> Long.compare(a.id(), b.id())).forEach(r -> {
+            description.append("r").append(r.id());
+            for (OSMRelation.Member m : r.members())
+                description.append(',').append(m.member().id()).append(m.role());
+            description.append('\n');
+        });
+
+        return description.toString();
+    }
+
+    /**
+     * Deux extraits voisins partageant le chemin 10 et la relation 20, qui
+     * longent leur frontière
+     */
+    private static List<String> overlappingExtracts () throws IOException {
+        String border = way(10, "<tag k=\"highway\" v=\"primary\"/>", 3, 4);
+        String relation = " <relation id=\"20\"><member type=\"way\" ref=\"10\" role=\"outer\"/>"
+                + "<tag k=\"type\" v=\"route\"/></relation>\n";
+
+        File west = osmFile(node(1, 0.100, 0.800) + node(2, 0.101, 0.800) + node(3, 0.102, 0.800)
+                + node(4, 0.102, 0.801)
+                + way(11, "<tag k=\"highway\" v=\"track\"/>", 1, 2, 3) + border + relation);
+        File east = osmFile(node(3, 0.102, 0.800) + node(4, 0.102, 0.801) + node(5, 0.103, 0.800)
+                + node(6, 0.104, 0.800)
+                + border + way(12, "<tag k=\"highway\" v=\"service\"/>", 4, 5, 6) + relation);
+
+        return Arrays.asList(west.getPath(), east.getPath());
+    }
+
+    @Test
+    public void overlappingExtractsAreMergedWithoutDuplicates () throws Exception {
+        List<String> files = overlappingExtracts();
+
+        for (OSMMapReader.Parser parser : OSMMapReader.Parser.values()) {
+            for (int parallelism = 1; parallelism <= 2; parallelism++) {
+                OSMMap map = OSMMapReader.readOSMFiles(files, false, OSMMapReader.Mode.STANDARD,
+                        parser, parallelism);
+
+                assertEquals(3, map.ways().size());
+                assertEquals(1, map.relations().size());
+                assertEquals("w10primary,3@0.10200,4@0.10200\n"
+                        + "w11track,1@0.10000,2@0.10100,3@0.10200\n"
+                        + "w12service,4@0.10200,5@0.10300,6@0.10400\n"
+                        + "r20,10outer\n", describe(map));
+            }
+        }
+    }
+
+    @Test
+    public void concurrentReadsGiveTheSameMaps () throws Exception {
+        List<String> files = new ArrayList<>();
+        for (int f = 0; f < 4; f++) {
+            StringBuilder content = new StringBuilder();
+            for (int i = 0; i < 2000; i++)
+                content.append(node(f * 10000 + i, 0.1 + i * 1e-5, 0.8 + f * 1e-3));
+            for (int i = 0; i < 1999; i++)
+                content.append(way(f * 10000 + i, "<tag k=\"highway\" v=\"r" + f + "\"/>",
+                        f * 10000 + i, f * 10000 + i + 1));
+            files.add(osmFile(content.toString()).getPath());
+        }
+
+        for (OSMMapReader.Parser parser : OSMMapReader.Parser.values()) {
+            List<String> expected = new ArrayList<>();
+            for (String file : files)
+                expected.add(describe(OSMMapReader.readOSMFile(file, false, OSMMapReader.Mode.STANDARD, parser)));
+
+            ExecutorService executor = Executors.newFixedThreadPool(files.size());
+            try {
+                for (int round = 0; round < 3; round++) {
+                    List<Future<OSMMap>> maps = new ArrayList<>();
+                    for (String file : files)
+                        maps.add(executor.submit(() ->
+                            OSMMapReader.readOSMFile(file, false, OSMMapReader.Mode.STANDARD, parser)));
+
+                    for (int f = 0; f < files.size(); f++)
+                        assertEquals(expected.get(f), describe(maps.get(f).get()));
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
 }
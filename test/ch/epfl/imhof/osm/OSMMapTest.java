@@ -396,6 +396,23 @@ public class OSMMapTest {
 
     }
 
+    @Test
+    public void testCompactNodeForId () {
+        OSMMap.Builder builder = new OSMMap.Builder(true);
+        OSMNode node = createOSMNode();
+
+        builder.addNode(node);
+
+        OSMNode resultNode = builder.nodeForId(node.id());
+        assertEquals(node.id(), resultNode.id());
+        assertEquals(node.position().longitude(), resultNode.position().longitude(), 0);
+        assertEquals(node.position().latitude(), resultNode.position().latitude(), 0);
+        assertEquals(node.attributes().get("testKey 1"), resultNode.attributeValue("testKey 1"));
+
+        assertSame(resultNode, builder.nodeForId(node.id()));
+        assertEquals(null, builder.nodeForId(9999));
+    }
+
     @Test
     public void testAddWay () {
         OSMMap.Builder builder = new OSMMap.Builder();
@@ -5,12 +5,16 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 import org.junit.Test;
 
 import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.Attributes;
 import ch.epfl.imhof.Map;
+import ch.epfl.imhof.PointGeo;
 import ch.epfl.imhof.geometry.ClosedPolyLine;
 import ch.epfl.imhof.geometry.PolyLine;
 import ch.epfl.imhof.geometry.Polygon;
@@ -450,4 +454,37 @@ public class OSMToGeoTransformerTest {
         assertEquals(0, testMap.polygons().size());
     }
 
+    @Test
+    public void entitiesKeepTheOrderOfTheWays () {
+        List<OSMWay> ways = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            double lon = Math.toRadians(6.5 + i * 1e-4), lat = Math.toRadians(46.5);
+            List<OSMNode> nodes = new ArrayList<>();
+            nodes.add(new OSMNode(3 * i, new PointGeo(lon, lat), new Attributes(new HashMap<>())));
+            nodes.add(new OSMNode(3 * i + 1, new PointGeo(lon + 1e-5, lat), new Attributes(new HashMap<>())));
+            nodes.add(new OSMNode(3 * i + 2, new PointGeo(lon, lat + 1e-5), new Attributes(new HashMap<>())));
+            nodes.add(nodes.get(0));
+
+            Attributes.Builder attributes = new Attributes.Builder().put("layer", Integer.toString(i));
+            attributes.put((i % 3 == 0) ? "building" : "highway", "yes");
+            ways.add(new OSMWay(i, nodes, attributes.build()));
+        }
+
+        Map testMap = testTransformer.transform(new OSMMap(ways, new ArrayList<OSMRelation>()));
+
+        assertEquals(1333, testMap.polyLines().size());
+        assertEquals(667, testMap.polygons().size());
+        int previous = -1;
+        for (Attributed<PolyLine> polyLine : testMap.polyLines()) {
+            int layer = polyLine.attributeValue("layer", -1);
+            assertTrue(layer > previous && layer % 3 != 0);
+            previous = layer;
+        }
+        previous = -1;
+        for (Attributed<Polygon> polygon : testMap.polygons()) {
+            int layer = polygon.attributeValue("layer", -1);
+            assertTrue(layer > previous && layer % 3 == 0);
+            previous = layer;
+        }
+    }
 }
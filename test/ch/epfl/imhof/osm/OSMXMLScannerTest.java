@@ -0,0 +1,124 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public class OSMXMLScannerTest {
+
+    private static List<String> scan(String xml) throws Exception {
+        List<String> events = new ArrayList<>();
+
+        OSMEventHandler handler = new OSMEventHandler() {
+            public void startNode(long id, double longitude, double latitude) {
+                events.add("node " + id + " " + longitude + " " + latitude);
+            }
+            public void startWay(long id) {
+                events.add("way " + id);
+            }
+            public void nodeRef(long ref) {
+                events.add("nd " + ref);
+            }
+            public void tag(String key, String value) {
+                events.add("tag " + key + "=" + value);
+            }
+            public void member(OSMRelation.Member.Type type, long ref, String role) {
+                events.add("member " + type + " " + ref + " " + role);
+            }
+            public void startOther() {
+                events.add("other");
+            }
+            public void end() {
+                events.add("end");
+            }
+        };
+
+        new OSMXMLScanner(new ByteArrayInputStream(
+                xml.getBytes(StandardCharsets.UTF_8)), handler).scan();
+        return events;
+    }
+
+    @Test
+    public void coordinatesAreParsedLikeParseDouble () throws Exception {
+        List<String> events = scan("<node id=\"12\" lat=\"46.5196535\" lon=\"-6.6322734\"/>");
+
+        assertEquals("node 12 " + Double.parseDouble("-6.6322734") + " "
+                + Double.parseDouble("46.5196535"), events.get(0));
+        assertEquals("end", events.get(1));
+    }
+
+    @Test
+    public void unusualNumbersFallBackToStandardParsing () throws Exception {
+        List<String> events = scan("<node id='7' lat='4.65e1' lon='0.12345678901234567890'></node>");
+
+        assertEquals("node 7 " + Double.parseDouble("0.12345678901234567890") + " 46.5", events.get(0));
+    }
+
+    @Test
+    public void entitiesAndWhitespaceAreDecoded () throws Exception {
+        List<String> events = scan("<way id=\"3\"><nd ref=\"1\"/>"
+                + "<tag k=\"name\" v=\"Caf&#233; &amp;\tbar &#x41;\"/></way>");
+
+        assertEquals("way 3", events.get(0));
+        assertEquals("nd 1", events.get(1));
+        assertEquals("tag name=Café & bar A", events.get(3));
+        assertEquals("end", events.get(events.size() - 1));
+    }
+
+    @Test
+    public void commentsAndDeclarationsAreSkipped () throws Exception {
+        List<String> events = scan("<?xml version=\"1.0\"?><!-- <node id=\"1\"/> -->"
+                + "<osm><member type=\"node\" ref=\"4\" role=\"\"/></osm>");
+
+        assertEquals("other", events.get(0));
+        assertEquals("member NODE 4 ", events.get(1));
+        assertEquals(4, events.size());
+    }
+
+    @Test(expected = SAXException.class)
+    public void truncatedFileThrows () throws Exception {
+        scan("<node id=\"1\" lat=\"46");
+    }
+
+    private static SAXException scanError(String xml) throws Exception {
+        try {
+            scan(xml);
+        } catch (SAXException e) {
+            return e;
+        }
+
+        fail("Aucune erreur pour " + xml);
+        return null;
+    }
+
+    @Test
+    public void unknownEntityThrowsSAXExceptionWithPosition () throws Exception {
+        SAXException e = scanError("<way id=\"3\"><tag k=\"name\" v=\"a &foo; b\"/></way>");
+
+        assertTrue(e.getMessage().contains("foo"));
+        assertTrue(e.getMessage().contains("octet 39"));
+    }
+
+    @Test
+    public void unterminatedEntityThrowsSAXException () throws Exception {
+        scanError("<tag k=\"name\" v=\"a &amp b\"/>");
+    }
+
+    @Test
+    public void badNumberThrowsSAXExceptionWithPosition () throws Exception {
+        SAXException e = scanError("<osm>\n<node id=\"12a\" lat=\"46.5\" lon=\"6.6\"/></osm>");
+
+        assertTrue(e.getCause() instanceof NumberFormatException);
+        assertTrue(e.getMessage().contains("octet 20"));
+        scanError("<node id=\"12\" lat=\"46,5\" lon=\"6.6\"/>");
+        scanError("<nd ref=\"\"/>");
+    }
+}
@@ -0,0 +1,289 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import org.junit.Test;
+
+public class PBFReaderTest {
+    /**
+     * Écrivain minimal de messages protobuf
+     */
+    private static final class Message {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        private void raw(long value) {
+            while ((value & ~0x7FL) != 0) {
+                this.out.write((int)((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            this.out.write((int)value);
+        }
+
+        private void key(int field, int wireType) {
+            this.raw((field << 3) | wireType);
+        }
+
+        Message varint(int field, long value) {
+            this.key(field, 0);
+            this.raw(value);
+            return this;
+        }
+
+        Message sint64(int field, long value) {
+            return this.varint(field, zigZag(value));
+        }
+
+        Message bytes(int field, byte[] bytes) {
+            this.key(field, 2);
+            this.raw(bytes.length);
+            this.out.write(bytes, 0, bytes.length);
+            return this;
+        }
+
+        Message string(int field, String value) {
+            return this.bytes(field, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        Message message(int field, Message message) {
+            return this.bytes(field, message.toByteArray());
+        }
+
+        Message packed(int field, long... values) {
+            Message packed = new Message();
+            for (long value : values)
+                packed.raw(value);
+            return this.message(field, packed);
+        }
+
+        Message packedSigned(int field, long... values) {
+            Message packed = new Message();
+            for (long value : values)
+                packed.raw(zigZag(value));
+            return this.message(field, packed);
+        }
+
+        byte[] toByteArray() {
+            return this.out.toByteArray();
+        }
+
+        private static long zigZag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+    }
+
+    private static Message stringTable(String... strings) {
+        Message table = new Message();
+        for (String s : strings)
+            table.string(1, s);
+        return table;
+    }
+
+    private static void writeBlock(DataOutputStream out, String type, Message block) throws IOException {
+        byte[] raw = block.toByteArray();
+
+        Deflater deflater = new Deflater();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        while (!deflater.finished())
+            zlib.write(buffer, 0, deflater.deflate(buffer));
+        deflater.end();
+
+        byte[] blob = new Message().varint(2, raw.length).bytes(3, zlib.toByteArray()).toByteArray();
+        byte[] header = new Message().string(1, type).varint(3, blob.length).toByteArray();
+
+        out.writeInt(header.length);
+        out.write(header);
+        out.write(blob);
+    }
+
+    /**
+     * Fichier PBF de trois blocs : des nœuds compactés aux identifiants non
+     * triés, un nœud isolé avec une granularité et un décalage non standard,
+     * puis les chemins et la relation, aux références codées par différences.
+     */
+    private static File pbfFile() throws IOException {
+        File file = File.createTempFile("map", ".osm.pbf");
+        file.deleteOnExit();
+
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            writeBlock(out, "OSMHeader", new Message()
+                    .string(4, "OsmSchema-V0.6")
+                    .string(4, "DenseNodes"));
+
+            /* Nœuds 3, 1, 2, 4 ; seul le nœud 2 a un attribut */
+            Message dense = new Message()
+                    .packedSigned(1, 3, -2, 1, 2)
+                    .packedSigned(8, 465190000, 465196535 - 465190000, 465201010 - 465196535, 465185000 - 465201010)
+                    .packedSigned(9, 66310101, 66322734 - 66310101, 66330000 - 66322734, 66340000 - 66330000)
+                    .packed(10, 0, 0, 1, 2, 0, 0);
+            writeBlock(out, "OSMData", new Message()
+                    .message(1, stringTable("", "natural", "tree"))
+                    .message(2, new Message().message(2, dense)));
+
+            /* Nœud 5, en millièmes de microdegrés décalés d'un degré en latitude */
+            Message node = new Message()
+                    .sint64(1, 5)
+                    .packed(2, 1)
+                    .packed(3, 2)
+                    .sint64(8, 45521000)
+                    .sint64(9, 6635000);
+            writeBlock(out, "OSMData", new Message()
+                    .message(1, stringTable("", "amenity", "bench"))
+                    .message(2, new Message().message(1, node))
+                    .varint(17, 1000)
+                    .varint(19, 1_000_000_000));
+
+            Message building = new Message()
+                    .varint(1, 10)
+                    .packed(2, 1, 3)
+                    .packed(3, 2, 4)
+                    .packedSigned(8, 1, 1, 1, -2);
+            Message road = new Message()
+                    .varint(1, 11)
+                    .packed(2, 5)
+                    .packed(3, 6)
+                    .packedSigned(8, 3, 1, 1);
+            Message relation = new Message()
+                    .varint(1, 20)
+                    .packed(2, 7)
+                    .packed(3, 8)
+                    .packed(8, 9, 10, 11)
+                    .packedSigned(9, 10, 1, -6)
+                    .packed(10, 1, 1, 0);
+            writeBlock(out, "OSMData", new Message()
+                    .message(1, stringTable("", "building", "yes", "name", "Café du Léman",
+                            "highway", "residential", "type", "multipolygon",
+                            "outer", "inner", "label"))
+                    .message(2, new Message().message(3, building).message(3, road))
+                    .message(2, new Message().message(4, relation)));
+        }
+
+        return file;
+    }
+
+    private static File xmlFile() throws IOException {
+        File file = File.createTempFile("map", ".osm");
+        file.deleteOnExit();
+
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<osm version=\"0.6\">\n"
+                + " <node id=\"3\" lat=\"46.5190000\" lon=\"6.6310101\"/>\n"
+                + " <node id=\"1\" lat=\"46.5196535\" lon=\"6.6322734\"/>\n"
+                + " <node id=\"2\" lat=\"46.5201010\" lon=\"6.6330000\"><tag k=\"natural\" v=\"tree\"/></node>\n"
+                + " <node id=\"4\" lat=\"46.5185000\" lon=\"6.6340000\"/>\n"
+                + " <node id=\"5\" lat=\"46.5210000\" lon=\"6.6350000\"><tag k=\"amenity\" v=\"bench\"/></node>\n"
+                + " <way id=\"10\"><nd ref=\"1\"/><nd ref=\"2\"/><nd ref=\"3\"/><nd ref=\"1\"/>"
+                + "<tag k=\"building\" v=\"yes\"/><tag k=\"name\" v=\"Café du Léman\"/></way>\n"
+                + " <way id=\"11\"><nd ref=\"3\"/><nd ref=\"4\"/><nd ref=\"5\"/>"
+                + "<tag k=\"highway\" v=\"residential\"/></way>\n"
+                + " <relation id=\"20\"><member type=\"way\" ref=\"10\" role=\"outer\"/>"
+                + "<member type=\"way\" ref=\"11\" role=\"inner\"/>"
+                + "<member type=\"node\" ref=\"5\" role=\"label\"/>"
+                + "<tag k=\"type\" v=\"multipolygon\"/></relation>\n"
+                + "</osm>\n";
+        Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+
+        return file;
+    }
+
+    private static void assertSameNodes(List<OSMNode> expected, List<OSMNode> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            OSMNode e = expected.get(i), a = actual.get(i);
+
+            assertEquals(e.id(), a.id());
+            assertEquals(e.position().longitude(), a.position().longitude(), 0);
+            assertEquals(e.position().latitude(), a.position().latitude(), 0);
+            assertEquals(e.attributes(), a.attributes());
+        }
+    }
+
+    private static void assertSameMap(OSMMap expected, OSMMap actual) {
+        assertEquals(expected.ways().size(), actual.ways().size());
+        for (int i = 0; i < expected.ways().size(); i++) {
+            OSMWay e = expected.ways().get(i), a = actual.ways().get(i);
+
+            assertEquals(e.id(), a.id());
+            assertEquals(e.attributes(), a.attributes());
+            assertSameNodes(e.nodes(), a.nodes());
+        }
+
+        assertEquals(expected.relations().size(), actual.relations().size());
+        for (int i = 0; i < expected.relations().size(); i++) {
+            OSMRelation e = expected.relations().get(i), a = actual.relations().get(i);
+
+            assertEquals(e.id(), a.id());
+            assertEquals(e.attributes(), a.attributes());
+            assertEquals(e.members().size(), a.members().size());
+            for (int j = 0; j < e.members().size(); j++) {
+                assertEquals(e.members().get(j).type(), a.members().get(j).type());
+                assertEquals(e.members().get(j).role(), a.members().get(j).role());
+                assertEquals(e.members().get(j).member().id(), a.members().get(j).member().id());
+            }
+        }
+    }
+
+    @Test
+    public void pbfFileGivesTheSameMapAsXml () throws Exception {
+        OSMMap xml = OSMMapReader.readOSMFile(xmlFile().getPath(), false);
+        OSMMap pbf = OSMMapReader.readPBFFile(pbfFile().getPath(), OSMMapReader.Mode.STANDARD, 1);
+
+        assertEquals(2, xml.ways().size());
+        assertEquals(1, xml.relations().size());
+        assertSameMap(xml, pbf);
+    }
+
+    @Test
+    public void parallelDecodingKeepsFileOrder () throws Exception {
+        OSMMap xml = OSMMapReader.readOSMFile(xmlFile().getPath(), false);
+        OSMMap pbf = OSMMapReader.readPBFFile(pbfFile().getPath(), OSMMapReader.Mode.STANDARD, 3);
+
+        assertSameMap(xml, pbf);
+    }
+
+    @Test
+    public void lowMemoryModesGiveTheSameMap () throws Exception {
+        OSMMap xml = OSMMapReader.readOSMFile(xmlFile().getPath(), false);
+
+        for (OSMMapReader.Mode mode : OSMMapReader.Mode.values())
+            assertSameMap(xml, OSMMapReader.readPBFFile(pbfFile().getPath(), mode, 2));
+    }
+
+    @Test
+    public void denseNodesAndDeltaCodedRefsAreDecoded () throws Exception {
+        OSMMap pbf = OSMMapReader.readPBFFile(pbfFile().getPath(), OSMMapReader.Mode.STANDARD, 1);
+
+        OSMWay building = pbf.ways().get(0);
+        assertEquals(10, building.id());
+        assertEquals(4, building.nodesCount());
+        assertEquals(1, building.nodes().get(0).id());
+        assertEquals(2, building.nodes().get(1).id());
+        assertEquals(3, building.nodes().get(2).id());
+        assertEquals(1, building.nodes().get(3).id());
+        assertEquals("tree", building.nodes().get(1).attributeValue("natural"));
+        assertEquals(46.5196535, Math.toDegrees(building.nodes().get(0).position().latitude()), 1e-9);
+        assertEquals("Café du Léman", building.attributeValue("name"));
+
+        OSMNode bench = pbf.ways().get(1).lastNode();
+        assertEquals(5, bench.id());
+        assertEquals("bench", bench.attributeValue("amenity"));
+        assertEquals(46.521, Math.toDegrees(bench.position().latitude()), 1e-9);
+        assertEquals(6.635, Math.toDegrees(bench.position().longitude()), 1e-9);
+
+        OSMRelation relation = pbf.relations().get(0);
+        assertEquals(5, relation.members().get(2).member().id());
+        assertEquals(OSMRelation.Member.Type.NODE, relation.members().get(2).type());
+    }
+}
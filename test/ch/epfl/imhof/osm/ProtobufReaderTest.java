@@ -0,0 +1,95 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class ProtobufReaderTest {
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++)
+            bytes[i] = (byte)values[i];
+        return bytes;
+    }
+
+    @Test
+    public void readsVarintsAndFieldNumbers () throws IOException {
+        /* champ 1 = 150, champ 17 = 1 */
+        ProtobufReader reader = new ProtobufReader(bytes(0x08, 0x96, 0x01, 0x88, 0x01, 0x01));
+
+        assertTrue(reader.next());
+        assertEquals(1, reader.field());
+        assertEquals(150, reader.varint());
+
+        assertTrue(reader.next());
+        assertEquals(17, reader.field());
+        assertEquals(1, reader.varint());
+
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void decodesZigZagIntegers () throws IOException {
+        ProtobufReader reader = new ProtobufReader(bytes(0x00, 0x01, 0x02, 0x03, 0xFE, 0xFF, 0xFF, 0xFF, 0x0F));
+
+        assertEquals(0, reader.sint64());
+        assertEquals(-1, reader.sint64());
+        assertEquals(1, reader.sint64());
+        assertEquals(-2, reader.sint64());
+        assertEquals(Integer.MAX_VALUE, reader.sint64());
+    }
+
+    @Test
+    public void readsNestedMessagesAndPackedFields () throws IOException {
+        /* champ 2 = { champ 8 = [3, 270] compacté }, puis champ 3 = "ab" */
+        ProtobufReader reader = new ProtobufReader(bytes(
+                0x12, 0x05, 0x42, 0x03, 0x03, 0x8E, 0x02,
+                0x1A, 0x02, 'a', 'b'));
+
+        assertTrue(reader.next());
+        ProtobufReader message = reader.message();
+        assertTrue(message.next());
+        assertEquals(8, message.field());
+
+        ProtobufReader packed = message.message();
+        assertEquals(3, packed.varint());
+        assertEquals(270, packed.varint());
+        assertFalse(packed.hasRemaining());
+        assertFalse(message.next());
+
+        assertTrue(reader.next());
+        assertEquals("ab", reader.string());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void skipsUnknownFields () throws IOException {
+        /* champ 1 fixed64, champ 2 fixed32, champ 3 délimité, champ 4 = 7 */
+        ProtobufReader reader = new ProtobufReader(bytes(
+                0x09, 1, 2, 3, 4, 5, 6, 7, 8,
+                0x15, 1, 2, 3, 4,
+                0x1A, 0x01, 0x00,
+                0x20, 0x07));
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(reader.next());
+            reader.skip();
+        }
+
+        assertTrue(reader.next());
+        assertEquals(4, reader.field());
+        assertEquals(7, reader.varint());
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedMessageThrows () throws IOException {
+        ProtobufReader reader = new ProtobufReader(bytes(0x12, 0x05, 0x01));
+        reader.next();
+        reader.message();
+    }
+}
@@ -0,0 +1,107 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.Attributes;
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.projection.EquirectangularProjection;
+import ch.epfl.imhof.projection.Projection;
+
+public class RingBuilderTest {
+    private static final Projection PROJECTION = new EquirectangularProjection();
+    private static final Attributes NO_ATTRIBUTES = new Attributes(new HashMap<>());
+
+    private static OSMNode node (long id) {
+        return new OSMNode(id, new PointGeo(id * 1e-5, (id % 7) * 1e-5), NO_ATTRIBUTES);
+    }
+
+    private static OSMWay way (long id, OSMNode... nodes) {
+        List<OSMNode> list = new ArrayList<>();
+        for (OSMNode n : nodes)
+            list.add(n);
+        return new OSMWay(id, list, NO_ATTRIBUTES);
+    }
+
+    private static void assertRingStartsAt (ClosedPolyLine ring, OSMNode... nodes) {
+        assertEquals(nodes.length, ring.pointCount());
+        for (int i = 0; i < nodes.length; i++)
+            assertEquals(PROJECTION.project(nodes[i].position()).x(), ring.x(i), 0);
+    }
+
+    @Test
+    public void openWaysAreStitchedEndToEnd () {
+        OSMNode a = node(1), b = node(2), c = node(3), d = node(4);
+        RingBuilder builder = new RingBuilder();
+        builder.addWay(way(1, a, b, c));
+        builder.addWay(way(2, a, d, c));
+
+        List<ClosedPolyLine> rings = builder.rings(PROJECTION);
+        assertEquals(1, rings.size());
+        assertRingStartsAt(rings.get(0), a, b, c, d);
+    }
+
+    @Test
+    public void closedWayIsKeptWhole () {
+        OSMNode a = node(1), b = node(2), c = node(3), d = node(4);
+        RingBuilder builder = new RingBuilder();
+        builder.addWay(way(1, b, c, d, a, b));
+
+        List<ClosedPolyLine> rings = builder.rings(PROJECTION);
+        assertEquals(1, rings.size());
+        assertRingStartsAt(rings.get(0), b, c, d, a);
+    }
+
+    @Test
+    public void nodeWithThreeNeighborsGivesNoRing () {
+        OSMNode a = node(1), b = node(2), c = node(3), d = node(4);
+        RingBuilder builder = new RingBuilder();
+        builder.addWay(way(1, a, b, c, a));
+        builder.addWay(way(2, a, d));
+
+        assertTrue(builder.rings(PROJECTION).isEmpty());
+    }
+
+    @Test
+    public void unclosedChainGivesNoRing () {
+        OSMNode a = node(1), b = node(2), c = node(3);
+        RingBuilder builder = new RingBuilder();
+        builder.addWay(way(1, a, b));
+        builder.addWay(way(2, b, c));
+
+        assertTrue(builder.rings(PROJECTION).isEmpty());
+    }
+
+    @Test
+    public void duplicatedWayDoesNotAddNeighbors () {
+        OSMNode a = node(1), b = node(2), c = node(3);
+        OSMWay w = way(1, a, b, c, a);
+        RingBuilder builder = new RingBuilder();
+        builder.addWay(w);
+        builder.addWay(w);
+
+        assertEquals(1, builder.rings(PROJECTION).size());
+    }
+
+    @Test
+    public void manyRingsAreAssembledInWayOrder () {
+        RingBuilder builder = new RingBuilder();
+        for (int r = 0; r < 20000; r++) {
+            OSMNode a = node(4 * r), b = node(4 * r + 1), c = node(4 * r + 2), d = node(4 * r + 3);
+            builder.addWay(way(2 * r, a, b, c));
+            builder.addWay(way(2 * r + 1, c, d, a));
+        }
+
+        List<ClosedPolyLine> rings = builder.rings(PROJECTION);
+        assertEquals(20000, rings.size());
+        for (int r = 0; r < rings.size(); r += 997)
+            assertRingStartsAt(rings.get(r), node(4 * r), node(4 * r + 1), node(4 * r + 2), node(4 * r + 3));
+    }
+}
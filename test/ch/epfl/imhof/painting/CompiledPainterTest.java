@@ -0,0 +1,168 @@
+package ch.epfl.imhof.painting;
+
+import static ch.epfl.imhof.painting.Filters.notTagged;
+import static ch.epfl.imhof.painting.Filters.tagged;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.Attributes;
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.SwissPainter;
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.OpenPolyLine;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+
+public class CompiledPainterTest {
+    private static final double SIZE = 1000;
+
+    private static final String[][] TAGS = {
+        { "highway", "motorway", "trunk", "primary", "secondary", "tertiary",
+          "residential", "service", "footway", "path", "motorway_link" },
+        { "building", "yes", "house" },
+        { "natural", "water", "wood" },
+        { "waterway", "river", "stream", "riverbank", "canal" },
+        { "landuse", "forest", "residential", "grass", "industrial" },
+        { "railway", "rail", "subway" },
+        { "leisure", "pitch", "park", "swimming_pool" },
+        { "man_made", "pier" },
+    };
+    private static final String[] LAYERS = {
+        "-5", "-4", "-3", "-2", "-1", "0", "1", "2", "3", "4", "5", "7", "x"
+    };
+
+    private static Attributes randomAttributes (Random rng) {
+        Attributes.Builder builder = new Attributes.Builder();
+
+        int tags = 1 + rng.nextInt(2);
+        for (int i = 0; i < tags; i++) {
+            String[] tag = TAGS[rng.nextInt(TAGS.length)];
+            builder.put(tag[0], tag[1 + rng.nextInt(tag.length - 1)]);
+        }
+
+        if (rng.nextInt(3) > 0)
+            builder.put("layer", LAYERS[rng.nextInt(LAYERS.length)]);
+        if (rng.nextInt(6) == 0)
+            builder.put("bridge", "yes");
+        if (rng.nextInt(6) == 0)
+            builder.put("tunnel", "yes");
+
+        return builder.build();
+    }
+
+    private static Point randomPoint (Random rng) {
+        return new Point(rng.nextDouble() * SIZE, rng.nextDouble() * SIZE);
+    }
+
+    /**
+     * Anneau étoilé autour du centre donné, les sommets étant triés par angle
+     */
+    private static ClosedPolyLine randomRing (Random rng, Point center, double radius) {
+        int count = 3 + rng.nextInt(6);
+        double[] angles = new double[count];
+        for (int i = 0; i < count; i++)
+            angles[i] = rng.nextDouble() * 2 * Math.PI;
+        Arrays.sort(angles);
+
+        List<Point> points = new ArrayList<>();
+        for (double angle : angles) {
+            double r = radius * (0.5 + 0.5 * rng.nextDouble());
+            points.add(new Point(center.x() + r * Math.cos(angle), center.y() + r * Math.sin(angle)));
+        }
+
+        return new ClosedPolyLine(points);
+    }
+
+    private static Map randomMap (long seed, int entities) {
+        Random rng = new Random(seed);
+        Map.Builder builder = new Map.Builder();
+
+        for (int i = 0; i < entities; i++) {
+            if (rng.nextBoolean()) {
+                List<Point> points = new ArrayList<>();
+                int count = 2 + rng.nextInt(5);
+                for (int j = 0; j < count; j++)
+                    points.add(randomPoint(rng));
+
+                PolyLine line = rng.nextInt(4) == 0 ? new ClosedPolyLine(points) : new OpenPolyLine(points);
+                builder.addPolyLine(new Attributed<>(line, randomAttributes(rng)));
+            } else {
+                Point center = randomPoint(rng);
+                double radius = 20 + rng.nextDouble() * 150;
+                ClosedPolyLine shell = randomRing(rng, center, radius);
+                List<ClosedPolyLine> holes = rng.nextInt(3) == 0
+                        ? Collections.singletonList(randomRing(rng, center, radius / 4))
+                        : Collections.emptyList();
+
+                builder.addPolygon(new Attributed<>(new Polygon(shell, holes), randomAttributes(rng)));
+            }
+        }
+
+        return builder.build();
+    }
+
+    private static int[] draw (Painter painter, Map map) {
+        Java2DCanvas canvas = new Java2DCanvas(new Point(0, 0), new Point(SIZE, SIZE), 400, 400, 150, Color.WHITE);
+        painter.drawMap(map, canvas);
+
+        BufferedImage image = canvas.image();
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    private static void assertSameDrawing (Painter painter, Map map) {
+        int[] expected = draw(painter, map);
+        int[] actual = draw(painter.compile(), map);
+
+        assertEquals(expected.length, actual.length);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void swissPainterIsUnchangedByCompilation () {
+        for (long seed = 1; seed <= 4; seed++)
+            assertSameDrawing(SwissPainter.painter(), randomMap(seed, 300));
+    }
+
+    @Test
+    public void nestedFiltersAndLayersAreUnchangedByCompilation () {
+        Painter buildings = Painter.polygon(Color.RED).when(tagged("building"));
+        Painter roads = Painter.line(2f, Color.BLACK)
+                .above(Painter.line(4f, Color.gray(0.5)))
+                .when(tagged("highway"))
+                .when(notTagged("tunnel"));
+        Painter water = Painter.outline(1f, Color.BLUE)
+                .above(Painter.polygon(Color.rgb(0.8, 0.9, 1)))
+                .when(tagged("natural", "water").or(tagged("waterway", "riverbank")));
+
+        Painter painter = roads.above(buildings).layered()
+                .above(water.layered().when(tagged("layer")))
+                .above(Painter.line(0.5f, Color.rgb(0.2, 0.6, 0.2)).when(tagged("landuse")).layered().layered())
+                .when(notTagged("bridge").or(tagged("highway")));
+
+        for (long seed = 10; seed <= 13; seed++)
+            assertSameDrawing(painter, randomMap(seed, 300));
+    }
+
+    @Test
+    public void opaquePaintersAreUnchangedByCompilation () {
+        Painter custom = (map, canvas) -> {
+            for (Attributed<Polygon> polygon : map.polygons())
+                canvas.drawPolyline(polygon.value().shell(), new LineStyle(1f, Color.BLACK));
+        };
+
+        Painter painter = custom.when(tagged("building")).above(Painter.polygon(Color.gray(0.8))).layered();
+
+        assertSameDrawing(painter, randomMap(42, 300));
+    }
+}
@@ -0,0 +1,132 @@
+package ch.epfl.imhof.painting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CompositorTest {
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 23;
+
+    /**
+     * Image opaque aux pixels aléatoires, du type donné
+     */
+    private static BufferedImage randomImage (Random rng, int type, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++)
+                image.setRGB(x, y, 0xFF000000 | rng.nextInt());
+        return image;
+    }
+
+    private static int[][] pixels (BufferedImage image) {
+        int[][] pixels = new int[image.getHeight()][image.getWidth()];
+        for (int y = 0; y < image.getHeight(); y++)
+            for (int x = 0; x < image.getWidth(); x++)
+                pixels[y][x] = image.getRGB(x, y);
+        return pixels;
+    }
+
+    /**
+     * Vérifie que chaque pixel du résultat vaut, à une unité près par
+     * composante, le produit calculé par Color.multiplyWith
+     */
+    private static void assertMultiplied (int[][] back, int[][] front, BufferedImage result) {
+        for (int y = 0; y < result.getHeight(); y++) {
+            for (int x = 0; x < result.getWidth(); x++) {
+                int expected = Color.rgb(back[y][x]).multiplyWith(Color.rgb(front[y][x])).getRGB();
+                int actual = result.getRGB(x, y);
+
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    int e = (expected >>> shift) & 0xFF;
+                    int a = (actual >>> shift) & 0xFF;
+                    assertTrue("pixel (" + x + ", " + y + ") : " + Integer.toHexString(actual)
+                            + " au lieu de " + Integer.toHexString(expected), Math.abs(e - a) <= 1);
+                }
+                assertEquals(0xFF, actual >>> 24);
+            }
+        }
+    }
+
+    @Test
+    public void multiplyIntRGBImages () {
+        Random rng = new Random(1);
+        BufferedImage back = randomImage(rng, BufferedImage.TYPE_INT_RGB, WIDTH, HEIGHT);
+        BufferedImage front = randomImage(rng, BufferedImage.TYPE_INT_RGB, WIDTH, HEIGHT);
+
+        BufferedImage result = Compositor.multiply(back, front);
+
+        assertEquals(BufferedImage.TYPE_INT_RGB, result.getType());
+        assertMultiplied(pixels(back), pixels(front), result);
+    }
+
+    @Test
+    public void multiplyIntARGBImages () {
+        Random rng = new Random(2);
+        BufferedImage back = randomImage(rng, BufferedImage.TYPE_INT_ARGB, WIDTH, HEIGHT);
+        BufferedImage front = randomImage(rng, BufferedImage.TYPE_INT_ARGB, WIDTH, HEIGHT);
+        int[][] backPixels = pixels(back), frontPixels = pixels(front);
+
+        assertMultiplied(backPixels, frontPixels, Compositor.multiply(back, front));
+
+        Compositor.multiplyInto(back, front);
+        assertMultiplied(backPixels, frontPixels, front);
+    }
+
+    @Test
+    public void multiplyIntoOffsetSubImages () {
+        Random rng = new Random(3);
+        BufferedImage relief = randomImage(rng, BufferedImage.TYPE_INT_RGB, WIDTH + 11, HEIGHT + 7)
+                .getSubimage(5, 4, WIDTH, HEIGHT);
+        BufferedImage map = randomImage(rng, BufferedImage.TYPE_INT_ARGB, WIDTH + 9, HEIGHT + 3);
+        int[][] mapPixels = pixels(map);
+
+        BufferedImage destination = map.getSubimage(3, 2, WIDTH, HEIGHT);
+        int[][] reliefPixels = pixels(relief), destinationPixels = pixels(destination);
+
+        Compositor.multiplyInto(relief, destination);
+
+        assertMultiplied(reliefPixels, destinationPixels, destination);
+
+        /* Les pixels hors de la sous-image ne sont pas modifiés */
+        for (int y = 0; y < map.getHeight(); y++)
+            for (int x = 0; x < map.getWidth(); x++)
+                if (x < 3 || x >= 3 + WIDTH || y < 2 || y >= 2 + HEIGHT)
+                    assertEquals(mapPixels[y][x], map.getRGB(x, y));
+    }
+
+    @Test
+    public void multiplyOtherImageTypes () {
+        Random rng = new Random(4);
+        BufferedImage back = randomImage(rng, BufferedImage.TYPE_3BYTE_BGR, WIDTH, HEIGHT);
+        BufferedImage front = randomImage(rng, BufferedImage.TYPE_INT_RGB, WIDTH, HEIGHT);
+        int[][] backPixels = pixels(back), frontPixels = pixels(front);
+
+        assertMultiplied(backPixels, frontPixels, Compositor.multiply(back, front));
+        assertMultiplied(frontPixels, backPixels, Compositor.multiply(front, back));
+
+        Compositor.multiplyInto(front, back);
+        assertMultiplied(frontPixels, backPixels, back);
+    }
+
+    @Test
+    public void multiplyIntoItself () {
+        Random rng = new Random(5);
+        BufferedImage image = randomImage(rng, BufferedImage.TYPE_INT_RGB, WIDTH, HEIGHT);
+        int[][] imagePixels = pixels(image);
+
+        Compositor.multiplyInto(image, image);
+
+        assertMultiplied(imagePixels, imagePixels, image);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void imagesOfDifferentSizesThrow () {
+        Compositor.multiply(new BufferedImage(2, 3, BufferedImage.TYPE_INT_RGB),
+                new BufferedImage(3, 2, BufferedImage.TYPE_INT_RGB));
+    }
+}
@@ -0,0 +1,106 @@
+package ch.epfl.imhof.painting;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class PNGStreamWriterTest {
+    /**
+     * Pixels aléatoires, donc incompressibles : une image de cette taille
+     * occupe plusieurs blocs IDAT
+     */
+    private static int[] randomPixels (Random rng, int count) {
+        int[] pixels = new int[count];
+        for (int i = 0; i < count; i++)
+            pixels[i] = rng.nextInt() & 0xFFFFFF;
+        return pixels;
+    }
+
+    private static int idatChunks (byte[] png) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(png));
+        in.skipBytes(8);
+
+        int count = 0;
+        while (in.available() > 0) {
+            int length = in.readInt();
+            byte[] type = new byte[4];
+            in.readFully(type);
+            if (new String(type, "US-ASCII").equals("IDAT"))
+                count += 1;
+            in.skipBytes(length + 4);
+        }
+
+        return count;
+    }
+
+    private static int[] readBack (byte[] png) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] &= 0xFFFFFF;
+        return pixels;
+    }
+
+    @Test
+    public void randomRowsAreReadBackIdentically () throws IOException {
+        int width = 317, height = 243;
+        int[] pixels = randomPixels(new Random(2015), width * height);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PNGStreamWriter writer = new PNGStreamWriter(out, width, height)) {
+            /* Lignes écrites par paquets de tailles variables */
+            Random rng = new Random(7);
+            int y = 0;
+            while (y < height) {
+                int rows = Math.min(height - y, 1 + rng.nextInt(20));
+                writer.writeRows(pixels, y * width, width, rows);
+                y += rows;
+            }
+        }
+
+        byte[] png = out.toByteArray();
+        assertTrue(idatChunks(png) > 1);
+        assertArrayEquals(pixels, readBack(png));
+    }
+
+    @Test
+    public void rowsAreTakenWithOffsetAndStride () throws IOException {
+        int width = 50, height = 40, stride = 64, offset = 5;
+        int[] source = randomPixels(new Random(42), offset + stride * height);
+        /* La composante alpha doit être ignorée */
+        for (int i = 0; i < source.length; i++)
+            source[i] |= 0x7F000000;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PNGStreamWriter writer = new PNGStreamWriter(out, width, height)) {
+            writer.writeRows(source, offset, stride, height);
+        }
+
+        int[] expected = new int[width * height];
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++)
+                expected[y * width + x] = source[offset + y * stride + x] & 0xFFFFFF;
+
+        int[] actual = readBack(out.toByteArray());
+        assertEquals(expected.length, actual.length);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closeFailsOnIncompleteImage () throws IOException {
+        PNGStreamWriter writer = new PNGStreamWriter(new ByteArrayOutputStream(), 10, 10);
+        writer.writeRows(new int[100], 0, 10, 5);
+        writer.close();
+    }
+}
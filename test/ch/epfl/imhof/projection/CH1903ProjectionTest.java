@@ -61,4 +61,55 @@ public class CH1903ProjectionTest {
         assertEquals(0.1524, p.inverse(projectionD).longitude(), DELTA);
         assertEquals(0.8036, p.inverse(projectionD).latitude(), DELTA);
     }
+
+    @Test
+    public void bulkProjectMatchesProject () {
+        Projection p = new CH1903Projection();
+        int count = 100;
+        double[] lons = new double[count + 1], lats = new double[count + 1];
+        for (int i = 0; i < count; i++) {
+            lons[i] = 0.10 + i * 0.0007;
+            lats[i] = 0.80 + i * 0.0003;
+        }
+        lons[count] = lats[count] = 42;
+
+        double[] xs = new double[count + 1], ys = new double[count + 1];
+        p.project(lons, lats, xs, ys, count);
+        for (int i = 0; i < count; i++) {
+            Point pt = p.project(new PointGeo(lons[i], lats[i]));
+            assertEquals(pt.x(), xs[i], 0);
+            assertEquals(pt.y(), ys[i], 0);
+        }
+        assertEquals(0, xs[count], 0);
+
+        p.inverse(xs, ys, xs, ys, count);
+        for (int i = 0; i < count; i++) {
+            PointGeo pg = p.inverse(p.project(new PointGeo(lons[i], lats[i])));
+            assertEquals(pg.longitude(), xs[i], 0);
+            assertEquals(pg.latitude(), ys[i], 0);
+        }
+    }
+
+    @Test
+    public void rowInverseMatchesInverse () {
+        Projection p = new CH1903Projection();
+        int count = 300;
+        double[] xs = new double[count];
+        for (int i = 0; i < count; i++)
+            xs[i] = 480000 + i * 1013.7;
+
+        Projection.RowInverse rows = p.rowInverse(xs, count);
+        xs[0] = 0;
+
+        double[] lons = new double[count], lats = new double[count];
+        for (double y = 70000; y < 300000; y += 23011.3) {
+            rows.inverseRow(y, lons, lats);
+
+            for (int i = 0; i < count; i++) {
+                PointGeo pg = p.inverse(new Point(480000 + i * 1013.7, y));
+                assertEquals(pg.longitude(), lons[i], 0);
+                assertEquals(pg.latitude(), lats[i], 0);
+            }
+        }
+    }
 }
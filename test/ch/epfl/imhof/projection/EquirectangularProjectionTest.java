@@ -33,4 +33,35 @@ public class EquirectangularProjectionTest {
             }
         }
     }
+
+    @Test
+    public void bulkProjectAndInverseCopyCoordinates () {
+        Projection p = new EquirectangularProjection();
+        double[] lons = { -3.0, 0.5, 2.0 }, lats = { -1.5, 0.2, 1.0 };
+        double[] xs = new double[3], ys = new double[3];
+
+        p.project(lons, lats, xs, ys, 2);
+        assertEquals(-3.0, xs[0], 0);
+        assertEquals(0.2, ys[1], 0);
+        assertEquals(0, xs[2], 0);
+
+        double[] lons2 = new double[3], lats2 = new double[3];
+        p.inverse(xs, ys, lons2, lats2, 2);
+        assertEquals(0.5, lons2[1], 0);
+        assertEquals(-1.5, lats2[0], 0);
+    }
+
+    @Test
+    public void rowInverseCopiesAbscissas () {
+        Projection p = new EquirectangularProjection();
+        double[] xs = { -3.0, 0.5, 2.0 };
+        Projection.RowInverse rows = p.rowInverse(xs, 2);
+
+        double[] lons = new double[3], lats = new double[3];
+        rows.inverseRow(1.25, lons, lats);
+        assertEquals(-3.0, lons[0], 0);
+        assertEquals(0.5, lons[1], 0);
+        assertEquals(1.25, lats[1], 0);
+        assertEquals(0, lats[2], 0);
+    }
 }
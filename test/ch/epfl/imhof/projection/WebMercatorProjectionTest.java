@@ -0,0 +1,77 @@
+package ch.epfl.imhof.projection;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.geometry.Point;
+
+public class WebMercatorProjectionTest {
+    private static final double DELTA = 0.000001;
+
+    @Test
+    public void projectProducesTheRightValues () {
+        Projection p = new WebMercatorProjection();
+        // Fosse aux ours de Berne ( 7.4600062, 46.947973 )
+        assertEquals(830444.088889, p.project(new PointGeo(0.13020167, 0.819396706)).x(), DELTA);
+        assertEquals(5933586.072727, p.project(new PointGeo(0.13020167, 0.819396706)).y(), DELTA);
+        // Musée Olympique à Lausanne ( 6.634088, 46.508732 )
+        assertEquals(738503.295059, p.project(new PointGeo(0.115786678, 0.811730504)).x(), DELTA);
+        assertEquals(5862252.063997, p.project(new PointGeo(0.115786678, 0.811730504)).y(), DELTA);
+        // Hémisphère sud, à l'ouest de Greenwich
+        assertEquals(-12756274.0, p.project(new PointGeo(-2.0, -1.2)).x(), DELTA);
+        assertEquals(-10675083.110480, p.project(new PointGeo(-2.0, -1.2)).y(), DELTA);
+    }
+
+    @Test
+    public void worldIsASquareBoundedByMaxLatitude () {
+        Projection p = new WebMercatorProjection();
+        Point corner = p.project(new PointGeo(Math.PI, WebMercatorProjection.MAX_LATITUDE));
+
+        assertEquals(85.0511287798, Math.toDegrees(WebMercatorProjection.MAX_LATITUDE), 1e-9);
+        assertEquals(WebMercatorProjection.WORLD_SIZE / 2, corner.x(), DELTA);
+        assertEquals(WebMercatorProjection.WORLD_SIZE / 2, corner.y(), DELTA);
+    }
+
+    @Test
+    public void inverseProducesTheRightValues () {
+        Projection p = new WebMercatorProjection();
+        for (double lon = -3.0; lon <= 3.0; lon += 0.2) {
+            for (double lat = -1.4; lat <= 1.4; lat += 0.1) {
+                PointGeo pg = p.inverse(p.project(new PointGeo(lon, lat)));
+                assertEquals(lon, pg.longitude(), DELTA);
+                assertEquals(lat, pg.latitude(), DELTA);
+            }
+        }
+    }
+
+    @Test
+    public void bulkAndRowMethodsMatchPointMethods () {
+        Projection p = new WebMercatorProjection();
+        double[] lons = { -3.0, 0.13020167, 2.0 }, lats = { -1.2, 0.819396706, 1.0 };
+        double[] xs = new double[3], ys = new double[3];
+
+        p.project(lons, lats, xs, ys, 3);
+        double[] lons2 = new double[3], lats2 = new double[3];
+        p.inverse(xs, ys, lons2, lats2, 3);
+
+        Projection.RowInverse rows = p.rowInverse(xs, 3);
+        double[] rowLons = new double[3], rowLats = new double[3];
+        rows.inverseRow(ys[1], rowLons, rowLats);
+
+        for (int i = 0; i < 3; i++) {
+            Point pt = p.project(new PointGeo(lons[i], lats[i]));
+            assertEquals(pt.x(), xs[i], 0);
+            assertEquals(pt.y(), ys[i], 0);
+
+            PointGeo pg = p.inverse(new Point(xs[i], ys[i]));
+            assertEquals(pg.longitude(), lons2[i], 0);
+            assertEquals(pg.latitude(), lats2[i], 0);
+
+            PointGeo rowPg = p.inverse(new Point(xs[i], ys[1]));
+            assertEquals(rowPg.longitude(), rowLons[i], 0);
+            assertEquals(rowPg.latitude(), rowLats[i], 0);
+        }
+    }
+}
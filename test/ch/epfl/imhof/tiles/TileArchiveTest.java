@@ -0,0 +1,166 @@
+package ch.epfl.imhof.tiles;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+public class TileArchiveTest {
+    private static File temporaryFile () throws IOException {
+        File file = File.createTempFile("archive", ".tiles");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static byte[] image (int seed, int length) {
+        byte[] image = new byte[length];
+        for (int i = 0; i < length; i++)
+            image[i] = (byte) (seed * 31 + i);
+        return image;
+    }
+
+    @Test
+    public void tilesAreReadBackByCoordinates () throws IOException {
+        File file = temporaryFile();
+        try (TileArchive archive = new TileArchive(file)) {
+            archive.put(12, 2137, 1446, image(1, 10));
+            archive.put(13, 4274, 2892, image(2, 70000));
+            archive.put(13, 4274, 2893, image(3, 0));
+            archive.commit();
+        }
+
+        assertArrayEquals(image(1, 10), TileArchive.read(file, 12, 2137, 1446));
+        assertArrayEquals(image(2, 70000), TileArchive.read(file, 13, 4274, 2892));
+        assertArrayEquals(new byte[0], TileArchive.read(file, 13, 4274, 2893));
+    }
+
+    @Test
+    public void missingTileIsNull () throws IOException {
+        File file = temporaryFile();
+        try (TileArchive archive = new TileArchive(file)) {
+            archive.put(12, 2137, 1446, image(1, 10));
+            archive.commit();
+        }
+
+        assertNull(TileArchive.read(file, 12, 1446, 2137));
+        assertNull(TileArchive.read(file, 11, 2137, 1446));
+    }
+
+    @Test
+    public void manyTilesGrowTheIndex () throws IOException {
+        File file = temporaryFile();
+        try (TileArchive archive = new TileArchive(file)) {
+            for (int i = 0; i < 500; i++)
+                archive.put(10, i, 2 * i, image(i, i % 17));
+            archive.commit();
+        }
+
+        for (int i = 0; i < 500; i += 37)
+            assertArrayEquals(image(i, i % 17), TileArchive.read(file, 10, i, 2 * i));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void readFailsOnOtherFiles () throws IOException {
+        File file = temporaryFile();
+        Files.write(file.toPath(), image(0, 64));
+
+        TileArchive.read(file, 0, 0, 0);
+    }
+
+    @Test
+    public void uncommittedArchiveLeavesTheFileUnchanged () throws IOException {
+        File file = temporaryFile();
+        try (TileArchive archive = new TileArchive(file)) {
+            archive.put(12, 2137, 1446, image(1, 10));
+            archive.commit();
+        }
+
+        try (TileArchive archive = new TileArchive(file)) {
+            archive.put(12, 2137, 1446, image(2, 10));
+        }
+
+        assertArrayEquals(image(1, 10), TileArchive.read(file, 12, 2137, 1446));
+
+        File[] leftovers = file.getAbsoluteFile().getParentFile()
+                .listFiles((dir, name) -> name.startsWith(file.getName()) && name.endsWith(".tmp"));
+        assertEquals(0, leftovers.length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void readFailsOnTruncatedArchives () throws IOException {
+        File file = temporaryFile();
+        try (TileArchive archive = new TileArchive(file)) {
+            archive.put(12, 2137, 1446, image(1, 100));
+            archive.commit();
+        }
+
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 10));
+
+        TileArchive.read(file, 12, 2137, 1446);
+    }
+
+    /**
+     * Archive creuse dont la tuile se trouve au-delà de 2 Gio, là où une
+     * position sur 32 bits ne suffit plus
+     */
+    @Test
+    public void tilesBeyondTwoGibibytesAreRead () throws IOException {
+        File file = temporaryFile();
+        Assume.assumeTrue(file.getAbsoluteFile().getParentFile().getUsableSpace() > (4L << 30));
+
+        long position = 3L << 30;
+        byte[] tile = image(5, 1000);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write("IMHOFTIL".getBytes(StandardCharsets.US_ASCII));
+            raf.writeInt(1);
+
+            raf.seek(position);
+            raf.write(tile);
+
+            raf.writeByte(14);
+            raf.writeInt(8000);
+            raf.writeInt(5000);
+            raf.writeLong(position);
+            raf.writeInt(tile.length);
+
+            raf.writeLong(position + tile.length);
+            raf.writeInt(1);
+            raf.write("IMHOFTIL".getBytes(StandardCharsets.US_ASCII));
+        }
+
+        try {
+            assertArrayEquals(tile, TileArchive.read(file, 14, 8000, 5000));
+            assertNull(TileArchive.read(file, 14, 8000, 5001));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void directoryStoreWritesZoomXYTree () throws IOException {
+        File root = Files.createTempDirectory("tiles").toFile();
+        try (DirectoryTileStore store = new DirectoryTileStore(root)) {
+            store.put(3, 4, 5, image(1, 8));
+            store.commit();
+        }
+
+        File tile = new File(root, "3" + File.separator + "4" + File.separator + "5.png");
+        assertArrayEquals(image(1, 8), Files.readAllBytes(tile.toPath()));
+
+        tile.delete();
+        tile.getParentFile().delete();
+        tile.getParentFile().getParentFile().delete();
+        assertTrue(root.delete());
+    }
+}
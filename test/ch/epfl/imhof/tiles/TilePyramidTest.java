@@ -0,0 +1,170 @@
+package ch.epfl.imhof.tiles;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.Attributes;
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.SwissPainter;
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+import ch.epfl.imhof.projection.WebMercatorProjection;
+
+public class TilePyramidTest {
+    /* Tuile de la fosse aux ours de Berne au niveau 13 */
+    private static final int ZOOM = 13;
+    private static final int X = 4265;
+    private static final int Y = 2883;
+
+    /**
+     * Destination gardant les tuiles en mémoire, indexées par "z/x/y"
+     */
+    private static class MemoryTileStore implements TileStore {
+        final java.util.Map<String, byte[]> tiles = new ConcurrentHashMap<>();
+
+        public void put(int zoom, int x, int y, byte[] image) throws IOException {
+            this.tiles.put(zoom + "/" + x + "/" + y, image);
+        }
+
+        public void commit() {}
+
+        public void close() {}
+    }
+
+    /**
+     * Point projeté à la position donnée, en fractions de tuile, dans la
+     * grille du niveau ZOOM
+     */
+    private static Point tilePoint (double x, double y) {
+        double extent = TilePyramid.tileExtent(ZOOM);
+        double half = WebMercatorProjection.WORLD_SIZE / 2;
+        return new Point(-half + x * extent, half - y * extent);
+    }
+
+    private static PointGeo tilePointGeo (double x, double y) {
+        return TilePyramid.PROJECTION.inverse(tilePoint(x, y));
+    }
+
+    /**
+     * Carte contenant une forêt carrée entre les positions données, en
+     * fractions de tuile
+     */
+    private static Map forest (double x0, double y0, double x1, double y1) {
+        ClosedPolyLine shell = new ClosedPolyLine(Arrays.asList(
+                tilePoint(x0, y1), tilePoint(x1, y1), tilePoint(x1, y0), tilePoint(x0, y0)));
+        HashMap<String, String> attributes = new HashMap<>();
+        attributes.put("natural", "wood");
+
+        return new Map(new ArrayList<Attributed<PolyLine>>(), Collections.singletonList(
+                new Attributed<>(new Polygon(shell), new Attributes(attributes))));
+    }
+
+    @Test
+    public void onlyTilesTouchingTheMapAreWritten () throws IOException {
+        /* Forêt au centre d'une des quatre tuiles de la zone, loin de la
+         * marge des autres */
+        Map map = forest(X + 0.4, Y + 0.4, X + 0.6, Y + 0.6);
+        TilePyramid pyramid = new TilePyramid(map, SwissPainter.painter().compile(), null, 256, 20, 2);
+        MemoryTileStore store = new MemoryTileStore();
+
+        int written = pyramid.generate(tilePointGeo(X + 0.25, Y + 1.75), tilePointGeo(X + 1.75, Y + 0.25),
+                ZOOM - 1, ZOOM, store);
+
+        assertEquals(2, written);
+        assertEquals(2, store.tiles.size());
+        assertTrue(store.tiles.containsKey((ZOOM - 1) + "/" + (X / 2) + "/" + (Y / 2)));
+
+        BufferedImage tile = ImageIO.read(new ByteArrayInputStream(store.tiles.get(ZOOM + "/" + X + "/" + Y)));
+        assertEquals(256, tile.getWidth());
+        assertEquals(256, tile.getHeight());
+        assertTrue(tile.getRGB(128, 128) != 0xFFFFFFFF);
+        assertEquals(0xFFFFFFFF, tile.getRGB(10, 10));
+    }
+
+    @Test
+    public void storeFailureStopsAllWorkers () {
+        /* Forêt couvrant les 256 tuiles de la zone */
+        Map map = forest(X - 1, Y - 1, X + 17, Y + 17);
+        TilePyramid pyramid = new TilePyramid(map, SwissPainter.painter().compile(), null, 64, 20, 4);
+        IOException failure = new IOException("Disque plein");
+        AtomicInteger attempts = new AtomicInteger();
+
+        /* Seul le premier fil d'exécution à enregistrer une tuile y
+         * parvient : l'échec vient ainsi d'un autre que celui dont
+         * generate attend la fin en premier, en général */
+        MemoryTileStore store = new MemoryTileStore() {
+            private volatile Thread first;
+
+            @Override
+            public void put(int zoom, int x, int y, byte[] image) throws IOException {
+                attempts.incrementAndGet();
+                synchronized (this) {
+                    if (this.first == null)
+                        this.first = Thread.currentThread();
+                }
+                if (Thread.currentThread() != this.first)
+                    throw failure;
+                super.put(zoom, x, y, image);
+            }
+        };
+
+        try {
+            pyramid.generate(tilePointGeo(X + 0.5, Y + 15.5), tilePointGeo(X + 15.5, Y + 0.5),
+                    ZOOM, ZOOM, store);
+            fail("L'erreur d'écriture n'a pas été propagée");
+        } catch (IOException e) {
+            assertSame(failure, e.getCause());
+        }
+
+        /* Après l'échec, chaque fil d'exécution termine au plus sa tuile en
+         * cours au lieu de dessiner les suivantes */
+        assertTrue(attempts.get() + " tuiles enregistrées", attempts.get() < 32);
+    }
+
+    @Test
+    public void tileExtentHalvesAtEachZoom () {
+        assertEquals(WebMercatorProjection.WORLD_SIZE, TilePyramid.tileExtent(0), 0);
+        assertEquals(WebMercatorProjection.WORLD_SIZE / 2, TilePyramid.tileExtent(1), 0);
+        assertEquals(WebMercatorProjection.WORLD_SIZE / 8192, TilePyramid.tileExtent(13), 0);
+    }
+
+    @Test
+    public void tileIndexMatchesSlippyMapConvention () {
+        // Fosse aux ours de Berne ( 7.4600062, 46.947973 )
+        Point p = TilePyramid.PROJECTION.project(new PointGeo(0.13020167, 0.819396706));
+
+        assertEquals(0, TilePyramid.tileIndex(p.x(), 0));
+        assertEquals(0, TilePyramid.tileIndex(-p.y(), 0));
+        assertEquals(1, TilePyramid.tileIndex(p.x(), 1));
+        assertEquals(0, TilePyramid.tileIndex(-p.y(), 1));
+        assertEquals(4265, TilePyramid.tileIndex(p.x(), 13));
+        assertEquals(2883, TilePyramid.tileIndex(-p.y(), 13));
+    }
+
+    @Test
+    public void tileIndexIsClampedToTheWorld () {
+        assertEquals(0, TilePyramid.tileIndex(-WebMercatorProjection.WORLD_SIZE, 5));
+        assertEquals(31, TilePyramid.tileIndex(WebMercatorProjection.WORLD_SIZE, 5));
+        assertEquals(31, TilePyramid.tileIndex(WebMercatorProjection.WORLD_SIZE / 2, 5));
+    }
+}